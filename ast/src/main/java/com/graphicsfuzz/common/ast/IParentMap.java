@@ -26,4 +26,16 @@ public interface IParentMap {
     return new ParentMap(root);
   }
 
+  /**
+   * Checks that a parent map, which may have been made before the tree was changed, records the
+   * parent of each node under the given root.  Meant for use in assertions, when a parent map is
+   * reused.
+   * @param parentMap The parent map to be checked
+   * @param root The root of the tree
+   * @return Whether every node under the root has its parent recorded in the map
+   */
+  static boolean isUpToDate(IParentMap parentMap, IAstNode root) {
+    return ParentMap.isUpToDate(parentMap, root);
+  }
+
 }
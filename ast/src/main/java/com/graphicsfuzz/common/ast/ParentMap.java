@@ -17,19 +17,28 @@
 package com.graphicsfuzz.common.ast;
 
 import com.graphicsfuzz.common.ast.visitors.StandardVisitor;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.function.Consumer;
 
 class ParentMap extends StandardVisitor implements IParentMap {
 
+  // Nodes are keyed by identity: some nodes, such as types, are equal to other nodes in the tree
+  // without being the same node, and hashing them by value would be slow.
   private Map<IAstNode, IAstNode> childToParent;
 
   ParentMap(IAstNode root) {
-    childToParent = new HashMap<>();
+    childToParent = new IdentityHashMap<>();
     visit(root);
   }
 
+  static boolean isUpToDate(IParentMap parentMap, IAstNode root) {
+    // Compare with a fresh map, rather than with the tree, as nodes that are shared between
+    // several parents, such as basic types, are recorded with just one of them.
+    return new ParentMap(root).childToParent.entrySet().stream()
+        .allMatch(item -> parentMap.getParent(item.getKey()) == item.getValue());
+  }
+
   @Override
   public boolean hasParent(IAstNode node) {
     return childToParent.containsKey(node);
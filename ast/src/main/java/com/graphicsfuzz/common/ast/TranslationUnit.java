@@ -95,12 +95,29 @@ public class TranslationUnit implements IAstNode {
    * The trouble with cloning is that it duplicates parts of the tree that should really be
    * shared.  In particular, struct type references should all refer to the declaration.
    * This method clones the AST and then patches up such issues
+   *
+   * <p>Only struct types declared at the top level can be referred to, so the declarations that
+   * precede the first struct declaration are not revisited; if there is no struct declaration,
+   * the clone is not revisited at all.  Reducers clone a translation unit for every reduction
+   * attempt, and most shaders declare no structs.</p>
    * @return Cloned and patched up translation unit
    */
   public TranslationUnit cloneAndPatchUp() {
 
     TranslationUnit result = this.clone();
 
+    int firstStructDeclaration = 0;
+    while (firstStructDeclaration < result.topLevelDeclarations.size()
+        && !(result.topLevelDeclarations.get(firstStructDeclaration)
+        instanceof StructDeclaration)) {
+      firstStructDeclaration++;
+    }
+    if (firstStructDeclaration == result.topLevelDeclarations.size()) {
+      return result;
+    }
+    final List<Declaration> declarationsToPatchUp = result.topLevelDeclarations
+        .subList(firstStructDeclaration, result.topLevelDeclarations.size());
+
     new StandardVisitor() {
 
       private Map<String, StructType> mapping;
@@ -135,12 +152,14 @@ public class TranslationUnit implements IAstNode {
         }
       }
 
-      public void patchUp(TranslationUnit tu) {
+      public void patchUp(List<Declaration> declarations) {
         mapping = new HashMap<>();
-        visit(tu);
+        for (Declaration declaration : declarations) {
+          visit(declaration);
+        }
       }
 
-    }.patchUp(result);
+    }.patchUp(declarationsToPatchUp);
 
     return result;
 
@@ -70,9 +70,7 @@ import com.graphicsfuzz.common.ast.type.Type;
 import com.graphicsfuzz.common.ast.type.TypeQualifier;
 import com.graphicsfuzz.common.ast.type.VoidType;
 import com.graphicsfuzz.common.ast.visitors.StandardVisitor;
-import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
-import java.nio.charset.StandardCharsets;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -83,7 +81,11 @@ public class PrettyPrinterVisitor extends StandardVisitor {
   private final Supplier<String> newLineSupplier;
   private final int indentationWidth;
   private int indentationCount = 0;
-  private final PrintStream out;
+  // Text is rendered into this buffer.  If there is a sink, the buffer is flushed to the sink
+  // whenever a top-level visit completes.
+  private final StringBuilder out;
+  private final PrintStream sink;
+  private int visitDepth = 0;
   private boolean inFunctionDefinition = false;
 
   public PrettyPrinterVisitor(PrintStream out) {
@@ -92,7 +94,22 @@ public class PrettyPrinterVisitor extends StandardVisitor {
 
   public PrettyPrinterVisitor(PrintStream out, int indentationWidth,
         Supplier<String> newLineSupplier) {
+    this(new StringBuilder(), out, indentationWidth, newLineSupplier);
+  }
+
+  /**
+   * Creates a pretty printer that appends to the given buffer, which may be reused across
+   * visitors by clearing it between uses.
+   */
+  public PrettyPrinterVisitor(StringBuilder out, int indentationWidth,
+        Supplier<String> newLineSupplier) {
+    this(out, null, indentationWidth, newLineSupplier);
+  }
+
+  private PrettyPrinterVisitor(StringBuilder out, PrintStream sink, int indentationWidth,
+        Supplier<String> newLineSupplier) {
     this.out = out;
+    this.sink = sink;
     this.indentationWidth = indentationWidth;
     this.newLineSupplier = newLineSupplier;
   }
@@ -108,9 +125,24 @@ public class PrettyPrinterVisitor extends StandardVisitor {
    * @return String representation of the node
    */
   public static String prettyPrintAsString(IAstNode node) {
-    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-    new PrettyPrinterVisitor(new PrintStream(bytes)).visit(node);
-    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    final StringBuilder result = new StringBuilder();
+    new PrettyPrinterVisitor(result, DEFAULT_INDENTATION_WIDTH, DEFAULT_NEWLINE_SUPPLIER)
+        .visit(node);
+    return result.toString();
+  }
+
+  @Override
+  public void visit(IAstNode node) {
+    visitDepth++;
+    try {
+      super.visit(node);
+    } finally {
+      visitDepth--;
+    }
+    if (visitDepth == 0 && sink != null) {
+      sink.append(out);
+      out.setLength(0);
+    }
   }
 
   @Override
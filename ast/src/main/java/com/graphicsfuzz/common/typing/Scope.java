@@ -25,28 +25,66 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 
+/**
+ * Maps the names of the variables declared in a scope to their scope entries, and refers to the
+ * enclosing scope, if any.
+ *
+ * <p>A scope can yield a snapshot of itself: an immutable scope that shares its mappings, and the
+ * snapshots of its ancestors, with the live scope.  Taking a snapshot of an unchanged scope yields
+ * the same snapshot, so that the many injection and mutation points of a shader share a handful of
+ * scopes rather than holding a copy each of every scope that encloses them.  A live scope copies
+ * its mappings before it is next changed if they are shared with a snapshot or a clone.</p>
+ *
+ * <p>Sorted views of the names in a scope are cached, and are recomputed only if the scope or
+ * one of its ancestors has changed since they were computed.</p>
+ */
 public class Scope {
 
-  private final Map<String, ScopeEntry> variableMapping;
+  private Map<String, ScopeEntry> variableMapping;
   private final Scope parent;
+  private final boolean frozen;
+
+  // True if variableMapping may be referenced by a snapshot or clone of this scope, in which case
+  // it must be copied before it is changed.
+  private boolean mappingShared;
+
+  // Incremented each time this scope changes; used to detect that cached views are stale.
+  private int version;
+
+  private Scope snapshot;
+  private List<String> sortedKeys;
+  private List<String> sortedNames;
+  private long sortedNamesVersion;
 
   public Scope(Scope parent) {
-    this.variableMapping = new HashMap<>();
+    this(parent, new HashMap<>(), false);
+  }
+
+  private Scope(Scope parent, Map<String, ScopeEntry> variableMapping, boolean frozen) {
+    this.variableMapping = variableMapping;
     this.parent = parent;
+    this.frozen = frozen;
+    this.mappingShared = false;
+    this.version = 0;
+    this.snapshot = null;
+    this.sortedKeys = null;
+    this.sortedNames = null;
+    this.sortedNamesVersion = -1;
   }
 
   public void add(String name, Type type, Optional<ParameterDecl> parameterDecl,
         VariableDeclInfo declInfo,
         VariablesDeclaration variablesDecl) {
     checkNameTypeAndParam(name, type, parameterDecl);
+    prepareForChange();
     variableMapping.put(name, new ScopeEntry(type, parameterDecl, declInfo, variablesDecl));
   }
 
   public void add(String name, Type type, Optional<ParameterDecl> parameterDecl) {
     checkNameTypeAndParam(name, type, parameterDecl);
+    prepareForChange();
     variableMapping.put(name, new ScopeEntry(type, parameterDecl));
   }
 
@@ -64,6 +102,19 @@ public class Scope {
     assert name != null;
   }
 
+  private void prepareForChange() {
+    if (frozen) {
+      throw new UnsupportedOperationException("Attempt to change a scope snapshot");
+    }
+    if (mappingShared) {
+      variableMapping = new HashMap<>(variableMapping);
+      mappingShared = false;
+    }
+    version++;
+    snapshot = null;
+    sortedKeys = null;
+  }
+
   public Scope getParent() {
     return parent;
   }
@@ -86,36 +137,108 @@ public class Scope {
     return entry.getType();
   }
 
+  /**
+   * Yields, in sorted order, the names of the variables in this scope and its ancestors.  A name
+   * that is declared in several of the scopes appears once for each of them.  The same list is
+   * yielded until this scope or one of its ancestors changes.
+   * @return Unmodifiable sorted list of names
+   */
   public List<String> namesOfAllVariablesInScope() {
-    List<String> result = new ArrayList<>();
-    Scope scope = this;
-    while (scope != null) {
-      result.addAll(scope.keys());
-      scope = scope.parent;
+    final long chainVersion = chainVersion();
+    if (sortedNames == null || sortedNamesVersion != chainVersion) {
+      if (parent == null) {
+        sortedNames = keys();
+      } else if (variableMapping.isEmpty()) {
+        sortedNames = parent.namesOfAllVariablesInScope();
+      } else {
+        sortedNames = Collections.unmodifiableList(merge(parent.namesOfAllVariablesInScope(),
+            keys()));
+      }
+      sortedNamesVersion = chainVersion;
     }
-    result.sort(String::compareTo);
-    return Collections.unmodifiableList(result);
+    return sortedNames;
+  }
+
+  /**
+   * Yields a number that changes whenever this scope or one of its ancestors changes, as versions
+   * only ever increase.
+   */
+  private long chainVersion() {
+    long result = 0;
+    for (Scope scope = this; scope != null; scope = scope.parent) {
+      result += scope.version;
+    }
+    return result;
+  }
+
+  private static List<String> merge(List<String> first, List<String> second) {
+    final List<String> result = new ArrayList<>(first.size() + second.size());
+    int i = 0;
+    int j = 0;
+    while (i < first.size() && j < second.size()) {
+      if (first.get(i).compareTo(second.get(j)) <= 0) {
+        result.add(first.get(i++));
+      } else {
+        result.add(second.get(j++));
+      }
+    }
+    result.addAll(first.subList(i, first.size()));
+    result.addAll(second.subList(j, second.size()));
+    return result;
   }
 
   public List<String> keys() {
-    List<String> result = new ArrayList<>();
-    result.addAll(variableMapping.keySet());
-    result.sort(String::compareTo);
-    return Collections.unmodifiableList(result);
+    if (sortedKeys == null) {
+      List<String> result = new ArrayList<>();
+      result.addAll(variableMapping.keySet());
+      result.sort(String::compareTo);
+      sortedKeys = Collections.unmodifiableList(result);
+    }
+    return sortedKeys;
   }
 
   public boolean hasParent() {
     return parent != null;
   }
 
+  /**
+   * Returns true if and only if this scope is a snapshot, and so cannot be changed.
+   * @return Whether the scope is a snapshot
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Yields an immutable view of the scope as it currently is, which later changes to the scope
+   * (or to its ancestors) do not affect.  The same snapshot is yielded until the scope or one of
+   * its ancestors changes.  No mappings are copied.
+   * @return Snapshot of the scope
+   */
+  public Scope snapshot() {
+    if (frozen) {
+      return this;
+    }
+    final Scope parentSnapshot = parent == null ? null : parent.snapshot();
+    if (snapshot == null || snapshot.parent != parentSnapshot) {
+      mappingShared = true;
+      snapshot = new Scope(parentSnapshot, variableMapping, true);
+    }
+    return snapshot;
+  }
+
   /**
    * Clones the scope, recursively cloning all parents, but does not deep-clone the mappings.
+   * The clone can be changed, even if this scope is a snapshot; mappings are shared until either
+   * scope changes.
    * @return Cloned scope
    */
   public Scope shallowClone() {
-    Scope result = new Scope(parent == null ? null : parent.shallowClone());
-    for (Entry<String, ScopeEntry> entry : variableMapping.entrySet()) {
-      result.variableMapping.put(entry.getKey(), entry.getValue());
+    final Scope result = new Scope(parent == null ? null : parent.shallowClone(), variableMapping,
+        false);
+    result.mappingShared = true;
+    if (!frozen) {
+      mappingShared = true;
     }
     return result;
   }
@@ -129,6 +252,7 @@ public class Scope {
    */
   public ScopeEntry remove(String name) {
     if (variableMapping.containsKey(name)) {
+      prepareForChange();
       return variableMapping.remove(name);
     }
     if (hasParent()) {
@@ -42,6 +42,7 @@ import com.graphicsfuzz.common.ast.type.Type;
 import com.graphicsfuzz.common.ast.type.TypeQualifier;
 import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
 import com.graphicsfuzz.common.util.OpenGlConstants;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -106,14 +107,9 @@ public class Typer extends ScopeTreeBuilder {
   public void visitFunctionCallExpr(FunctionCallExpr functionCallExpr) {
     super.visitFunctionCallExpr(functionCallExpr);
 
-    List<FunctionPrototype> candidateBuiltins = TyperHelper.getBuiltins(shadingLanguageVersion)
-        .get(functionCallExpr.getCallee());
-    if (candidateBuiltins != null) {
-      for (FunctionPrototype prototype : candidateBuiltins) {
-        if (prototypeMatches(prototype, functionCallExpr)) {
-          types.put(functionCallExpr, prototype.getReturnType());
-        }
-      }
+    final FunctionPrototype builtin = findBuiltin(functionCallExpr);
+    if (builtin != null) {
+      types.put(functionCallExpr, builtin.getReturnType());
     }
 
     Set<FunctionPrototype> candidateUserDefined =
@@ -128,6 +124,23 @@ public class Typer extends ScopeTreeBuilder {
 
   }
 
+  private FunctionPrototype findBuiltin(FunctionCallExpr functionCallExpr) {
+    if (!TyperHelper.getBuiltins(shadingLanguageVersion)
+        .containsKey(functionCallExpr.getCallee())) {
+      return null;
+    }
+    final List<Type> argTypes = new ArrayList<>();
+    for (Expr arg : functionCallExpr.getArgs()) {
+      final Type argType = lookupType(arg);
+      if (argType == null) {
+        return null;
+      }
+      argTypes.add(argType.getWithoutQualifiers());
+    }
+    return TyperHelper.findBuiltin(shadingLanguageVersion, functionCallExpr.getCallee(),
+        argTypes);
+  }
+
   /**
    * Determines whether a given function prototype might correspond to the function being invoked
    * by a function call expression.
@@ -17,6 +17,7 @@
 package com.graphicsfuzz.common.typing;
 
 import com.graphicsfuzz.common.ast.decl.FunctionPrototype;
+import com.graphicsfuzz.common.ast.decl.ParameterDecl;
 import com.graphicsfuzz.common.ast.type.BasicType;
 import com.graphicsfuzz.common.ast.type.Type;
 import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
@@ -35,9 +36,16 @@ import java.util.concurrent.ConcurrentMap;
  */
 public final class TyperHelper {
 
-  private static ConcurrentMap<ShadingLanguageVersion,
+  // The builtins of each shading language version, built on first use and immutable thereafter.
+  private static final ConcurrentMap<ShadingLanguageVersion,
       Map<String, List<FunctionPrototype>>> builtins = new ConcurrentHashMap<>();
 
+  // For each shading language version, maps the name of each builtin to an index of its
+  // overloads by parameter types, so that calls can be resolved without trying every overload.
+  private static final ConcurrentMap<ShadingLanguageVersion,
+      Map<String, Map<List<Type>, FunctionPrototype>>> builtinOverloads =
+      new ConcurrentHashMap<>();
+
   private TyperHelper() {
     // Utility class
   }
@@ -280,13 +288,55 @@ public final class TyperHelper {
     return null;
   }
 
+  /**
+   * Yields the builtins of the given shading language version, keyed by name.  The result is
+   * immutable, and the same map is returned by every call for a given version.
+   */
   public static Map<String, List<FunctionPrototype>> getBuiltins(ShadingLanguageVersion
       shadingLanguageVersion) {
-    if (!builtins.containsKey(shadingLanguageVersion)) {
-      builtins.putIfAbsent(shadingLanguageVersion,
-          getBuiltinsForGlslVersion(shadingLanguageVersion));
-    }
-    return Collections.unmodifiableMap(builtins.get(shadingLanguageVersion));
+    return builtins.computeIfAbsent(shadingLanguageVersion, item -> {
+      final Map<String, List<FunctionPrototype>> result = new HashMap<>();
+      getBuiltinsForGlslVersion(item).forEach((name, prototypes) ->
+          result.put(name, Collections.unmodifiableList(prototypes)));
+      return Collections.unmodifiableMap(result);
+    });
+  }
+
+  /**
+   * Yields the builtin of the given shading language version that has the given name and
+   * parameter types, or null if there is no such builtin.  If several builtins have the same name
+   * and parameter types, the one that was declared last is yielded.
+   *
+   * @param shadingLanguageVersion Version whose builtins are to be searched
+   * @param name Name of the builtin
+   * @param parameterTypes Types of the parameters, without qualifiers
+   * @return The matching builtin, or null if there is none
+   */
+  public static FunctionPrototype findBuiltin(ShadingLanguageVersion shadingLanguageVersion,
+      String name, List<Type> parameterTypes) {
+    final Map<List<Type>, FunctionPrototype> overloads =
+        builtinOverloads.computeIfAbsent(shadingLanguageVersion, TyperHelper::indexBuiltins)
+            .get(name);
+    return overloads == null ? null : overloads.get(parameterTypes);
+  }
+
+  private static Map<String, Map<List<Type>, FunctionPrototype>> indexBuiltins(
+      ShadingLanguageVersion shadingLanguageVersion) {
+    final Map<String, Map<List<Type>, FunctionPrototype>> result = new HashMap<>();
+    getBuiltins(shadingLanguageVersion).forEach((name, prototypes) -> {
+      final Map<List<Type>, FunctionPrototype> overloads = new HashMap<>();
+      for (FunctionPrototype prototype : prototypes) {
+        final List<Type> parameterTypes = new ArrayList<>();
+        for (ParameterDecl parameter : prototype.getParameters()) {
+          // Builtins do not take array parameters.
+          assert parameter.getArrayInfo() == null;
+          parameterTypes.add(parameter.getType().getWithoutQualifiers());
+        }
+        overloads.put(Collections.unmodifiableList(parameterTypes), prototype);
+      }
+      result.put(name, Collections.unmodifiableMap(overloads));
+    });
+    return Collections.unmodifiableMap(result);
   }
 
   private static Map<String, List<FunctionPrototype>> getBuiltinsForGlslVersion(
@@ -22,12 +22,28 @@ import com.graphicsfuzz.common.tool.PrettyPrinterVisitor;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.Optional;
 import java.util.function.Supplier;
 
 public final class EmitShaderHelper {
 
+  // Buffers into which shaders are rendered and encoded before being written; reused across calls
+  // on the same thread so that emitting a shader does not allocate buffers proportional to its
+  // size each time.
+  private static final ThreadLocal<EmitBuffers> EMIT_BUFFERS =
+      ThreadLocal.withInitial(EmitBuffers::new);
+
   private EmitShaderHelper() {
     // Utility class
   }
@@ -112,4 +128,63 @@ public final class EmitShaderHelper {
         () -> new StringBuilder());
   }
 
+  /**
+   * Writes the shader, preceded by its defines, to the given file, and feeds the bytes written to
+   * the given digest, so that a caller that needs a hash of the emitted shader does not have to
+   * read the file back.  The shader is rendered and encoded into per-thread buffers that are reused
+   * across calls, and is then written through a file channel in one go.
+   */
+  public static void emitShader(ShadingLanguageVersion shadingLanguageVersion,
+        ShaderKind shaderKind,
+        TranslationUnit shader,
+        Optional<String> license,
+        Supplier<StringBuilder> extraMacros,
+        File outputFile,
+        MessageDigest digest) throws IOException {
+    final EmitBuffers buffers = EMIT_BUFFERS.get();
+    final StringBuilder text = buffers.text;
+    text.setLength(0);
+    text.append(getDefinesString(shadingLanguageVersion, shaderKind, extraMacros, license));
+    new PrettyPrinterVisitor(text, PrettyPrinterVisitor.DEFAULT_INDENTATION_WIDTH,
+        PrettyPrinterVisitor.DEFAULT_NEWLINE_SUPPLIER).visit(shader);
+    final ByteBuffer bytes = buffers.encode(text);
+    digest.update(bytes.duplicate());
+    try (FileChannel channel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+    }
+  }
+
+  private static final class EmitBuffers {
+
+    private final StringBuilder text = new StringBuilder();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer bytes = ByteBuffer.allocate(1 << 16);
+
+    /**
+     * Encodes the text as UTF-8, yielding a buffer that is ready to be read.
+     */
+    private ByteBuffer encode(CharSequence text) throws CharacterCodingException {
+      final int maxLength = (int) Math.ceil(text.length() * (double) encoder.maxBytesPerChar());
+      if (bytes.capacity() < maxLength) {
+        bytes = ByteBuffer.allocate(Math.max(maxLength, 2 * bytes.capacity()));
+      }
+      bytes.clear();
+      encoder.reset();
+      final CharBuffer chars = CharBuffer.wrap(text);
+      CoderResult result = encoder.encode(chars, bytes, true);
+      if (!result.isError()) {
+        result = encoder.flush(bytes);
+      }
+      if (result.isError()) {
+        result.throwException();
+      }
+      bytes.flip();
+      return bytes;
+    }
+
+  }
+
 }
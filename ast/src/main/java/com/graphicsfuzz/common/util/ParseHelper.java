@@ -33,34 +33,60 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.antlr.v4.runtime.ANTLRInputStream;
 import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.ATN;
 import org.antlr.v4.runtime.atn.LexerATNSimulator;
 import org.antlr.v4.runtime.atn.ParserATNSimulator;
 import org.antlr.v4.runtime.atn.PredictionContextCache;
 import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.dfa.DFA;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTreeListener;
 import org.apache.commons.io.FileUtils;
 
+/**
+ * Parses shaders into translation units.  Parsing is thread-safe: all parsers share a DFA and
+ * prediction context cache, so that the cost of warming up ANTLR's adaptive prediction is paid
+ * once per JVM rather than once per parse.  To stop the cache growing without bound, it is
+ * periodically checked and reset once it gets too large.
+ */
 public class ParseHelper {
 
   static final String END_OF_HEADER = "// END OF GENERATED HEADER";
 
-  public static synchronized TranslationUnit parse(File file, boolean stripHeader)
+  // The number of parses between checks of the size of the shared cache.
+  static final int CACHE_CHECK_INTERVAL = 64;
+
+  // The number of DFA states and cached prediction contexts beyond which the shared cache is
+  // reset.
+  static final int MAX_CACHE_SIZE = 200000;
+
+  private static final DFA[] lexerDfa = makeDfa(GLSLLexer._ATN);
+  private static final DFA[] parserDfa = makeDfa(GLSLParser._ATN);
+
+  // Guarded by cacheLock: parses hold the read lock, and resets of the cache hold the write lock.
+  private static PredictionContextCache contextCache = new PredictionContextCache();
+  private static final ReadWriteLock cacheLock = new ReentrantReadWriteLock();
+  private static final AtomicLong parseCount = new AtomicLong(0);
+
+  public static TranslationUnit parse(File file, boolean stripHeader)
         throws IOException, ParseTimeoutException {
     return parseInputStream(new ByteArrayInputStream(FileUtils.readFileToByteArray(file)),
           stripHeader);
   }
 
-  public static synchronized TranslationUnit parse(String string, boolean stripHeader)
+  public static TranslationUnit parse(String string, boolean stripHeader)
         throws IOException, ParseTimeoutException {
     return parseInputStream(new ByteArrayInputStream(string.getBytes(StandardCharsets.UTF_8)),
           stripHeader);
   }
 
-  private static synchronized TranslationUnit parseInputStream(InputStream input,
+  private static TranslationUnit parseInputStream(InputStream input,
         boolean stripHeader)
         throws IOException, ParseTimeoutException {
     TranslationUnit result;
@@ -73,7 +99,7 @@ public class ParseHelper {
     return parseInputStream(input);
   }
 
-  private static synchronized TranslationUnit parseInputStream(InputStream input)
+  private static TranslationUnit parseInputStream(InputStream input)
         throws IOException, ParseTimeoutException {
     final int timeLimit = 60;
 
@@ -81,6 +107,7 @@ public class ParseHelper {
           new TimeoutParseTreeListener(
                 System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeLimit));
     Translation_unitContext ctx;
+    cacheLock.readLock().lock();
     try {
       try {
         ctx = tryFastParse(input, listener);
@@ -90,11 +117,72 @@ public class ParseHelper {
       }
     } catch (ParseTimeoutRuntimeException exception) {
       throw new ParseTimeoutException(exception);
+    } finally {
+      cacheLock.readLock().unlock();
+    }
+    if (parseCount.incrementAndGet() % CACHE_CHECK_INTERVAL == 0) {
+      resetCacheIfTooLarge(MAX_CACHE_SIZE);
     }
 
     return AstBuilder.getTranslationUnit(ctx);
   }
 
+  /**
+   * Resets the shared DFA and prediction context cache if the number of entries they hold exceeds
+   * the given limit.  Returns true if and only if the cache was reset.  The cache is measured
+   * under the read lock, so that parses are only held up when the cache is actually reset.
+   */
+  static boolean resetCacheIfTooLarge(int maxCacheSize) {
+    if (getCacheSize() <= maxCacheSize) {
+      return false;
+    }
+    cacheLock.writeLock().lock();
+    try {
+      // Another thread may have reset the cache since it was measured.
+      if (getCacheSize() <= maxCacheSize) {
+        return false;
+      }
+      resetDfa(lexerDfa, GLSLLexer._ATN);
+      resetDfa(parserDfa, GLSLParser._ATN);
+      contextCache = new PredictionContextCache();
+      return true;
+    } finally {
+      cacheLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the number of DFA states and prediction contexts in the shared cache.  Parses may add
+   * to the cache while it is being measured, so the result is approximate unless the caller
+   * holds the write lock.
+   */
+  static int getCacheSize() {
+    cacheLock.readLock().lock();
+    try {
+      int result = contextCache.size();
+      for (DFA[] dfas : new DFA[][] { lexerDfa, parserDfa }) {
+        for (DFA dfa : dfas) {
+          result += dfa.states.size();
+        }
+      }
+      return result;
+    } finally {
+      cacheLock.readLock().unlock();
+    }
+  }
+
+  private static DFA[] makeDfa(ATN atn) {
+    final DFA[] result = new DFA[atn.getNumberOfDecisions()];
+    resetDfa(result, atn);
+    return result;
+  }
+
+  private static void resetDfa(DFA[] dfas, ATN atn) {
+    for (int i = 0; i < dfas.length; i++) {
+      dfas[i] = new DFA(atn.getDecisionState(i), i);
+    }
+  }
+
   private static Translation_unitContext tryFastParse(
         InputStream inputStream,
         ParseTreeListener listener) throws IOException {
@@ -102,9 +190,7 @@ public class ParseHelper {
     GLSLParser parser = getParser(inputStream, listener);
     parser.setErrorHandler(new BailErrorStrategy());
     parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
-    Translation_unitContext result = parser.translation_unit();
-    parser.getInterpreter().clearDFA();
-    return result;
+    return parser.translation_unit();
   }
 
   private static Translation_unitContext slowParse(
@@ -112,15 +198,11 @@ public class ParseHelper {
         ParseTreeListener listener) throws IOException {
 
     GLSLParser parser = getParser(inputStream, listener);
-    try {
-      Translation_unitContext tu = parser.translation_unit();
-      if (parser.getNumberOfSyntaxErrors() > 0) {
-        throw new RuntimeException("Syntax errors occurred during parsing");
-      }
-      return tu;
-    } finally {
-      parser.getInterpreter().clearDFA();
+    Translation_unitContext tu = parser.translation_unit();
+    if (parser.getNumberOfSyntaxErrors() > 0) {
+      throw new RuntimeException("Syntax errors occurred during parsing");
     }
+    return tu;
   }
 
   private static GLSLParser getParser(
@@ -129,19 +211,15 @@ public class ParseHelper {
 
     ANTLRInputStream input = new ANTLRInputStream(inputStream);
     GLSLLexer lexer = new GLSLLexer(input);
-    PredictionContextCache cache = new PredictionContextCache();
     lexer.setInterpreter(
-          new LexerATNSimulator(lexer, lexer.getATN(),
-                lexer.getInterpreter().decisionToDFA, cache));
+          new LexerATNSimulator(lexer, lexer.getATN(), lexerDfa, contextCache));
     CommonTokenStream tokens = new CommonTokenStream(lexer);
     GLSLParser parser = new GLSLParser(tokens);
     if (listener != null) {
       parser.addParseListener(listener);
     }
     parser.setInterpreter(
-          new ParserATNSimulator(parser, parser.getATN(),
-                parser.getInterpreter().decisionToDFA,
-                cache));
+          new ParserATNSimulator(parser, parser.getATN(), parserDfa, contextCache));
     return parser;
   }
 
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.ast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.graphicsfuzz.common.ast.decl.StructDeclaration;
+import com.graphicsfuzz.common.ast.decl.VariablesDeclaration;
+import com.graphicsfuzz.common.ast.type.QualifiedType;
+import com.graphicsfuzz.common.tool.PrettyPrinterVisitor;
+import com.graphicsfuzz.common.util.ParseHelper;
+import org.junit.Test;
+
+public class TranslationUnitTest {
+
+  @Test
+  public void testCloneAndPatchUpSharesStructTypes() throws Exception {
+    final String program = "uniform float f;\n"
+        + "struct S { float x; };\n"
+        + "struct T { S s; };\n"
+        + "T t;\n"
+        + "void main() { }\n";
+    final TranslationUnit tu = ParseHelper.parse(program, false);
+    final TranslationUnit clone = tu.cloneAndPatchUp();
+    assertEquals(PrettyPrinterVisitor.prettyPrintAsString(tu),
+        PrettyPrinterVisitor.prettyPrintAsString(clone));
+
+    final StructDeclaration declarationOfS =
+        (StructDeclaration) clone.getTopLevelDeclarations().get(1);
+    final StructDeclaration declarationOfT =
+        (StructDeclaration) clone.getTopLevelDeclarations().get(2);
+    final VariablesDeclaration declarationOfVariable =
+        (VariablesDeclaration) clone.getTopLevelDeclarations().get(3);
+    assertNotSame(((StructDeclaration) tu.getTopLevelDeclarations().get(1)).getType(),
+        declarationOfS.getType());
+    assertSame(declarationOfT.getType(),
+        ((QualifiedType) declarationOfVariable.getBaseType()).getTargetType());
+  }
+
+  @Test
+  public void testCloneAndPatchUpWithoutStructs() throws Exception {
+    final String program = "uniform float f;\n"
+        + "void main() { float x = f; }\n";
+    final TranslationUnit tu = ParseHelper.parse(program, false);
+    assertEquals(PrettyPrinterVisitor.prettyPrintAsString(tu),
+        PrettyPrinterVisitor.prettyPrintAsString(tu.cloneAndPatchUp()));
+  }
+
+}
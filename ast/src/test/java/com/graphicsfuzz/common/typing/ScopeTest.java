@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.typing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.common.ast.type.BasicType;
+import java.util.Arrays;
+import java.util.Optional;
+import org.junit.Test;
+
+public class ScopeTest {
+
+  @Test
+  public void testSnapshotIsSharedUntilScopeChanges() {
+    final Scope global = new Scope(null);
+    global.add("g", BasicType.FLOAT, Optional.empty());
+    final Scope local = new Scope(global);
+    local.add("a", BasicType.INT, Optional.empty());
+
+    final Scope first = local.snapshot();
+    assertTrue(first.isFrozen());
+    assertSame(first, local.snapshot());
+    assertSame(first.getParent(), global.snapshot());
+
+    local.add("b", BasicType.INT, Optional.empty());
+    final Scope second = local.snapshot();
+    assertNotSame(first, second);
+    assertSame(first.getParent(), second.getParent());
+    assertNull(first.lookupType("b"));
+    assertNotNull(second.lookupType("b"));
+
+    global.add("h", BasicType.FLOAT, Optional.empty());
+    final Scope third = local.snapshot();
+    assertNotSame(second, third);
+    assertNull(second.lookupType("h"));
+    assertNotNull(third.lookupType("h"));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSnapshotCannotBeChanged() {
+    final Scope scope = new Scope(null);
+    scope.snapshot().add("a", BasicType.INT, Optional.empty());
+  }
+
+  @Test
+  public void testCloneOfSnapshotCanBeChanged() {
+    final Scope global = new Scope(null);
+    global.add("a", BasicType.INT, Optional.empty());
+    final Scope snapshot = new Scope(global).snapshot();
+    final Scope clone = snapshot.shallowClone();
+    assertFalse(clone.isFrozen());
+    assertNotNull(clone.remove("a"));
+    clone.add("b", BasicType.INT, Optional.empty());
+    assertNotNull(snapshot.lookupType("a"));
+    assertNull(snapshot.lookupType("b"));
+    assertNotNull(global.lookupType("a"));
+    assertNull(global.lookupType("b"));
+  }
+
+  @Test
+  public void testNamesOfAllVariablesInScope() {
+    final Scope global = new Scope(null);
+    global.add("c", BasicType.INT, Optional.empty());
+    global.add("a", BasicType.INT, Optional.empty());
+    final Scope local = new Scope(global);
+    local.add("b", BasicType.INT, Optional.empty());
+    local.add("c", BasicType.INT, Optional.empty());
+    assertEquals(Arrays.asList("a", "b", "c", "c"), local.namesOfAllVariablesInScope());
+    assertEquals(local.namesOfAllVariablesInScope(), local.snapshot().namesOfAllVariablesInScope());
+
+    global.add("d", BasicType.INT, Optional.empty());
+    assertEquals(Arrays.asList("a", "b", "c", "c", "d"), local.namesOfAllVariablesInScope());
+    global.remove("a");
+    assertEquals(Arrays.asList("b", "c", "c", "d"), local.namesOfAllVariablesInScope());
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.typing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.graphicsfuzz.common.ast.decl.FunctionPrototype;
+import com.graphicsfuzz.common.ast.decl.ParameterDecl;
+import com.graphicsfuzz.common.ast.type.BasicType;
+import com.graphicsfuzz.common.ast.type.Type;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class TyperHelperTest {
+
+  @Test
+  public void testFindBuiltin() {
+    final FunctionPrototype clamp = TyperHelper.findBuiltin(ShadingLanguageVersion.ESSL_100,
+        "clamp", Arrays.asList(BasicType.VEC3, BasicType.FLOAT, BasicType.FLOAT));
+    assertEquals(BasicType.VEC3, clamp.getReturnType());
+    assertNull(TyperHelper.findBuiltin(ShadingLanguageVersion.ESSL_100, "clamp",
+        Arrays.asList(BasicType.VEC3, BasicType.VEC2, BasicType.FLOAT)));
+    assertNull(TyperHelper.findBuiltin(ShadingLanguageVersion.ESSL_100, "notABuiltin",
+        Collections.emptyList()));
+  }
+
+  @Test
+  public void testFindBuiltinAgreesWithBuiltins() {
+    for (ShadingLanguageVersion shadingLanguageVersion
+        : ShadingLanguageVersion.allShadingLanguageVersions()) {
+      final Map<String, List<FunctionPrototype>> builtins =
+          TyperHelper.getBuiltins(shadingLanguageVersion);
+      assertSame(builtins, TyperHelper.getBuiltins(shadingLanguageVersion));
+      for (String name : builtins.keySet()) {
+        for (FunctionPrototype prototype : builtins.get(name)) {
+          final List<Type> parameterTypes = new ArrayList<>();
+          for (ParameterDecl parameter : prototype.getParameters()) {
+            parameterTypes.add(parameter.getType().getWithoutQualifiers());
+          }
+          // The last overload with the given parameter types is expected.
+          FunctionPrototype expected = null;
+          for (FunctionPrototype other : builtins.get(name)) {
+            if (other.getNumParameters() == parameterTypes.size()) {
+              boolean matches = true;
+              for (int i = 0; i < parameterTypes.size(); i++) {
+                matches &= other.getParameters().get(i).getType().getWithoutQualifiers()
+                    .equals(parameterTypes.get(i));
+              }
+              if (matches) {
+                expected = other;
+              }
+            }
+          }
+          assertSame(expected,
+              TyperHelper.findBuiltin(shadingLanguageVersion, name, parameterTypes));
+        }
+      }
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testBuiltinsAreImmutable() {
+    TyperHelper.getBuiltins(ShadingLanguageVersion.ESSL_100).get("sin").clear();
+  }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Optional;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EmitShaderHelperTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testEmitToFileMatchesStreamAndDigest() throws Exception {
+    final TranslationUnit tu = ParseHelper.parse("struct S { float x; }; uniform S s;"
+        + "void main() { if (s.x > 0.0) { gl_FragColor = vec4(s.x); } }", false);
+
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    EmitShaderHelper.emitShader(ShadingLanguageVersion.ESSL_100, ShaderKind.FRAGMENT, tu,
+        Optional.of("License"), new PrintStream(expected, true, "UTF-8"), 1, () -> "\n",
+        () -> new StringBuilder("#define X\n"));
+
+    // Emit twice, to check that a reused buffer does not leak content between shaders.
+    for (int i = 0; i < 2; i++) {
+      final File file = temporaryFolder.newFile();
+      final MessageDigest digest = MessageDigest.getInstance("MD5");
+      EmitShaderHelper.emitShader(ShadingLanguageVersion.ESSL_100, ShaderKind.FRAGMENT, tu,
+          Optional.of("License"), () -> new StringBuilder("#define X\n"), file, digest);
+      final byte[] written = FileUtils.readFileToByteArray(file);
+      assertEquals(new String(expected.toByteArray(), StandardCharsets.UTF_8),
+          new String(written, StandardCharsets.UTF_8));
+      assertArrayEquals(MessageDigest.getInstance("MD5").digest(written), digest.digest());
+    }
+  }
+
+  @Test
+  public void testEmitOverwritesLongerFile() throws Exception {
+    final TranslationUnit tu = ParseHelper.parse("void main() { }", false);
+    final File file = temporaryFolder.newFile();
+    FileUtils.writeStringToFile(file, new String(new char[100000]).replace('\0', 'a'),
+        StandardCharsets.UTF_8);
+    EmitShaderHelper.emitShader(ShadingLanguageVersion.ESSL_100, ShaderKind.FRAGMENT, tu,
+        Optional.empty(), () -> new StringBuilder(), file, MessageDigest.getInstance("MD5"));
+    assertEquals(EmitShaderHelper.getDefinesString(ShadingLanguageVersion.ESSL_100,
+        ShaderKind.FRAGMENT, () -> new StringBuilder(), Optional.empty()) + tu.getText(),
+        FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+  }
+
+}
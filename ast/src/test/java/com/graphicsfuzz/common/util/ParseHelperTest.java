@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.common.tool.PrettyPrinterVisitor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class ParseHelperTest {
+
+  private static final String[] PROGRAMS = {
+      "void main() { int x = 0; for (int i = 0; i < 10; i++) { x += i; } }",
+      "struct S { float a; vec2 b; }; S f(S s) { return s; } "
+          + "void main() { f(S(1.0, vec2(0.0))); }",
+      "uniform vec2 resolution; "
+          + "void main() { gl_FragColor = vec4(resolution.x > 2.0 ? 1.0 : 0.0); }",
+      "float g(float x); float g(float x) { if (x > 0.0) { return x; } else { return -x; } }"
+  };
+
+  @Test
+  public void testConcurrentParsesMatchSerialParses() throws Exception {
+    final List<String> expected = new ArrayList<>();
+    for (String program : PROGRAMS) {
+      expected.add(PrettyPrinterVisitor.prettyPrintAsString(ParseHelper.parse(program, false)));
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      final List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        final String program = PROGRAMS[i % PROGRAMS.length];
+        results.add(executor.submit(() ->
+            PrettyPrinterVisitor.prettyPrintAsString(ParseHelper.parse(program, false))));
+        if (i % 50 == 0) {
+          // Force resets of the shared cache while parses are in flight.
+          executor.submit(() -> ParseHelper.resetCacheIfTooLarge(0));
+        }
+      }
+      for (int i = 0; i < results.size(); i++) {
+        assertEquals(expected.get(i % PROGRAMS.length), results.get(i).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testCacheIsReset() throws Exception {
+    ParseHelper.parse(PROGRAMS[1], false);
+    assertTrue(ParseHelper.getCacheSize() > 0);
+    assertFalse(ParseHelper.resetCacheIfTooLarge(Integer.MAX_VALUE));
+    assertTrue(ParseHelper.resetCacheIfTooLarge(0));
+    assertEquals(0, ParseHelper.getCacheSize());
+    ParseHelper.parse(PROGRAMS[1], false);
+    assertTrue(ParseHelper.getCacheSize() > 0);
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.benchmarks;
+
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.tool.PrettyPrinterVisitor;
+import com.graphicsfuzz.common.typing.Typer;
+import com.graphicsfuzz.common.util.ParseHelper;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the basic operations on shaders that the generator and reducer perform
+ * repeatedly: parsing, type checking, cloning and pretty printing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AstBenchmarks {
+
+  @Benchmark
+  public TranslationUnit parse(ShaderState state) throws Exception {
+    return ParseHelper.parse(state.text, state.hasHeader);
+  }
+
+  @Benchmark
+  public Typer type(ShaderState state) {
+    return new Typer(state.translationUnit, state.shadingLanguageVersion);
+  }
+
+  @Benchmark
+  public TranslationUnit cloneAndPatchUp(ShaderState state) {
+    return state.translationUnit.cloneAndPatchUp();
+  }
+
+  @Benchmark
+  public String prettyPrint(ShaderState state) {
+    return PrettyPrinterVisitor.prettyPrintAsString(state.translationUnit);
+  }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.benchmarks;
+
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.util.ParseTimeoutException;
+import com.graphicsfuzz.generator.tool.EnabledTransformations;
+import com.graphicsfuzz.generator.tool.Generate;
+import com.graphicsfuzz.generator.tool.GeneratorArguments;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Locates the sample shaders that the benchmarks run over, and generates variants of them.
+ *
+ * <p>A shader is named by its version directory and file prefix, e.g. "300es/bubblesort_flag".
+ * The samples directory is given by the graphicsfuzz.samples system property, or else is found by
+ * searching upwards from the working directory for the repository's samples.</p>
+ */
+final class BenchmarkShaders {
+
+  private static final String SAMPLES_PATH = "shaders/src/main/glsl/samples";
+
+  // The seed used when generating variants, so that runs benchmark the same shaders.
+  static final int SEED = 0;
+
+  private BenchmarkShaders() {
+    // Not instantiable.
+  }
+
+  static File getSamplesDirectory() {
+    final String samples = System.getProperty("graphicsfuzz.samples");
+    if (samples != null) {
+      return new File(samples);
+    }
+    for (File dir = new File(System.getProperty("user.dir")).getAbsoluteFile(); dir != null;
+         dir = dir.getParentFile()) {
+      final File candidate = new File(dir, SAMPLES_PATH);
+      if (candidate.isDirectory()) {
+        return candidate;
+      }
+    }
+    throw new IllegalStateException("Could not find the sample shaders; run from within the "
+        + "repository or set -Dgraphicsfuzz.samples=<dir>.");
+  }
+
+  static File getReferenceFragmentShader(String shader) {
+    return new File(getSamplesDirectory(), shader + ".frag");
+  }
+
+  static ShadingLanguageVersion getShadingLanguageVersion(String shader) {
+    // Version directories are named after the version string, e.g. "300es" for "300 es".
+    final String versionDirectory = shader.substring(0, shader.indexOf('/'));
+    return ShadingLanguageVersion.fromVersionString(versionDirectory.replace("es", " es"));
+  }
+
+  static GeneratorArguments getGeneratorArguments(String shader, boolean small,
+        boolean multiPass, EnabledTransformations enabledTransformations, File outputDirectory) {
+    return new GeneratorArguments(
+        getShadingLanguageVersion(shader),
+        new File(getSamplesDirectory(), shader).getAbsolutePath(),
+        SEED,
+        small,
+        false,
+        multiPass,
+        false,
+        false,
+        new File(getSamplesDirectory(), "donors"),
+        outputDirectory,
+        "variant",
+        enabledTransformations);
+  }
+
+  /**
+   * Generates a variant of the given shader with all transformations enabled, and yields the text
+   * of its fragment shader.  A small variant is generated with a single pass and the generator's
+   * small parameters; a large one with multiple passes.
+   */
+  static String generateVariant(String shader, boolean small)
+        throws IOException, ParseTimeoutException {
+    final File outputDirectory = createTempDirectory();
+    try {
+      final GeneratorArguments args = getGeneratorArguments(shader, small, !small,
+          new EnabledTransformations(), outputDirectory);
+      Generate.generateVariant(args);
+      return FileUtils.readFileToString(new File(outputDirectory, args.getOutputPrefix()
+          + ".frag"), StandardCharsets.UTF_8);
+    } finally {
+      FileUtils.deleteQuietly(outputDirectory);
+    }
+  }
+
+  static File createTempDirectory() throws IOException {
+    final File result = File.createTempFile("graphicsfuzz-benchmarks", "");
+    if (!result.delete() || !result.mkdir()) {
+      throw new IOException("Could not create temporary directory " + result);
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.benchmarks;
+
+import com.graphicsfuzz.server.FileDownloadServlet;
+import com.graphicsfuzz.server.RangeAwareGzipHandler;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of several clients downloading a directory of results from a server set up as
+ * FuzzerServer sets up its own: files served by FileDownloadServlet behind a
+ * RangeAwareGzipHandler.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class FileServingBenchmark {
+
+  // Each variant has an image, a shader and an info file, as in a <shader family>_exp directory.
+  private static final int NUM_VARIANTS = 50;
+  private static final int IMAGE_SIZE = 64 * 1024;
+
+  @Param({"false", "true"})
+  public boolean acceptGzip;
+
+  private File resultsDir;
+  private Server server;
+  private final List<URL> urls = new ArrayList<>();
+
+  @Setup
+  public void startServer() throws Exception {
+    resultsDir = BenchmarkShaders.createTempDirectory();
+    final String shader = BenchmarkShaders.generateVariant("300es/mandelbrot_blurry", true);
+    final Random random = new Random(0);
+    final List<String> names = new ArrayList<>();
+    for (int i = 0; i < NUM_VARIANTS; i++) {
+      final String prefix = String.format("variant_%03d", i);
+      // Image data is already compressed, so random bytes are a fair stand-in.
+      final byte[] image = new byte[IMAGE_SIZE];
+      random.nextBytes(image);
+      FileUtils.writeByteArrayToFile(new File(resultsDir, prefix + ".png"), image);
+      FileUtils.writeStringToFile(new File(resultsDir, prefix + ".frag"), shader,
+          StandardCharsets.UTF_8);
+      FileUtils.writeStringToFile(new File(resultsDir, prefix + ".info.json"),
+          "{\"Status\": \"SUCCESS\", \"metrics\": {\"identical\": true}}",
+          StandardCharsets.UTF_8);
+      names.add(prefix + ".png");
+      names.add(prefix + ".frag");
+      names.add(prefix + ".info.json");
+    }
+
+    final ServletContextHandler context = new ServletContextHandler();
+    context.setContextPath("/");
+    context.addServlet(new ServletHolder(new FileDownloadServlet(
+        (pathInfo, token) -> new File(resultsDir, pathInfo), resultsDir.getPath())),
+        "/results/*");
+    final RangeAwareGzipHandler gzipHandler = new RangeAwareGzipHandler();
+    gzipHandler.setHandler(context);
+    server = new Server(0);
+    server.setHandler(gzipHandler);
+    server.start();
+
+    final int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    for (String name : names) {
+      urls.add(new URL("http://localhost:" + port + "/results/" + name));
+    }
+  }
+
+  @TearDown
+  public void stopServer() throws Exception {
+    server.stop();
+    FileUtils.deleteQuietly(resultsDir);
+  }
+
+  @Benchmark
+  public long downloadResults() throws IOException {
+    final byte[] buffer = new byte[8192];
+    long total = 0;
+    for (URL url : urls) {
+      final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      if (acceptGzip) {
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+      }
+      // Reading the response to the end lets the connection be reused.
+      try (InputStream input = connection.getInputStream()) {
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+          total += read;
+        }
+      }
+    }
+    return total;
+  }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.benchmarks;
+
+import com.graphicsfuzz.common.ast.expr.Expr;
+import com.graphicsfuzz.common.ast.type.BasicType;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.typing.Scope;
+import com.graphicsfuzz.common.typing.SupportedTypes;
+import com.graphicsfuzz.common.util.IRandom;
+import com.graphicsfuzz.common.util.RandomWrapper;
+import com.graphicsfuzz.common.util.ShaderKind;
+import com.graphicsfuzz.generator.fuzzer.FuzzedIntoACornerException;
+import com.graphicsfuzz.generator.fuzzer.Fuzzer;
+import com.graphicsfuzz.generator.fuzzer.FuzzingContext;
+import com.graphicsfuzz.generator.util.GenerationParams;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks fuzzing an expression of a random basic type, with a number of variables of random
+ * types in scope, as the generator does when it donates code or mutates expressions.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FuzzExprBenchmark {
+
+  @Param({"100", "300 es"})
+  public String glslVersion;
+
+  // The number of variables in scope, spread over a global and a local scope.
+  @Param({"50"})
+  public int variables;
+
+  private List<BasicType> types;
+  private IRandom generator;
+  private Fuzzer fuzzer;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final ShadingLanguageVersion shadingLanguageVersion =
+        ShadingLanguageVersion.fromVersionString(glslVersion);
+    types = BasicType.allBasicTypes().stream()
+        .filter(item -> SupportedTypes.supported(item, shadingLanguageVersion))
+        .collect(Collectors.toList());
+    generator = new RandomWrapper(0);
+
+    final Scope globalScope = new Scope(null);
+    final Scope localScope = new Scope(globalScope);
+    for (int i = 0; i < variables; i++) {
+      (i % 2 == 0 ? globalScope : localScope).add("v" + i,
+          types.get(generator.nextInt(types.size())), Optional.empty());
+    }
+    fuzzer = new Fuzzer(new FuzzingContext(localScope), shadingLanguageVersion, generator,
+        GenerationParams.normal(ShaderKind.FRAGMENT));
+  }
+
+  @Benchmark
+  public Expr fuzzExpr() {
+    final BasicType type = types.get(generator.nextInt(types.size()));
+    try {
+      return fuzzer.fuzzExpr(type, false, false, 0);
+    } catch (FuzzedIntoACornerException exception) {
+      // Count the attempt anyway; the fuzzer did the work of trying.
+      return null;
+    }
+  }
+
+}
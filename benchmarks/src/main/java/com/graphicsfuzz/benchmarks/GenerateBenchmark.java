@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.benchmarks;
+
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.util.ShaderKind;
+import com.graphicsfuzz.generator.tool.EnabledTransformations;
+import com.graphicsfuzz.generator.tool.Generate;
+import com.graphicsfuzz.generator.tool.GeneratorArguments;
+import com.graphicsfuzz.generator.transformation.ITransformation;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks generating a variant from a sample shader with a single kind of transformation
+ * enabled, so that the cost of each transformation can be tracked separately.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerateBenchmark {
+
+  // ESSL 300 shaders, as switch statements cannot be added to ESSL 100 shaders.
+  @Param({"300es/bubblesort_flag", "300es/mandelbrot_blurry"})
+  public String shader;
+
+  @Param({"donate_dead_code", "jump", "donate_live_code", "mutate_expressions",
+      "outline_statements", "split_for_loops", "structify", "add_switch_stmts",
+      "vectorize_statements", "add_wrapping_conditional_stmts",
+      "add_live_output_variable_writes", "add_dead_output_variable_writes"})
+  public String transformation;
+
+  private File outputDirectory;
+  private GeneratorArguments args;
+  private Map<ShaderKind, TranslationUnit> referenceShaders;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    final Class<? extends ITransformation> enabled =
+        EnabledTransformations.namesToList(transformation).get(0);
+    final EnabledTransformations enabledTransformations = new EnabledTransformations();
+    for (Class<? extends ITransformation> other : EnabledTransformations.allTransformations()) {
+      if (other != enabled) {
+        enabledTransformations.disable(other);
+      }
+    }
+    outputDirectory = BenchmarkShaders.createTempDirectory();
+    args = BenchmarkShaders.getGeneratorArguments(shader, false, false,
+        enabledTransformations, outputDirectory);
+    referenceShaders = Generate.parseReferenceShaders(args);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    FileUtils.deleteQuietly(outputDirectory);
+  }
+
+  @Benchmark
+  public void generateVariant() throws Exception {
+    Generate.generateVariant(args, referenceShaders);
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.benchmarks;
+
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.util.IdGenerator;
+import com.graphicsfuzz.common.util.RandomWrapper;
+import com.graphicsfuzz.reducer.reductionopportunities.IReductionOpportunity;
+import com.graphicsfuzz.reducer.reductionopportunities.IReductionOpportunityFinder;
+import com.graphicsfuzz.reducer.reductionopportunities.ReductionOpportunityContext;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks a single reduction step for each kind of reduction opportunity: finding the
+ * opportunities in a copy of the shader, and applying those whose preconditions hold.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReductionStepBenchmark {
+
+  @Param({"stmt", "function", "declaration", "exprToConstant", "compoundExprToSubExpr",
+      "compoundToBlock", "inlineInitializer", "unusedStruct", "mutation", "outlinedStatement",
+      "unwrap", "removeStructField", "destructify", "inlineStructField", "vectorization",
+      "unswitchify", "liveFragColorWrite", "inlineFunction", "loopMerge", "unusedParam"})
+  public String finder;
+
+  private IReductionOpportunityFinder<?> opportunitiesFinder;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    opportunitiesFinder = getFinder(finder);
+  }
+
+  @Benchmark
+  public TranslationUnit reductionStep(ShaderState state) {
+    final TranslationUnit tu = state.translationUnit.cloneAndPatchUp();
+    final ReductionOpportunityContext context = new ReductionOpportunityContext(false,
+        state.shadingLanguageVersion, new RandomWrapper(BenchmarkShaders.SEED),
+        new IdGenerator());
+    for (IReductionOpportunity opportunity : opportunitiesFinder.findOpportunities(tu, context)) {
+      if (opportunity.preconditionHolds()) {
+        opportunity.applyReduction();
+      }
+    }
+    return tu;
+  }
+
+  private static IReductionOpportunityFinder<?> getFinder(String name) {
+    final List<IReductionOpportunityFinder<?>> finders = Arrays.asList(
+        IReductionOpportunityFinder.stmtFinder(),
+        IReductionOpportunityFinder.functionFinder(),
+        IReductionOpportunityFinder.declarationFinder(),
+        IReductionOpportunityFinder.exprToConstantFinder(),
+        IReductionOpportunityFinder.compoundExprToSubExprFinder(),
+        IReductionOpportunityFinder.compoundToBlockFinder(),
+        IReductionOpportunityFinder.inlineInitializerFinder(),
+        IReductionOpportunityFinder.unusedStructFinder(),
+        IReductionOpportunityFinder.mutationFinder(),
+        IReductionOpportunityFinder.outlinedStatementFinder(),
+        IReductionOpportunityFinder.unwrapFinder(),
+        IReductionOpportunityFinder.removeStructFieldFinder(),
+        IReductionOpportunityFinder.destructifyFinder(),
+        IReductionOpportunityFinder.inlineStructFieldFinder(),
+        IReductionOpportunityFinder.vectorizationFinder(),
+        IReductionOpportunityFinder.unswitchifyFinder(),
+        IReductionOpportunityFinder.liveFragColorWriteFinder(),
+        IReductionOpportunityFinder.inlineFunctionFinder(),
+        IReductionOpportunityFinder.loopMergeFinder(),
+        IReductionOpportunityFinder.unusedParamFinder());
+    for (IReductionOpportunityFinder<?> candidate : finders) {
+      if (candidate.getName().equals(name)) {
+        return candidate;
+      }
+    }
+    throw new IllegalArgumentException("Unknown reduction opportunity finder " + name);
+  }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.benchmarks;
+
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.util.ParseHelper;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A shader to benchmark: either one of the samples, or a small or large variant generated from
+ * it.
+ */
+@State(Scope.Benchmark)
+public class ShaderState {
+
+  @Param({"100/bubblesort_flag", "300es/mandelbrot_blurry"})
+  public String shader;
+
+  @Param({"reference", "small_variant", "large_variant"})
+  public String kind;
+
+  ShadingLanguageVersion shadingLanguageVersion;
+
+  // The text of the shader, whether it starts with a generated header, and the result of
+  // parsing it.
+  String text;
+  boolean hasHeader;
+  TranslationUnit translationUnit;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    shadingLanguageVersion = BenchmarkShaders.getShadingLanguageVersion(shader);
+    switch (kind) {
+      case "reference":
+        text = FileUtils.readFileToString(BenchmarkShaders.getReferenceFragmentShader(shader),
+            StandardCharsets.UTF_8);
+        hasHeader = false;
+        break;
+      case "small_variant":
+      case "large_variant":
+        text = BenchmarkShaders.generateVariant(shader, kind.equals("small_variant"));
+        hasHeader = true;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown shader kind " + kind);
+    }
+    translationUnit = ParseHelper.parse(text, hasHeader);
+  }
+
+}
@@ -16,16 +16,38 @@
 
 package com.graphicsfuzz.common.util;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.lang.ProcessBuilder.Redirect;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Runs external processes.  A process can be given a deadline, after which it and all of its
+ * descendants are killed.  At most MAX_CONCURRENT_PROCESSES processes with deadlines run at once
+ * across the JVM, further calls waiting for a slot, so that many threads can safely run tools in
+ * parallel; the limit can be set via the graphicsfuzz.max_processes system property.  Processes
+ * without deadlines, such as commands run on behalf of a server client, may run for a long time,
+ * so they do not take a slot, lest they starve the short-lived tool runs.  Output is gobbled by
+ * threads from a shared pool, and every execution is recorded in the metrics returned by
+ * getMetrics().
+ */
 public class ExecHelper {
 
   public enum RedirectType {
@@ -35,6 +57,19 @@ public class ExecHelper {
     TO_FILE
   }
 
+  /**
+   * The exit code reported for a process that was killed because it timed out, as used by the
+   * timeout command.
+   */
+  public static final int TIMEOUT_EXIT_CODE = 124;
+
+  public static final int MAX_CONCURRENT_PROCESSES = Integer.getInteger(
+      "graphicsfuzz.max_processes", Math.max(8, 4 * Runtime.getRuntime().availableProcessors()));
+
+  // How long to wait for the output of a killed process to be gobbled, in case a descendant that
+  // could not be killed holds the output streams open.
+  private static final long GOBBLE_AFTER_KILL_SECONDS = 5;
+
   private static final Logger LOGGER = LoggerFactory.getLogger(ExecHelper.class);
 
   private static final boolean isWindows =
@@ -42,6 +77,17 @@ public class ExecHelper {
 
   private static final String pathVar;
 
+  // Slots for processes with deadlines.
+  private static final Semaphore processSlots = new Semaphore(MAX_CONCURRENT_PROCESSES, true);
+
+  private static final ExecutorService gobblerPool = Executors.newCachedThreadPool(runnable -> {
+    final Thread thread = new Thread(runnable, "StreamGobbler");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private static final ExecMetrics metrics = new ExecMetrics();
+
   static {
     String pathVarTemp = "PATH";
     for (String var : System.getenv().keySet()) {
@@ -64,10 +110,47 @@ public class ExecHelper {
     this.additionalPathDirectories = null;
   }
 
+  public static ExecMetrics getMetrics() {
+    return metrics;
+  }
+
+  public ExecResult exec(
+      RedirectType redirectType,
+      File directory,
+      boolean shell,
+      String... command) throws IOException, InterruptedException {
+    return exec(redirectType, directory, shell, 0, command);
+  }
+
+  /**
+   * Runs a command, killing it and all of its descendants if it has not finished after
+   * timeoutSeconds seconds; 0 means no time limit.  A command that is killed yields a result with
+   * timedOut set and exit code TIMEOUT_EXIT_CODE.  If the calling thread is interrupted, the
+   * command is killed likewise.  Only a command with a time limit waits for a process slot.
+   */
   public ExecResult exec(
       RedirectType redirectType,
       File directory,
       boolean shell,
+      int timeoutSeconds,
+      String... command) throws IOException, InterruptedException {
+
+    if (timeoutSeconds <= 0) {
+      return execHelper(redirectType, directory, shell, timeoutSeconds, command);
+    }
+    processSlots.acquire();
+    try {
+      return execHelper(redirectType, directory, shell, timeoutSeconds, command);
+    } finally {
+      processSlots.release();
+    }
+  }
+
+  private ExecResult execHelper(
+      RedirectType redirectType,
+      File directory,
+      boolean shell,
+      int timeoutSeconds,
       String... command) throws IOException, InterruptedException {
 
     LOGGER.info(String.join(" ", command));
@@ -118,20 +201,18 @@ public class ExecHelper {
         assert false;
     }
 
+    final long startTime = System.nanoTime();
     Process process = pb.start();
+    final long spawnNanos = System.nanoTime() - startTime;
 
     switch (redirectType) {
       case TO_LOG:
         outputGobbler = new StreamGobblerLogger(process.getInputStream(), "stdout.");
-        outputGobbler.start();
         errorGobbler = new StreamGobblerLogger(process.getErrorStream(), "stderr.");
-        errorGobbler.start();
         break;
       case TO_BUFFER:
         outputGobbler = new StreamGobblerBuffer(process.getInputStream());
-        outputGobbler.start();
         errorGobbler = new StreamGobblerBuffer(process.getErrorStream());
-        errorGobbler.start();
         break;
       case TO_STDOUT:
       case TO_FILE:
@@ -139,20 +220,136 @@ public class ExecHelper {
       default:
         assert false;
     }
+    final Future<?> outputGobbled =
+        outputGobbler == null ? null : gobblerPool.submit(outputGobbler);
+    final Future<?> errorGobbled =
+        errorGobbler == null ? null : gobblerPool.submit(errorGobbler);
 
-    process.getOutputStream().close();
-    int res = process.waitFor();
+    int res;
+    boolean timedOut = false;
+    try {
+      process.getOutputStream().close();
+      if (timeoutSeconds <= 0) {
+        res = process.waitFor();
+      } else if (process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+        res = process.exitValue();
+      } else {
+        LOGGER.warn("Killing process after timeout of {} seconds: {}", timeoutSeconds,
+            String.join(" ", command));
+        killProcessTree(process);
+        process.waitFor();
+        res = TIMEOUT_EXIT_CODE;
+        timedOut = true;
+      }
+    } catch (InterruptedException | IOException exception) {
+      killProcessTree(process);
+      throw exception;
+    }
+    metrics.record(spawnNanos, System.nanoTime() - startTime - spawnNanos, res, timedOut);
 
     if (outputGobbler != null) {
-      outputGobbler.join();
+      awaitGobbler(outputGobbled, timedOut);
       stdout = outputGobbler.getResult();
     }
     if (errorGobbler != null) {
-      errorGobbler.join();
+      awaitGobbler(errorGobbled, timedOut);
       stderr = errorGobbler.getResult();
     }
 
-    return new ExecResult(res, stdout, stderr, stdoutFile, stderrFile);
+    return new ExecResult(res, stdout, stderr, stdoutFile, stderrFile, timedOut);
+  }
+
+  private static void awaitGobbler(Future<?> gobbled, boolean timedOut)
+      throws InterruptedException {
+    try {
+      if (timedOut) {
+        gobbled.get(GOBBLE_AFTER_KILL_SECONDS, TimeUnit.SECONDS);
+      } else {
+        gobbled.get();
+      }
+    } catch (TimeoutException exception) {
+      gobbled.cancel(true);
+    } catch (ExecutionException exception) {
+      throw new RuntimeException(exception.getCause());
+    }
+  }
+
+  /**
+   * Forcibly kills a process and, as far as possible, all of its descendants.  The descendants
+   * are found using taskkill on Windows and ps elsewhere; if the pid of the process cannot be
+   * determined, only the process itself is killed.
+   */
+  private static void killProcessTree(Process process) {
+    final long pid = getPid(process);
+    if (pid > 0) {
+      try {
+        if (isWindows) {
+          new ProcessBuilder("taskkill", "/F", "/T", "/PID", String.valueOf(pid))
+              .redirectErrorStream(true)
+              .redirectOutput(Redirect.PIPE)
+              .start()
+              .waitFor();
+        } else {
+          final List<Long> descendants = getDescendants(pid);
+          if (!descendants.isEmpty()) {
+            final List<String> killCommand = new ArrayList<>(Arrays.asList("kill", "-KILL"));
+            for (long descendant : descendants) {
+              killCommand.add(String.valueOf(descendant));
+            }
+            new ProcessBuilder(killCommand).start().waitFor();
+          }
+        }
+      } catch (IOException exception) {
+        LOGGER.warn("Failed to kill descendants of process " + pid, exception);
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    process.destroyForcibly();
+  }
+
+  private static List<Long> getDescendants(long pid) throws IOException, InterruptedException {
+    final Map<Long, List<Long>> children = new HashMap<>();
+    final Process ps = new ProcessBuilder("ps", "-A", "-o", "pid=", "-o", "ppid=").start();
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(ps.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final String[] fields = line.trim().split("\\s+");
+        if (fields.length == 2) {
+          children.computeIfAbsent(Long.parseLong(fields[1]), item -> new ArrayList<>())
+              .add(Long.parseLong(fields[0]));
+        }
+      }
+    }
+    ps.waitFor();
+    final List<Long> result = new ArrayList<>();
+    final List<Long> toVisit = new ArrayList<>(Arrays.asList(pid));
+    while (!toVisit.isEmpty()) {
+      final long current = toVisit.remove(toVisit.size() - 1);
+      for (long child : children.getOrDefault(current, new ArrayList<>())) {
+        result.add(child);
+        toVisit.add(child);
+      }
+    }
+    return result;
+  }
+
+  private static long getPid(Process process) {
+    try {
+      // Process.pid() is available from Java 9.
+      return (Long) Process.class.getMethod("pid").invoke(process);
+    } catch (ReflectiveOperationException | RuntimeException exception) {
+      // Fall through.
+    }
+    try {
+      // Before Java 9, processes on Unix-like systems keep their pid in a private field.
+      final Field pidField = process.getClass().getDeclaredField("pid");
+      pidField.setAccessible(true);
+      return pidField.getInt(process);
+    } catch (ReflectiveOperationException | RuntimeException exception) {
+      return -1;
+    }
   }
 
   public static void addToPath(Map<String, String> envVars, String pathToAdd) {
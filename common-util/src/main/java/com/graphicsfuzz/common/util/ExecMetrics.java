@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the external processes run by ExecHelper: how many were run, how long they took to
+ * start and to run, how many timed out, and the exit codes they returned.  Thread-safe.
+ */
+public final class ExecMetrics {
+
+  private final AtomicLong executions = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong totalSpawnNanos = new AtomicLong();
+  private final AtomicLong totalRunNanos = new AtomicLong();
+  private final ConcurrentMap<Integer, AtomicLong> exitCodes = new ConcurrentHashMap<>();
+
+  void record(long spawnNanos, long runNanos, int exitCode, boolean timedOut) {
+    executions.incrementAndGet();
+    totalSpawnNanos.addAndGet(spawnNanos);
+    totalRunNanos.addAndGet(runNanos);
+    if (timedOut) {
+      timeouts.incrementAndGet();
+    } else {
+      exitCodes.computeIfAbsent(exitCode, item -> new AtomicLong()).incrementAndGet();
+    }
+  }
+
+  public long getExecutions() {
+    return executions.get();
+  }
+
+  public long getTimeouts() {
+    return timeouts.get();
+  }
+
+  public double getMeanSpawnMillis() {
+    return meanMillis(totalSpawnNanos.get());
+  }
+
+  public double getMeanRunMillis() {
+    return meanMillis(totalRunNanos.get());
+  }
+
+  /**
+   * Yields, for each exit code seen, the number of processes that exited with it.  Processes that
+   * timed out are not included.
+   */
+  public Map<Integer, Long> getExitCodes() {
+    final Map<Integer, Long> result = new TreeMap<>();
+    exitCodes.forEach((exitCode, count) -> result.put(exitCode, count.get()));
+    return Collections.unmodifiableMap(result);
+  }
+
+  private double meanMillis(long totalNanos) {
+    final long count = executions.get();
+    return count == 0 ? 0.0 : (double) TimeUnit.NANOSECONDS.toMicros(totalNanos) / 1000 / count;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d executions, %d timed out, mean spawn time %.1f ms, "
+        + "mean run time %.1f ms, exit codes %s", getExecutions(), getTimeouts(),
+        getMeanSpawnMillis(), getMeanRunMillis(), getExitCodes());
+  }
+
+}
@@ -23,7 +23,10 @@ import java.io.InputStreamReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public abstract class StreamGobbler extends Thread {
+/**
+ * Reads a stream line by line until it is exhausted; run by ExecHelper on a pooled thread.
+ */
+public abstract class StreamGobbler implements Runnable {
 
   private final InputStream inputStream;
 
@@ -33,6 +36,7 @@ public abstract class StreamGobbler extends Thread {
     this.inputStream = inputStream;
   }
 
+  @Override
   public void run() {
     try {
       BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
@@ -24,12 +24,16 @@ import java.util.List;
 
 public class ToolHelper {
 
+  // Validating a shader should take well under a second; a validator that runs this long has hung.
+  public static final int VALIDATOR_TIMEOUT_SECONDS = 120;
+
   public static ExecResult runValidatorOnShader(ExecHelper.RedirectType redirectType, File file)
         throws IOException, InterruptedException {
     return new ExecHelper().exec(
           redirectType,
           null,
           false,
+          VALIDATOR_TIMEOUT_SECONDS,
           ToolPaths.glslangValidator(),
           file.toString());
   }
@@ -42,6 +46,7 @@ public class ToolHelper {
           redirectType,
           null,
           false,
+          VALIDATOR_TIMEOUT_SECONDS,
           ToolPaths.shaderTranslator(),
           arg,
           file.toString());
@@ -50,6 +55,16 @@ public class ToolHelper {
   public static ExecResult runGenerateImageOnShader(ExecHelper.RedirectType redirectType,
         File fragmentShader, File imageOutput, boolean skipRender)
         throws IOException, InterruptedException {
+    return runGenerateImageOnShader(redirectType, fragmentShader, imageOutput, skipRender, 0);
+  }
+
+  /**
+   * As runGenerateImageOnShader, but killing the image generator after timeoutSeconds seconds
+   * (0 for no limit).
+   */
+  public static ExecResult runGenerateImageOnShader(ExecHelper.RedirectType redirectType,
+        File fragmentShader, File imageOutput, boolean skipRender, int timeoutSeconds)
+        throws IOException, InterruptedException {
     List<String> command = new ArrayList<>(Arrays.asList(
           ToolPaths.getImageGlfw(),
           fragmentShader.toString(),
@@ -63,6 +78,7 @@ public class ToolHelper {
           redirectType,
           null,
           false,
+          timeoutSeconds,
           command.toArray(new String[]{}));
   }
 
@@ -76,6 +92,17 @@ public class ToolHelper {
         imageOutput, skipRender, 32, 32);
   }
 
+  public static ExecResult runSwiftshaderOnShader(
+      ExecHelper.RedirectType redirectType,
+      File fragmentShader,
+      File imageOutput,
+      boolean skipRender,
+      int timeoutSeconds)
+        throws IOException, InterruptedException {
+    return runSwiftshaderOnShader(redirectType, fragmentShader,
+        imageOutput, skipRender, 32, 32, timeoutSeconds);
+  }
+
   public static ExecResult runSwiftshaderOnShader(
       ExecHelper.RedirectType redirectType,
       File fragmentShader,
@@ -84,6 +111,19 @@ public class ToolHelper {
       int width,
       int height)
         throws IOException, InterruptedException {
+    return runSwiftshaderOnShader(redirectType, fragmentShader, imageOutput, skipRender, width,
+        height, 0);
+  }
+
+  public static ExecResult runSwiftshaderOnShader(
+      ExecHelper.RedirectType redirectType,
+      File fragmentShader,
+      File imageOutput,
+      boolean skipRender,
+      int width,
+      int height,
+      int timeoutSeconds)
+        throws IOException, InterruptedException {
     List<String> command = new ArrayList<>(Arrays.asList(
           ToolPaths.getImageEglSwiftshader(),
           fragmentShader.toString(),
@@ -100,6 +140,7 @@ public class ToolHelper {
           redirectType,
           null,
           false,
+          timeoutSeconds,
           command.toArray(new String[]{}));
   }
 
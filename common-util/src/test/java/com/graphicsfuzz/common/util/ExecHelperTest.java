@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.common.util.ExecHelper.RedirectType;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecHelperTest {
+
+  @Before
+  public void requireUnix() {
+    Assume.assumeFalse(System.getProperty("os.name").toLowerCase().startsWith("windows"));
+  }
+
+  @Test
+  public void testCompletesWithinTimeout() throws Exception {
+    final ExecResult result = new ExecHelper().exec(RedirectType.TO_BUFFER, null, false, 30,
+        "sh", "-c", "echo hello; exit 3");
+    assertFalse(result.timedOut);
+    assertEquals(3, result.res);
+    assertEquals("hello", result.stdout.toString().trim());
+  }
+
+  @Test
+  public void testKillsProcessTreeOnTimeout() throws Exception {
+    final long before = ExecHelper.getMetrics().getTimeouts();
+    final long startTime = System.currentTimeMillis();
+    // The shell prints the pid of a background child, and then waits for it.
+    final ExecResult result = new ExecHelper().exec(RedirectType.TO_BUFFER, null, false, 1,
+        "sh", "-c", "sleep 100 & echo $!; wait");
+    assertTrue(System.currentTimeMillis() - startTime < 30000);
+    assertTrue(result.timedOut);
+    assertEquals(ExecHelper.TIMEOUT_EXIT_CODE, result.res);
+    assertTrue(ExecHelper.getMetrics().getTimeouts() > before);
+
+    final String childPid = result.stdout.toString().trim();
+    assertFalse(childPid.isEmpty());
+    // The child is gone, or is a zombie waiting to be reaped by init.
+    final ExecResult childState = new ExecHelper().exec(RedirectType.TO_BUFFER, null, false,
+        "ps", "-o", "stat=", "-p", childPid);
+    final String state = childState.stdout.toString().trim();
+    assertTrue(state, state.isEmpty() || state.startsWith("Z"));
+  }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.ast.decl.Declaration;
+import com.graphicsfuzz.common.ast.decl.FunctionDefinition;
+import com.graphicsfuzz.common.ast.decl.FunctionPrototype;
+import com.graphicsfuzz.common.ast.decl.VariableDeclInfo;
+import com.graphicsfuzz.common.ast.decl.VariablesDeclaration;
+import com.graphicsfuzz.common.ast.expr.FunctionCallExpr;
+import com.graphicsfuzz.common.ast.expr.VariableIdentifierExpr;
+import com.graphicsfuzz.common.transformreduce.Constants;
+import com.graphicsfuzz.common.typing.ScopeEntry;
+import com.graphicsfuzz.common.typing.ScopeTreeBuilder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Strips the functions in a shader that are not called directly or indirectly from main, and
+ * then the global variables that are not used by what remains.  The information for both is
+ * gathered in a single traversal of the shader: the globals used by each function are recorded,
+ * so that the globals used by the functions that survive can be worked out without visiting them
+ * again.
+ */
+public class StripUnusedFunctionsAndGlobals extends ScopeTreeBuilder {
+
+  // Maps a function name to the names of the functions that a function with that name calls.
+  private final Map<String, Set<String>> callGraphEdges;
+
+  // Maps a function name to the globals used by a function with that name.
+  private final Map<String, Set<VariableDeclInfo>> globalsUsedByFunction;
+
+  // Globals used outside any function, e.g. in the initializer of another global.
+  private final Set<VariableDeclInfo> globalsUsedOutsideFunctions;
+
+  private final Set<VariableDeclInfo> globals;
+
+  public static void strip(TranslationUnit tu) {
+    new StripUnusedFunctionsAndGlobals(tu);
+  }
+
+  private StripUnusedFunctionsAndGlobals(TranslationUnit tu) {
+    this.callGraphEdges = new HashMap<>();
+    this.globalsUsedByFunction = new HashMap<>();
+    this.globalsUsedOutsideFunctions = new HashSet<>();
+    this.globals = new HashSet<>();
+    visit(tu);
+    final Set<String> callableFromMain = computeCallable("main");
+    sweepFunctions(tu, callableFromMain);
+    sweepGlobals(tu, computeUsedGlobals(callableFromMain));
+  }
+
+  @Override
+  public void visitVariableDeclInfo(VariableDeclInfo variableDeclInfo) {
+    super.visitVariableDeclInfo(variableDeclInfo);
+    if (atGlobalScope() && !variableDeclInfo.getName().equals(Constants.INJECTION_SWITCH)) {
+      globals.add(variableDeclInfo);
+    }
+  }
+
+  @Override
+  public void visitVariableIdentifierExpr(VariableIdentifierExpr variableIdentifierExpr) {
+    super.visitVariableIdentifierExpr(variableIdentifierExpr);
+    final ScopeEntry scopeEntry = currentScope.lookupScopeEntry(variableIdentifierExpr.getName());
+    if (scopeEntry == null || !scopeEntry.hasVariableDeclInfo()
+        || !globals.contains(scopeEntry.getVariableDeclInfo())) {
+      return;
+    }
+    if (enclosingFunction == null) {
+      globalsUsedOutsideFunctions.add(scopeEntry.getVariableDeclInfo());
+    } else {
+      globalsUsedByFunction.computeIfAbsent(enclosingFunction.getPrototype().getName(),
+          item -> new HashSet<>()).add(scopeEntry.getVariableDeclInfo());
+    }
+  }
+
+  @Override
+  public void visitFunctionCallExpr(FunctionCallExpr functionCallExpr) {
+    super.visitFunctionCallExpr(functionCallExpr);
+    if (enclosingFunction != null) {
+      callGraphEdges.computeIfAbsent(enclosingFunction.getPrototype().getName(),
+          item -> new HashSet<>()).add(functionCallExpr.getCallee());
+    }
+  }
+
+  private Set<String> computeCallable(String root) {
+    final Set<String> result = new HashSet<>();
+    final Deque<String> worklist = new ArrayDeque<>();
+    result.add(root);
+    worklist.add(root);
+    while (!worklist.isEmpty()) {
+      for (String callee : callGraphEdges.getOrDefault(worklist.remove(),
+          Collections.emptySet())) {
+        if (result.add(callee)) {
+          worklist.add(callee);
+        }
+      }
+    }
+    return result;
+  }
+
+  private Set<VariableDeclInfo> computeUsedGlobals(Set<String> callableFromMain) {
+    final Set<VariableDeclInfo> result = new HashSet<>(globalsUsedOutsideFunctions);
+    for (String function : callableFromMain) {
+      result.addAll(globalsUsedByFunction.getOrDefault(function, Collections.emptySet()));
+    }
+    return result;
+  }
+
+  private void sweepFunctions(TranslationUnit tu, Set<String> callableFromMain) {
+    for (int i = tu.getTopLevelDeclarations().size() - 1; i >= 0; i--) {
+      final Declaration decl = tu.getTopLevelDeclarations().get(i);
+      if (decl instanceof FunctionPrototype
+          && !callableFromMain.contains(((FunctionPrototype) decl).getName())) {
+        tu.removeTopLevelDeclaration(i);
+      } else if (decl instanceof FunctionDefinition
+          && !callableFromMain.contains(((FunctionDefinition) decl).getPrototype().getName())) {
+        tu.removeTopLevelDeclaration(i);
+      }
+    }
+  }
+
+  private void sweepGlobals(TranslationUnit tu, Set<VariableDeclInfo> usedGlobals) {
+    final List<Declaration> oldTopLevelDecls = new ArrayList<>(tu.getTopLevelDeclarations());
+    for (Declaration decl : oldTopLevelDecls) {
+      if (!(decl instanceof VariablesDeclaration)) {
+        continue;
+      }
+      final VariablesDeclaration variablesDeclaration = (VariablesDeclaration) decl;
+      int index = 0;
+      while (index < variablesDeclaration.getNumDecls()) {
+        final VariableDeclInfo declInfo = variablesDeclaration.getDeclInfo(index);
+        if (globals.contains(declInfo) && !usedGlobals.contains(declInfo)) {
+          variablesDeclaration.removeDeclInfo(index);
+        } else {
+          index++;
+        }
+      }
+      if (variablesDeclaration.getNumDecls() == 0) {
+        tu.removeTopLevelDeclaration(variablesDeclaration);
+      }
+    }
+  }
+
+}
@@ -19,6 +19,7 @@ package com.graphicsfuzz.common.util;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.graphicsfuzz.common.ast.TranslationUnit;
 import com.graphicsfuzz.common.ast.decl.VariableDeclInfo;
@@ -33,6 +34,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -169,7 +171,15 @@ public final class UniformsInfo {
 
   public void addBindingToUniform(String uniformName, int number) {
     assert containsKey(uniformName);
-    uniformsInfo.getAsJsonObject(uniformName).addProperty("binding", number);
+    // The information for a uniform may be shared with other UniformsInfo objects (see
+    // renameUniforms and retainUniforms), so it is replaced rather than modified in place.
+    final JsonObject info = new JsonObject();
+    for (Map.Entry<String, JsonElement> entry
+        : uniformsInfo.getAsJsonObject(uniformName).entrySet()) {
+      info.add(entry.getKey(), entry.getValue());
+    }
+    info.addProperty("binding", number);
+    uniformsInfo.add(uniformName, info);
   }
 
   public List<String> getUniformNames() {
@@ -193,6 +203,21 @@ public final class UniformsInfo {
     return new UniformsInfo(newUniformsInfo);
   }
 
+  /**
+   * Yields uniforms info containing, in their existing order, those uniforms whose names are in
+   * the given set.  The information for each uniform is shared with this object rather than
+   * copied, which is safe as uniform information is never modified in place.
+   */
+  public UniformsInfo retainUniforms(Set<String> names) {
+    final JsonObject newUniformsInfo = new JsonObject();
+    for (Map.Entry<String, JsonElement> entry : uniformsInfo.entrySet()) {
+      if (names.contains(entry.getKey())) {
+        newUniformsInfo.add(entry.getKey(), entry.getValue());
+      }
+    }
+    return new UniformsInfo(newUniformsInfo);
+  }
+
   public List<Number> getArgs(String name) {
     final List<Number> result = new ArrayList<>();
     final JsonArray args = ((JsonObject) uniformsInfo.get(name)).get("args")
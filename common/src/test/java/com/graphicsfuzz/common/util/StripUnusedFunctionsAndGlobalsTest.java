@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import static org.junit.Assert.assertEquals;
+
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.tool.PrettyPrinterVisitor;
+import org.junit.Test;
+
+public class StripUnusedFunctionsAndGlobalsTest {
+
+  @Test
+  public void testStripUnusedFunctionsAndGlobals() throws Exception {
+    final String original = ""
+          + "int a = 0, b = a, c;"
+          + "float d = 2.0, e[4];"
+          + "float f;"
+          + "void bar();"
+          + "void baz() {"
+          + "  d = 2;"
+          + "  f = 1.0;"
+          + "}"
+          + "int x, y = c;"
+          + "void foo() {"
+          + "  d = float(x);"
+          + "  baz();"
+          + "}"
+          + "void unused() {"
+          + "  e[0] = 1.0;"
+          + "  bar();"
+          + "}"
+          + "float t;"
+          + "void main() {"
+          + "  float t = 1.0;"
+          + "  foo();"
+          + "}";
+    final String expected = ""
+          + "int a = 0, c;"
+          + "float d = 2.0;"
+          + "float f;"
+          + "void baz() {"
+          + "  d = 2;"
+          + "  f = 1.0;"
+          + "}"
+          + "int x;"
+          + "void foo() {"
+          + "  d = float(x);"
+          + "  baz();"
+          + "}"
+          + "void main() {"
+          + "  float t = 1.0;"
+          + "  foo();"
+          + "}";
+    final TranslationUnit tu = Helper.parse(original, false);
+    StripUnusedFunctionsAndGlobals.strip(tu);
+    assertEquals(PrettyPrinterVisitor.prettyPrintAsString(Helper.parse(expected, false)),
+          PrettyPrinterVisitor.prettyPrintAsString(tu));
+  }
+
+  @Test
+  public void testShadowingAndRecursion() throws Exception {
+    final String original = ""
+          + "uniform vec2 injectionSwitch;"
+          + "int g1, g2, g3;"
+          + "int h(int g1) { return g1 + g2; }"
+          + "int k() { return g3; }"
+          + "int r(int n) { return n > 0 ? r(n - 1) : h(n); }"
+          + "void main() { r(g1); }";
+    final String expected = ""
+          + "uniform vec2 injectionSwitch;"
+          + "int g1, g2;"
+          + "int h(int g1) { return g1 + g2; }"
+          + "int r(int n) { return n > 0 ? r(n - 1) : h(n); }"
+          + "void main() { r(g1); }";
+    final TranslationUnit tu = Helper.parse(original, false);
+    StripUnusedFunctionsAndGlobals.strip(tu);
+    assertEquals(PrettyPrinterVisitor.prettyPrintAsString(Helper.parse(expected, false)),
+          PrettyPrinterVisitor.prettyPrintAsString(tu));
+  }
+
+  @Test
+  public void testFunctionsOnly() throws Exception {
+    final String original = ""
+          + "void foo();"
+          + "void bar() {"
+          + "}"
+          + "void buzz() {"
+          + "}"
+          + "void baz() {"
+          + "  buzz();"
+          + "}"
+          + "int garb(int z) {"
+          + "}"
+          + "int glib() {"
+          + "  return 2;"
+          + "}"
+          + "void main() {"
+          + "  int z = garb(glib());"
+          + "  baz();"
+          + "}";
+    final String expected = ""
+          + "void buzz() {"
+          + "}"
+          + "void baz() {"
+          + "  buzz();"
+          + "}"
+          + "int garb(int z) {"
+          + "}"
+          + "int glib() {"
+          + "  return 2;"
+          + "}"
+          + "void main() {"
+          + "  int z = garb(glib());"
+          + "  baz();"
+          + "}";
+    final TranslationUnit tu = Helper.parse(original, false);
+    StripUnusedFunctionsAndGlobals.strip(tu);
+    assertEquals(PrettyPrinterVisitor.prettyPrintAsString(Helper.parse(expected, false)),
+          PrettyPrinterVisitor.prettyPrintAsString(tu));
+  }
+
+}
@@ -16,11 +16,13 @@
 
 package com.graphicsfuzz.common.util;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import com.graphicsfuzz.common.ast.type.BasicType;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
 import org.junit.Test;
@@ -79,5 +81,24 @@ public class UniformsInfoTest {
     assertTrue(newUniformsInfo.toString().contains(wasE));
   }
 
+  @Test
+  public void testRetainUniforms() {
+    final UniformsInfo uniformsInfo = new UniformsInfo();
+    uniformsInfo.addUniform("a", BasicType.FLOAT, Optional.empty(), Arrays.asList(1.0));
+    uniformsInfo.addUniform("b", BasicType.INT, Optional.empty(), Arrays.asList(2));
+    uniformsInfo.addUniform("c", BasicType.FLOAT, Optional.empty(), Arrays.asList(3.0));
+    final UniformsInfo retained = uniformsInfo.retainUniforms(
+        new HashSet<>(Arrays.asList("c", "a", "x")));
+    assertEquals(Arrays.asList("a", "c"), retained.getUniformNames());
+    assertEquals(Arrays.asList(3.0), retained.getArgs("c"));
+    assertEquals(Arrays.asList("a", "b", "c"), uniformsInfo.getUniformNames());
+
+    // Adding a binding must not affect uniform information shared with another object.
+    final String before = uniformsInfo.toString();
+    retained.addBindingToUniform("a", 0);
+    assertEquals(before, uniformsInfo.toString());
+    assertTrue(retained.toString().contains("\"binding\": 0"));
+  }
+
 
 }
\ No newline at end of file
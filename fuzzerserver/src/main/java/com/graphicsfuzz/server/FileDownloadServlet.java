@@ -19,17 +19,13 @@ package com.graphicsfuzz.server;
 import static com.graphicsfuzz.server.thrift.FuzzerServiceConstants.DOWNLOAD_FIELD_NAME_TOKEN;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -79,20 +75,12 @@ public class FileDownloadServlet extends HttpServlet {
     if (!pathOfFile.startsWith(directoryRoot)) {
       throw new IOException("Invalid path!");
     }
-
-    try (FileInputStream fis = new FileInputStream(file)) {
-      response.setStatus(HttpServletResponse.SC_OK);
-      String contentType = "text/plain";
-      try {
-        contentType = Files.probeContentType(pathOfFile);
-      } catch (IOException exception) {
-        LOGGER.info("Failed to probe content type of file path: {}", pathOfFile, exception);
-      }
-      response.setContentType(contentType);
-      try (OutputStream out = response.getOutputStream()) {
-        IOUtils.copy(fis, out);
-      }
+    if (!file.isFile()) {
+      LOGGER.info("No such file: {}", pathOfFile);
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
     }
 
+    FileSender.sendFile(request, response, file);
   }
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.io.FilenameUtils;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.server.HttpOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends files in HTTP responses.
+ *
+ * <p>Content types are looked up once per file extension.  Responses carry an ETag and a
+ * Last-Modified date derived from the file's modification time and length, and a request whose
+ * copy of the file is still current gets 304 Not Modified.  A single byte range may be requested,
+ * so that large downloads can be resumed; responses to range requests must not be compressed, see
+ * RangeAwareGzipHandler.  When the response is Jetty's, a large file is memory mapped and handed
+ * to Jetty, which writes it to the connection without copying it through the servlet output
+ * stream.</p>
+ *
+ * <p>Workers may rewrite result files while they are being sent.  Reading a mapping past the end
+ * of a file that has been truncated makes the JVM raise an InternalError, which is caught: if
+ * nothing has been sent yet the file is copied instead, and otherwise the request fails with an
+ * IOException, as it does when a file shrinks while being copied.</p>
+ */
+public final class FileSender {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileSender.class);
+
+  // Only ranges of at least this many bytes are memory mapped: mapping a small file costs more
+  // than copying it, and a mapping is only released when garbage collected.
+  static final long MIN_MAPPED_BYTES = 64 * 1024;
+
+  // Larger ranges, which cannot be mapped into a single buffer, are copied.
+  private static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+
+  private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+  // Keyed by lower case file extension.
+  private static final Map<String, String> CONTENT_TYPES = new ConcurrentHashMap<>();
+
+  private FileSender() {
+    // Utility class
+  }
+
+  /**
+   * Yields the content type of files with the name's extension.  Files with an unknown extension,
+   * such as shaders and logs, are taken to be text.
+   */
+  public static String getContentType(String filename) {
+    return CONTENT_TYPES.computeIfAbsent(
+        FilenameUtils.getExtension(filename).toLowerCase(Locale.ROOT), extension -> {
+          String contentType = null;
+          try {
+            contentType = Files.probeContentType(Paths.get("file." + extension));
+          } catch (IOException exception) {
+            LOGGER.info("Failed to probe content type of extension: {}", extension, exception);
+          }
+          if (contentType == null) {
+            // Some platforms cannot probe content types at all.
+            contentType = MimeTypes.getDefaultMimeByExtension("file." + extension);
+          }
+          return contentType == null ? "text/plain" : contentType;
+        });
+  }
+
+  /**
+   * Responds to a GET or HEAD request with the contents of the file, which must exist.
+   */
+  public static void sendFile(HttpServletRequest request, HttpServletResponse response, File file)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final long length = channel.size();
+      final long lastModified = file.lastModified();
+      final String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length)
+          + "\"";
+      response.setHeader("ETag", etag);
+      response.setDateHeader("Last-Modified", lastModified);
+      response.setHeader("Accept-Ranges", "bytes");
+      response.setContentType(getContentType(file.getName()));
+
+      if (isNotModified(request, etag, lastModified)) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+
+      long start = 0;
+      long end = length - 1;
+      final Matcher range = getRange(request, etag, lastModified);
+      if (range != null) {
+        if (range.group(1).isEmpty()) {
+          // The last bytes of the file.
+          start = Math.max(0, length - Long.parseLong(range.group(2)));
+        } else {
+          start = Long.parseLong(range.group(1));
+          if (!range.group(2).isEmpty()) {
+            end = Math.min(end, Long.parseLong(range.group(2)));
+          }
+        }
+        if (start > end) {
+          response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+          response.setHeader("Content-Range", "bytes */" + length);
+          return;
+        }
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+      } else {
+        response.setStatus(HttpServletResponse.SC_OK);
+      }
+
+      final long count = end - start + 1;
+      response.setContentLengthLong(count);
+      if (request.getMethod().equals("HEAD") || count == 0) {
+        return;
+      }
+      final ServletOutputStream out = response.getOutputStream();
+      if (out instanceof HttpOutput && count >= MIN_MAPPED_BYTES && count <= MAX_MAPPED_BYTES) {
+        try {
+          ((HttpOutput) out).sendContent(
+              channel.map(FileChannel.MapMode.READ_ONLY, start, count));
+          return;
+        } catch (InternalError error) {
+          // The file was truncated while mapped.
+          if (response.isCommitted()) {
+            throw new IOException("File shrank while being sent: " + file, error);
+          }
+          LOGGER.warn("File shrank while mapped, copying it instead: {}", file);
+        }
+      }
+      copy(channel, start, end, out, file);
+    }
+  }
+
+  private static void copy(FileChannel channel, long start, long end, ServletOutputStream out,
+      File file) throws IOException {
+    final WritableByteChannel target = Channels.newChannel(out);
+    long position = start;
+    while (position <= end) {
+      final long transferred = channel.transferTo(position, end - position + 1, target);
+      if (transferred <= 0) {
+        throw new IOException("File shrank while being sent: " + file);
+      }
+      position += transferred;
+    }
+    out.flush();
+  }
+
+  private static boolean isNotModified(HttpServletRequest request, String etag,
+      long lastModified) {
+    final String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      // If-Modified-Since is ignored when If-None-Match is present.
+      for (String tag : ifNoneMatch.split(",")) {
+        if (tag.trim().equals(etag) || tag.trim().equals("*")) {
+          return true;
+        }
+      }
+      return false;
+    }
+    final long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+    // Last-Modified has a resolution of one second.
+    return ifModifiedSince != -1 && lastModified / 1000 * 1000 <= ifModifiedSince;
+  }
+
+  /**
+   * Yields the single byte range requested, with the first and last byte as groups 1 and 2, at
+   * least one of which is not empty; or null if the whole file should be sent, because no range,
+   * several ranges, or a range of a different version of the file were requested.
+   */
+  private static Matcher getRange(HttpServletRequest request, String etag, long lastModified) {
+    final String rangeHeader = request.getHeader("Range");
+    if (rangeHeader == null) {
+      return null;
+    }
+    final String ifRange = request.getHeader("If-Range");
+    if (ifRange != null && !ifRange.trim().equals(etag)) {
+      final long ifRangeDate;
+      try {
+        ifRangeDate = request.getDateHeader("If-Range");
+      } catch (IllegalArgumentException exception) {
+        // An entity tag of another version of the file.
+        return null;
+      }
+      if (lastModified / 1000 * 1000 != ifRangeDate) {
+        return null;
+      }
+    }
+    final Matcher matcher = RANGE.matcher(rangeHeader.trim());
+    // Positions of more than 18 digits might not fit in a long.
+    if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())
+        || matcher.group(1).length() > 18 || matcher.group(2).length() > 18) {
+      return null;
+    }
+    return matcher;
+  }
+
+}
@@ -36,6 +36,9 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
 import org.apache.commons.io.FileUtils;
@@ -48,6 +51,7 @@ public class FuzzerServiceImpl implements FuzzerService.Iface {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(FuzzerServiceImpl.class);
   private final SessionMap sessions = new SessionMap();
+  private final JobScheduler jobScheduler = new JobScheduler(sessions);
 
   private final IArtifactManager shaderSetManager;
   private final String processingDir;
@@ -83,6 +87,10 @@ public class FuzzerServiceImpl implements FuzzerService.Iface {
     return sessions;
   }
 
+  public JobScheduler getJobScheduler() {
+    return jobScheduler;
+  }
+
   public WorkQueue getClientWorkQueue(String client) {
     return sessions.getWorkQueue(client);
   }
@@ -164,7 +172,7 @@ public class FuzzerServiceImpl implements FuzzerService.Iface {
     if (oldToken != null && (oldClientInfoString.isEmpty() || clientInfoString
         .equals(oldClientInfoString))) {
       LOGGER.info("Using provided token.");
-      sessions.putIfAbsent(oldToken, new Session(oldToken, platformInfo, executorService));
+      sessions.putIfAbsent(oldToken, new Session(oldToken, clientInfoString, executorService));
       token = oldToken;
     } else {
       LOGGER.info("Generating new token. Old then new platform info: \n{}\n{}", oldClientInfoString,
@@ -186,7 +194,7 @@ public class FuzzerServiceImpl implements FuzzerService.Iface {
         tokenStr = tokenStr.replace(' ', '_');
         token = new String(tokenStr);
         if (sessions.putIfAbsent(token, dummy)) {
-          Session newSession = new Session(token, platformInfo, executorService);
+          Session newSession = new Session(token, clientInfoString, executorService);
           sessions.replace(token, dummy, newSession);
           break;
         }
@@ -222,30 +230,44 @@ public class FuzzerServiceImpl implements FuzzerService.Iface {
 
   @Override
   public Job getJob(String token) throws TException {
+    final List<Job> jobs = getJobs(token, 1);
+    if (jobs.isEmpty()) {
+      return new Job().setJobId(0).setNoJob(new NoJob());
+    }
+    return jobs.get(0);
+  }
+
+  @Override
+  public void jobDone(String token, Job job) throws TException {
+    jobsDone(token, Collections.singletonList(job));
+  }
+
+  @Override
+  public List<Job> getJobs(String token, int maxJobs) throws TException {
 
     if (!sessions.containsToken(token)) {
       throw new TokenNotFoundException().setToken(token);
     }
 
+    if (maxJobs < 1) {
+      throw new TException("maxJobs must be positive.");
+    }
+
+    jobScheduler.stealJobsFor(token);
+
     return sessions.lockSessionAndExecute(token, session -> {
       try {
         MDC.put("token", token);
-        LOGGER.info("getJob");
+        LOGGER.info("getJobs");
         session.touch();
 
-        while (true) {
-          if (session.jobQueue.size() == 0) {
-            LOGGER.info("no job");
-            return new Job().setJobId(0).setNoJob(new NoJob());
-          }
-          Job res = session.jobQueue.peek().getJob();
-          if (res == null) {
-            LOGGER.info("There was a server job but it returned null, so it will be removed.");
-            session.jobQueue.remove();
-            continue;
-          }
+        final List<Job> jobs = session.jobQueue.lease(maxJobs, System.currentTimeMillis());
+        if (jobs.isEmpty()) {
+          LOGGER.info("no job");
+        }
+        for (Job res : jobs) {
           StringBuilder logmsg = new StringBuilder();
-          logmsg.append("getJob(): worker '" + token
+          logmsg.append("getJobs(): worker '" + token
               + "' gets job " + res.getJobId());
           if (res.isSetSkipJob()) {
             logmsg.append(" (skip)");
@@ -253,14 +275,16 @@ public class FuzzerServiceImpl implements FuzzerService.Iface {
             logmsg.append("(name: ");
             logmsg.append(res.getImageJob().getName());
             logmsg.append(")");
+          } else if (res.isSetComputeJob()) {
+            logmsg.append("(name: ");
+            logmsg.append(res.getComputeJob().getName());
+            logmsg.append(")");
           } else {
-            logmsg.append("(job neither skip nor image? should not happen!)");
+            logmsg.append("(job neither skip, image nor compute? should not happen!)");
           }
           LOGGER.info(logmsg.toString());
-          return res;
         }
-      } catch (ServerJobException exception) {
-        throw new TException(exception);
+        return jobs;
       } finally {
         MDC.remove("token");
       }
@@ -269,37 +293,56 @@ public class FuzzerServiceImpl implements FuzzerService.Iface {
   }
 
   @Override
-  public void jobDone(String token, Job job) throws TException {
+  public void jobsDone(String token, List<Job> jobs) throws TException {
 
     if (!sessions.containsToken(token)) {
       throw new TokenNotFoundException().setToken(token);
     }
 
-    sessions.lockSessionAndExecute(token, session -> {
+    // Each result is recorded even if an earlier one in the batch could not be.
+    final List<String> failures = new ArrayList<>();
+    final List<Job> stolenJobs = sessions.lockSessionAndExecute(token, session -> {
       try {
         MDC.put("token", token);
-        StringBuilder logmsg = new StringBuilder();
-        logmsg.append("jobDone(): JobId#" + job.getJobId()
-            + " Queue has size: " + session.jobQueue.size());
-        if (job.isSetImageJob() && job.getImageJob().isSetResult()) {
-          logmsg.append(" job status: " + job.getImageJob().getResult().getStatus());
-        }
-        LOGGER.info(logmsg.toString());
-        final IServerJob serverJob = session.jobQueue.peek();
-
-        // Execute finish job on the server job and see if it should be removed.
-        boolean remove = serverJob.finishJob(job);
-
-        LOGGER.info("Returned from finishJob. Removing job? {}", remove);
-        if (remove) {
-          session.jobQueue.remove();
+        session.touch();
+        session.jobQueue.renewLeases(System.currentTimeMillis());
+        final List<Job> stolen = new ArrayList<>();
+        for (Job job : jobs) {
+          StringBuilder logmsg = new StringBuilder();
+          logmsg.append("jobsDone(): JobId#" + job.getJobId()
+              + " Queue has size: " + session.jobQueue.size());
+          if (job.isSetImageJob() && job.getImageJob().isSetResult()) {
+            logmsg.append(" job status: " + job.getImageJob().getResult().getStatus());
+          }
+          LOGGER.info(logmsg.toString());
+          try {
+            if (!session.jobQueue.finish(job)) {
+              stolen.add(job);
+            }
+          } catch (ServerJobException exception) {
+            LOGGER.error("jobsDone(): could not record result of JobId#{}", job.getJobId(),
+                exception);
+            failures.add(exception.getMessage());
+          }
         }
-        return null;
-      } catch (ServerJobException exception) {
-        throw new TException(exception);
+        return stolen;
       } finally {
         MDC.remove("token");
       }
     });
+    // Late results for jobs that were reclaimed and stolen are handed over without holding this
+    // worker's session, as a session is never locked while another is.
+    for (Job job : stolenJobs) {
+      try {
+        jobScheduler.finishStolenJob(token, job);
+      } catch (ServerJobException exception) {
+        LOGGER.error("jobsDone(): could not record result of JobId#{}", job.getJobId(),
+            exception);
+        failures.add(exception.getMessage());
+      }
+    }
+    if (!failures.isEmpty()) {
+      throw new TException(String.join(" ", failures));
+    }
   }
 }
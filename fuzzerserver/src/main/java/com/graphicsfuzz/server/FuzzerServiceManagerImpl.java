@@ -23,7 +23,6 @@ import com.graphicsfuzz.common.util.ToolPaths;
 import com.graphicsfuzz.server.thrift.CommandInfo;
 import com.graphicsfuzz.server.thrift.CommandResult;
 import com.graphicsfuzz.server.thrift.FuzzerServiceManager;
-import com.graphicsfuzz.server.thrift.ImageJob;
 import com.graphicsfuzz.server.thrift.Job;
 import com.graphicsfuzz.server.thrift.ServerInfo;
 import com.graphicsfuzz.server.thrift.TokenNotFoundException;
@@ -31,9 +30,18 @@ import com.graphicsfuzz.server.thrift.WorkerInfo;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.thrift.TException;
 import org.slf4j.Logger;
@@ -43,16 +51,44 @@ public class FuzzerServiceManagerImpl implements FuzzerServiceManager.Iface {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(FuzzerServiceManagerImpl.class);
 
+  // How long the result of a job submitted via submitJobs is kept for a client that has stopped
+  // asking for it; the client is assumed to have given up.
+  static final long PENDING_RESULT_TTL_MILLIS = 10 * 60 * 1000;
+
+  private static final class PendingResult {
+    private final CompletableFuture<Job> future;
+
+    // When the client last submitted or asked for the job, in milliseconds since the epoch.
+    private volatile long touched;
+
+    PendingResult(CompletableFuture<Job> future, long now) {
+      this.future = future;
+      this.touched = now;
+    }
+  }
+
   private FuzzerServiceImpl service;
 
   private final AtomicLong jobIdCounter;
 
+  private final AtomicLong submissionIdCounter;
+
+  // Jobs submitted via submitJobs whose results have not yet been collected, by submission id.
+  private final ConcurrentMap<Long, PendingResult> pendingResults;
+
+  // When pendingResults is next checked for results that have expired, in milliseconds since the
+  // epoch.
+  private final AtomicLong nextExpiryCheck;
+
   private final ICommandDispatcher commandDispatcher;
 
   public FuzzerServiceManagerImpl(FuzzerServiceImpl service,
         ICommandDispatcher commandDispatcher) {
     this.service = service;
     this.jobIdCounter = new AtomicLong();
+    this.submissionIdCounter = new AtomicLong();
+    this.pendingResults = new ConcurrentHashMap<>();
+    this.nextExpiryCheck = new AtomicLong();
     this.commandDispatcher = commandDispatcher;
   }
 
@@ -68,33 +104,128 @@ public class FuzzerServiceManagerImpl implements FuzzerServiceManager.Iface {
   @Override
   public Job submitJob(Job job, String forClient, int retryLimit) throws TException {
     LOGGER.info("submitJob {}", forClient);
-    Job[] result = new Job[1];
+    try {
+      return submitJobAsync(job, forClient, retryLimit).get();
+    } catch (InterruptedException | ExecutionException exception) {
+      throw new TException(exception);
+    }
+  }
 
+  /**
+   * Adds a job to a worker job queue, returning a future that is completed, by the thread that
+   * handles the worker's reply, once the job is done.
+   */
+  public CompletableFuture<Job> submitJobAsync(Job job, String forClient, int retryLimit)
+        throws TokenNotFoundException {
+    return submitJobsAsync(Collections.singletonList(job), forClient, retryLimit).get(0);
+  }
+
+  private List<CompletableFuture<Job>> submitJobsAsync(List<Job> jobs, String forClient,
+        int retryLimit) throws TokenNotFoundException {
     if (!service.getSessionMap().containsToken(forClient)) {
       throw new TokenNotFoundException().setToken(forClient);
     }
 
+    final List<CompletableFuture<Job>> results = new ArrayList<>();
     service.getSessionMap().lockSessionAndExecute(forClient, session -> {
-      session.jobQueue.add(new SingleJob(job, job1 -> {
-        synchronized (result) {
-          result[0] = job1;
-          result.notifyAll();
-        }
-      }, jobIdCounter, retryLimit));
+      for (Job job : jobs) {
+        final CompletableFuture<Job> result = new CompletableFuture<>();
+        session.jobQueue.add(new SingleJob(job, result::complete, jobIdCounter, retryLimit));
+        results.add(result);
+      }
       return null;
     });
+    return results;
+  }
 
-    synchronized (result) {
-      while (result[0] == null) {
-        try {
-          result.wait();
-        } catch (InterruptedException exception) {
-          throw new TException(exception);
-        }
+  @Override
+  public List<Long> submitJobs(List<Job> jobs, String forClient, int retryLimit)
+        throws TException {
+    LOGGER.info("submitJobs {} ({} jobs)", forClient, jobs.size());
+    return addPendingResults(submitJobsAsync(jobs, forClient, retryLimit));
+  }
+
+  @Override
+  public List<Long> submitJobsToGroup(List<Job> jobs, String likeClient, int retryLimit)
+        throws TException {
+    LOGGER.info("submitJobsToGroup {} ({} jobs)", likeClient, jobs.size());
+    final List<SingleJob> singleJobs = new ArrayList<>();
+    final List<CompletableFuture<Job>> results = new ArrayList<>();
+    for (Job job : jobs) {
+      final CompletableFuture<Job> result = new CompletableFuture<>();
+      singleJobs.add(new SingleJob(job, result::complete, jobIdCounter, retryLimit, true));
+      results.add(result);
+    }
+    service.getJobScheduler().submitToGroup(singleJobs, likeClient);
+    return addPendingResults(results);
+  }
+
+  private List<Long> addPendingResults(List<CompletableFuture<Job>> results) {
+    final long now = System.currentTimeMillis();
+    expirePendingResults(now);
+    final List<Long> submissionIds = new ArrayList<>();
+    for (CompletableFuture<Job> result : results) {
+      final long submissionId = submissionIdCounter.incrementAndGet();
+      pendingResults.put(submissionId, new PendingResult(result, now));
+      submissionIds.add(submissionId);
+    }
+    return submissionIds;
+  }
+
+  /**
+   * Forgets the results of jobs that their clients have not asked for in the last
+   * PENDING_RESULT_TTL_MILLIS, so that results are not kept forever for clients that have given
+   * up.  The jobs themselves are not cancelled.  Checks at most once every tenth of the TTL.
+   */
+  void expirePendingResults(long now) {
+    final long nextCheck = nextExpiryCheck.get();
+    if (now < nextCheck
+        || !nextExpiryCheck.compareAndSet(nextCheck, now + PENDING_RESULT_TTL_MILLIS / 10)) {
+      return;
+    }
+    final int sizeBefore = pendingResults.size();
+    pendingResults.values().removeIf(
+        result -> now - result.touched > PENDING_RESULT_TTL_MILLIS);
+    final int expired = sizeBefore - pendingResults.size();
+    if (expired > 0) {
+      LOGGER.info("Forgot {} job results that were not collected", expired);
+    }
+  }
+
+  @Override
+  public Map<Long, Job> getJobResults(List<Long> submissionIds, int waitMillis)
+        throws TException {
+    final long now = System.currentTimeMillis();
+    expirePendingResults(now);
+    final List<CompletableFuture<Job>> pending = new ArrayList<>();
+    for (long submissionId : submissionIds) {
+      final PendingResult result = pendingResults.get(submissionId);
+      if (result != null) {
+        result.touched = now;
+        pending.add(result.future);
       }
     }
 
-    return result[0];
+    if (waitMillis > 0 && !pending.isEmpty() && pending.stream().noneMatch(Future::isDone)) {
+      try {
+        CompletableFuture.anyOf(pending.toArray(new CompletableFuture[0]))
+              .get(waitMillis, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException exception) {
+        // No job completed in time; the caller gets an empty map and polls again.
+      } catch (InterruptedException | ExecutionException exception) {
+        throw new TException(exception);
+      }
+    }
+
+    final Map<Long, Job> completed = new HashMap<>();
+    for (long submissionId : submissionIds) {
+      final PendingResult result = pendingResults.get(submissionId);
+      if (result != null && result.future.isDone()
+          && pendingResults.remove(submissionId, result)) {
+        completed.put(submissionId, result.future.getNow(null));
+      }
+    }
+    return completed;
   }
 
   @Override
@@ -209,30 +340,28 @@ public class FuzzerServiceManagerImpl implements FuzzerServiceManager.Iface {
                 .setWorkers(workers);
   }
 
-  private List<String> getJobQueueAsJobInfoList(Queue<IServerJob> jobQueue) {
+  private List<String> getJobQueueAsJobInfoList(JobQueue jobQueue) {
     List<String> res = new ArrayList<>();
-    for (IServerJob job : jobQueue) {
-      if (job instanceof SingleJob) {
-        SingleJob sj = (SingleJob) job;
-        if (sj.job.isSetImageJob()) {
-          ImageJob ij = sj.job.getImageJob();
-
-          StringBuilder infoString = new StringBuilder();
-          if (ij.isSetName()) {
-            infoString.append(ij.getName());
-          }
-          if (ij.isSetName()) {
-            infoString.append(ij.getName());
-            infoString.append("; ");
-          }
-          res.add(infoString.toString());
-          continue;
-        }
-      }
-      // otherwise:
-      res.add(job.toString());
+    final String leaseInfo = jobQueue.leasesExpired(System.currentTimeMillis())
+        ? " (lease expired)"
+        : " (leased)";
+    for (SingleJob sj : jobQueue.getLeasedJobs()) {
+      res.add(getJobInfo(sj) + leaseInfo);
+    }
+    for (SingleJob sj : jobQueue.getQueuedJobs()) {
+      res.add(getJobInfo(sj));
     }
     return res;
   }
 
+  private String getJobInfo(SingleJob sj) {
+    if (sj.job.isSetImageJob() && sj.job.getImageJob().isSetName()) {
+      return sj.job.getImageJob().getName();
+    }
+    if (sj.job.isSetComputeJob() && sj.job.getComputeJob().isSetName()) {
+      return sj.job.getComputeJob().getName();
+    }
+    return "job " + sj.job.getJobId();
+  }
+
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import com.graphicsfuzz.server.thrift.Job;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The job queue of a worker.  Jobs are leased to the worker in batches, and a lease ends when the
+ * worker returns the job's result.  If the worker instead gets more jobs while still holding
+ * leases, it has restarted: the first job it leased, which it was running, keeps the attempt it
+ * was charged, and the other leased jobs, which it never started, get their attempts back.  All of
+ * them are queued again, in their original order, ahead of the other queued jobs.
+ *
+ * <p>Leases expire if the worker is not heard from for LEASE_TIMEOUT_MILLIS; they are renewed
+ * whenever the worker gets jobs or returns a result.  A result returned for a job whose lease has
+ * been reclaimed is still accepted: if the job is still queued it is completed, and if it has
+ * been stolen by another worker finish yields false, so that the result can be handed to that
+ * worker's queue.</p>
+ *
+ * <p>Not thread-safe; accesses are guarded by the session lock.</p>
+ */
+public class JobQueue {
+
+  static final long LEASE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+  private final Deque<SingleJob> queued = new ArrayDeque<>();
+
+  // Jobs leased to the worker, in the order they were leased.
+  private final List<SingleJob> leased = new ArrayList<>();
+
+  private long leaseDeadline;
+
+  // Jobs that are queued again after their leases were reclaimed, and which the worker may still
+  // be running.
+  private final Set<SingleJob> reclaimed = new HashSet<>();
+
+  // The ids under which reclaimed jobs were leased to the worker before being stolen by other
+  // workers, so that late results for them are recognized.  Cleared when the worker gets jobs
+  // again, as it has then given up on its earlier leases.
+  private final Set<Long> stolenLeaseIds = new HashSet<>();
+
+  public void add(SingleJob job) {
+    queued.add(job);
+  }
+
+  public void addAll(List<SingleJob> jobs) {
+    queued.addAll(jobs);
+  }
+
+  /**
+   * Removes up to maxJobs stealable jobs that are queued but not leased, taking the jobs that
+   * were queued last.
+   */
+  public List<SingleJob> steal(int maxJobs) {
+    final List<SingleJob> result = new ArrayList<>();
+    for (Iterator<SingleJob> iterator = queued.descendingIterator();
+         iterator.hasNext() && result.size() < maxJobs; ) {
+      final SingleJob singleJob = iterator.next();
+      if (singleJob.isStealable()) {
+        iterator.remove();
+        if (reclaimed.remove(singleJob)) {
+          stolenLeaseIds.add(singleJob.getLeasedJobId());
+        }
+        result.add(0, singleJob);
+      }
+    }
+    return result;
+  }
+
+  public int getStealableCount() {
+    return (int) queued.stream().filter(SingleJob::isStealable).count();
+  }
+
+  public int getQueuedCount() {
+    return queued.size();
+  }
+
+  /**
+   * Leases up to maxJobs jobs to the worker, first reclaiming any jobs the worker still holds.
+   */
+  public List<Job> lease(int maxJobs, long now) {
+    stolenLeaseIds.clear();
+    reclaimLeases();
+    final List<Job> result = new ArrayList<>();
+    while (result.size() < maxJobs && !queued.isEmpty()) {
+      final SingleJob singleJob = queued.remove();
+      reclaimed.remove(singleJob);
+      leased.add(singleJob);
+      result.add(singleJob.getJob());
+    }
+    renewLeases(now);
+    return result;
+  }
+
+  /**
+   * Completes the job whose result the worker has returned, ending its lease.  Yields false if
+   * the job's lease was reclaimed and the job has since been stolen by another worker.
+   */
+  public boolean finish(Job returnedJob) throws ServerJobException {
+    if (finish(returnedJob, leased) || finish(returnedJob, queued)) {
+      return true;
+    }
+    if (stolenLeaseIds.remove(returnedJob.getJobId())) {
+      return false;
+    }
+    throw new ServerJobException("Worker returned job " + returnedJob.getJobId()
+        + ", which is not queued.");
+  }
+
+  /**
+   * Completes the job if it is queued and not leased, for a result returned late by the worker
+   * the job was stolen from.  Yields whether the job was queued.
+   */
+  public boolean finishQueued(Job returnedJob) throws ServerJobException {
+    return finish(returnedJob, queued);
+  }
+
+  private boolean finish(Job returnedJob, Iterable<SingleJob> jobs) throws ServerJobException {
+    for (Iterator<SingleJob> iterator = jobs.iterator(); iterator.hasNext(); ) {
+      final SingleJob singleJob = iterator.next();
+      if (singleJob.matches(returnedJob)) {
+        iterator.remove();
+        reclaimed.remove(singleJob);
+        singleJob.finishJob(returnedJob);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Extends the leases the worker holds, as it has been heard from.
+   */
+  public void renewLeases(long now) {
+    leaseDeadline = now + LEASE_TIMEOUT_MILLIS;
+  }
+
+  public boolean leasesExpired(long now) {
+    return !leased.isEmpty() && now > leaseDeadline;
+  }
+
+  /**
+   * Queues the leased jobs again, ahead of the other queued jobs.  Only the first leased job is
+   * charged an attempt, as the worker runs its jobs in order.
+   */
+  public void reclaimLeases() {
+    for (int i = leased.size() - 1; i >= 0; i--) {
+      final SingleJob singleJob = leased.get(i);
+      if (i > 0) {
+        singleJob.cancelAttempt();
+      }
+      queued.addFirst(singleJob);
+      reclaimed.add(singleJob);
+    }
+    leased.clear();
+  }
+
+  public List<SingleJob> getLeasedJobs() {
+    return Collections.unmodifiableList(leased);
+  }
+
+  public List<SingleJob> getQueuedJobs() {
+    return Collections.unmodifiableList(new ArrayList<>(queued));
+  }
+
+  public int size() {
+    return leased.size() + queued.size();
+  }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import com.graphicsfuzz.server.thrift.Job;
+import com.graphicsfuzz.server.thrift.TokenNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules jobs that may be run by any worker in a group of equivalent workers, namely the
+ * workers with the same platform info.
+ *
+ * <p>Each worker keeps its own job queue.  Group jobs are added to the shortest queue of a live
+ * worker in the group, and a worker that has no queued jobs when it asks for jobs steals half of
+ * the group jobs queued for the group member that has the most of them.  Before a worker is
+ * stolen from, its leases are reclaimed if it is no longer live or its leases have expired, so that
+ * the jobs of a dead worker end up with its peers.</p>
+ *
+ * <p>A session is never locked while another is locked, so that workers stealing from each other
+ * cannot deadlock; stolen jobs are briefly held by neither worker.  Sessions of other workers may
+ * be removed concurrently, and are then skipped.</p>
+ */
+public class JobScheduler {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobScheduler.class);
+
+  private final SessionMap sessions;
+
+  public JobScheduler(SessionMap sessions) {
+    this.sessions = sessions;
+  }
+
+  /**
+   * Queues stealable jobs for the group of the given worker.
+   */
+  public void submitToGroup(List<SingleJob> jobs, String likeToken)
+        throws TokenNotFoundException {
+    if (!sessions.containsToken(likeToken)) {
+      throw new TokenNotFoundException().setToken(likeToken);
+    }
+    final List<String> group = getLiveGroup(likeToken);
+    for (SingleJob job : jobs) {
+      String shortest = likeToken;
+      int shortestSize = Integer.MAX_VALUE;
+      for (String token : group) {
+        final int size = sessions.lockSessionAndExecuteIfPresent(token, Integer.MAX_VALUE,
+            session -> session.jobQueue.size());
+        if (size < shortestSize) {
+          shortest = token;
+          shortestSize = size;
+        }
+      }
+      final boolean added = sessions.lockSessionAndExecuteIfPresent(shortest, false,
+          session -> {
+            session.jobQueue.add(job);
+            return true;
+          });
+      if (!added && !shortest.equals(likeToken)) {
+        sessions.lockSessionAndExecuteIfPresent(likeToken, false, session -> {
+          session.jobQueue.add(job);
+          return true;
+        });
+      }
+    }
+  }
+
+  /**
+   * Moves jobs to the given worker from the busiest worker in its group, if it has no queued jobs
+   * of its own.
+   */
+  public void stealJobsFor(String token) {
+    if (sessions.lockSessionAndExecute(token, session -> session.jobQueue.getQueuedCount()) > 0) {
+      return;
+    }
+
+    String victim = null;
+    int mostStealable = 0;
+    for (String other : getGroup(token)) {
+      if (other.equals(token)) {
+        continue;
+      }
+      final int stealable = sessions.lockSessionAndExecuteIfPresent(other, 0, session -> {
+        if (!session.isLive() || session.jobQueue.leasesExpired(System.currentTimeMillis())) {
+          session.jobQueue.reclaimLeases();
+        }
+        return session.jobQueue.getStealableCount();
+      });
+      if (stealable > mostStealable) {
+        victim = other;
+        mostStealable = stealable;
+      }
+    }
+    if (victim == null) {
+      return;
+    }
+
+    final int toSteal = (mostStealable + 1) / 2;
+    final List<SingleJob> stolen = sessions.lockSessionAndExecuteIfPresent(victim,
+        Collections.emptyList(), session -> session.jobQueue.steal(toSteal));
+    LOGGER.info("Worker {} steals {} job(s) from worker {}.", token, stolen.size(), victim);
+    sessions.lockSessionAndExecute(token, session -> {
+      session.jobQueue.addAll(stolen);
+      return null;
+    });
+  }
+
+  /**
+   * Hands a result that the given worker returned late, for a job that has since been stolen by
+   * another worker in its group, to the queue of that worker.  The result is dropped if the job
+   * is no longer queued, as the other worker is then running it or has done so.
+   */
+  public void finishStolenJob(String token, Job returnedJob) throws ServerJobException {
+    for (String other : getGroup(token)) {
+      if (!other.equals(token) && sessions.lockSessionAndExecuteIfPresent(other, false,
+          session -> session.jobQueue.finishQueued(returnedJob))) {
+        LOGGER.info("Worker {} returned job {} late; completed it for worker {}.", token,
+            returnedJob.getJobId(), other);
+        return;
+      }
+    }
+    LOGGER.info("Worker {} returned job {} late; it is being run by another worker.", token,
+        returnedJob.getJobId());
+  }
+
+  /**
+   * Yields the workers, including the given worker, that have the same platform info as it.
+   */
+  private List<String> getGroup(String token) {
+    final String platformInfo = getPlatformInfo(token);
+    final List<String> result = new ArrayList<>();
+    for (String other : sessions.getTokenSet()) {
+      final String otherPlatformInfo = getPlatformInfo(other);
+      if (otherPlatformInfo != null && otherPlatformInfo.equals(platformInfo)) {
+        result.add(other);
+      }
+    }
+    return result;
+  }
+
+  private List<String> getLiveGroup(String token) {
+    final List<String> result = new ArrayList<>();
+    for (String other : getGroup(token)) {
+      if (sessions.isLive(other)) {
+        result.add(other);
+      }
+    }
+    return result;
+  }
+
+  // Yields null if the session has been removed.
+  private String getPlatformInfo(String token) {
+    return sessions.lockSessionAndExecuteIfPresent(token, null, session -> session.platformInfo);
+  }
+
+}
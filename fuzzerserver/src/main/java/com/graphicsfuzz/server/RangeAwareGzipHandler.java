@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+
+/**
+ * A GzipHandler that does not compress responses to requests for a byte range.  GzipHandler would
+ * compress the range, while its Content-Range header gives positions in the uncompressed file, so
+ * that a resumed download would be corrupted.
+ */
+public class RangeAwareGzipHandler extends GzipHandler {
+
+  @Override
+  public void handle(String target, Request baseRequest, HttpServletRequest request,
+      HttpServletResponse response) throws IOException, ServletException {
+    final Handler handler = getHandler();
+    if (request.getHeader("Range") != null && handler != null) {
+      handler.handle(target, baseRequest, request, response);
+      return;
+    }
+    super.handle(target, baseRequest, request, response);
+  }
+
+}
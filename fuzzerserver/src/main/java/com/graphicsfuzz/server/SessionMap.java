@@ -16,9 +16,7 @@
 
 package com.graphicsfuzz.server;
 
-import java.util.ArrayDeque;
 import java.util.Collections;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -28,7 +26,7 @@ public final class SessionMap {
 
   public static class Session {
 
-    public final Queue<IServerJob> jobQueue = new ArrayDeque<>();
+    public final JobQueue jobQueue = new JobQueue();
     public String platformInfo;
     private final Object mutex = new Object();
     private volatile long touched = System.currentTimeMillis();
@@ -113,5 +111,20 @@ public final class SessionMap {
     }
   }
 
+  /**
+   * As lockSessionAndExecute, but yields absent if there is no session for the token, which may
+   * be the case for a token got from getTokenSet, as sessions can be removed concurrently.
+   */
+  public <T, E extends Throwable> T lockSessionAndExecuteIfPresent(String token, T absent,
+      SessionWorkerEx<T, E> sessionWorker) throws E {
+    Session session = sessions.get(token);
+    if (session == null) {
+      return absent;
+    }
+    synchronized (session.mutex) {
+      return sessionWorker.go(session);
+    }
+  }
+
 
 }
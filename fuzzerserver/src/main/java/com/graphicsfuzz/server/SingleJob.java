@@ -23,7 +23,12 @@ import com.graphicsfuzz.server.thrift.ResultConstant;
 import com.graphicsfuzz.server.thrift.SkipJob;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class SingleJob implements IServerJob {
+/**
+ * A job submitted to a worker, together with the number of times it has been leased to the
+ * worker.  Once a job has used up its attempts, the worker is handed a skip job in its place, and
+ * the job is completed as skipped when the worker returns the skip job.
+ */
+public class SingleJob {
 
   @FunctionalInterface
   public interface ISingleJobCompleter {
@@ -40,16 +45,32 @@ public class SingleJob implements IServerJob {
   private int counter;
   private final int limit;
 
+  // Whether the job may be run by any worker in the group of the worker it was queued for.
+  private final boolean stealable;
+
   public SingleJob(Job job, ISingleJobCompleter completer, AtomicLong skipJobIdCounter,
       int retryLimit) {
+    this(job, completer, skipJobIdCounter, retryLimit, false);
+  }
+
+  public SingleJob(Job job, ISingleJobCompleter completer, AtomicLong skipJobIdCounter,
+      int retryLimit, boolean stealable) {
     this.job = job;
     this.completer = completer;
     this.skipJobIdCounter = skipJobIdCounter;
     this.limit = retryLimit + 1;
+    this.stealable = stealable;
+  }
+
+  public boolean isStealable() {
+    return stealable;
   }
 
-  @Override
-  public Job getJob() throws ServerJobException {
+  /**
+   * Gets the job to hand to the worker, counting an attempt, or a skip job if the job has used up
+   * its attempts.
+   */
+  public Job getJob() {
     if (counter + 1 >= limit) {
       skipJob = new Job()
           .setJobId(skipJobIdCounter.incrementAndGet())
@@ -66,8 +87,31 @@ public class SingleJob implements IServerJob {
     return job;
   }
 
-  @Override
-  public boolean finishJob(Job returnedJob) throws ServerJobException {
+  /**
+   * Undoes the attempt counted by the last call to getJob, because the worker never started the
+   * job.
+   */
+  public void cancelAttempt() {
+    if (skipJob == null) {
+      --counter;
+    }
+  }
+
+  /**
+   * Determines whether a job returned by the worker is the one last handed out by getJob.
+   */
+  public boolean matches(Job returnedJob) {
+    return returnedJob.getJobId() == getLeasedJobId();
+  }
+
+  /**
+   * Gets the id of the job last handed out by getJob.
+   */
+  public long getLeasedJobId() {
+    return (skipJob != null ? skipJob : job).getJobId();
+  }
+
+  public void finishJob(Job returnedJob) throws ServerJobException {
 
     if (skipJob != null) {
       if (returnedJob.getJobId() != skipJob.getJobId()) {
@@ -81,7 +125,7 @@ public class SingleJob implements IServerJob {
       } else {
         completer.completeJob(job);
       }
-      return true;
+      return;
     }
 
     if (returnedJob.getJobId() != job.getJobId()) {
@@ -89,6 +133,5 @@ public class SingleJob implements IServerJob {
           + "the currently queued job.");
     }
     completer.completeJob(returnedJob);
-    return true;
   }
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileSenderTest {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private Server server;
+  private String baseUrl;
+  private byte[] contents;
+
+  @Before
+  public void startServer() throws Exception {
+    final File root = testFolder.newFolder("static");
+    contents = new byte[100000];
+    for (int i = 0; i < contents.length; i++) {
+      contents[i] = (byte) (i % 10 + '0');
+    }
+    FileUtils.writeByteArrayToFile(new File(root, "shader.frag"), contents);
+    FileUtils.writeByteArrayToFile(new File(root, "image.png"), contents);
+    FileUtils.writeByteArrayToFile(new File(root, "empty.txt"), new byte[0]);
+    FileUtils.writeStringToFile(new File(root, "variant_0.info.json"),
+        "{\"Status\": \"SUCCESS\"}", StandardCharsets.UTF_8);
+
+    // As in FuzzerServer.
+    final ServletContextHandler context = new ServletContextHandler();
+    context.setContextPath("/");
+    context.addServlet(new ServletHolder(new FileDownloadServlet(
+        (pathInfo, token) -> new File(root, pathInfo), root.getPath())), "/static/*");
+    final RangeAwareGzipHandler gzipHandler = new RangeAwareGzipHandler();
+    gzipHandler.setHandler(context);
+    server = new Server(0);
+    server.setHandler(gzipHandler);
+    server.start();
+    baseUrl = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort()
+        + "/static/";
+  }
+
+  @After
+  public void stopServer() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void testGet() throws Exception {
+    final HttpURLConnection connection = open("shader.frag");
+    assertEquals(200, connection.getResponseCode());
+    assertEquals("text/plain", connection.getContentType());
+    assertEquals("bytes", connection.getHeaderField("Accept-Ranges"));
+    assertNotNull(connection.getHeaderField("ETag"));
+    assertArrayEquals(contents, read(connection));
+  }
+
+  @Test
+  public void testSmallFile() throws Exception {
+    // Copied rather than memory mapped.
+    final HttpURLConnection connection = open("variant_0.info.json");
+    assertEquals(200, connection.getResponseCode());
+    assertEquals("application/json", connection.getContentType());
+    assertEquals("{\"Status\": \"SUCCESS\"}",
+        new String(read(connection), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testEmptyFile() throws Exception {
+    final HttpURLConnection connection = open("empty.txt");
+    assertEquals(200, connection.getResponseCode());
+    assertEquals(0, read(connection).length);
+  }
+
+  @Test
+  public void testMissingFile() throws Exception {
+    assertEquals(404, open("missing.frag").getResponseCode());
+  }
+
+  @Test
+  public void testConditionalGet() throws Exception {
+    final HttpURLConnection first = open("image.png");
+    final String etag = first.getHeaderField("ETag");
+    final long lastModified = first.getLastModified();
+    read(first);
+
+    final HttpURLConnection byTag = open("image.png");
+    byTag.setRequestProperty("If-None-Match", etag);
+    assertEquals(304, byTag.getResponseCode());
+
+    final HttpURLConnection byOtherTag = open("image.png");
+    byOtherTag.setRequestProperty("If-None-Match", "\"other\"");
+    assertEquals(200, byOtherTag.getResponseCode());
+
+    final HttpURLConnection byDate = open("image.png");
+    byDate.setIfModifiedSince(lastModified);
+    assertEquals(304, byDate.getResponseCode());
+  }
+
+  @Test
+  public void testRanges() throws Exception {
+    final HttpURLConnection range = open("image.png");
+    range.setRequestProperty("Range", "bytes=10-19");
+    assertEquals(206, range.getResponseCode());
+    assertEquals("bytes 10-19/100000", range.getHeaderField("Content-Range"));
+    assertArrayEquals(Arrays.copyOfRange(contents, 10, 20), read(range));
+
+    final HttpURLConnection open = open("image.png");
+    open.setRequestProperty("Range", "bytes=99990-");
+    assertEquals(206, open.getResponseCode());
+    assertArrayEquals(Arrays.copyOfRange(contents, 99990, 100000), read(open));
+
+    final HttpURLConnection suffix = open("image.png");
+    suffix.setRequestProperty("Range", "bytes=-5");
+    assertEquals(206, suffix.getResponseCode());
+    assertArrayEquals(Arrays.copyOfRange(contents, 99995, 100000), read(suffix));
+
+    final HttpURLConnection unsatisfiable = open("image.png");
+    unsatisfiable.setRequestProperty("Range", "bytes=100000-");
+    assertEquals(416, unsatisfiable.getResponseCode());
+    assertEquals("bytes */100000", unsatisfiable.getHeaderField("Content-Range"));
+
+    // Several ranges are not supported, so the whole file is sent.
+    final HttpURLConnection several = open("image.png");
+    several.setRequestProperty("Range", "bytes=0-1,5-6");
+    assertEquals(200, several.getResponseCode());
+    assertArrayEquals(contents, read(several));
+
+    // The file has changed since the client got the first part.
+    final HttpURLConnection stale = open("image.png");
+    stale.setRequestProperty("Range", "bytes=10-19");
+    stale.setRequestProperty("If-Range", "\"other\"");
+    assertEquals(200, stale.getResponseCode());
+    assertArrayEquals(contents, read(stale));
+  }
+
+  @Test
+  public void testCompressedMediaIsNotGzipped() throws Exception {
+    final HttpURLConnection image = open("image.png");
+    image.setRequestProperty("Accept-Encoding", "gzip");
+    assertEquals("image/png", image.getContentType());
+    assertNull(image.getContentEncoding());
+    assertArrayEquals(contents, read(image));
+
+    final HttpURLConnection shader = open("shader.frag");
+    shader.setRequestProperty("Accept-Encoding", "gzip");
+    assertEquals("gzip", shader.getContentEncoding());
+  }
+
+  @Test
+  public void testRangeIsNotGzipped() throws Exception {
+    final HttpURLConnection range = open("shader.frag");
+    range.setRequestProperty("Accept-Encoding", "gzip");
+    range.setRequestProperty("Range", "bytes=50000-");
+    assertEquals(206, range.getResponseCode());
+    assertNull(range.getContentEncoding());
+    assertEquals("bytes 50000-99999/100000", range.getHeaderField("Content-Range"));
+    assertArrayEquals(Arrays.copyOfRange(contents, 50000, 100000), read(range));
+  }
+
+  private HttpURLConnection open(String name) throws IOException {
+    return (HttpURLConnection) new URL(baseUrl + name).openConnection();
+  }
+
+  private static byte[] read(HttpURLConnection connection) throws IOException {
+    try (InputStream input = connection.getInputStream()) {
+      return IOUtils.toByteArray(input);
+    }
+  }
+
+}
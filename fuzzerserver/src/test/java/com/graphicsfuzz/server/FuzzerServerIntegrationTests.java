@@ -20,6 +20,7 @@ import static junit.framework.TestCase.assertNotNull;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 
 import com.google.gson.Gson;
 import com.graphicsfuzz.server.thrift.FuzzerService;
@@ -31,7 +32,10 @@ import com.graphicsfuzz.server.thrift.Job;
 import com.graphicsfuzz.server.thrift.JobStatus;
 import com.graphicsfuzz.server.thrift.TokenError;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -134,6 +138,161 @@ public class FuzzerServerIntegrationTests {
     assertEquals("SKIPPED\n", jobResult.getLog());
   }
 
+  @Test
+  public void willCompleteJobsSubmittedWithoutWaiting() throws Exception {
+    final String token = newToken();
+
+    assertNotNull(token);
+    final Job first = new Job().setImageJob(new ImageJob()).setJobId(1);
+    final Job second = new Job().setImageJob(new ImageJob()).setJobId(2);
+
+    final List<Long> submissionIds =
+        this.fuzzerServiceManager.submitJobs(Arrays.asList(first, second), token, 1);
+    assertEquals(2, submissionIds.size());
+    assertTrue(this.fuzzerServiceManager.getJobResults(submissionIds, 0).isEmpty());
+
+    for (JobStatus status : Arrays.asList(JobStatus.SUCCESS, JobStatus.CRASH)) {
+      this.clientRuns(token, (todo) -> {
+        todo.getImageJob().setResult(new ImageJobResult().setStatus(status));
+        return todo;
+      });
+    }
+
+    final Map<Long, Job> results = this.fuzzerServiceManager.getJobResults(submissionIds, 1000);
+    assertEquals(2, results.size());
+    assertEquals(1, results.get(submissionIds.get(0)).getJobId());
+    assertEquals(JobStatus.SUCCESS,
+        results.get(submissionIds.get(0)).getImageJob().getResult().getStatus());
+    assertEquals(2, results.get(submissionIds.get(1)).getJobId());
+    assertEquals(JobStatus.CRASH,
+        results.get(submissionIds.get(1)).getImageJob().getResult().getStatus());
+
+    // Results are only handed out once.
+    assertTrue(this.fuzzerServiceManager.getJobResults(submissionIds, 0).isEmpty());
+  }
+
+  @Test
+  public void willForgetResultsThatAreNotCollected() throws Exception {
+    final String token = newToken();
+
+    assertNotNull(token);
+    final List<Long> submissionIds = this.fuzzerServiceManager.submitJobs(
+        Arrays.asList(new Job().setImageJob(new ImageJob()).setJobId(1)), token, 1);
+    this.clientRuns(token, (todo) -> {
+      todo.getImageJob().setResult(new ImageJobResult().setStatus(JobStatus.SUCCESS));
+      return todo;
+    });
+
+    ((FuzzerServiceManagerImpl) this.fuzzerServiceManager).expirePendingResults(
+        System.currentTimeMillis() + FuzzerServiceManagerImpl.PENDING_RESULT_TTL_MILLIS + 1);
+    assertTrue(this.fuzzerServiceManager.getJobResults(submissionIds, 0).isEmpty());
+  }
+
+  @Test
+  public void willChargeACrashToTheFirstLeasedJob() throws Exception {
+    final String token = newToken();
+
+    assertNotNull(token);
+    final List<Long> submissionIds = this.fuzzerServiceManager.submitJobs(Arrays.asList(
+        new Job().setImageJob(new ImageJob()).setJobId(1),
+        new Job().setImageJob(new ImageJob()).setJobId(2),
+        new Job().setImageJob(new ImageJob()).setJobId(3)), token, 2);
+
+    List<Job> leased = this.fuzzerService.getJobs(token, 3);
+    assertEquals(3, leased.size());
+    this.fuzzerService.jobsDone(token, Arrays.asList(succeed(leased.get(0))));
+
+    // The worker crashes running job 2, which is charged an attempt; job 3 was not started.
+    leased = this.fuzzerService.getJobs(token, 3);
+    assertEquals(2, leased.size());
+    assertEquals(2, leased.get(0).getJobId());
+    assertEquals(3, leased.get(1).getJobId());
+
+    // The worker crashes running job 2 again, which has now used up its attempts.
+    leased = this.fuzzerService.getJobs(token, 3);
+    assertEquals(2, leased.size());
+    assertTrue(leased.get(0).isSetSkipJob());
+    assertEquals(3, leased.get(1).getJobId());
+    this.fuzzerService.jobsDone(token, Arrays.asList(leased.get(0).deepCopy(),
+        succeed(leased.get(1))));
+
+    assertTrue(this.fuzzerService.getJobs(token, 3).isEmpty());
+    final Map<Long, Job> results = this.fuzzerServiceManager.getJobResults(submissionIds, 1000);
+    assertEquals(JobStatus.SUCCESS,
+        results.get(submissionIds.get(0)).getImageJob().getResult().getStatus());
+    assertEquals(JobStatus.SKIPPED,
+        results.get(submissionIds.get(1)).getImageJob().getResult().getStatus());
+    assertEquals(JobStatus.SUCCESS,
+        results.get(submissionIds.get(2)).getImageJob().getResult().getStatus());
+  }
+
+  @Test
+  public void willRecordEachResultOfABatchDespiteFailures() throws Exception {
+    final String token = newToken();
+
+    assertNotNull(token);
+    final List<Long> submissionIds = this.fuzzerServiceManager.submitJobs(Arrays.asList(
+        new Job().setImageJob(new ImageJob()).setJobId(1),
+        new Job().setImageJob(new ImageJob()).setJobId(2)), token, 1);
+
+    final List<Job> leased = this.fuzzerService.getJobs(token, 2);
+    assertEquals(2, leased.size());
+    try {
+      this.fuzzerService.jobsDone(token, Arrays.asList(
+          new Job().setImageJob(new ImageJob()).setJobId(3), succeed(leased.get(1)),
+          succeed(leased.get(0))));
+      fail("Expected the result of the unknown job to be reported.");
+    } catch (TException exception) {
+      assertTrue(exception.getMessage(), exception.getMessage().contains("job 3"));
+    }
+    assertEquals(2, this.fuzzerServiceManager.getJobResults(submissionIds, 1000).size());
+  }
+
+  @Test
+  public void willShareGroupJobsBetweenEquivalentWorkers() throws Exception {
+    final String first = newToken();
+    final String second = newToken();
+
+    final List<Job> jobs = new ArrayList<>();
+    for (int i = 1; i <= 4; i++) {
+      jobs.add(new Job().setImageJob(new ImageJob()).setJobId(i));
+    }
+    final List<Long> submissionIds =
+        this.fuzzerServiceManager.submitJobsToGroup(jobs, first, 1);
+
+    // The jobs are spread over the two workers.
+    List<Job> leased = this.fuzzerService.getJobs(first, 4);
+    assertEquals(2, leased.size());
+    final List<Job> results = new ArrayList<>();
+    for (Job job : leased) {
+      results.add(succeed(job));
+    }
+    this.fuzzerService.jobsDone(first, results);
+
+    // The first worker has run out of jobs, so it steals one of the second worker's two jobs.
+    leased = this.fuzzerService.getJobs(first, 4);
+    assertEquals(1, leased.size());
+    this.fuzzerService.jobsDone(first, Arrays.asList(succeed(leased.get(0))));
+
+    leased = this.fuzzerService.getJobs(second, 4);
+    assertEquals(1, leased.size());
+    this.fuzzerService.jobsDone(second, Arrays.asList(succeed(leased.get(0))));
+
+    assertEquals(4, this.fuzzerServiceManager.getJobResults(submissionIds, 1000).size());
+  }
+
+  @Test
+  public void willNotStealJobsForASpecificWorker() throws Exception {
+    final String first = newToken();
+    final String second = newToken();
+
+    this.fuzzerServiceManager.submitJobs(Arrays.asList(
+        new Job().setImageJob(new ImageJob()).setJobId(1),
+        new Job().setImageJob(new ImageJob()).setJobId(2)), second, 1);
+    assertTrue(this.fuzzerService.getJobs(first, 4).isEmpty());
+    assertEquals(2, this.fuzzerService.getJobs(second, 4).size());
+  }
+
   @Test
   public void willSanitizeValueOnOldToken() throws Exception {
     String oldToken = new String("  helloworld ");
@@ -250,6 +409,12 @@ public class FuzzerServerIntegrationTests {
     this.fuzzerService.jobDone(token, result);
   }
 
+  private Job succeed(Job job) {
+    final Job result = job.deepCopy();
+    result.getImageJob().setResult(new ImageJobResult().setStatus(JobStatus.SUCCESS));
+    return result;
+  }
+
   private String newToken() throws TException {
     String platformInfo = "{}";
     return this.fuzzerService.getToken(
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.Job;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class JobQueueTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private final List<Job> completed = new ArrayList<>();
+
+  @Test
+  public void testLateResultOfReclaimedJob() throws Exception {
+    final JobQueue queue = new JobQueue();
+    queue.addAll(Arrays.asList(newJob(1), newJob(2)));
+    assertEquals(2, queue.lease(2, 0).size());
+
+    // The leases expire while the worker runs job 1; job 1 is completed when its result arrives.
+    queue.reclaimLeases();
+    assertTrue(queue.finish(new Job().setJobId(1)));
+    assertEquals(Arrays.asList(1L), getJobIds(completed));
+    assertEquals(1, queue.getQueuedCount());
+  }
+
+  @Test
+  public void testLateResultOfStolenJob() throws Exception {
+    final JobQueue queue = new JobQueue();
+    queue.addAll(Arrays.asList(newJob(1), newJob(2)));
+    assertEquals(2, queue.lease(2, 0).size());
+
+    // The leases expire while the worker runs job 1, and another worker steals both jobs.
+    queue.reclaimLeases();
+    final JobQueue otherQueue = new JobQueue();
+    otherQueue.addAll(queue.steal(2));
+
+    // The late result is recognized, and can be handed to the other worker's queue.
+    assertFalse(queue.finish(new Job().setJobId(1)));
+    assertTrue(otherQueue.finishQueued(new Job().setJobId(1)));
+    assertEquals(Arrays.asList(1L), getJobIds(completed));
+    assertEquals(1, otherQueue.getQueuedCount());
+  }
+
+  @Test
+  public void testResultOfUnknownJob() throws Exception {
+    final JobQueue queue = new JobQueue();
+    queue.addAll(Arrays.asList(newJob(1)));
+    queue.lease(1, 0);
+    thrown.expect(ServerJobException.class);
+    queue.finish(new Job().setJobId(2));
+  }
+
+  private SingleJob newJob(long jobId) {
+    return new SingleJob(new Job().setImageJob(new ImageJob()).setJobId(jobId), completed::add,
+        new AtomicLong(), 1, true);
+  }
+
+  private static List<Long> getJobIds(List<Job> jobs) {
+    final List<Long> result = new ArrayList<>();
+    for (Job job : jobs) {
+      result.add(job.getJobId());
+    }
+    return result;
+  }
+
+}
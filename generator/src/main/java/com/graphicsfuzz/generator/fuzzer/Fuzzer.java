@@ -54,18 +54,13 @@ import com.graphicsfuzz.common.ast.visitors.CheckPredicateVisitor;
 import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
 import com.graphicsfuzz.common.util.IRandom;
 import com.graphicsfuzz.common.util.ShaderKind;
-import com.graphicsfuzz.generator.fuzzer.templates.FunctionCallExprTemplate;
 import com.graphicsfuzz.generator.fuzzer.templates.IExprTemplate;
-import com.graphicsfuzz.generator.fuzzer.templates.VariableIdentifierExprTemplate;
 import com.graphicsfuzz.generator.util.GenerationParams;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class Fuzzer {
 
@@ -84,7 +79,7 @@ public class Fuzzer {
   private int nextId;
   private FuzzingContext fuzzingContext;
 
-  private Collection<IExprTemplate> builtinTemplates;
+  private final TemplateIndex builtinTemplates;
 
   private final GenerationParams generationParams;
 
@@ -102,7 +97,7 @@ public class Fuzzer {
     this.shadingLanguageVersion = shadingLanguageVersion;
     this.generator = generator;
     this.generationParams = generationParams;
-    this.builtinTemplates = Templates.get(shadingLanguageVersion);
+    this.builtinTemplates = Templates.getIndex(shadingLanguageVersion);
     this.nextId = 0;
     this.fuzzedDeclarationPrefix = fuzzedDeclarationPrefix;
   }
@@ -139,28 +134,21 @@ public class Fuzzer {
     }
     if (targetType instanceof BasicType) {
 
-      List<IExprTemplate> applicableTemplates = availableTemplates()
-            .filter(item -> item.getResultType().equals(targetType)).collect(Collectors.toList());
-      if (isLValue) {
-        applicableTemplates = applicableTemplates.stream().filter(item -> item.isLValue())
-              .collect(Collectors.toList());
-      }
-      if (constContext) {
-        applicableTemplates = applicableTemplates.stream().filter(item -> item.isConst())
-              .collect(Collectors.toList());
-      }
-      if (isTooDeep(depth)) {
-        applicableTemplates = applicableTemplates.stream()
-              .filter(item -> item.getNumArguments() == 0)
-              .collect(Collectors.toList());
-      }
+      final boolean tooDeep = isTooDeep(depth);
+      final List<IExprTemplate> applicableBuiltins = builtinTemplates.get(targetType, isLValue,
+            constContext, tooDeep);
+      final List<IExprTemplate> applicableFromContext = fuzzingContext.getTemplateIndex()
+            .get(targetType, isLValue, constContext, tooDeep);
+      final int numApplicableTemplates = applicableBuiltins.size() + applicableFromContext.size();
 
-      if (applicableTemplates.size() == 0) {
+      if (numApplicableTemplates == 0) {
         throw new FuzzedIntoACornerException();
       }
 
-      IExprTemplate template = applicableTemplates
-            .get(generator.nextInt(applicableTemplates.size()));
+      final int templateIndex = generator.nextInt(numApplicableTemplates);
+      IExprTemplate template = templateIndex < applicableBuiltins.size()
+            ? applicableBuiltins.get(templateIndex)
+            : applicableFromContext.get(templateIndex - applicableBuiltins.size());
 
       List<Expr> args = new ArrayList<Expr>();
       for (int i = 0; i < template.getNumArguments(); i++) {
@@ -215,23 +203,6 @@ public class Fuzzer {
     return false;
   }
 
-  private Stream<IExprTemplate> availableTemplates() {
-    return Stream.concat(builtinTemplates.stream(),
-          availableTemplatesFromContext());
-  }
-
-  private Stream<IExprTemplate> availableTemplatesFromContext() {
-    List<IExprTemplate> available = new LinkedList<>();
-    for (String name : fuzzingContext.getCurrentScope().namesOfAllVariablesInScope()) {
-      available.add(new VariableIdentifierExprTemplate(name,
-            fuzzingContext.getCurrentScope().lookupType(name)));
-    }
-    for (FunctionPrototype proto : fuzzingContext.getFunctionPrototypes()) {
-      available.add(new FunctionCallExprTemplate(proto));
-    }
-    return available.stream();
-  }
-
   public static void main(String[] args) {
     try {
       //testFuzzExpr(args);
@@ -21,6 +21,9 @@ import com.graphicsfuzz.common.ast.decl.ParameterDecl;
 import com.graphicsfuzz.common.ast.type.StructType;
 import com.graphicsfuzz.common.ast.type.Type;
 import com.graphicsfuzz.common.typing.Scope;
+import com.graphicsfuzz.generator.fuzzer.templates.FunctionCallExprTemplate;
+import com.graphicsfuzz.generator.fuzzer.templates.IExprTemplate;
+import com.graphicsfuzz.generator.fuzzer.templates.VariableIdentifierExprTemplate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -38,10 +41,20 @@ public class FuzzingContext {
 
   private FunctionPrototype enclosingFunction = null;
 
+  // Templates for the variables in the current scope and the functions added so far, and those of
+  // the scopes enclosing the current scope, so that leaving a scope reuses the templates of the
+  // scope it returns to.  Templates are only made again when the variables or functions change.
+  private ContextTemplates contextTemplates = null;
+  private final List<ContextTemplates> enclosingContextTemplates = new ArrayList<>();
+
+  /**
+   * Creates a context whose variables are those of the given scope.  A scope snapshot, such as the
+   * scope at an injection point, is cloned so that the fuzzer can declare variables.
+   */
   public FuzzingContext(Scope currentScope) {
     this.functions = new ArrayList<>();
     this.structs = new ArrayList<>();
-    this.currentScope = currentScope;
+    this.currentScope = currentScope.isFrozen() ? currentScope.shallowClone() : currentScope;
     this.enclosingLoops = 0;
   }
 
@@ -82,10 +95,36 @@ public class FuzzingContext {
   public void enterScope() {
     Scope newScope = new Scope(currentScope);
     currentScope = newScope;
+    enclosingContextTemplates.add(contextTemplates);
   }
 
   public void leaveScope() {
     currentScope = currentScope.getParent();
+    contextTemplates = enclosingContextTemplates.isEmpty()
+        ? null
+        : enclosingContextTemplates.remove(enclosingContextTemplates.size() - 1);
+  }
+
+  /**
+   * Yields templates for the variables in scope and the functions that have been added, indexed
+   * so that the fuzzer can find those applicable when making an expression.
+   */
+  TemplateIndex getTemplateIndex() {
+    // The scope yields the same list of names until the variables in scope change.
+    final List<String> names = currentScope.namesOfAllVariablesInScope();
+    if (contextTemplates == null || contextTemplates.names != names
+        || contextTemplates.numFunctions != functions.size()) {
+      final List<IExprTemplate> templates = new ArrayList<>();
+      for (String name : names) {
+        templates.add(new VariableIdentifierExprTemplate(name, currentScope.lookupType(name)));
+      }
+      for (FunctionPrototype proto : functions) {
+        templates.add(new FunctionCallExprTemplate(proto));
+      }
+      contextTemplates = new ContextTemplates(names, functions.size(),
+          new TemplateIndex(templates));
+    }
+    return contextTemplates.index;
   }
 
   public boolean inLoop() {
@@ -135,4 +174,19 @@ public class FuzzingContext {
   public boolean hasEnclosingFunction() {
     return enclosingFunction != null;
   }
+
+  private static class ContextTemplates {
+
+    private final List<String> names;
+    private final int numFunctions;
+    private final TemplateIndex index;
+
+    private ContextTemplates(List<String> names, int numFunctions, TemplateIndex index) {
+      this.names = names;
+      this.numFunctions = numFunctions;
+      this.index = index;
+    }
+
+  }
+
 }
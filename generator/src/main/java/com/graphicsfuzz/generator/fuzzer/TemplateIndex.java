@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.fuzzer;
+
+import com.graphicsfuzz.common.ast.type.Type;
+import com.graphicsfuzz.generator.fuzzer.templates.IExprTemplate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexes expression templates by result type, and by whether they yield l-values, whether they
+ * are const and whether they take no arguments, so that the templates applicable when making an
+ * expression can be found without filtering all of them.  Templates are yielded in the order in
+ * which they were indexed.  Immutable, and so thread-safe.
+ */
+class TemplateIndex {
+
+  private static final int LVALUE = 1;
+  private static final int CONST = 2;
+  private static final int NO_ARGUMENTS = 4;
+  private static final int NUM_REQUIREMENTS = 8;
+
+  // For each result type, the templates that meet each combination of requirements.
+  private final Map<Type, List<List<IExprTemplate>>> templatesByResultType;
+
+  TemplateIndex(Collection<? extends IExprTemplate> templates) {
+    final Map<Type, List<List<IExprTemplate>>> result = new HashMap<>();
+    for (IExprTemplate template : templates) {
+      final List<List<IExprTemplate>> lists = result.computeIfAbsent(template.getResultType(),
+          item -> {
+            final List<List<IExprTemplate>> empty = new ArrayList<>();
+            for (int i = 0; i < NUM_REQUIREMENTS; i++) {
+              empty.add(new ArrayList<>());
+            }
+            return empty;
+          });
+      for (int requirements = 0; requirements < NUM_REQUIREMENTS; requirements++) {
+        if ((requirements & LVALUE) != 0 && !template.isLValue()) {
+          continue;
+        }
+        if ((requirements & CONST) != 0 && !template.isConst()) {
+          continue;
+        }
+        if ((requirements & NO_ARGUMENTS) != 0 && template.getNumArguments() != 0) {
+          continue;
+        }
+        lists.get(requirements).add(template);
+      }
+    }
+    this.templatesByResultType = result;
+  }
+
+  /**
+   * Yields the templates that have the given result type and meet the given requirements.
+   * @param resultType The type of expression required
+   * @param isLValue Whether the expression must be an l-value
+   * @param isConst Whether the expression must be const
+   * @param noArguments Whether the template must take no arguments
+   * @return The applicable templates, which must not be modified
+   */
+  List<IExprTemplate> get(Type resultType, boolean isLValue, boolean isConst,
+        boolean noArguments) {
+    final List<List<IExprTemplate>> lists = templatesByResultType.get(resultType);
+    if (lists == null) {
+      return Collections.emptyList();
+    }
+    return lists.get((isLValue ? LVALUE : 0) | (isConst ? CONST : 0)
+        | (noArguments ? NO_ARGUMENTS : 0));
+  }
+
+}
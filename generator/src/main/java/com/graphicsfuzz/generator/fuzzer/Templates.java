@@ -49,6 +49,9 @@ public class Templates {
   private static ConcurrentMap<ShadingLanguageVersion, List<IExprTemplate>> templates
         = new ConcurrentHashMap<>();
 
+  private static ConcurrentMap<ShadingLanguageVersion, TemplateIndex> indexes
+        = new ConcurrentHashMap<>();
+
   private Templates() {
     // Utility class
   }
@@ -60,6 +63,15 @@ public class Templates {
     return Collections.unmodifiableList(templates.get(shadingLanguageVersion));
   }
 
+  /**
+   * Yields the templates for the given shading language version, indexed so that the fuzzer can
+   * find those applicable when making an expression.  The index is built once per version.
+   */
+  static TemplateIndex getIndex(ShadingLanguageVersion shadingLanguageVersion) {
+    return indexes.computeIfAbsent(shadingLanguageVersion,
+        item -> new TemplateIndex(get(item)));
+  }
+
   public static List<IExprTemplate> makeTemplates(ShadingLanguageVersion shadingLanguageVersion) {
 
     // TODO: assignment operators, array, vector and matrix lookups
@@ -32,8 +32,7 @@ import com.graphicsfuzz.common.util.ParseHelper;
 import com.graphicsfuzz.common.util.ParseTimeoutException;
 import com.graphicsfuzz.common.util.RandomWrapper;
 import com.graphicsfuzz.common.util.ShaderKind;
-import com.graphicsfuzz.common.util.StripUnusedFunctions;
-import com.graphicsfuzz.common.util.StripUnusedGlobals;
+import com.graphicsfuzz.common.util.StripUnusedFunctionsAndGlobals;
 import com.graphicsfuzz.common.util.UniformsInfo;
 import com.graphicsfuzz.generator.FloatLiteralReplacer;
 import com.graphicsfuzz.generator.transformation.ITransformation;
@@ -58,7 +57,9 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.function.Supplier;
@@ -160,19 +161,42 @@ public class Generate {
 
   public static void generateVariant(GeneratorArguments args) throws IOException,
           ParseTimeoutException {
+    generateVariant(args, parseReferenceShaders(args));
+  }
+
+  /**
+   * Parses the reference shaders named by the given arguments, so that several variants can be
+   * generated from them without re-parsing.
+   */
+  public static Map<ShaderKind, TranslationUnit> parseReferenceShaders(GeneratorArguments args)
+          throws IOException, ParseTimeoutException {
+    final Map<ShaderKind, TranslationUnit> result = new HashMap<>();
+    if (args.hasReferenceFragmentShader()) {
+      result.put(ShaderKind.FRAGMENT,
+              getRecipientTranslationUnit(args.getReferenceFragmentShader()));
+    }
+    if (args.hasReferenceVertexShader()) {
+      result.put(ShaderKind.VERTEX, getRecipientTranslationUnit(args.getReferenceVertexShader()));
+    }
+    return result;
+  }
+
+  /**
+   * Generates a variant from reference shaders that have already been parsed, via
+   * parseReferenceShaders.  The given translation units are not modified.
+   */
+  public static void generateVariant(GeneratorArguments args,
+          Map<ShaderKind, TranslationUnit> referenceShaders) throws IOException {
     final UniformsInfo uniformsInfo = new UniformsInfo(args.getUniforms());
     setInjectionSwitch(uniformsInfo);
 
     StringBuilder transformationsApplied = new StringBuilder();
 
-    if (args.hasReferenceFragmentShader()) {
-      generateShader(args, uniformsInfo, transformationsApplied,
-              ShaderKind.FRAGMENT, args.getReferenceFragmentShader());
-    }
-
-    if (args.hasReferenceVertexShader()) {
-      generateShader(args, uniformsInfo, transformationsApplied,
-              ShaderKind.VERTEX, args.getReferenceVertexShader());
+    for (ShaderKind shaderKind : Arrays.asList(ShaderKind.FRAGMENT, ShaderKind.VERTEX)) {
+      if (referenceShaders.containsKey(shaderKind)) {
+        generateShader(args, uniformsInfo, transformationsApplied, shaderKind,
+                referenceShaders.get(shaderKind).cloneAndPatchUp());
+      }
     }
 
     Helper.emitUniformsInfo(uniformsInfo, new PrintStream(
@@ -186,9 +210,8 @@ public class Generate {
 
   private static void generateShader(GeneratorArguments args, UniformsInfo uniformsInfo,
                                      StringBuilder transformationsApplied, ShaderKind shaderKind,
-                                     File shaderFile) throws IOException, ParseTimeoutException {
+                                     TranslationUnit referenceShader) throws IOException {
     transformationsApplied.append("======\n" + shaderKind + ":\n");
-    final TranslationUnit referenceShader = getRecipientTranslationUnit(shaderFile);
 
     if (args.getReplaceFloatLiterals()) {
       FloatLiteralReplacer.replace(referenceShader, uniformsInfo, args.getShadingLanguageVersion());
@@ -222,8 +245,7 @@ public class Generate {
     }
 
     if (args.getSmall()) {
-      StripUnusedFunctions.strip(referenceShader);
-      StripUnusedGlobals.strip(referenceShader);
+      StripUnusedFunctionsAndGlobals.strip(referenceShader);
     }
 
     randomiseUnsetUniforms(referenceShader, uniformsInfo, generator.spawnChild());
@@ -329,6 +351,7 @@ public class Generate {
     List<ITransformation> done = new ArrayList<>();
     String result = "";
     while (!shaderLargeEnough(reference, generator)) {
+      checkNotInterrupted();
       ITransformation transformation = transformations.remove(generator.nextInt(
             transformations.size()));
       result += transformation.getName() + "\n";
@@ -336,8 +359,7 @@ public class Generate {
             generator.spawnChild(),
             generationParams);
       // Keep the size down by stripping unused stuff.
-      StripUnusedFunctions.strip(reference);
-      StripUnusedGlobals.strip(reference);
+      StripUnusedFunctionsAndGlobals.strip(reference);
       done.add(transformation);
       if (transformations.isEmpty()) {
         transformations = done;
@@ -347,6 +369,16 @@ public class Generate {
     return result;
   }
 
+  /**
+   * Stops generation between transformations if the generating thread has been interrupted, as
+   * happens when GenerateShaderFamily abandons an attempt that has run for too long.
+   */
+  private static void checkNotInterrupted() {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new RuntimeException("Generation was interrupted.");
+    }
+  }
+
   private static boolean shaderLargeEnough(TranslationUnit tu, IRandom generator) {
     StatsVisitor statsVisitor = new StatsVisitor();
     statsVisitor.visit(tu);
@@ -377,6 +409,7 @@ public class Generate {
 
     int numTransformationsApplied = 0;
     while (!transformations.isEmpty()) {
+      checkNotInterrupted();
       int index = generator.nextInt(transformations.size());
       ITransformation transformation = transformations.remove(index);
 
@@ -0,0 +1,510 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.tool;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.util.ExecHelper;
+import com.graphicsfuzz.common.util.ExecHelper.RedirectType;
+import com.graphicsfuzz.common.util.ExecResult;
+import com.graphicsfuzz.common.util.ParseTimeoutException;
+import com.graphicsfuzz.common.util.ShaderKind;
+import com.graphicsfuzz.common.util.ToolHelper;
+import com.graphicsfuzz.common.util.ToolPaths;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Generates a family of variants from a reference shader within a single process: the reference
+ * is parsed once, donors are parsed at most once, and variants are generated in parallel.
+ *
+ * <p>Every generation attempt gets its own seed, drawn in sequence as the former Python driver
+ * drew them from --seed, and attempts are accepted or discarded in sequence.  The family produced
+ * is thus determined by --seed alone, independently of the number of threads used, unless an
+ * attempt times out, and is the same as the Python driver produced.</p>
+ *
+ * <p>An attempt that runs for longer than --timeout seconds is abandoned: its thread is
+ * interrupted, and whatever it writes is deleted.  Attempts run on a pool of --max_threads
+ * threads, so an abandoned attempt keeps its thread until it stops, and the attempt that replaces
+ * it only starts once it has.</p>
+ */
+public class GenerateShaderFamily {
+
+  private static final String ATTEMPT_PREFIX = "attempt_";
+  private static final String BAD_PREFIX = "bad_";
+
+  private static final List<String> VARIANT_FILE_EXTENSIONS =
+      Arrays.asList(".frag", ".vert", ".json", ".prob");
+
+  private static final long WAIT_FOR_START_MILLIS = 100;
+
+  private enum Outcome {
+    GENERATED,
+    GENERATION_FAILED,
+    TIMED_OUT,
+    TOO_LARGE,
+    INVALID
+  }
+
+  private static final class Attempt {
+    private final String prefix;
+    private Future<Outcome> outcome;
+
+    // When the attempt started running, in milliseconds since the epoch, or 0 if it has not.
+    private volatile long startTime;
+
+    Attempt(String prefix) {
+      this.prefix = prefix;
+    }
+  }
+
+  private static Namespace parse(String[] args) {
+    ArgumentParser parser = ArgumentParsers.newArgumentParser("GenerateShaderFamily")
+        .defaultHelp(true)
+        .description("Generate a family of variant shaders from a reference shader.");
+
+    // Required arguments
+    parser.addArgument("reference_prefix")
+        .help("Prefix of reference shaders and accompanying metadata.")
+        .type(String.class);
+
+    parser.addArgument("donors")
+        .help("Path of folder of donor shaders.")
+        .type(File.class);
+
+    parser.addArgument("glsl_version")
+        .help("Version of GLSL to target.")
+        .type(String.class);
+
+    parser.addArgument("output_dir")
+        .help("Directory to hold the shader family; replaced if it already exists.")
+        .type(File.class);
+
+    Generate.addGeneratorCommonArguments(parser);
+
+    parser.addArgument("--num_variants")
+        .help("Number of variants to produce.")
+        .setDefault(10)
+        .type(Integer.class);
+
+    parser.addArgument("--max_threads")
+        .help("Number of variants to generate in parallel.")
+        .setDefault(Runtime.getRuntime().availableProcessors())
+        .type(Integer.class);
+
+    parser.addArgument("--timeout")
+        .help("Time in seconds after which generation of a variant is abandoned (<=0 = no "
+            + "limit).")
+        .setDefault(30)
+        .type(Integer.class);
+
+    parser.addArgument("--hash_file")
+        .help("Path of file containing the git hash to record in the family's info log "
+            + "(default: the HASH file of the installation).")
+        .type(File.class);
+
+    parser.addArgument("--chunk_size")
+        .help("Number of non-verbose progress messages (<=0 = none).")
+        .setDefault(4)
+        .type(Integer.class);
+
+    parser.addArgument("--max_bytes")
+        .help("Maximum allowed size, in bytes, for a variant shader (default: no limit).")
+        .type(Integer.class);
+
+    parser.addArgument("--max_factor")
+        .help("Maximum blowup allowed, compared with the size of the reference shader "
+            + "(default: no limit).")
+        .type(Float.class);
+
+    parser.addArgument("--disable_validator")
+        .help("Do not validate generated variants.")
+        .action(Arguments.storeTrue());
+
+    parser.addArgument("--validator_path")
+        .help("Path of glslangValidator, used to validate variants.")
+        .setDefault(ToolPaths.glslangValidator())
+        .type(String.class);
+
+    parser.addArgument("--translator_path")
+        .help("Path of shader_translator, used to validate WebGL and GLSL 100 variants.")
+        .setDefault(ToolPaths.shaderTranslator())
+        .type(String.class);
+
+    parser.addArgument("--keep_bad_variants")
+        .help("Keep invalid variants, with a \"" + BAD_PREFIX + "\" prefix.")
+        .action(Arguments.storeTrue());
+
+    parser.addArgument("--stop_on_fail")
+        .help("Quit if generation of a variant fails or an invalid variant is generated.")
+        .action(Arguments.storeTrue());
+
+    parser.addArgument("--verbose")
+        .help("Emit detailed information regarding the progress of generation.")
+        .action(Arguments.storeTrue());
+
+    try {
+      return parser.parseArgs(args);
+    } catch (ArgumentParserException exception) {
+      exception.getParser().handleError(exception);
+      System.exit(1);
+      return null;
+    }
+
+  }
+
+  public static void main(String[] args) {
+    try {
+      mainHelper(args);
+    } catch (Throwable throwable) {
+      throwable.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  public static void mainHelper(String[] args) throws IOException, ParseTimeoutException,
+      InterruptedException, ExecutionException {
+    final Namespace ns = parse(args);
+
+    final ShadingLanguageVersion shadingLanguageVersion = ns.get("webgl")
+        ? ShadingLanguageVersion.webGlFromVersionString(ns.get("glsl_version"))
+        : ShadingLanguageVersion.fromVersionString(ns.get("glsl_version"));
+    final String referencePrefix = ns.getString("reference_prefix");
+    final File donors = ns.get("donors");
+    final File outputDir = ns.get("output_dir");
+    final boolean verbose = ns.getBoolean("verbose");
+    final boolean stopOnFail = ns.getBoolean("stop_on_fail");
+    final int numVariants = ns.getInt("num_variants");
+    final int timeoutSeconds = ns.getInt("timeout");
+    final int chunkSize = ns.getInt("chunk_size");
+
+    if (!new File(referencePrefix + ".json").isFile()) {
+      throw new RuntimeException("No uniforms file present for reference '" + referencePrefix
+          + "'.");
+    }
+    final File[] donorFiles = donors.listFiles((dir, name) -> name.endsWith(".frag"));
+    if (donorFiles == null || donorFiles.length == 0) {
+      throw new RuntimeException("Donor folder " + donors + " contains no .frag files.");
+    }
+
+    if (outputDir.exists()) {
+      System.out.println("Overwriting previous output folder (" + outputDir + ").");
+      FileUtils.deleteDirectory(outputDir);
+    }
+    FileUtils.forceMkdir(outputDir);
+
+    PrepareReference.prepareReference(referencePrefix, outputDir, "reference",
+        shadingLanguageVersion, ns.getBoolean("replace_float_literals"));
+    for (ShaderKind shaderKind : Arrays.asList(ShaderKind.FRAGMENT, ShaderKind.VERTEX)) {
+      final File referenceShader = new File(outputDir, "reference"
+          + shaderKind.getFileExtension());
+      if (referenceShader.isFile()
+          && !isValid(ns, shadingLanguageVersion, referenceShader)) {
+        throw new RuntimeException("The reference " + shaderKind + " shader is not valid.");
+      }
+    }
+    copyPrimitivesAndTexture(referencePrefix, outputDir);
+
+    final Map<ShaderKind, TranslationUnit> referenceShaders =
+        Generate.parseReferenceShaders(makeGeneratorArguments(ns, shadingLanguageVersion, 0,
+            ATTEMPT_PREFIX));
+
+    final LegacySeedSequence seeds = new LegacySeedSequence(ns.getInt("seed"));
+    // Attempts run on daemon threads, so that an abandoned attempt that ignores being interrupted
+    // does not keep the process alive.
+    final ExecutorService executor = Executors.newFixedThreadPool(ns.getInt("max_threads"),
+        runnable -> {
+          final Thread thread = new Thread(runnable);
+          thread.setDaemon(true);
+          return thread;
+        });
+    final List<String> abandonedPrefixes = new ArrayList<>();
+    int attempts = 0;
+    int variants = 0;
+    int chunkCount = 0;
+    try {
+      while (variants < numVariants) {
+        // Launch as many attempts as there are variants still to produce, and then consider
+        // them in order, so that the variants accepted do not depend on scheduling.
+        final List<Attempt> pending = new ArrayList<>();
+        for (int i = variants; i < numVariants; i++) {
+          final int seed = seeds.next();
+          final Attempt attempt = new Attempt(ATTEMPT_PREFIX + attempts);
+          if (verbose) {
+            System.out.println("Trying attempt " + attempts + " with seed " + seed + ".");
+          }
+          attempts++;
+          final GeneratorArguments generatorArguments =
+              makeGeneratorArguments(ns, shadingLanguageVersion, seed, attempt.prefix);
+          attempt.outcome = executor.submit(() -> {
+            attempt.startTime = System.currentTimeMillis();
+            return tryGenerateVariant(ns, shadingLanguageVersion, generatorArguments,
+                referenceShaders);
+          });
+          pending.add(attempt);
+        }
+        for (Attempt attempt : pending) {
+          final String attemptPrefix = attempt.prefix;
+          final Outcome outcome = awaitOutcome(attempt, timeoutSeconds);
+          if (verbose) {
+            System.out.println("Attempt " + attemptPrefix + ": " + outcome + ".");
+          }
+          switch (outcome) {
+            case GENERATED:
+              final String variantPrefix = String.format("variant_%03d", variants);
+              renameVariantFiles(outputDir, attemptPrefix, variantPrefix);
+              final File primitives = new File(outputDir, "reference.primitives");
+              if (primitives.isFile()) {
+                FileUtils.copyFile(primitives, new File(outputDir,
+                    variantPrefix + ".primitives"));
+              }
+              variants++;
+              if (!verbose && chunkSize > 0 && numVariants >= chunkSize && variants < numVariants
+                  && variants % (numVariants / chunkSize) == 0) {
+                chunkCount++;
+                System.out.print("Done " + (100 / chunkSize * chunkCount) + "%...\r");
+              }
+              break;
+            case INVALID:
+              if (ns.getBoolean("keep_bad_variants")) {
+                renameVariantFiles(outputDir, attemptPrefix, BAD_PREFIX + attemptPrefix);
+              } else {
+                deleteVariantFiles(outputDir, attemptPrefix);
+              }
+              if (stopOnFail) {
+                throw new RuntimeException("Generated an invalid variant, stopping.");
+              }
+              break;
+            case TIMED_OUT:
+            case GENERATION_FAILED:
+              if (outcome == Outcome.TIMED_OUT) {
+                abandonedPrefixes.add(attemptPrefix);
+              }
+              deleteVariantFiles(outputDir, attemptPrefix);
+              if (stopOnFail) {
+                throw new RuntimeException("Failed generating a variant, stopping.");
+              }
+              break;
+            case TOO_LARGE:
+              // A generated shader is too large; discard it, but do not regard it as bad.
+              deleteVariantFiles(outputDir, attemptPrefix);
+              break;
+            default:
+              throw new RuntimeException("Unknown outcome " + outcome);
+          }
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      // Abandoned attempts may have written files since they were abandoned; give them a chance
+      // to stop first.
+      executor.awaitTermination(Math.max(timeoutSeconds, 0), TimeUnit.SECONDS);
+      for (String prefix : abandonedPrefixes) {
+        deleteVariantFiles(outputDir, prefix);
+      }
+    }
+
+    writeInfoLog(ns, outputDir);
+    System.out.println("Generation complete -- generated " + variants + " variants in "
+        + attempts + " tries.");
+  }
+
+  /**
+   * Waits for the outcome of an attempt, abandoning the attempt if it has been running for
+   * longer than timeoutSeconds seconds; 0 or less means no limit.  The time an attempt spends
+   * waiting for a thread does not count.
+   */
+  private static Outcome awaitOutcome(Attempt attempt, int timeoutSeconds)
+      throws InterruptedException, ExecutionException {
+    if (timeoutSeconds <= 0) {
+      return attempt.outcome.get();
+    }
+    while (true) {
+      final long startTime = attempt.startTime;
+      final long remainingMillis = startTime == 0
+          ? WAIT_FOR_START_MILLIS
+          : startTime + TimeUnit.SECONDS.toMillis(timeoutSeconds) - System.currentTimeMillis();
+      if (remainingMillis <= 0) {
+        attempt.outcome.cancel(true);
+        return Outcome.TIMED_OUT;
+      }
+      try {
+        return attempt.outcome.get(remainingMillis, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException exception) {
+        // Check again whether the attempt has started, or has run out of time.
+      }
+    }
+  }
+
+  private static GeneratorArguments makeGeneratorArguments(Namespace ns,
+      ShadingLanguageVersion shadingLanguageVersion, int seed, String outputPrefix) {
+    return new GeneratorArguments(shadingLanguageVersion,
+        ns.getString("reference_prefix"),
+        seed,
+        ns.getBoolean("small"),
+        ns.getBoolean("avoid_long_loops"),
+        ns.getBoolean("multi_pass"),
+        ns.getBoolean("aggressively_complicate_control_flow"),
+        ns.getBoolean("replace_float_literals"),
+        ns.get("donors"),
+        ns.get("output_dir"),
+        outputPrefix,
+        Generate.getTransformationDisablingFlags(ns));
+  }
+
+  private static Outcome tryGenerateVariant(Namespace ns,
+      ShadingLanguageVersion shadingLanguageVersion, GeneratorArguments generatorArguments,
+      Map<ShaderKind, TranslationUnit> referenceShaders) throws IOException, InterruptedException {
+    try {
+      Generate.generateVariant(generatorArguments, referenceShaders);
+    } catch (Throwable throwable) {
+      if (ns.getBoolean("verbose")) {
+        System.out.println("Failed generating variant " + generatorArguments.getOutputPrefix()
+            + ":");
+        throwable.printStackTrace(System.out);
+      }
+      return Outcome.GENERATION_FAILED;
+    }
+    for (ShaderKind shaderKind : Arrays.asList(ShaderKind.FRAGMENT, ShaderKind.VERTEX)) {
+      final File variantShader = new File(generatorArguments.getOutputFolder(),
+          generatorArguments.getOutputPrefix() + shaderKind.getFileExtension());
+      if (!variantShader.isFile()) {
+        continue;
+      }
+      if (tooLarge(ns, variantShader, new File(ns.getString("reference_prefix")
+          + shaderKind.getFileExtension()))) {
+        return Outcome.TOO_LARGE;
+      }
+      if (!ns.getBoolean("disable_validator")
+          && !isValid(ns, shadingLanguageVersion, variantShader)) {
+        return Outcome.INVALID;
+      }
+    }
+    return Outcome.GENERATED;
+  }
+
+  private static boolean tooLarge(Namespace ns, File variantShader, File referenceShader) {
+    final Float maxFactor = ns.get("max_factor");
+    final Integer maxBytes = ns.get("max_bytes");
+    if (maxFactor != null && variantShader.length() > maxFactor * referenceShader.length()) {
+      return true;
+    }
+    return maxBytes != null && variantShader.length() > maxBytes;
+  }
+
+  private static boolean isValid(Namespace ns, ShadingLanguageVersion shadingLanguageVersion,
+      File shader) throws IOException, InterruptedException {
+    if (ns.getBoolean("disable_validator")) {
+      return true;
+    }
+    ExecResult result = new ExecHelper().exec(RedirectType.TO_BUFFER, null, false,
+        ToolHelper.VALIDATOR_TIMEOUT_SECONDS, ns.getString("validator_path"), shader.toString());
+    if (result.res == 0 && shadingLanguageVersion.isWebGl()) {
+      result = new ExecHelper().exec(RedirectType.TO_BUFFER, null, false,
+          ToolHelper.VALIDATOR_TIMEOUT_SECONDS, ns.getString("translator_path"), "-s=w",
+          shader.toString());
+    } else if (result.res == 0 && shadingLanguageVersion == ShadingLanguageVersion.ESSL_100) {
+      result = new ExecHelper().exec(RedirectType.TO_BUFFER, null, false,
+          ToolHelper.VALIDATOR_TIMEOUT_SECONDS, ns.getString("translator_path"),
+          shader.toString());
+    }
+    if (result.res != 0 && ns.getBoolean("verbose")) {
+      System.out.println("Failed validating " + shader + ":");
+      System.out.println(result.stdout);
+      System.out.println(result.stderr);
+    }
+    return result.res == 0;
+  }
+
+  private static void copyPrimitivesAndTexture(String referencePrefix, File outputDir)
+      throws IOException {
+    final File primitives = new File(referencePrefix + ".primitives");
+    if (!primitives.isFile()) {
+      return;
+    }
+    FileUtils.copyFile(primitives, new File(outputDir, "reference.primitives"));
+    final JsonObject primitivesData = new JsonParser().parse(
+        FileUtils.readFileToString(primitives, StandardCharsets.UTF_8)).getAsJsonObject();
+    if (primitivesData.has("texture")) {
+      final String texture = primitivesData.get("texture").getAsString();
+      File textureFile = new File(texture);
+      if (!textureFile.isFile()) {
+        textureFile = new File(primitives.getAbsoluteFile().getParentFile(), texture);
+      }
+      FileUtils.copyFile(textureFile, new File(outputDir, FilenameUtils.getName(texture)));
+    }
+  }
+
+  private static void renameVariantFiles(File outputDir, String fromPrefix, String toPrefix)
+      throws IOException {
+    for (String extension : VARIANT_FILE_EXTENSIONS) {
+      final File file = new File(outputDir, fromPrefix + extension);
+      if (file.isFile()) {
+        final File dest = new File(outputDir, toPrefix + extension);
+        FileUtils.deleteQuietly(dest);
+        FileUtils.moveFile(file, dest);
+      }
+    }
+  }
+
+  private static void deleteVariantFiles(File outputDir, String prefix) {
+    for (String extension : VARIANT_FILE_EXTENSIONS) {
+      FileUtils.deleteQuietly(new File(outputDir, prefix + extension));
+    }
+  }
+
+  private static void writeInfoLog(Namespace ns, File outputDir) throws IOException {
+    final JsonObject info = new JsonObject();
+    final File hashFile = ns.get("hash_file") != null
+        ? ns.get("hash_file")
+        : new File(ToolPaths.getInstallDirectory(), "HASH");
+    if (hashFile.isFile()) {
+      info.addProperty("git_hash", FileUtils.readFileToString(hashFile, StandardCharsets.UTF_8));
+    }
+    info.addProperty("glsl_version", ns.getString("glsl_version"));
+    info.addProperty("webgl", ns.getBoolean("webgl"));
+    info.addProperty("seed", ns.getInt("seed"));
+    info.addProperty("reference_basename",
+        FilenameUtils.getName(ns.getString("reference_prefix")));
+    final JsonObject infoLog = new JsonObject();
+    infoLog.add("dict", info);
+    FileUtils.writeStringToFile(new File(outputDir, "infolog.json"),
+        new GsonBuilder().setPrettyPrinting().create().toJson(infoLog), StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.tool;
+
+/**
+ * The sequence of seeds that the former generate_shader_family.py driver passed to the
+ * generator, one per generation attempt, so that a shader family generated with a given --seed
+ * is the same as before.
+ *
+ * <p>The driver seeded Python's random module, a Mersenne Twister, with --seed, and drew each
+ * seed with random.randint(0, 2**16).  This class reproduces those draws.</p>
+ */
+final class LegacySeedSequence {
+
+  private static final int MAX_SEED = 1 << 16;
+
+  private static final int N = 624;
+  private static final int M = 397;
+  private static final int MATRIX_A = 0x9908b0df;
+  private static final int UPPER_MASK = 0x80000000;
+  private static final int LOWER_MASK = 0x7fffffff;
+
+  private final int[] state = new int[N];
+  private int index;
+
+  LegacySeedSequence(int seed) {
+    // Python seeds the generator with the 32-bit words of the absolute value of the seed, which
+    // for a Java int is a single word.
+    initGenrand(19650218);
+    final int key = Math.abs(seed);
+    int i = 1;
+    for (int k = N; k > 0; k--) {
+      state[i] = (state[i] ^ ((state[i - 1] ^ (state[i - 1] >>> 30)) * 1664525)) + key;
+      i++;
+      if (i >= N) {
+        state[0] = state[N - 1];
+        i = 1;
+      }
+    }
+    for (int k = N - 1; k > 0; k--) {
+      state[i] = (state[i] ^ ((state[i - 1] ^ (state[i - 1] >>> 30)) * 1566083941)) - i;
+      i++;
+      if (i >= N) {
+        state[0] = state[N - 1];
+        i = 1;
+      }
+    }
+    state[0] = UPPER_MASK;
+  }
+
+  /**
+   * Yields the next seed, in the range [0, 2^16].
+   */
+  int next() {
+    // As in random.randint: draw as many bits as the size of the range needs, until the result
+    // falls within the range.
+    final int numBits = 32 - Integer.numberOfLeadingZeros(MAX_SEED + 1);
+    while (true) {
+      final int result = nextInt() >>> (32 - numBits);
+      if (result <= MAX_SEED) {
+        return result;
+      }
+    }
+  }
+
+  private void initGenrand(int seed) {
+    state[0] = seed;
+    for (int i = 1; i < N; i++) {
+      state[i] = 1812433253 * (state[i - 1] ^ (state[i - 1] >>> 30)) + i;
+    }
+    index = N;
+  }
+
+  private int nextInt() {
+    if (index >= N) {
+      for (int i = 0; i < N; i++) {
+        final int y = (state[i] & UPPER_MASK) | (state[(i + 1) % N] & LOWER_MASK);
+        state[i] = state[(i + M) % N] ^ (y >>> 1) ^ ((y & 1) == 0 ? 0 : MATRIX_A);
+      }
+      index = 0;
+    }
+    int y = state[index++];
+    y ^= y >>> 11;
+    y ^= (y << 7) & 0x9d2c5680;
+    y ^= (y << 15) & 0xefc60000;
+    y ^= y >>> 18;
+    return y;
+  }
+
+}
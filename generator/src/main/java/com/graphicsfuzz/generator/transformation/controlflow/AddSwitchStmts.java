@@ -172,8 +172,7 @@ public class AddSwitchStmts implements ITransformation {
     final int casesDuring = generator.nextInt(3);
     final int casesAfter = generator.nextInt(3);
 
-    final Fuzzer stmtFuzzer = new Fuzzer(new FuzzingContext(injectionPoint.scopeAtInjectionPoint()
-          .shallowClone()),
+    final Fuzzer stmtFuzzer = new Fuzzer(new FuzzingContext(injectionPoint.scopeAtInjectionPoint()),
         shadingLanguageVersion,
           generator,
           generationParams,
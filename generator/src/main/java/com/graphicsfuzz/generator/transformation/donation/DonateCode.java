@@ -42,7 +42,6 @@ import com.graphicsfuzz.common.typing.ScopeTreeBuilder;
 import com.graphicsfuzz.common.typing.Typer;
 import com.graphicsfuzz.common.util.IRandom;
 import com.graphicsfuzz.common.util.OpenGlConstants;
-import com.graphicsfuzz.common.util.ParseHelper;
 import com.graphicsfuzz.common.util.ParseTimeoutException;
 import com.graphicsfuzz.generator.fuzzer.FuzzedIntoACornerException;
 import com.graphicsfuzz.generator.fuzzer.Fuzzer;
@@ -102,10 +101,9 @@ public abstract class DonateCode implements ITransformation {
    */
   abstract void adaptTranslationUnitForSpecificDonation(TranslationUnit tu, IRandom generator);
 
-  private TranslationUnit prepareTranslationUnit(File donorFile, IRandom generator)
-        throws IOException, ParseTimeoutException {
-    TranslationUnit tu = ParseHelper.parse(donorFile, false);
-    addPrefixes(tu, getDeclaredFunctionNames(tu));
+  private TranslationUnit prepareTranslationUnit(DonorPool.Donor donor, IRandom generator) {
+    TranslationUnit tu = donor.getTranslationUnit();
+    addPrefixes(tu, donor.getDeclaredFunctionNames());
     // Add prefixed versions of these builtins, in case they are used
     tu.addDeclaration(new VariablesDeclaration(
           BasicType.VEC4,
@@ -158,25 +156,6 @@ public abstract class DonateCode implements ITransformation {
     }.visit(tu);
   }
 
-  private Set<String> getDeclaredFunctionNames(TranslationUnit tu) {
-    return new StandardVisitor() {
-
-      private Set<String> names = new HashSet<>();
-
-      @Override
-      public void visitFunctionPrototype(FunctionPrototype functionPrototype) {
-        super.visitFunctionPrototype(functionPrototype);
-        names.add(functionPrototype.getName());
-      }
-
-      Set<String> getDeclaredFunctionNames(TranslationUnit tu) {
-        visit(tu);
-        return names;
-      }
-
-    }.getDeclaredFunctionNames(tu);
-  }
-
 
   abstract Stmt prepareStatementToDonate(IInjectionPoint injectionPoint,
         DonationContext donationContext, TransformationProbabilities probabilities,
@@ -188,7 +167,8 @@ public abstract class DonateCode implements ITransformation {
     final int maxTries = 10;
     int tries = 0;
     while (true) {
-      DonationContext donationContext = new DonationContexts(chooseDonor(generator), generator)
+      DonationContext donationContext = new DonationContexts(
+            chooseDonor(generator, shadingLanguageVersion), generator)
             .getDonationContext();
       if (incompatible(injectionPoint, donationContext, shadingLanguageVersion)) {
         tries++;
@@ -504,11 +484,11 @@ public abstract class DonateCode implements ITransformation {
       return false;
     }
     if (prototypeClashes(fromDonor, recipientFunctionPrototypes)) {
-      System.err
-            .println(
-                  "Donor and recipient are incompatible as they declare clashing functions named "
-                        + fromDonor.getName());
-      System.exit(1);
+      // This is not expected to happen, since compatibleDonor rules out clashing functions.
+      // Throw rather than exit, as several variants may be being generated in this process.
+      throw new RuntimeException(
+            "Donor and recipient are incompatible as they declare clashing functions named "
+                  + fromDonor.getName());
     }
     return true;
   }
@@ -521,7 +501,8 @@ public abstract class DonateCode implements ITransformation {
     return !fs.stream().filter(item -> fp.matches(item)).collect(Collectors.toList()).isEmpty();
   }
 
-  TranslationUnit chooseDonor(IRandom generator) {
+  TranslationUnit chooseDonor(IRandom generator,
+        ShadingLanguageVersion shadingLanguageVersion) {
     while (!donorFiles.isEmpty()) {
       int index = generator.nextInt(donorFiles.size());
       File donorFile = donorFiles.get(index);
@@ -532,7 +513,7 @@ public abstract class DonateCode implements ITransformation {
           // already used
           throw new IncompatibleDonorException();
         }
-        return getDonorTranslationUnit(donorFile, generator);
+        return getDonorTranslationUnit(donorFile, generator, shadingLanguageVersion);
       } catch (IncompatibleDonorException exception) {
         assert index >= 0;
         assert index < donorFiles.size();
@@ -542,17 +523,22 @@ public abstract class DonateCode implements ITransformation {
     throw new RuntimeException("Could not find any compatible donors.");
   }
 
-  private TranslationUnit getDonorTranslationUnit(File donorFile, IRandom generator)
+  private TranslationUnit getDonorTranslationUnit(File donorFile, IRandom generator,
+        ShadingLanguageVersion shadingLanguageVersion)
         throws IncompatibleDonorException {
     if (!donorsToTranslationUnits.containsKey(donorFile)) {
       try {
-        TranslationUnit donor = prepareTranslationUnit(donorFile, generator);
-        if (!compatibleDonor(donor)) {
+        final DonorPool.Donor pooledDonor = DonorPool.getDonor(donorFile);
+        if (!pooledDonor.isCompatibleWith(shadingLanguageVersion)) {
+          throw new IncompatibleDonorException();
+        }
+        TranslationUnit donor = prepareTranslationUnit(pooledDonor, generator);
+        if (!compatibleDonor(donor, pooledDonor.getStructNames())) {
           throw new IncompatibleDonorException();
         }
         functionPrototypes.addAll(AstUtil.getFunctionPrototypesFromShader(donor));
         globalVariables.putAll(getGlobalVariablesFromShader(donor));
-        structNames.addAll(getStructNamesFromShader(donor));
+        structNames.addAll(pooledDonor.getStructNames());
         donorsToTranslationUnits.put(donorFile, donor);
       } catch (IOException | ParseTimeoutException exception) {
         throw new RuntimeException("An exception occurred during donor parsing.", exception);
@@ -561,7 +547,7 @@ public abstract class DonateCode implements ITransformation {
     return donorsToTranslationUnits.get(donorFile);
   }
 
-  private boolean compatibleDonor(TranslationUnit donor) {
+  private boolean compatibleDonor(TranslationUnit donor, Set<String> donorStructNames) {
     List<String> usedFunctionNames = functionPrototypes.stream().map(item -> item.getName())
           .collect(Collectors.toList());
     Set<String> usedGlobalVariableNames = globalVariables.keySet();
@@ -588,7 +574,7 @@ public abstract class DonateCode implements ITransformation {
         return false;
       }
     }
-    for (String name : getStructNamesFromShader(donor)) {
+    for (String name : donorStructNames) {
       if (usedFunctionNames.contains(name) || usedGlobalVariableNames.contains(name)
             || usedStructNames.contains(name)) {
         return false;
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.transformation.donation;
+
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.ast.decl.FunctionPrototype;
+import com.graphicsfuzz.common.ast.decl.StructDeclaration;
+import com.graphicsfuzz.common.ast.expr.FunctionCallExpr;
+import com.graphicsfuzz.common.ast.stmt.DoStmt;
+import com.graphicsfuzz.common.ast.stmt.SwitchStmt;
+import com.graphicsfuzz.common.ast.visitors.StandardVisitor;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.typing.TyperHelper;
+import com.graphicsfuzz.common.util.ParseHelper;
+import com.graphicsfuzz.common.util.ParseTimeoutException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A process-wide pool of parsed and analysed donor shaders, so that generating many variants in
+ * one process parses and analyses each donor only once.  Pooled donors are immutable: their
+ * translation units are never handed out directly, and callers instead get a fresh clone, which
+ * they are free to modify.  A donor is re-parsed if its file changes.
+ */
+public final class DonorPool {
+
+  private static final ConcurrentMap<File, Donor> donors = new ConcurrentHashMap<>();
+
+  // Names of the builtin functions of any shading language version.  A donor that calls one of
+  // these that is not available in a particular version cannot be used with that version.
+  private static Set<String> allBuiltinNames = null;
+
+  private DonorPool() {
+    // Not instantiable
+  }
+
+  /**
+   * Yields the pooled donor for the given file, parsing and analysing it if necessary.
+   */
+  public static Donor getDonor(File donorFile) throws IOException, ParseTimeoutException {
+    final File key = donorFile.getAbsoluteFile();
+    Donor donor = donors.get(key);
+    if (donor == null || !donor.isUpToDate(key)) {
+      // Concurrent requests for the same donor may both parse it; this is harmless, as the
+      // results are equivalent.
+      donor = new Donor(key);
+      donors.put(key, donor);
+    }
+    return donor;
+  }
+
+  private static synchronized Set<String> getAllBuiltinNames() {
+    if (allBuiltinNames == null) {
+      final Set<String> names = new HashSet<>();
+      for (ShadingLanguageVersion shadingLanguageVersion
+          : ShadingLanguageVersion.allShadingLanguageVersions()) {
+        names.addAll(TyperHelper.getBuiltins(shadingLanguageVersion).keySet());
+      }
+      allBuiltinNames = Collections.unmodifiableSet(names);
+    }
+    return allBuiltinNames;
+  }
+
+  public static final class Donor {
+
+    private final File file;
+    private final long lastModified;
+    private final long length;
+    private final TranslationUnit translationUnit;
+    private final Set<String> declaredFunctionNames;
+    private final Set<String> structNames;
+    private final Set<String> calledFunctionNames;
+    private final boolean usesSwitch;
+    private final boolean usesDoWhile;
+    private final ConcurrentMap<ShadingLanguageVersion, Boolean> compatibility;
+
+    private Donor(File file) throws IOException, ParseTimeoutException {
+      this.file = file;
+      this.lastModified = file.lastModified();
+      this.length = file.length();
+      this.translationUnit = ParseHelper.parse(file, false);
+      this.compatibility = new ConcurrentHashMap<>();
+
+      final Set<String> declaredFunctionNames = new HashSet<>();
+      final Set<String> structNames = new HashSet<>();
+      final Set<String> calledFunctionNames = new HashSet<>();
+      final boolean[] usesSwitchAndDoWhile = { false, false };
+      new StandardVisitor() {
+
+        @Override
+        public void visitFunctionPrototype(FunctionPrototype functionPrototype) {
+          super.visitFunctionPrototype(functionPrototype);
+          declaredFunctionNames.add(functionPrototype.getName());
+        }
+
+        @Override
+        public void visitFunctionCallExpr(FunctionCallExpr functionCallExpr) {
+          super.visitFunctionCallExpr(functionCallExpr);
+          calledFunctionNames.add(functionCallExpr.getCallee());
+        }
+
+        @Override
+        public void visitSwitchStmt(SwitchStmt switchStmt) {
+          super.visitSwitchStmt(switchStmt);
+          usesSwitchAndDoWhile[0] = true;
+        }
+
+        @Override
+        public void visitDoStmt(DoStmt doStmt) {
+          super.visitDoStmt(doStmt);
+          usesSwitchAndDoWhile[1] = true;
+        }
+
+      }.visit(translationUnit);
+      translationUnit.getTopLevelDeclarations().stream()
+          .filter(item -> item instanceof StructDeclaration)
+          .forEach(item -> structNames.add(((StructDeclaration) item).getType().getName()));
+
+      this.declaredFunctionNames = Collections.unmodifiableSet(declaredFunctionNames);
+      this.structNames = Collections.unmodifiableSet(structNames);
+      this.calledFunctionNames = Collections.unmodifiableSet(calledFunctionNames);
+      this.usesSwitch = usesSwitchAndDoWhile[0];
+      this.usesDoWhile = usesSwitchAndDoWhile[1];
+    }
+
+    private boolean isUpToDate(File donorFile) {
+      return donorFile.lastModified() == lastModified && donorFile.length() == length;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    /**
+     * Yields a fresh copy of the donor's translation unit, which the caller may modify.
+     */
+    public TranslationUnit getTranslationUnit() {
+      return translationUnit.cloneAndPatchUp();
+    }
+
+    public Set<String> getDeclaredFunctionNames() {
+      return declaredFunctionNames;
+    }
+
+    public Set<String> getStructNames() {
+      return structNames;
+    }
+
+    /**
+     * Determines whether the donor only uses features available in the given shading language
+     * version: switch and do-while statements, and builtin functions.
+     */
+    public boolean isCompatibleWith(ShadingLanguageVersion shadingLanguageVersion) {
+      return compatibility.computeIfAbsent(shadingLanguageVersion,
+          this::computeCompatibility);
+    }
+
+    private boolean computeCompatibility(ShadingLanguageVersion shadingLanguageVersion) {
+      if (usesSwitch && !shadingLanguageVersion.supportedSwitchStmt()) {
+        return false;
+      }
+      if (usesDoWhile && !shadingLanguageVersion.supportedDoStmt()) {
+        return false;
+      }
+      final Set<String> availableBuiltins =
+          TyperHelper.getBuiltins(shadingLanguageVersion).keySet();
+      return calledFunctionNames.stream()
+          .filter(name -> !declaredFunctionNames.contains(name))
+          .filter(name -> getAllBuiltinNames().contains(name))
+          .allMatch(availableBuiltins::contains);
+    }
+
+  }
+
+}
@@ -29,7 +29,7 @@ abstract class InjectionPoint implements IInjectionPoint {
       Scope scope) {
     this.enclosingFunction = enclosingFunction;
     this.inLoop = inLoop;
-    this.scope = scope.shallowClone();
+    this.scope = scope.snapshot();
   }
 
   @Override
@@ -317,14 +317,15 @@ public class MutationPoints extends ScopeTreeBuilder {
           continue;
         }
         if (typer.hasType(expr.getChild(i))) {
-          Scope clonedScope = currentScope.shallowClone();
-          if (shadingLanguageVersion.restrictedForLoops()) {
+          Scope scope = currentScope.snapshot();
+          if (shadingLanguageVersion.restrictedForLoops() && !forLoopIterators.isEmpty()) {
+            scope = scope.shallowClone();
             for (Set<String> iterators : forLoopIterators) {
-              iterators.forEach(clonedScope::remove);
+              iterators.forEach(scope::remove);
             }
           }
           mutationPoints.add(new MutationPoint(expr, i, typer.lookupType(expr.getChild(i)),
-                clonedScope, isConstContext(), shadingLanguageVersion, generator,
+                scope, isConstContext(), shadingLanguageVersion, generator,
                 generationParams));
         }
       }
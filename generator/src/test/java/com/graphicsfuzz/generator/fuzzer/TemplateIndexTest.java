@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.fuzzer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.common.ast.type.BasicType;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.generator.fuzzer.templates.IExprTemplate;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class TemplateIndexTest {
+
+  @Test
+  public void testIndexAgreesWithFiltering() {
+    for (ShadingLanguageVersion shadingLanguageVersion : new ShadingLanguageVersion[] {
+        ShadingLanguageVersion.ESSL_100, ShadingLanguageVersion.ESSL_300 }) {
+      final List<IExprTemplate> templates = Templates.get(shadingLanguageVersion);
+      final TemplateIndex index = Templates.getIndex(shadingLanguageVersion);
+      for (BasicType type : BasicType.allBasicTypes()) {
+        for (int requirements = 0; requirements < 8; requirements++) {
+          final boolean isLValue = (requirements & 1) != 0;
+          final boolean isConst = (requirements & 2) != 0;
+          final boolean noArguments = (requirements & 4) != 0;
+          final List<IExprTemplate> expected = templates.stream()
+              .filter(item -> item.getResultType().equals(type))
+              .filter(item -> !isLValue || item.isLValue())
+              .filter(item -> !isConst || item.isConst())
+              .filter(item -> !noArguments || item.getNumArguments() == 0)
+              .collect(Collectors.toList());
+          assertEquals(expected, index.get(type, isLValue, isConst, noArguments));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testContextTemplatesFollowScope() {
+    final FuzzingContext fuzzingContext = new FuzzingContext();
+    fuzzingContext.addGlobal("g", BasicType.FLOAT);
+    final TemplateIndex globalIndex = fuzzingContext.getTemplateIndex();
+    assertEquals(1, globalIndex.get(BasicType.FLOAT, true, false, true).size());
+
+    fuzzingContext.enterScope();
+    assertTrue(globalIndex == fuzzingContext.getTemplateIndex());
+    fuzzingContext.addLocal("v", BasicType.FLOAT);
+    assertEquals(2, fuzzingContext.getTemplateIndex().get(BasicType.FLOAT, false, false, false)
+        .size());
+    fuzzingContext.leaveScope();
+    assertTrue(globalIndex == fuzzingContext.getTemplateIndex());
+  }
+
+}
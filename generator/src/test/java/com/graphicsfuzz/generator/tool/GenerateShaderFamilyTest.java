@@ -0,0 +1,186 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.tool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GenerateShaderFamilyTest {
+
+  private static final String REFERENCE = "uniform vec2 resolution;\n"
+      + "void main() {\n"
+      + "  vec2 pos = gl_FragCoord.xy / resolution;\n"
+      + "  float c = 0.0;\n"
+      + "  for (int i = 0; i < 4; i++) {\n"
+      + "    c += pos.x * float(i);\n"
+      + "  }\n"
+      + "  gl_FragColor = vec4(c, pos.y, 0.0, 1.0);\n"
+      + "}\n";
+
+  private static final String UNIFORMS = "{\n"
+      + "  \"resolution\": {\n"
+      + "    \"func\": \"glUniform2f\",\n"
+      + "    \"args\": [ 256.0, 256.0 ]\n"
+      + "  }\n"
+      + "}\n";
+
+  private static final String DONOR = "float f(float x) {\n"
+      + "  float y = x;\n"
+      + "  if (y > 1.0) {\n"
+      + "    y = y * 2.0;\n"
+      + "  }\n"
+      + "  return y;\n"
+      + "}\n"
+      + "void main() {\n"
+      + "  float a = f(gl_FragCoord.x);\n"
+      + "  gl_FragColor = vec4(a);\n"
+      + "}\n";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testFamilyLayoutIsIndependentOfThreadCount() throws Exception {
+    final File reference = writeReference();
+    final File donors = writeDonors();
+    final int numVariants = 4;
+
+    final File serialFamily = new File(temporaryFolder.getRoot(), "serial");
+    final File parallelFamily = new File(temporaryFolder.getRoot(), "parallel");
+    generateFamily(reference, donors, serialFamily, numVariants, 1);
+    generateFamily(reference, donors, parallelFamily, numVariants, 4);
+
+    for (String name : new String[] { "reference.frag", "reference.json", "infolog.json" }) {
+      assertTrue(new File(serialFamily, name).isFile());
+    }
+    for (int i = 0; i < numVariants; i++) {
+      for (String extension : new String[] { ".frag", ".json", ".prob" }) {
+        final String name = String.format("variant_%03d", i) + extension;
+        assertEquals(readFile(new File(serialFamily, name)),
+            readFile(new File(parallelFamily, name)));
+      }
+    }
+    assertFalse(new File(serialFamily, String.format("variant_%03d.frag", numVariants)).exists());
+  }
+
+  @Test
+  public void testFirstVariantMatchesGenerate() throws Exception {
+    final File reference = writeReference();
+    final File donors = writeDonors();
+    final File family = new File(temporaryFolder.getRoot(), "family");
+    generateFamily(reference, donors, family, 1, 2);
+
+    // The first attempt uses the first seed drawn from --seed; assuming that attempt succeeded,
+    // generating with that seed directly should give the same variant.
+    final int firstSeed = new LegacySeedSequence(0).next();
+    final File single = temporaryFolder.newFolder("single");
+    Generate.main(new String[] { "--seed", String.valueOf(firstSeed),
+        reference.getAbsolutePath(),
+        donors.getAbsolutePath(),
+        "100",
+        "variant",
+        "--output_dir",
+        single.getAbsolutePath()
+    });
+
+    assertEquals(readFile(new File(single, "variant.frag")),
+        readFile(new File(family, "variant_000.frag")));
+    assertEquals(readFile(new File(single, "variant.prob")),
+        readFile(new File(family, "variant_000.prob")));
+  }
+
+  @Test
+  public void testSeedsMatchFormerPythonDriver() throws Exception {
+    // The seeds drawn by random.seed(s); random.randint(0, 2**16) in Python.
+    assertSeeds(0, 50494, 55125, 5306, 33936, 63691, 53075);
+    assertSeeds(42, 14592, 3278, 36048, 32098, 29256, 18289);
+    assertSeeds(-7, 42445, 19772, 51750, 6328, 9494, 12337);
+    assertSeeds(Integer.MAX_VALUE, 41649, 15776, 25735, 38059, 43550, 980);
+    assertSeeds(Integer.MIN_VALUE, 44406, 49455, 21353, 14717, 15095, 16119);
+  }
+
+  @Test
+  public void testHashFileIsRecorded() throws Exception {
+    final File reference = writeReference();
+    final File donors = writeDonors();
+    final File hashFile = temporaryFolder.newFile("HASH");
+    FileUtils.writeStringToFile(hashFile, "0123abcd", StandardCharsets.UTF_8);
+    final File family = new File(temporaryFolder.getRoot(), "family");
+    GenerateShaderFamily.mainHelper(new String[] {
+        reference.getAbsolutePath(),
+        donors.getAbsolutePath(),
+        "100",
+        family.getAbsolutePath(),
+        "--num_variants", "1",
+        "--disable_validator",
+        "--hash_file", hashFile.getAbsolutePath()
+    });
+    assertTrue(readFile(new File(family, "infolog.json")).contains("\"git_hash\": \"0123abcd\""));
+  }
+
+  private void generateFamily(File reference, File donors, File outputDir, int numVariants,
+      int maxThreads) throws Exception {
+    GenerateShaderFamily.mainHelper(new String[] {
+        reference.getAbsolutePath(),
+        donors.getAbsolutePath(),
+        "100",
+        outputDir.getAbsolutePath(),
+        "--seed", "0",
+        "--num_variants", String.valueOf(numVariants),
+        "--max_threads", String.valueOf(maxThreads),
+        "--disable_validator"
+    });
+  }
+
+  private void assertSeeds(int seed, int... expected) {
+    final LegacySeedSequence seeds = new LegacySeedSequence(seed);
+    for (int expectedSeed : expected) {
+      assertEquals(expectedSeed, seeds.next());
+    }
+  }
+
+  private File writeReference() throws Exception {
+    final File referenceDir = temporaryFolder.newFolder("references");
+    FileUtils.writeStringToFile(new File(referenceDir, "reference.frag"), REFERENCE,
+        StandardCharsets.UTF_8);
+    FileUtils.writeStringToFile(new File(referenceDir, "reference.json"), UNIFORMS,
+        StandardCharsets.UTF_8);
+    return new File(referenceDir, "reference");
+  }
+
+  private File writeDonors() throws Exception {
+    final File donors = temporaryFolder.newFolder("donors");
+    for (int i = 0; i < 3; i++) {
+      FileUtils.writeStringToFile(new File(donors, "donor" + i + ".frag"),
+          DONOR.replace("f(", "f" + i + "("), StandardCharsets.UTF_8);
+    }
+    return donors;
+  }
+
+  private String readFile(File file) throws Exception {
+    return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.transformation.donation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.tool.PrettyPrinterVisitor;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DonorPoolTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testDonorsArePooledAndCopied() throws Exception {
+    final File donorFile = writeDonor("donor.frag",
+        "struct S { float x; }; float f(S s) { return s.x; } "
+            + "void main() { f(S(1.0)); }");
+    final DonorPool.Donor donor = DonorPool.getDonor(donorFile);
+    assertSame(donor, DonorPool.getDonor(donorFile));
+    assertEquals(new HashSet<>(Arrays.asList("f", "main")), donor.getDeclaredFunctionNames());
+    assertEquals(new HashSet<>(Arrays.asList("S")), donor.getStructNames());
+
+    final TranslationUnit first = donor.getTranslationUnit();
+    final TranslationUnit second = donor.getTranslationUnit();
+    assertNotSame(first, second);
+    first.removeTopLevelDeclaration(0);
+    assertEquals(3, second.getTopLevelDeclarations().size());
+    assertEquals(3, donor.getTranslationUnit().getTopLevelDeclarations().size());
+  }
+
+  @Test
+  public void testDonorIsReparsedWhenChanged() throws Exception {
+    final File donorFile = writeDonor("changing.frag", "void main() { }");
+    final DonorPool.Donor donor = DonorPool.getDonor(donorFile);
+    FileUtils.writeStringToFile(donorFile, "void g() { } void main() { g(); }",
+        StandardCharsets.UTF_8);
+    donorFile.setLastModified(donorFile.lastModified() + 10000);
+    final DonorPool.Donor changed = DonorPool.getDonor(donorFile);
+    assertNotSame(donor, changed);
+    assertTrue(PrettyPrinterVisitor.prettyPrintAsString(changed.getTranslationUnit())
+        .contains("g()"));
+  }
+
+  @Test
+  public void testCompatibility() throws Exception {
+    final DonorPool.Donor usesSwitch = DonorPool.getDonor(writeDonor("switch.frag",
+        "void main() { int x = 0; switch (x) { case 0: x++; break; default: break; } }"));
+    assertFalse(usesSwitch.isCompatibleWith(ShadingLanguageVersion.ESSL_100));
+    assertTrue(usesSwitch.isCompatibleWith(ShadingLanguageVersion.ESSL_300));
+
+    final DonorPool.Donor usesRound = DonorPool.getDonor(writeDonor("round.frag",
+        "void main() { float x = round(1.5); }"));
+    assertFalse(usesRound.isCompatibleWith(ShadingLanguageVersion.ESSL_100));
+    assertTrue(usesRound.isCompatibleWith(ShadingLanguageVersion.ESSL_300));
+
+    final DonorPool.Donor declaresRound = DonorPool.getDonor(writeDonor("declares.frag",
+        "float round(float x) { return x; } void main() { float x = round(1.5); }"));
+    assertTrue(declaresRound.isCompatibleWith(ShadingLanguageVersion.ESSL_100));
+  }
+
+  private File writeDonor(String name, String contents) throws Exception {
+    final File result = new File(temporaryFolder.getRoot(), name);
+    FileUtils.writeStringToFile(result, contents, StandardCharsets.UTF_8);
+    return result;
+  }
+
+}
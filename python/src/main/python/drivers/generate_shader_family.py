@@ -14,192 +14,19 @@
 # See the License for the specific language governing permissions and
 # limitations under the License.
 
+# Generates a shader family by running the GenerateShaderFamily Java tool, which parses the
+# reference and donors once and generates variants in parallel within a single JVM.
+
 from __future__ import print_function
 import argparse
-import glob
-import json
 import os
+import platform
 import random
-import shutil
 import subprocess
 import sys
-import threading
-import io
-import platform
 
-sys.path.append(os.path.split(os.path.abspath(__file__))[0] + os.path.sep + "..")
-from cmd_helpers import validate_frag
-from cmd_helpers import execute
-
-this_path = os.path.split(os.path.abspath(__file__))[0] + os.path.sep
 max_int = pow(2, 16)
 
-
-### Helper functions
-
-def abs_path_with_extension(prefix, extension):
-  return os.path.abspath(prefix + extension)
-
-def uniforms_file(prefix):
-  return abs_path_with_extension(prefix, ".json")
-
-def primitives_file(prefix):
-  return abs_path_with_extension(prefix, ".primitives")
-
-def license_file(prefix):
-  return abs_path_with_extension(prefix, ".license")
-
-def uniforms_present(prefix):
-  return os.path.isfile(uniforms_file(prefix))
-
-def kill_generator(generator_proc):
-  if args.verbose:
-    print("Timeout")
-  generator_proc.kill()
-
-def generate_variant(reference_prefix, inner_seed, output_prefix):
-    cmd = ["java", "-ea",
-           "com.graphicsfuzz.generator.tool.Generate",
-           reference_prefix,
-           args.donors,
-           args.glsl_version,
-           output_prefix,
-           "--seed",
-           str(inner_seed) ]
-    if args.webgl:
-      cmd += [ "--webgl" ]
-    if args.small:
-      cmd += [ "--small" ]
-    if args.avoid_long_loops:
-      cmd += [ "--avoid_long_loops" ]
-    if args.replace_float_literals:
-      cmd += [ "--replace_float_literals" ]
-    if args.aggressively_complicate_control_flow:
-      cmd += [ "--aggressively_complicate_control_flow" ]
-    if args.multi_pass:
-      cmd += [ "--multi_pass" ]
-    if args.verbose:
-      print("Transform command: %s" % (" ".join(cmd)))
-    generator_proc = subprocess.Popen(cmd, \
-                                      stdout=subprocess.PIPE, stderr=subprocess.PIPE)
-    kill_timer = threading.Timer(args.timeout, lambda: kill_generator(generator_proc))
-    try:
-        kill_timer.start()
-        generator_stdout, generator_stderr = generator_proc.communicate()
-        assert (generator_proc.returncode is not None)
-    finally:
-        kill_timer.cancel()
-    return {"returncode": generator_proc.returncode, \
-            "stdout": generator_stdout, \
-            "stderr": generator_stderr, \
-            "cmd": " ".join(cmd)}
-
-
-def prepare_reference_shaders(reference_prefix, output_file_prefix, glsl_version):
-    cmd = ["java", "-ea", \
-           "com.graphicsfuzz.generator.tool.PrepareReference",
-           reference_prefix, output_file_prefix,
-           glsl_version ]
-    if args.replace_float_literals:
-      cmd += [ "--replace_float_literals" ]
-    if args.webgl:
-      cmd += [ "--webgl" ]
-    if args.verbose:
-      print("Reference preparation command: %s" % (" ".join(cmd)))
-    prepare_reference_proc = subprocess.Popen(cmd, \
-                                         stdout=subprocess.PIPE, stderr=subprocess.PIPE)
-    prepare_reference_stdout, prepare_reference_stderr = prepare_reference_proc.communicate()
-    if prepare_reference_proc.returncode != 0:
-        print("Reference preparation resulted in errors: " + prepare_reference_stderr)
-        sys.exit(1)
-
-def get_git_revision_hash():
-    git_hash = open(args.hash_file, 'r')
-    ret_val = git_hash.read()
-    git_hash.close()
-    return ret_val
-
-
-def shader_is_valid(shader_file):
-    if args.verbose:
-        print("Validating...")
-    validator_results = validate_frag(shader_file, args.validator_path, args.verbose)
-    if validator_results["returncode"] == 0 and args.webgl:
-        validator_results = execute([args.translator_path, "-s=w", shader_file], args.verbose)
-    elif validator_results["returncode"] == 0 and args.glsl_version == "100":
-        validator_results = execute([args.translator_path, shader_file], args.verbose)
-    if validator_results["returncode"] != 0:
-        if args.verbose:
-            print("Failed validating shader:")
-            print(validator_results["stdout"].decode("utf-8"))
-            print(validator_results["stderr"].decode("utf-8"))
-        return False
-    return True
-
-def generated_shaders_too_large(args, variant_file_prefix):
-  for ext in [ ".frag", ".vert" ]:
-    variant_shader_file = variant_file_prefix + ext
-    if not os.path.isfile(variant_shader_file):
-      continue
-    num_bytes_variant = os.path.getsize(variant_shader_file)
-    num_bytes_reference = os.path.getsize(args.reference_prefix + ext)
-
-    if args.max_factor is not None and float(num_bytes_variant) > args.max_factor * float(num_bytes_reference):
-      if args.verbose:
-        print("Discarding " + ext + " shader of size " + str(num_bytes_variant) + " bytes; more than " + str(args.max_factor) + " times larger than reference of size " + str(num_bytes_reference))
-      return True
-    
-    if args.max_bytes is not None and num_bytes_variant > args.max_bytes:
-      if args.verbose:
-        print("Discarding " + ext + " shader of size " + str(num_bytes_variant) + " bytes; exceeds limit of " + str(args.max_bytes) + " bytes")
-      return True
-    
-  return False
-
-
-def remove_if_exists(filename):
-  if os.path.isfile(filename):
-    os.remove(filename)
-
-    
-def move_if_exists(src, dst):
-  print(src)
-  print(dst)
-  if os.path.isfile(src):
-    shutil.move(src, dst)
-
-    
-def skip_due_to_invalid_shader(args, variant_file_prefix):
-  variant_file_frag = variant_file_prefix + ".frag"
-  variant_file_vert = variant_file_prefix + ".vert"
-  variant_file_json = variant_file_prefix + ".json"
-  variant_file_probabilities = variant_file_prefix + ".prob"
-
-  if args.disable_validator:
-    return False
-  for ext in [ ".frag", ".vert" ]:
-    variant_shader_file = variant_file_prefix + ext
-    if not os.path.isfile(variant_shader_file):
-      continue
-    if shader_is_valid(variant_shader_file):
-      continue
-    if not args.keep_bad_variants:
-        remove_if_exists(variant_file_frag)
-        remove_if_exists(variant_file_vert)
-        os.remove(variant_file_json)
-        os.remove(variant_file_probabilities)
-        return True
-    else:
-        move_if_exists(variant_file_frag, "bad_" + os.path.basename(variant_file_frag))
-        move_if_exists(variant_file_vert, "bad_" + os.path.basename(variant_file_vert))
-        shutil.move(variant_file_json, "bad_" + os.path.basename(variant_file_json))
-        shutil.move(variant_file_probabilities, "bad_" + os.path.basename(variant_file_probabilities))
-    if args.stop_on_fail:
-        if args.verbose:
-            print("Generated an invalid variant, stopping.")
-        exit(1)
-    return False
-
 ### Argument parser
 parser = argparse.ArgumentParser(description="Variant generator")
 
@@ -223,12 +50,13 @@ parser.add_argument("--num_variants", type=int, action="store", default=10,
 parser.add_argument("--seed", type=int, action="store",
                     default=random.randint(0, max_int),
                     help="Seed to initialize random number generator with.")
+parser.add_argument("--max_threads", type=int, action="store",
+                    help="Number of variants to generate in parallel (default: number of cores).")
 parser.add_argument("--timeout", type=int, action="store",
                     default=30,
-                    help="Time in seconds after which execution of generation is terminated.")
+                    help="Time in seconds after which generation of a variant is abandoned.")
 parser.add_argument("--hash_file", type=str, action="store",
-                    default=this_path + ".." + os.path.sep + ".." + os.path.sep + "HASH",
-                    help="Path to file containing git hash.")
+                    help="Path to file containing git hash (default: the HASH file of the installation).")
 parser.add_argument("--disable_validator", action="store_true",
                     help="Disable calling glslangValidator for generated variants.")
 parser.add_argument("--validator_path", type=str, action="store",
@@ -268,14 +96,6 @@ parser.add_argument("--require_license", action="store_true",
 
 args = parser.parse_args()
 
-### Initial setup
-if args.verbose:
-    print("Using seed %d." % (args.seed))
-random.seed(args.seed)
-
-args.validator_path = os.path.abspath(args.validator_path)
-args.translator_path = os.path.abspath(args.translator_path)
-
 os.environ["CLASSPATH"] = \
     args.java_tool_path + \
     (os.pathsep + os.environ["CLASSPATH"] if "CLASSPATH" in os.environ else "")
@@ -283,117 +103,33 @@ os.environ["CLASSPATH"] = \
 if args.verbose:
     print("Setting CLASSPATH to: %s." % (os.environ["CLASSPATH"]))
 
-args.output_folder = os.path.normpath(args.output_folder) + os.path.sep
-
-args.donors = os.path.abspath(args.donors)
-
-args.reference_prefix = os.path.splitext(os.path.abspath(args.reference_prefix + ".frag"))[0]
+cmd = ["java", "-ea",
+       "com.graphicsfuzz.generator.tool.GenerateShaderFamily",
+       os.path.splitext(os.path.abspath(args.reference_prefix + ".frag"))[0],
+       os.path.abspath(args.donors),
+       args.glsl_version,
+       os.path.abspath(args.output_folder),
+       "--num_variants", str(args.num_variants),
+       "--seed", str(args.seed),
+       "--timeout", str(args.timeout),
+       "--chunk_size", str(args.chunk_size),
+       "--validator_path", os.path.abspath(args.validator_path),
+       "--translator_path", os.path.abspath(args.translator_path) ]
+if args.max_threads is not None:
+  cmd += [ "--max_threads", str(args.max_threads) ]
+if args.hash_file is not None:
+  cmd += [ "--hash_file", os.path.abspath(args.hash_file) ]
+if args.max_bytes is not None:
+  cmd += [ "--max_bytes", str(args.max_bytes) ]
+if args.max_factor is not None:
+  cmd += [ "--max_factor", str(args.max_factor) ]
+for flag in [ "disable_validator", "keep_bad_variants", "stop_on_fail", "verbose", "small",
+              "webgl", "avoid_long_loops", "aggressively_complicate_control_flow", "multi_pass",
+              "replace_float_literals" ]:
+  if getattr(args, flag):
+    cmd += [ "--" + flag ]
 
 if args.verbose:
-    print("Using donor folder %s." % (args.donors))
-
-# Make output directory
-if os.path.isdir(args.output_folder):
-    print("Overwriting previous output folder (%s)." % (args.output_folder))
-    shutil.rmtree(args.output_folder)
-os.mkdir(args.output_folder)
-
-if not uniforms_present(args.reference_prefix):
-    print("No uniforms file present for reference '" + args.reference_prefix + "'")
-    exit(1)
-
-# Prepare reference shaders
-prepare_reference_shaders(args.reference_prefix, args.output_folder + "reference", args.glsl_version)
-
-# Validate reference shaders
-if not args.disable_validator:
-    if not shader_is_valid(args.output_folder + "reference.frag"):
-        print("The reference fragment shader is not valid, stopping.")
-        exit(1)
-    vertex_shader = args.output_folder + "reference.vert"        
-    if os.path.isfile(vertex_shader) and not shader_is_valid(vertex_shader):
-        print("The reference vertex shader is not valid, stopping.")
-        exit(1)
-
-# Copy primitives for reference shaders, if they exist
-if os.path.isfile(primitives_file(args.reference_prefix)):
-  shutil.copyfile(primitives_file(args.reference_prefix),
-                  args.output_folder + "reference.primitives")
-
-# Copy texture if referenced by primitives
-if os.path.isfile(primitives_file(args.reference_prefix)):
-  primitives_data = json.load(open(primitives_file(args.reference_prefix)))
-  if "texture" in primitives_data:
-    texture_filename = primitives_data["texture"]
-    shutil.copyfile(texture_filename, args.output_folder + texture_filename)
-  
-os.chdir(args.output_folder)
-
-donor_list = glob.glob(args.donors + os.path.sep + "*.frag")
-if not donor_list:
-    print("Given donor folder contains no .frag files!")
-    exit(1)
-
-# Initialise json log file with version information
-log_json = {
-            "git_hash": get_git_revision_hash(),
-            "glsl_version": args.glsl_version,
-            "webgl": args.webgl,
-            "seed": args.seed,
-            "reference_basename": os.path.basename(args.reference_prefix)
-            }
-
-gen_variants = 0
-tried_variants = 0
-chunk_count = 0
-
-# Main variant generation loop
-while gen_variants < args.num_variants:
-    if args.verbose:
-        print("Trying variant %d (produced %d of %d)..." % (tried_variants, gen_variants, args.num_variants))
-    # Generation
-    inner_seed = random.randint(0, max_int)
-    if args.verbose:
-        print("Generating variant with inner seed %d..." % inner_seed)
-    variant_file_prefix = "variant_" + "{0:0=3d}".format(gen_variants)
-    generator_results = generate_variant(args.reference_prefix, inner_seed, variant_file_prefix)
-    tried_variants += 1
-    if generator_results["returncode"] != 0:
-        if args.verbose:
-            print("Failed generating variant:")
-            print(generator_results["stderr"].decode("utf-8"))
-        if args.stop_on_fail:
-            if args.verbose:
-                print("Failed generating a variant, stopping.")
-            exit(1)
-        continue
-
-    # Check code size
-    if generated_shaders_too_large(args, variant_file_prefix):
-      # A generated shader is too large - discard it (but don't log it as bad)
-      continue
-    
-    # Validation
-    if skip_due_to_invalid_shader(args, variant_file_prefix):
-      continue
-
-    if os.path.isfile("reference.primitives"):
-      shutil.copyfile("reference.primitives", primitives_file(variant_file_prefix))
-
-    gen_variants += 1
-    if not args.verbose and args.chunk_size > 0 and gen_variants in \
-            range(args.num_variants // args.chunk_size, args.num_variants, args.num_variants // args.chunk_size):
-        chunk_count += 1
-        print("Done %d%%..." % (100 // args.chunk_size * chunk_count), end="\r")
-
-### Final steps
-# Output json log
-dict = {}
-dict['dict'] = log_json
-log_json_file = open("infolog.json", 'w')
-log_json_file.write(json.dumps(dict, sort_keys=True, indent=4))
-log_json_file.close()
-
-
+  print("Family generation command: %s" % (" ".join(cmd)))
 
-print("Generation complete -- generated %d variants in %d tries." % (gen_variants, tried_variants))
+sys.exit(subprocess.call(cmd))
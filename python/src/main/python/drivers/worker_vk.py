@@ -224,6 +224,12 @@ parser.add_argument(
     '--adbID',
     help='adb (Android Debug Bridge) ID of the device to run tests on. Run "adb devices" to list these IDs')
 
+parser.add_argument(
+    '--max_jobs',
+    type=int,
+    default=4,
+    help='Maximum number of jobs to get from the server at once (default: 4)')
+
 parser.add_argument(
     '--server',
     default='http://localhost:8080',
@@ -257,24 +263,28 @@ while True:
             continue
 
     try:
-        job = service.getJob(token)
+        jobs = service.getJobs(token, args.max_jobs)
 
-        if job.noJob != None:
+        if len(jobs) == 0:
             print("No job")
+            time.sleep(1)
 
-        elif job.skipJob != None:
-            print("Skip job")
-            service.jobDone(token, job)
+        for job in jobs:
+            if job.skipJob != None:
+                print("Skip job")
 
-        else:
-            assert(job.imageJob != None)
-            print("#### Image job: " + job.imageJob.name)
-            job.imageJob.result = doImageJob(job.imageJob)
-            print("Send back, results status: {}".format(job.imageJob.result.status))
-            service.jobDone(token, job)
+            else:
+                assert(job.imageJob != None)
+                print("#### Image job: " + job.imageJob.name)
+                job.imageJob.result = doImageJob(job.imageJob)
+                print("Results status: {}".format(job.imageJob.result.status))
+
+            # Send back each result before running the next job, so that if the worker crashes,
+            # the server knows which job crashed it.
+            print("Send back result")
+            service.jobsDone(token, [job])
 
     except (TApplicationException, ConnectionError) as exception:
         print("Connection to server lost. Re-initialising client.")
         service = None
-
-    time.sleep(1)
+        time.sleep(1)
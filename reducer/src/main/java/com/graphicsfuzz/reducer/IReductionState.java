@@ -18,12 +18,14 @@ package com.graphicsfuzz.reducer;
 
 import com.graphicsfuzz.common.ast.TranslationUnit;
 import com.graphicsfuzz.common.util.UniformsInfo;
-import java.io.File;
-import java.io.FileNotFoundException;
 
 public interface IReductionState {
 
-  UniformsInfo computeRemainingUniforms(File uniformsJson) throws FileNotFoundException;
+  /**
+   * Yields the uniforms, out of the given uniforms of the original shaders, that the shaders of
+   * this state still declare.
+   */
+  UniformsInfo computeRemainingUniforms(UniformsInfo initialUniforms);
 
   boolean hasFragmentShader();
 
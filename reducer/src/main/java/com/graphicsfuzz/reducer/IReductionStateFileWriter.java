@@ -16,11 +16,17 @@
 
 package com.graphicsfuzz.reducer;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
 
 public interface IReductionStateFileWriter {
 
-  void writeFileFromState(IReductionState state, String outputFilesPrefix)
-      throws FileNotFoundException;
+  /**
+   * Writes the shaders of the given state to files with the given prefix.
+   *
+   * @return the MD5 hash, in hex, of the contents of the vertex shader followed by the contents
+   *         of the fragment shader; a missing shader contributes no content.
+   */
+  String writeFileFromState(IReductionState state, String outputFilesPrefix)
+      throws IOException;
 
 }
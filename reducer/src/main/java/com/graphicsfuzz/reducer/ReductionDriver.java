@@ -18,7 +18,7 @@ package com.graphicsfuzz.reducer;
 
 import com.graphicsfuzz.common.ast.TranslationUnit;
 import com.graphicsfuzz.common.transformreduce.Constants;
-import com.graphicsfuzz.common.util.Helper;
+import com.graphicsfuzz.common.util.UniformsInfo;
 import com.graphicsfuzz.reducer.glslreducers.GlslReductionState;
 import com.graphicsfuzz.reducer.glslreducers.IReductionPlan;
 import com.graphicsfuzz.reducer.glslreducers.MasterPlan;
@@ -28,14 +28,22 @@ import com.graphicsfuzz.reducer.reductionopportunities.ReductionOpportunityConte
 import com.graphicsfuzz.reducer.util.Simplify;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import org.apache.commons.codec.digest.DigestUtils;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
@@ -50,7 +58,7 @@ public class ReductionDriver {
   private static final int NUM_INITIAL_TRIES = 5;
 
   private final boolean verbose;
-  private final IReductionPlan plan;
+  private final MasterPlan plan;
 
   private IReductionState newState;
 
@@ -61,6 +69,9 @@ public class ReductionDriver {
   private final Set<String> failHashes;
   private final Set<String> passHashes;
 
+  private List<String> lastUniformNames;
+  private byte[] lastUniformsJson;
+
   public ReductionDriver(ReductionOpportunityContext reductionOpportunityContext,
         boolean verbose,
         IReductionState initialState) {
@@ -80,6 +91,32 @@ public class ReductionDriver {
         IFileJudge judge,
         File workDir,
         int stepLimit) throws IOException {
+    return doReduction(initialFilePrefix, fileCountOffset, fileWriter,
+        Collections.singletonList(judge), workDir, stepLimit);
+  }
+
+  /**
+   * Performs a reduction using one or more judges.  With a single judge, reduction steps are
+   * tried one at a time.  With several judges, the driver speculatively generates one candidate
+   * per judge from the current state, has the judges consider the candidates concurrently, and
+   * accepts the lowest-numbered interesting candidate, discarding the rest: their judges are
+   * cancelled and, once the judges have stopped, their files are marked as unused.  Candidates
+   * are generated sequentially and their verdicts are processed in candidate order, so a reduction
+   * is reproducible from its seed regardless of the order in which the judges finish.
+   */
+  public String doReduction(
+        String initialFilePrefix,
+        int fileCountOffset, // Used when continuing a reduction - added on to the number associated
+        // with each reduction step during the current reduction.
+        IReductionStateFileWriter fileWriter,
+        List<? extends IFileJudge> judges,
+        File workDir,
+        int stepLimit) throws IOException {
+
+    if (judges.isEmpty()) {
+      throw new IllegalArgumentException("At least one judge is required.");
+    }
+    final IFileJudge primaryJudge = judges.get(0);
 
     try {
 
@@ -88,7 +125,7 @@ public class ReductionDriver {
       } else {
         LOGGER.info("Starting reduction for {}", initialFilePrefix);
         for (int i = 1; ; i++) {
-          if (judge.isInteresting(initialFilePrefix)) {
+          if (primaryJudge.isInteresting(initialFilePrefix)) {
             break;
           }
           LOGGER.info("Result from initial state is not interesting (attempt " + i + ")");
@@ -103,46 +140,24 @@ public class ReductionDriver {
 
       final String variantName = FilenameUtils.getBaseName(initialFilePrefix);
 
-      final File initialFileJson = new File(initialFilePrefix + ".json");
+      final UniformsInfo initialUniforms =
+          new UniformsInfo(new File(initialFilePrefix + ".json"));
+      lastUniformNames = null;
 
-      boolean isInteresting = true;
-      int stepCount = 0;
-      boolean stoppedEarly = false;
-      while (true) {
-        notifyNewStateInteresting(isInteresting);
-        IReductionState newState = doReductionStep();
-        if (newState == null) {
-          break;
-        }
-        ++stepCount;
-        final int currentReductionAttempt = numReductionAttempts + fileCountOffset;
-        String outputFilesPrefix = Paths.get(workDir.getAbsolutePath(),
-            getReductionStepFilenamePrefix(variantName, currentReductionAttempt))
-            .toString();
-        fileWriter.writeFileFromState(newState, outputFilesPrefix);
-        Helper.emitUniformsInfo(newState.computeRemainingUniforms(initialFileJson),
-              new PrintStream(new FileOutputStream(outputFilesPrefix + ".json")));
-        isInteresting = isInterestingWithCache(judge, outputFilesPrefix);
-        renameReductionStepFiles(isInteresting, variantName, currentReductionAttempt, workDir);
-
-        if (stepLimit > -1 && stepCount >= stepLimit) {
-          LOGGER.info("Stopping reduction due to hitting step limit {}.", stepLimit);
-          giveUp();
-          stoppedEarly = true;
-          break;
-        }
-      }
+      final boolean stoppedEarly = judges.size() == 1
+          ? doSerialReduction(fileCountOffset, fileWriter, primaryJudge, workDir, stepLimit,
+              variantName, initialUniforms)
+          : doSpeculativeReduction(fileCountOffset, fileWriter, judges, workDir, stepLimit,
+              variantName, initialUniforms);
 
       IReductionState finalState = getSimplifiedState();
 
       String finalOutputFilePrefix = Paths.get(workDir.getAbsolutePath(),
           variantName + "_reduced_final").toString();
       fileWriter.writeFileFromState(finalState, finalOutputFilePrefix);
-      Helper.emitUniformsInfo(finalState.computeRemainingUniforms(initialFileJson),
-            new PrintStream(new FileOutputStream(
-                  finalOutputFilePrefix + ".json")));
+      writeUniforms(finalState.computeRemainingUniforms(initialUniforms), finalOutputFilePrefix);
 
-      if (!judge.isInteresting(finalOutputFilePrefix)) {
+      if (!primaryJudge.isInteresting(finalOutputFilePrefix)) {
         LOGGER.info(
               "Failed to simplify final reduction state! Reverting to the non-simplified state.");
         fileWriter.writeFileFromState(finalState, finalOutputFilePrefix);
@@ -159,9 +174,172 @@ public class ReductionDriver {
     }
   }
 
-  private boolean isInterestingWithCache(IFileJudge judge, String outputFilesPrefix)
-        throws FileJudgeException, IOException {
-    final String hash = getMD5(outputFilesPrefix);
+  /**
+   * Tries reduction steps one at a time until no more reduction is possible or the step limit
+   * is reached.  Returns true if and only if the reduction stopped early.
+   */
+  private boolean doSerialReduction(int fileCountOffset,
+        IReductionStateFileWriter fileWriter,
+        IFileJudge judge,
+        File workDir,
+        int stepLimit,
+        String variantName,
+        UniformsInfo initialUniforms) throws IOException, FileJudgeException {
+    boolean isInteresting = true;
+    int stepCount = 0;
+    while (true) {
+      notifyNewStateInteresting(isInteresting);
+      IReductionState newState = doReductionStep();
+      if (newState == null) {
+        return false;
+      }
+      ++stepCount;
+      final int currentReductionAttempt = numReductionAttempts + fileCountOffset;
+      final String outputFilesPrefix = getReductionStepFilesPrefix(workDir, variantName,
+          currentReductionAttempt);
+      final String hash = writeReductionStepFiles(newState, fileWriter, outputFilesPrefix,
+          initialUniforms);
+      isInteresting = isInterestingWithCache(judge, outputFilesPrefix, hash);
+      renameReductionStepFiles(isInteresting ? "success" : "fail", variantName,
+          currentReductionAttempt, workDir);
+
+      if (stepLimit > -1 && stepCount >= stepLimit) {
+        LOGGER.info("Stopping reduction due to hitting step limit {}.", stepLimit);
+        giveUp();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Repeatedly generates a batch of candidate states - one per judge - from the current state,
+   * and has the judges consider the candidates concurrently.  Returns true if and only if the
+   * reduction stopped early.
+   */
+  private boolean doSpeculativeReduction(int fileCountOffset,
+        IReductionStateFileWriter fileWriter,
+        List<? extends IFileJudge> judges,
+        File workDir,
+        int stepLimit,
+        String variantName,
+        UniformsInfo initialUniforms) throws IOException, FileJudgeException {
+    // Each judge has its own thread, so that a judge that is slow to respond to being cancelled
+    // finishes before it is given another candidate.
+    final List<ExecutorService> executors = new ArrayList<>();
+    for (int i = 0; i < judges.size(); i++) {
+      executors.add(Executors.newSingleThreadExecutor());
+    }
+    try {
+      notifyNewStateInteresting(true);
+      int stepCount = 0;
+      while (true) {
+        final int firstReductionAttempt = numReductionAttempts + fileCountOffset + 1;
+        final List<IReductionPlan> producers = new ArrayList<>();
+        final List<IReductionState> candidates = doSpeculativeReductionSteps(judges.size(),
+            producers);
+        // A batch with fewer candidates than judges does not mean that the reduction is done:
+        // the plan may hold back until the candidates it has produced are judged, and have more
+        // to offer afterwards.  The reduction is done once the plan has nothing to offer at all.
+        if (candidates.isEmpty()) {
+          return false;
+        }
+        stepCount += candidates.size();
+
+        final List<String> outputFilesPrefixes = new ArrayList<>();
+        final List<String> hashes = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+          final String outputFilesPrefix = getReductionStepFilesPrefix(workDir, variantName,
+              firstReductionAttempt + i);
+          outputFilesPrefixes.add(outputFilesPrefix);
+          hashes.add(writeReductionStepFiles(candidates.get(i), fileWriter, outputFilesPrefix,
+              initialUniforms));
+        }
+
+        // Process the verdicts in candidate order: every candidate before the first interesting
+        // one is a failed reduction attempt; candidates after it were derived from a state that
+        // is no longer current, so they are discarded without waiting for their verdicts.  Each
+        // verdict is reported to the plan that produced the candidate.
+        final List<Future<Boolean>> verdicts = isInterestingWithCache(executors, judges,
+            outputFilesPrefixes, hashes);
+        boolean accepted = false;
+        int numJudged = 0;
+        try {
+          while (numJudged < candidates.size() && !accepted) {
+            final int i = numJudged++;
+            final boolean isInteresting = getVerdict(verdicts.get(i), hashes.get(i));
+            newState = candidates.get(i);
+            notifyNewStateInteresting(isInteresting, producers.get(i));
+            if (isInteresting) {
+              passHashes.add(hashes.get(i));
+              accepted = true;
+            }
+            renameReductionStepFiles(isInteresting ? "success" : "fail", variantName,
+                firstReductionAttempt + i, workDir);
+          }
+        } finally {
+          // Cancel the judges of discarded candidates; this has no effect on judges that are done.
+          for (Future<Boolean> verdict : verdicts) {
+            if (verdict != null) {
+              verdict.cancel(true);
+            }
+          }
+          // A cancelled judge may still be looking at its candidate's files, so wait for it to
+          // finish before the files are renamed or the judge is given another candidate.
+          awaitJudges(executors);
+        }
+        for (int i = numJudged; i < candidates.size(); i++) {
+          renameReductionStepFiles("unused", variantName, firstReductionAttempt + i, workDir);
+        }
+
+        if (stepLimit > -1 && stepCount >= stepLimit) {
+          LOGGER.info("Stopping reduction due to hitting step limit {}.", stepLimit);
+          giveUp();
+          return true;
+        }
+      }
+    } finally {
+      for (ExecutorService executor : executors) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private String getReductionStepFilesPrefix(File workDir, String variantName,
+        int currentReductionAttempt) {
+    return Paths.get(workDir.getAbsolutePath(),
+        getReductionStepFilenamePrefix(variantName, currentReductionAttempt))
+        .toString();
+  }
+
+  /**
+   * Writes the files for a reduction step, yielding the hash of its shaders.
+   */
+  private String writeReductionStepFiles(IReductionState newState,
+        IReductionStateFileWriter fileWriter,
+        String outputFilesPrefix,
+        UniformsInfo initialUniforms) throws IOException {
+    final String hash = fileWriter.writeFileFromState(newState, outputFilesPrefix);
+    writeUniforms(newState.computeRemainingUniforms(initialUniforms), outputFilesPrefix);
+    return hash;
+  }
+
+  /**
+   * Writes the uniforms file for a reduction step.  Most steps leave the set of uniforms
+   * unchanged, so the serialized form of the last uniforms written is kept and reused when the
+   * same uniforms are written again.
+   */
+  private void writeUniforms(UniformsInfo uniforms, String outputFilesPrefix)
+        throws IOException {
+    final List<String> uniformNames = uniforms.getUniformNames();
+    if (!uniformNames.equals(lastUniformNames)) {
+      lastUniformNames = uniformNames;
+      lastUniformsJson = (uniforms + System.lineSeparator()).getBytes(Charset.defaultCharset());
+    }
+    Files.write(Paths.get(outputFilesPrefix + ".json"), lastUniformsJson);
+  }
+
+  private boolean isInterestingWithCache(IFileJudge judge, String outputFilesPrefix, String hash)
+        throws FileJudgeException {
     if (failHashes.contains(hash)) {
       return false;
     }
@@ -177,6 +355,82 @@ public class ReductionDriver {
     return result;
   }
 
+  /**
+   * Has the judges consider the given candidates concurrently, using the i-th judge for the i-th
+   * candidate, and yields the pending verdicts, in candidate order.  The verdict of a candidate
+   * known to be uninteresting is null, and a candidate that duplicates an earlier candidate in
+   * the batch shares its verdict.  Verdicts are recorded in the cache by getVerdict, and only if
+   * they are failures: an interesting candidate is recorded by the caller if it is accepted.
+   */
+  private List<Future<Boolean>> isInterestingWithCache(List<ExecutorService> executors,
+        List<? extends IFileJudge> judges,
+        List<String> outputFilesPrefixes,
+        List<String> hashes) {
+    final Map<String, Future<Boolean>> pending = new HashMap<>();
+    final List<Future<Boolean>> result = new ArrayList<>();
+    for (int i = 0; i < outputFilesPrefixes.size(); i++) {
+      final String hash = hashes.get(i);
+      if (failHashes.contains(hash)) {
+        result.add(null);
+        continue;
+      }
+      if (passHashes.contains(hash)) {
+        throw new RuntimeException("Reduction loop detected!");
+      }
+      if (!pending.containsKey(hash)) {
+        final IFileJudge judge = judges.get(i);
+        final String outputFilesPrefix = outputFilesPrefixes.get(i);
+        pending.put(hash, executors.get(i).submit(() -> judge.isInteresting(outputFilesPrefix)));
+      }
+      result.add(pending.get(hash));
+    }
+    return result;
+  }
+
+  /**
+   * Waits until every judge has finished with the candidate it was last given, including judges
+   * whose verdicts were cancelled.  Each judge runs on a single-threaded executor, so a no-op
+   * task submitted to it completes only once the judge's earlier task has.
+   */
+  private void awaitJudges(List<ExecutorService> executors) throws FileJudgeException {
+    final List<Future<?>> barriers = new ArrayList<>();
+    for (ExecutorService executor : executors) {
+      barriers.add(executor.submit(() -> { }));
+    }
+    try {
+      for (Future<?> barrier : barriers) {
+        barrier.get();
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new FileJudgeException(exception);
+    } catch (ExecutionException exception) {
+      throw new FileJudgeException(exception.getCause());
+    }
+  }
+
+  private boolean getVerdict(Future<Boolean> verdict, String hash) throws FileJudgeException {
+    if (verdict == null || failHashes.contains(hash)) {
+      return false;
+    }
+    final boolean isInteresting;
+    try {
+      isInteresting = verdict.get();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new FileJudgeException(exception);
+    } catch (ExecutionException exception) {
+      if (exception.getCause() instanceof FileJudgeException) {
+        throw (FileJudgeException) exception.getCause();
+      }
+      throw new FileJudgeException(exception.getCause());
+    }
+    if (!isInteresting) {
+      failHashes.add(hash);
+    }
+    return isInteresting;
+  }
+
   public static String getReductionStepFilenamePrefix(String variantName,
         int currentReductionAttempt,
         Optional<String> successIndicator) {
@@ -190,7 +444,12 @@ public class ReductionDriver {
     return getReductionStepFilenamePrefix(variantName, currentReductionAttempt, Optional.empty());
   }
 
-  private void renameReductionStepFiles(boolean isInteresting, String variantName,
+  /**
+   * Renames the files of a reduction step to record its outcome: "success" or "fail" for a step
+   * that was judged, and "unused" for a speculative step that was discarded because an earlier
+   * step was accepted.
+   */
+  private void renameReductionStepFiles(String outcome, String variantName,
         int currentReductionAttempt,
         File workDir) throws IOException {
     for (String fileName : workDir.list((dir, name) -> FilenameUtils.removeExtension(name)
@@ -198,26 +457,11 @@ public class ReductionDriver {
       FileUtils.moveFile(
             new File(workDir, fileName),
             new File(workDir, getReductionStepFilenamePrefix(variantName, currentReductionAttempt,
-                  Optional.of(isInteresting ? "success" : "fail"))
+                  Optional.of(outcome))
                   + "." + FilenameUtils.getExtension(fileName)));
     }
   }
 
-  private String getMD5(String filesPrefix) throws IOException {
-    final File vertexShaderFile = new File(filesPrefix + ".vert");
-    final File fragmentShaderFile = new File(filesPrefix + ".frag");
-    byte[] vertexData = vertexShaderFile.exists()
-        ? FileUtils.readFileToByteArray(vertexShaderFile)
-        : new byte[0];
-    byte[] fragmentData = fragmentShaderFile.exists()
-        ? FileUtils.readFileToByteArray(fragmentShaderFile)
-        : new byte[0];
-    byte[] combinedData = new byte[vertexData.length + fragmentData.length];
-    System.arraycopy(vertexData, 0, combinedData, 0, vertexData.length);
-    System.arraycopy(fragmentData, 0, combinedData, vertexData.length, fragmentData.length);
-    return DigestUtils.md5Hex(combinedData);
-  }
-
   public IReductionState doReductionStep() {
     LOGGER.info("Trying reduction attempt " + numReductionAttempts + " (" + numSuccessfulReductions
           + " successful so far).");
@@ -237,6 +481,38 @@ public class ReductionDriver {
     }
   }
 
+  /**
+   * Speculatively generates up to maxCandidates reduction steps from the current state.  The
+   * reduction plan is not updated between candidates, so each candidate is an independent
+   * attempt to reduce the current state; the plan's history ensures that successive candidates
+   * take different opportunities.  The plan may move on to another pass between candidates, so
+   * the pass that produced each candidate is added to producers, to be updated with its verdict.
+   * Returns an empty list if there is nothing more to reduce.
+   */
+  private List<IReductionState> doSpeculativeReductionSteps(int maxCandidates,
+        List<IReductionPlan> producers) {
+    LOGGER.info("Trying reduction attempts " + (numReductionAttempts + 1) + " onwards ("
+          + numSuccessfulReductions + " successful so far).");
+    if (newState != null) {
+      throw new IllegalStateException(
+          "Called doSpeculativeReductionSteps yet a newState is already set.");
+    }
+    final List<IReductionState> candidates = new ArrayList<>();
+    while (candidates.size() < maxCandidates) {
+      try {
+        candidates.add(applyReduction(state));
+        producers.add(plan.getCurrentPlan());
+        numReductionAttempts++;
+      } catch (NoMoreToReduceException exception) {
+        if (candidates.isEmpty()) {
+          LOGGER.info("No more to reduce; stopping.");
+        }
+        break;
+      }
+    }
+    return candidates;
+  }
+
   private IReductionState applyReduction(IReductionState state) throws NoMoreToReduceException {
     int attempts = 0;
     final int maxAttempts = 3;
@@ -253,6 +529,13 @@ public class ReductionDriver {
   }
 
   private void notifyNewStateInteresting(boolean isInteresting) {
+    notifyNewStateInteresting(isInteresting, plan.getCurrentPlan());
+  }
+
+  /**
+   * Accepts or rejects the new state, updating the given pass of the plan, which produced it.
+   */
+  private void notifyNewStateInteresting(boolean isInteresting, IReductionPlan producer) {
     if (newState == null) {
       throw new IllegalStateException(
             "Called notifyNewStateInteresting when there was no newState.");
@@ -266,7 +549,7 @@ public class ReductionDriver {
     } else {
       LOGGER.info("Failed reduction.");
     }
-    plan.update(isInteresting);
+    plan.update(producer, isInteresting);
     newState = null;
 
     if (state == null) {
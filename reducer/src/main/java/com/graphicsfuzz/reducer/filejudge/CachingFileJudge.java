@@ -0,0 +1,233 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.filejudge;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.graphicsfuzz.reducer.FileJudgeException;
+import com.graphicsfuzz.reducer.IFileJudge;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decorates a file judge with a persistent, content-addressed cache of its verdicts.  Entries are
+ * keyed by the normalized shader text and uniforms of the files being judged, together with a
+ * description of the judge (e.g. the kind of reduction, the worker token and the reference image),
+ * so that a cache directory can be shared between reductions, across restarts, and between
+ * reductions of different variants.  Each entry is a small JSON file recording the verdict and, if
+ * the judge produced one, the digest of the result image, which is kept next to the entry and
+ * copied into place on a cache hit, as if the judge had produced it.  The cache is bounded: when it
+ * grows beyond its maximum number of entries, the least recently used entries are evicted, down to
+ * nine tenths of the maximum.  The number of entries is tracked as they are stored rather than
+ * counted each time, so when several judges share a cache directory the bound is approximate.
+ */
+public class CachingFileJudge implements IFileJudge {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CachingFileJudge.class);
+
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+  private static final String ENTRY_EXTENSION = ".json";
+  private static final String IMAGE_EXTENSION = ".png";
+  private static final String INTERESTING_KEY = "interesting";
+  private static final String IMAGE_DIGEST_KEY = "imageDigest";
+
+  private static final String[] KEY_FILE_EXTENSIONS = { ".frag", ".vert", ".primitives" };
+
+  private final IFileJudge judge;
+  private final File cacheDir;
+  private final String judgeDescription;
+  private final int maxEntries;
+
+  // The number of entries in the cache directory, as far as this judge knows.
+  private final AtomicInteger numEntries;
+
+  public CachingFileJudge(IFileJudge judge, File cacheDir, String judgeDescription,
+        int maxEntries) throws IOException {
+    if (maxEntries < 1) {
+      throw new IllegalArgumentException("A judge cache must allow at least one entry.");
+    }
+    this.judge = judge;
+    this.cacheDir = cacheDir;
+    this.judgeDescription = judgeDescription;
+    this.maxEntries = maxEntries;
+    FileUtils.forceMkdir(cacheDir);
+    this.numEntries = new AtomicInteger(listEntries().length);
+  }
+
+  public CachingFileJudge(IFileJudge judge, File cacheDir, String judgeDescription)
+        throws IOException {
+    this(judge, cacheDir, judgeDescription, DEFAULT_MAX_ENTRIES);
+  }
+
+  @Override
+  public boolean isInteresting(String filesPrefix) throws FileJudgeException {
+    try {
+      final String key = computeKey(filesPrefix);
+      final File entryFile = new File(cacheDir, key + ENTRY_EXTENSION);
+      final File cachedImageFile = new File(cacheDir, key + IMAGE_EXTENSION);
+      final File imageFile = new File(filesPrefix + IMAGE_EXTENSION);
+      final Boolean cachedVerdict = lookUp(entryFile, cachedImageFile, imageFile);
+      if (cachedVerdict != null) {
+        LOGGER.info("Judge cache hit for {}: {}.", filesPrefix,
+              cachedVerdict ? "interesting" : "not interesting");
+        return cachedVerdict;
+      }
+      final boolean result = judge.isInteresting(filesPrefix);
+      final boolean isNewEntry = !entryFile.exists();
+      store(entryFile, result, imageFile, cachedImageFile);
+      if (isNewEntry && numEntries.incrementAndGet() > maxEntries) {
+        evict();
+      }
+      return result;
+    } catch (IOException exception) {
+      throw new FileJudgeException(exception);
+    }
+  }
+
+  /**
+   * Computes the cache key for the shader files with the given prefix.
+   */
+  String computeKey(String filesPrefix) throws IOException {
+    final StringBuilder keyData = new StringBuilder();
+    keyData.append(judgeDescription).append("\n");
+    for (String extension : KEY_FILE_EXTENSIONS) {
+      final File file = new File(filesPrefix + extension);
+      keyData.append(extension).append("\n");
+      if (file.isFile()) {
+        keyData.append(normalizeText(FileUtils.readFileToString(file, StandardCharsets.UTF_8)));
+      }
+    }
+    final File uniformsFile = new File(filesPrefix + ".json");
+    keyData.append(".json\n");
+    if (uniformsFile.isFile()) {
+      keyData.append(normalizeJson(FileUtils.readFileToString(uniformsFile,
+            StandardCharsets.UTF_8)));
+    }
+    return DigestUtils.sha256Hex(keyData.toString());
+  }
+
+  /**
+   * Normalizes line endings, so that shaders differing only in these share a cache entry.  Nothing
+   * else is normalized: a judge may look for an error string that mentions a line or column.
+   */
+  static String normalizeText(String text) {
+    return text.replace("\r\n", "\n").replace('\r', '\n');
+  }
+
+  private static String normalizeJson(String json) {
+    try {
+      return new JsonParser().parse(json).toString();
+    } catch (JsonParseException exception) {
+      return normalizeText(json);
+    }
+  }
+
+  /**
+   * Yields the cached verdict, or null if there is none.  If the judge produced an image, the
+   * cached copy is copied to imageFile; if the copy is missing, the entry is treated as a miss.
+   */
+  private Boolean lookUp(File entryFile, File cachedImageFile, File imageFile) {
+    if (!entryFile.isFile()) {
+      return null;
+    }
+    try {
+      final JsonObject entry = new Gson().fromJson(
+            FileUtils.readFileToString(entryFile, StandardCharsets.UTF_8), JsonObject.class);
+      if (entry == null || !entry.has(INTERESTING_KEY)) {
+        return null;
+      }
+      if (entry.has(IMAGE_DIGEST_KEY)) {
+        if (!cachedImageFile.isFile()) {
+          return null;
+        }
+        Files.copy(cachedImageFile.toPath(), imageFile.toPath(),
+              StandardCopyOption.REPLACE_EXISTING);
+      }
+      // Record the use of the entry, so that eviction is least-recently-used.
+      entryFile.setLastModified(System.currentTimeMillis());
+      return entry.get(INTERESTING_KEY).getAsBoolean();
+    } catch (IOException | JsonParseException | IllegalStateException exception) {
+      // An unreadable entry, e.g. one that is concurrently being replaced, is treated as a miss.
+      LOGGER.warn("Ignoring unreadable judge cache entry {}.", entryFile);
+      return null;
+    }
+  }
+
+  private void store(File entryFile, boolean interesting, File imageFile, File cachedImageFile)
+        throws IOException {
+    final JsonObject entry = new JsonObject();
+    entry.addProperty(INTERESTING_KEY, interesting);
+    if (imageFile.isFile()) {
+      final byte[] image = FileUtils.readFileToByteArray(imageFile);
+      entry.addProperty(IMAGE_DIGEST_KEY, DigestUtils.sha256Hex(image));
+      // The image is stored before the entry, so that an entry is never seen without its image.
+      storeAtomically(cachedImageFile, image);
+    }
+    storeAtomically(entryFile, entry.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void storeAtomically(File file, byte[] contents) throws IOException {
+    // Write to a temporary file and then move it into place, so that other reductions sharing the
+    // cache never observe a partially-written file.
+    final File tempFile = File.createTempFile("entry", ".tmp", cacheDir);
+    try {
+      FileUtils.writeByteArrayToFile(tempFile, contents);
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      tempFile.delete();
+    }
+  }
+
+  private File[] listEntries() {
+    final File[] entries = cacheDir.listFiles((dir, name) -> name.endsWith(ENTRY_EXTENSION));
+    return entries == null ? new File[0] : entries;
+  }
+
+  /**
+   * Evicts the least recently used entries, and their images, down to nine tenths of the maximum
+   * number of entries, so that the cache directory is not listed again for a while.
+   */
+  private synchronized void evict() {
+    final File[] entries = listEntries();
+    final int target = maxEntries - maxEntries / 10;
+    if (entries.length > target) {
+      Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+      for (int i = 0; i < entries.length - target; i++) {
+        final String entryName = entries[i].getName();
+        new File(cacheDir, entryName.substring(0, entryName.length() - ENTRY_EXTENSION.length())
+              + IMAGE_EXTENSION).delete();
+        entries[i].delete();
+      }
+    }
+    numEntries.set(Math.min(entries.length, target));
+  }
+
+}
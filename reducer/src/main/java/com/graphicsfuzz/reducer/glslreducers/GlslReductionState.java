@@ -21,8 +21,6 @@ import com.graphicsfuzz.common.ast.decl.VariableDeclInfo;
 import com.graphicsfuzz.common.util.ListConcat;
 import com.graphicsfuzz.common.util.UniformsInfo;
 import com.graphicsfuzz.reducer.IReductionState;
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Optional;
@@ -67,21 +65,12 @@ public class GlslReductionState implements IReductionState {
   }
 
   @Override
-  public UniformsInfo computeRemainingUniforms(File uniformsJson) throws FileNotFoundException {
+  public UniformsInfo computeRemainingUniforms(UniformsInfo initialUniforms) {
     assert fragmentShader.isPresent();
-    final UniformsInfo result = new UniformsInfo(
-          new File(uniformsJson.getAbsolutePath()));
-
     Set<String> remainingUniforms = new HashSet<>();
     remainingUniforms.addAll(getUniforms(fragmentShader));
     remainingUniforms.addAll(getUniforms(vertexShader));
-
-    for (String name : result.getUniformNames().stream()
-        .filter(item -> !remainingUniforms.contains(item)).collect(
-        Collectors.toList())) {
-      result.removeUniform(name);
-    }
-    return result;
+    return initialUniforms.retainUniforms(remainingUniforms);
   }
 
   private Set<String> getUniforms(Optional<TranslationUnit> maybeTu) {
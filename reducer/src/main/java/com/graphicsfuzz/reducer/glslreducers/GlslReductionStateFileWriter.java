@@ -18,13 +18,17 @@ package com.graphicsfuzz.reducer.glslreducers;
 
 import com.graphicsfuzz.common.ast.TranslationUnit;
 import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
-import com.graphicsfuzz.common.tool.PrettyPrinterVisitor;
+import com.graphicsfuzz.common.util.EmitShaderHelper;
 import com.graphicsfuzz.common.util.Helper;
 import com.graphicsfuzz.common.util.ShaderKind;
 import com.graphicsfuzz.reducer.IReductionState;
 import com.graphicsfuzz.reducer.IReductionStateFileWriter;
-import java.io.FileNotFoundException;
-import java.io.PrintStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Optional;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 
 public class GlslReductionStateFileWriter implements IReductionStateFileWriter {
 
@@ -35,23 +39,23 @@ public class GlslReductionStateFileWriter implements IReductionStateFileWriter {
   }
 
   @Override
-  public void writeFileFromState(IReductionState state, String outputFilesPrefix)
-        throws FileNotFoundException {
-    if (state.hasFragmentShader()) {
-      writeFile(state.getFragmentShader(), ShaderKind.FRAGMENT, outputFilesPrefix);
-    }
+  public String writeFileFromState(IReductionState state, String outputFilesPrefix)
+        throws IOException {
+    final MessageDigest digest = DigestUtils.getMd5Digest();
+    // The vertex shader is written first, as it comes first in the hash.
     if (state.hasVertexShader()) {
-      writeFile(state.getVertexShader(), ShaderKind.VERTEX, outputFilesPrefix);
+      writeFile(state.getVertexShader(), ShaderKind.VERTEX, outputFilesPrefix, digest);
+    }
+    if (state.hasFragmentShader()) {
+      writeFile(state.getFragmentShader(), ShaderKind.FRAGMENT, outputFilesPrefix, digest);
     }
+    return Hex.encodeHexString(digest.digest());
   }
 
-  private void writeFile(TranslationUnit shader, ShaderKind shaderKind, String outputFilesPrefix)
-      throws FileNotFoundException {
-    PrintStream ps = new PrintStream(outputFilesPrefix + shaderKind.getFileExtension());
+  private void writeFile(TranslationUnit shader, ShaderKind shaderKind, String outputFilesPrefix,
+      MessageDigest digest) throws IOException {
     // TODO: should we pass a license through the reduction process?
-    Helper.emitDefines(ps, shadingLanguageVersion, shaderKind, true);
-    new PrettyPrinterVisitor(ps).visit(shader);
-    ps.flush();
-    ps.close();
+    EmitShaderHelper.emitShader(shadingLanguageVersion, shaderKind, shader, Optional.empty(),
+        Helper::glfMacros, new File(outputFilesPrefix + shaderKind.getFileExtension()), digest);
   }
 }
@@ -37,6 +37,8 @@ public class MasterPlan implements IReductionPlan {
   private int passIndex;
   private int currentPassSteps;
   private boolean somePassMadeProgress;
+  // The number of reductions that have been produced but not yet judged.
+  private int numOutstandingReductions;
 
   private ShaderKind shaderKind;
   private List<IReductionPlan> plans;
@@ -50,6 +52,7 @@ public class MasterPlan implements IReductionPlan {
     this.passIndex = 0;
     this.currentPassSteps = 0;
     this.somePassMadeProgress = false;
+    this.numOutstandingReductions = 0;
     this.shaderKind = ShaderKind.FRAGMENT;
     resetPlans();
 
@@ -91,35 +94,43 @@ public class MasterPlan implements IReductionPlan {
 
   @Override
   public void update(boolean interesting) {
+    update(getCurrentPlan(), interesting);
+  }
+
+  /**
+   * Updates the given slave plan, which produced the reduction that interesting refers to.  It
+   * need not be the current plan: during speculative reduction, several reductions are produced
+   * before any of them is judged, and the master plan may move on to another pass in between.
+   * An interesting reduction supersedes the reductions produced after it, which are discarded
+   * without being judged, so none are outstanding after it.
+   */
+  public void update(IReductionPlan slavePlan, boolean interesting) {
     if (interesting) {
       somePassMadeProgress = true;
+      numOutstandingReductions = 0;
+    } else if (numOutstandingReductions > 0) {
+      numOutstandingReductions--;
     }
-    getCurrentPlan().update(interesting);
+    slavePlan.update(interesting);
   }
 
   @Override
   public IReductionState applyReduction(IReductionState state)
       throws NoMoreToReduceException {
     while (true) {
-      if (currentPassSteps < MAX_STEPS_PER_PASS) {
-        // Try the current slave plan.
-        try {
-          final IReductionState result = getCurrentPlan().applyReduction(state);
-          currentPassSteps++;
-          return result;
-        } catch (NoMoreToReduceException exception) {
-          // The current slave plan failed.  Replenish it, in case it is needed again later, and
-          // move on to the next plan.
-          getCurrentPlan().replenish();
-        }
-      }
-
-      passIndex++;
-      currentPassSteps = 0;
-
+      // The passes are checked for being done before trying the current pass, rather than after,
+      // as a speculative reduction produced before the plan reported that there is nothing more
+      // to reduce may turn out to be interesting, and the plan then be asked for more.
       if (passIndex == plans.size()) {
         // We've done all the passes.
         if (!somePassMadeProgress) {
+          if (numOutstandingReductions > 0) {
+            // A reduction that has yet to be judged may still turn out to be interesting, so
+            // whether a fixed-point has been reached is not yet known.  Report that there is
+            // nothing more to reduce for now, so that the outstanding reductions are judged
+            // before moving on.
+            throw new NoMoreToReduceException();
+          }
           // No pass made progress; we have reached a fixed-point for this shader kind.
           if (shaderKind == ShaderKind.VERTEX) {
             throw new NoMoreToReduceException();
@@ -142,6 +153,23 @@ public class MasterPlan implements IReductionPlan {
           somePassMadeProgress = false;
         }
       }
+
+      if (currentPassSteps < MAX_STEPS_PER_PASS) {
+        // Try the current slave plan.
+        try {
+          final IReductionState result = getCurrentPlan().applyReduction(state);
+          currentPassSteps++;
+          numOutstandingReductions++;
+          return result;
+        } catch (NoMoreToReduceException exception) {
+          // The current slave plan failed.  Replenish it, in case it is needed again later, and
+          // move on to the next plan.
+          getCurrentPlan().replenish();
+        }
+      }
+
+      passIndex++;
+      currentPassSteps = 0;
       // Having updated the slave plan, try to transform again.
     }
   }
@@ -132,28 +132,39 @@ public class SimplePlan implements IReductionPlan {
       history.add(opportunityIndex);
 
       initialOptionIndices.remove((Object) opportunityIndex);
-      // TODO: I fear we are not respecting transitivity here!
-      for (int i = initialOptionIndices.size() - 1; i >= 0; i--) {
-        if (!Compatibility.compatible(classOfTakenOpportunity,
-              initialReductionOpportunities.get(initialOptionIndices.get(i)).getClass())) {
-          initialOptionIndices.remove(i);
-        }
-      }
+      removeIncompatibleOptions(initialOptionIndices, initialReductionOpportunities,
+            classOfTakenOpportunity);
 
     }
 
-    for (; taken < maxOpportunitiesToTake; taken++) {
-
-      final List<? extends IReductionOpportunity> currentReductionOpportunities =
-            opportunitiesFinder.findOpportunities(
-                  workingShader, reductionOpportunityContext);
-      if (currentReductionOpportunities.isEmpty()) {
-        break;
+    // Having exhausted the initial opportunities, keep taking opportunities until we have taken
+    // enough.  Re-scanning the shader for opportunities is expensive, so rather than re-scanning
+    // after every opportunity is taken, we keep drawing compatible opportunities from the most
+    // recent scan, and only re-scan once these have all been used up or ruled out.  An
+    // opportunity that has been invalidated by an earlier one is detected via its precondition.
+    List<? extends IReductionOpportunity> currentReductionOpportunities = new ArrayList<>();
+    final List<Integer> currentOptionIndices = new ArrayList<>();
+    while (taken < maxOpportunitiesToTake) {
+
+      if (currentOptionIndices.isEmpty()) {
+        currentReductionOpportunities = opportunitiesFinder.findOpportunities(
+              workingShader, reductionOpportunityContext);
+        if (currentReductionOpportunities.isEmpty()) {
+          break;
+        }
+        for (int i = 0; i < currentReductionOpportunities.size(); i++) {
+          currentOptionIndices.add(i);
+        }
       }
 
-      final IReductionOpportunity nextReductionOpportunity = currentReductionOpportunities
-            .get(reductionOpportunityContext.getRandom()
-                  .nextInt(currentReductionOpportunities.size()));
+      final int opportunityIndex = currentOptionIndices.remove(reductionOpportunityContext
+            .getRandom().nextInt(currentOptionIndices.size()));
+      final IReductionOpportunity nextReductionOpportunity =
+            currentReductionOpportunities.get(opportunityIndex);
+
+      if (!nextReductionOpportunity.preconditionHolds()) {
+        continue;
+      }
 
       if (ReductionDriver.DEBUG_REDUCER) {
         LOGGER.info("Next reduction opportunity: " + nextReductionOpportunity);
@@ -161,6 +172,9 @@ public class SimplePlan implements IReductionPlan {
       nextReductionOpportunity
             .applyReduction();
       taken++;
+
+      removeIncompatibleOptions(currentOptionIndices, currentReductionOpportunities,
+            nextReductionOpportunity.getClass());
     }
 
     LOGGER.info("Took " + taken + " reduction opportunities.");
@@ -168,6 +182,18 @@ public class SimplePlan implements IReductionPlan {
     return true;
   }
 
+  private void removeIncompatibleOptions(List<Integer> optionIndices,
+        List<? extends IReductionOpportunity> reductionOpportunities,
+        Class<? extends IReductionOpportunity> classOfTakenOpportunity) {
+    // TODO: I fear we are not respecting transitivity here!
+    for (int i = optionIndices.size() - 1; i >= 0; i--) {
+      if (!Compatibility.compatible(classOfTakenOpportunity,
+            reductionOpportunities.get(optionIndices.get(i)).getClass())) {
+        optionIndices.remove(i);
+      }
+    }
+  }
+
   private List<? extends IReductionOpportunity> getSortedReductionOpportunities(
         TranslationUnit workingShader) {
     // Get the available reduction opportunities.
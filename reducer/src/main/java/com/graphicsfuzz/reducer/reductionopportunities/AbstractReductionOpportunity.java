@@ -36,6 +36,7 @@ public abstract class AbstractReductionOpportunity implements IReductionOpportun
     if (!preconditionHolds()) {
       return;
     }
+    AnalysisCache.noteReductionApplied();
     applyReductionImpl();
   }
 
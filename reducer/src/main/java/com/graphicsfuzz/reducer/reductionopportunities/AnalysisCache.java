@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.reductionopportunities;
+
+import com.graphicsfuzz.common.ast.IParentMap;
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.typing.Typer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares analyses of a translation unit, namely its Typer and its parent map, between the
+ * reduction opportunity finders that analyse it, so that each analysis is done once rather than
+ * once per finder.
+ *
+ * <p>The reducer only changes a translation unit by applying reduction opportunities, so the
+ * analyses are done again once any reduction opportunity has been applied since they were done.
+ * They are not patched up for just the changed parts of the translation unit, as a change to a
+ * declaration can change the types of expressions anywhere in its scope.  When assertions are
+ * enabled, a shared parent map is checked against the translation unit each time it is reused.</p>
+ */
+class AnalysisCache {
+
+  // Counts the reduction opportunities that have been applied, to any translation unit.
+  private static final AtomicLong reductionsApplied = new AtomicLong();
+
+  private TranslationUnit analysedTranslationUnit;
+  private long reductionsAppliedWhenAnalysed;
+  private ShadingLanguageVersion typedShadingLanguageVersion;
+  private Typer typer;
+  private IParentMap parentMap;
+
+  static void noteReductionApplied() {
+    reductionsApplied.incrementAndGet();
+  }
+
+  synchronized Typer getTyper(TranslationUnit tu, ShadingLanguageVersion shadingLanguageVersion) {
+    forgetIfStale(tu);
+    if (typer == null || typedShadingLanguageVersion != shadingLanguageVersion) {
+      typer = new Typer(tu, shadingLanguageVersion);
+      typedShadingLanguageVersion = shadingLanguageVersion;
+    }
+    return typer;
+  }
+
+  synchronized IParentMap getParentMap(TranslationUnit tu) {
+    forgetIfStale(tu);
+    if (parentMap == null) {
+      parentMap = IParentMap.createParentMap(tu);
+    } else {
+      assert IParentMap.isUpToDate(parentMap, tu);
+    }
+    return parentMap;
+  }
+
+  private void forgetIfStale(TranslationUnit tu) {
+    final long currentReductionsApplied = reductionsApplied.get();
+    if (analysedTranslationUnit != tu
+        || reductionsAppliedWhenAnalysed != currentReductionsApplied) {
+      analysedTranslationUnit = tu;
+      reductionsAppliedWhenAnalysed = currentReductionsApplied;
+      typedShadingLanguageVersion = null;
+      typer = null;
+      parentMap = null;
+    }
+  }
+
+}
@@ -65,7 +65,7 @@ public abstract class ReductionOpportunitiesBase
     this.notReferencedFromLiveContext = new NotReferencedFromLiveContext(tu);
     this.context = context;
     this.enclosingFunctionName = null;
-    this.parentMap = IParentMap.createParentMap(tu);
+    this.parentMap = context.getParentMap(tu);
     this.numEnclosingLValues = 0;
   }
 
@@ -16,7 +16,10 @@
 
 package com.graphicsfuzz.reducer.reductionopportunities;
 
+import com.graphicsfuzz.common.ast.IParentMap;
+import com.graphicsfuzz.common.ast.TranslationUnit;
 import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.typing.Typer;
 import com.graphicsfuzz.common.util.IRandom;
 import com.graphicsfuzz.common.util.IdGenerator;
 
@@ -31,6 +34,7 @@ public class ReductionOpportunityContext {
   private final IdGenerator idGenerator;
   private final int maxPercentageToReduce;
   private final int aggressionDecreaseStep;
+  private final AnalysisCache analysisCache;
 
   public ReductionOpportunityContext(boolean reduceEverywhere,
       ShadingLanguageVersion shadingLanguageVersion,
@@ -42,6 +46,7 @@ public class ReductionOpportunityContext {
     this.idGenerator = idGenerator;
     this.maxPercentageToReduce = maxPercentageToReduce;
     this.aggressionDecreaseStep = aggressionDecreaseStep;
+    this.analysisCache = new AnalysisCache();
   }
 
   public ReductionOpportunityContext(boolean reduceEverywhere,
@@ -78,4 +83,24 @@ public class ReductionOpportunityContext {
     return aggressionDecreaseStep;
   }
 
+  /**
+   * Yields a Typer for the given translation unit.  The Typer is shared by all finders that use
+   * this context, until a reduction opportunity is applied.
+   * @param tu The translation unit to be typed
+   * @return A Typer for the translation unit
+   */
+  public Typer getTyper(TranslationUnit tu) {
+    return analysisCache.getTyper(tu, getShadingLanguageVersion());
+  }
+
+  /**
+   * Yields a parent map for the given translation unit.  The map is shared by all finders that use
+   * this context, until a reduction opportunity is applied.
+   * @param tu The translation unit whose parents are required
+   * @return A parent map for the translation unit
+   */
+  public IParentMap getParentMap(TranslationUnit tu) {
+    return analysisCache.getParentMap(tu);
+  }
+
 }
@@ -18,6 +18,7 @@ package com.graphicsfuzz.reducer.tool;
 
 import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
 import com.graphicsfuzz.common.transformreduce.Constants;
+import com.graphicsfuzz.common.util.ExecHelper;
 import com.graphicsfuzz.common.util.FileHelper;
 import com.graphicsfuzz.common.util.Helper;
 import com.graphicsfuzz.common.util.IRandom;
@@ -29,6 +30,7 @@ import com.graphicsfuzz.reducer.IFileJudge;
 import com.graphicsfuzz.reducer.IReductionStateFileWriter;
 import com.graphicsfuzz.reducer.ReductionDriver;
 import com.graphicsfuzz.reducer.ReductionKind;
+import com.graphicsfuzz.reducer.filejudge.CachingFileJudge;
 import com.graphicsfuzz.reducer.filejudge.FuzzingFileJudge;
 import com.graphicsfuzz.reducer.filejudge.ImageGenErrorShaderFileJudge;
 import com.graphicsfuzz.reducer.filejudge.ImageShaderFileJudge;
@@ -42,10 +44,14 @@ import com.graphicsfuzz.shadersets.HistogramImageFileComparator;
 import com.graphicsfuzz.shadersets.IShaderDispatcher;
 import com.graphicsfuzz.shadersets.LocalShaderDispatcher;
 import com.graphicsfuzz.shadersets.RemoteShaderDispatcher;
+import com.graphicsfuzz.shadersets.ResultsListeners;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicLong;
@@ -55,6 +61,7 @@ import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -108,8 +115,8 @@ public class Reduce {
     parser.addArgument("--timeout")
           .help(
                 "Time in seconds after which execution of an individual variant is terminated "
-                      + "during reduction.")
-          .setDefault(30)
+                      + "during reduction; 0, the default, means no limit.")
+          .setDefault(0)
           .type(Integer.class);
 
     parser.addArgument("--max_steps")
@@ -152,6 +159,33 @@ public class Reduce {
           .help("Client token to which image jobs are sent. Used with --server.")
           .type(String.class);
 
+    parser.addArgument("--extra_tokens")
+          .help("Additional client tokens to which image jobs are sent. Used with --server. "
+                + "Supplying extra tokens enables speculative parallel reduction: candidate "
+                + "reduction steps are judged concurrently, one per client.")
+          .nargs("+")
+          .setDefault(new ArrayList<String>())
+          .type(String.class);
+
+    parser.addArgument("--local_judges")
+          .help("Number of candidate reduction steps to judge concurrently when images are "
+                + "generated locally. Values greater than 1 enable speculative parallel "
+                + "reduction.")
+          .setDefault(1)
+          .type(Integer.class);
+
+    parser.addArgument("--judge_cache")
+          .help("Directory in which to persist the verdicts of the judge, keyed by shader "
+                + "contents, uniforms and judge configuration.  The directory can be shared "
+                + "between reductions and reused across restarts; delete it to force shaders to "
+                + "be judged afresh.")
+          .type(File.class);
+
+    parser.addArgument("--judge_cache_size")
+          .help("Maximum number of verdicts to keep in the judge cache.")
+          .setDefault(CachingFileJudge.DEFAULT_MAX_ENTRIES)
+          .type(Integer.class);
+
     parser.addArgument("--output")
           .help("Output directory.")
           .setDefault(new File("."))
@@ -202,6 +236,7 @@ public class Reduce {
 
     // Create output dir
     FileUtils.forceMkdir(workDir);
+    ResultsListeners.reductionUpdated(workDir);
 
     try {
       if (ns.get("reduction_kind").equals(ReductionKind.VALIDATOR_ERROR)
@@ -225,8 +260,7 @@ public class Reduce {
       }
 
       final double threshold = ns.get("threshold");
-      // TODO: integrate timeout into reducer
-      @SuppressWarnings("UnusedAssignment") Integer timeout = ns.get("timeout");
+      final int timeout = ns.get("timeout");
       final Integer maxSteps = ns.get("max_steps");
       final Integer retryLimit = ns.get("retry_limit");
       final Boolean verbose = ns.get("verbose");
@@ -238,11 +272,16 @@ public class Reduce {
 
       final String server = ns.get("server");
       final String token = ns.get("token");
+      final List<String> extraTokens = ns.get("extra_tokens");
+      final int localJudges = ns.get("local_judges");
 
       final Boolean usingSwiftshader = ns.get("swiftshader");
 
       final Boolean continuePreviousReduction = ns.get("continue_previous_reduction");
 
+      final File judgeCache = ns.get("judge_cache");
+      final int judgeCacheSize = ns.get("judge_cache_size");
+
       if (managerOverride != null && (server == null || token == null)) {
         throw new ArgumentParserException(
               "Must supply server (dummy string) and token when executing in server process.",
@@ -255,6 +294,15 @@ public class Reduce {
       if (server == null && token != null) {
         LOGGER.warn("Warning: --token ignored, as it is used without --server");
       }
+      if (server == null && !extraTokens.isEmpty()) {
+        LOGGER.warn("Warning: --extra_tokens ignored, as it is used without --server");
+      }
+      if (server != null && localJudges != 1) {
+        LOGGER.warn("Warning: --local_judges ignored, as --server is being used");
+      }
+      if (localJudges < 1) {
+        throw new ArgumentParserException("--local_judges must be at least 1", parser);
+      }
       if (server != null && usingSwiftshader) {
         LOGGER.warn("Warning: --swiftshader ignored, as --server is being used");
       }
@@ -289,76 +337,47 @@ public class Reduce {
         FileUtils.copyFile(temp, referenceImage);
       }
 
-      IFileJudge fileJudge;
-
-      IShaderDispatcher imageGenerator =
-
-            server == null || server.isEmpty() || server.equals(".")
-                  ? new LocalShaderDispatcher(usingSwiftshader)
-                  : new RemoteShaderDispatcher(
-                        server + "/manageAPI",
-                        token,
-                        managerOverride,
-                        new AtomicLong(),
-                        retryLimit);
-
-      File corpus = new File(workDir, "corpus");
-
-      switch (reductionKind) {
-        case NO_IMAGE:
-          fileJudge =
-                new ImageGenErrorShaderFileJudge(
-                      workDir,
-                      (errorString == null || errorString.isEmpty()) ? null
-                            : Pattern.compile(".*" + errorString + ".*", Pattern.DOTALL),
-                      imageGenerator,
-                      skipRender,
-                      stopOnError);
-          break;
-        case NOT_IDENTICAL:
-          fileJudge = new ImageShaderFileJudge(null, referenceImage, workDir,
-                new ExactImageFileComparator(false),
-                imageGenerator,
-                stopOnError);
-          break;
-        case IDENTICAL:
-          fileJudge = new ImageShaderFileJudge(null, referenceImage, workDir,
-                new ExactImageFileComparator(true),
-                imageGenerator,
-                stopOnError);
-          break;
-        case BELOW_THRESHOLD:
-          fileJudge = new ImageShaderFileJudge(null, referenceImage, workDir,
-                new HistogramImageFileComparator(threshold, false),
-                imageGenerator,
-                stopOnError);
-          break;
-        case ABOVE_THRESHOLD:
-          fileJudge = new ImageShaderFileJudge(null, referenceImage, workDir,
-                new HistogramImageFileComparator(threshold, true),
-                imageGenerator,
-                stopOnError);
-          break;
-        case VALIDATOR_ERROR:
-          fileJudge = new ValidatorErrorShaderFileJudge(errorString.isEmpty() ? null
-                : Pattern.compile(".*" + errorString + ".*", Pattern.DOTALL));
-          break;
-        case ALWAYS_REDUCE:
-          fileJudge = item -> true;
-          break;
-        case FUZZ:
-          fileJudge = new FuzzingFileJudge(workDir, corpus, imageGenerator);
-          break;
-        default:
-          throw new ArgumentParserException(
-                "Unsupported reduction kind: " + reductionKind,
-                parser);
+      final List<IShaderDispatcher> imageGenerators = new ArrayList<>();
+      final List<String> imageGeneratorDescriptions = new ArrayList<>();
+      if (server == null || server.isEmpty() || server.equals(".")) {
+        for (int i = 0; i < localJudges; i++) {
+          imageGenerators.add(new LocalShaderDispatcher(usingSwiftshader, timeout));
+          imageGeneratorDescriptions.add(usingSwiftshader ? "local swiftshader" : "local");
+        }
+      } else {
+        final AtomicLong jobCounter = new AtomicLong();
+        final List<String> tokens = new ArrayList<>();
+        tokens.add(token);
+        tokens.addAll(extraTokens);
+        for (String currentToken : tokens) {
+          imageGenerators.add(new RemoteShaderDispatcher(
+                server + "/manageAPI",
+                currentToken,
+                managerOverride,
+                jobCounter,
+                retryLimit,
+                false,
+                timeout));
+          imageGeneratorDescriptions.add("token " + currentToken);
+        }
+      }
+
+      final List<IFileJudge> fileJudges = new ArrayList<>();
+      for (int i = 0; i < imageGenerators.size(); i++) {
+        final IFileJudge fileJudge = makeFileJudge(reductionKind, imageGenerators.get(i), workDir,
+              referenceImage, threshold, errorString, skipRender, stopOnError, parser);
+        fileJudges.add(judgeCache == null
+              ? fileJudge
+              : new CachingFileJudge(fileJudge, judgeCache,
+                  getJudgeDescription(reductionKind, imageGeneratorDescriptions.get(i),
+                        referenceImage, threshold, errorString, skipRender),
+                  judgeCacheSize));
       }
 
       doReductionHelper(
             fragmentShader,
             seed,
-            fileJudge,
+            fileJudges,
             workDir,
             maxSteps,
             reduceEverywhere,
@@ -378,9 +397,89 @@ public class Reduce {
       );
 
       throw ex;
+    } finally {
+      ResultsListeners.reductionUpdated(workDir);
     }
   }
 
+  private static IFileJudge makeFileJudge(
+        ReductionKind reductionKind,
+        IShaderDispatcher imageGenerator,
+        File workDir,
+        File referenceImage,
+        double threshold,
+        String errorString,
+        boolean skipRender,
+        boolean stopOnError,
+        ArgumentParser parser) throws ArgumentParserException {
+    switch (reductionKind) {
+      case NO_IMAGE:
+        return new ImageGenErrorShaderFileJudge(
+              workDir,
+              (errorString == null || errorString.isEmpty()) ? null
+                    : Pattern.compile(".*" + errorString + ".*", Pattern.DOTALL),
+              imageGenerator,
+              skipRender,
+              stopOnError);
+      case NOT_IDENTICAL:
+        return new ImageShaderFileJudge(null, referenceImage, workDir,
+              new ExactImageFileComparator(false),
+              imageGenerator,
+              stopOnError);
+      case IDENTICAL:
+        return new ImageShaderFileJudge(null, referenceImage, workDir,
+              new ExactImageFileComparator(true),
+              imageGenerator,
+              stopOnError);
+      case BELOW_THRESHOLD:
+        return new ImageShaderFileJudge(null, referenceImage, workDir,
+              new HistogramImageFileComparator(threshold, false),
+              imageGenerator,
+              stopOnError);
+      case ABOVE_THRESHOLD:
+        return new ImageShaderFileJudge(null, referenceImage, workDir,
+              new HistogramImageFileComparator(threshold, true),
+              imageGenerator,
+              stopOnError);
+      case VALIDATOR_ERROR:
+        return new ValidatorErrorShaderFileJudge(errorString.isEmpty() ? null
+              : Pattern.compile(".*" + errorString + ".*", Pattern.DOTALL));
+      case ALWAYS_REDUCE:
+        return item -> true;
+      case FUZZ:
+        return new FuzzingFileJudge(workDir, new File(workDir, "corpus"), imageGenerator);
+      default:
+        throw new ArgumentParserException(
+              "Unsupported reduction kind: " + reductionKind,
+              parser);
+    }
+  }
+
+  /**
+   * Describes everything other than the shader files themselves that a judge's verdict depends
+   * on, for use as part of the key of a judge cache.
+   */
+  private static String getJudgeDescription(
+        ReductionKind reductionKind,
+        String imageGeneratorDescription,
+        File referenceImage,
+        double threshold,
+        String errorString,
+        boolean skipRender) throws IOException {
+    final StringBuilder result = new StringBuilder();
+    result.append("kind: ").append(reductionKind).append("\n");
+    result.append("image generator: ").append(imageGeneratorDescription).append("\n");
+    result.append("threshold: ").append(threshold).append("\n");
+    result.append("error string: ").append(errorString).append("\n");
+    result.append("skip render: ").append(skipRender).append("\n");
+    result.append("reference image: ")
+          .append(referenceImage == null
+              ? "none"
+              : DigestUtils.md5Hex(FileUtils.readFileToByteArray(referenceImage)))
+          .append("\n");
+    return result.toString();
+  }
+
   public static void doReductionHelperSafe(
         File fragmentShader,
         int seed,
@@ -416,6 +515,20 @@ public class Reduce {
         boolean continuePreviousReduction,
         boolean verbose)
         throws IOException, ParseTimeoutException {
+    doReductionHelper(fragmentShader, seed, Collections.singletonList(fileJudge), workDir,
+          stepLimit, reduceEverywhere, continuePreviousReduction, verbose);
+  }
+
+  public static void doReductionHelper(
+        File fragmentShader,
+        int seed,
+        List<? extends IFileJudge> fileJudges,
+        File workDir,
+        int stepLimit,
+        boolean reduceEverywhere,
+        boolean continuePreviousReduction,
+        boolean verbose)
+        throws IOException, ParseTimeoutException {
     final ShadingLanguageVersion shadingLanguageVersion =
         ShadingLanguageVersion.getGlslVersionFromShader(fragmentShader);
     final IRandom random = new RandomWrapper(seed);
@@ -444,9 +557,10 @@ public class Reduce {
           .doReduction(FilenameUtils.removeExtension(fragmentShader.getAbsolutePath()),
                 fileCountOffset,
                 fileWriter,
-                fileJudge,
+                fileJudges,
                 workDir,
                 stepLimit);
+    LOGGER.info("External tools run so far: {}", ExecHelper.getMetrics());
   }
 
   private static File getStartingShaderFile(File fragmentShader, File workDir,
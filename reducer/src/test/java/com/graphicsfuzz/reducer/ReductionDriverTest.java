@@ -17,6 +17,7 @@
 package com.graphicsfuzz.reducer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -46,9 +47,15 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.junit.Rule;
@@ -538,6 +545,180 @@ public class ReductionDriverTest {
         new File(resultFilesPrefix + ".vert"), true));
   }
 
+  @Test
+  public void testSpeculativeReduction() throws Exception {
+    final String program = "void main() {"
+          + "  int a;"
+          + "  int b;"
+          + "  a = 3;"
+          + "  b = 4;"
+          + "  if (true) {"
+          + "    float keep = sin(7.0);"
+          + "  }"
+          + "}";
+    final File workDir = testFolder.newFolder("speculative");
+    final String resultFilesPrefix = reduceSpeculatively(workDir, program, 3, 0);
+    final String result = FileUtils.readFileToString(new File(resultFilesPrefix + ".frag"),
+          StandardCharsets.UTF_8);
+    assertTrue(result.contains("sin(7.0)"));
+    assertFalse(result.contains("a = 3"));
+    assertFalse(result.contains("b = 4"));
+
+    // Candidates discarded because an earlier candidate was accepted are marked as unused, rather
+    // than as failures, even if they are interesting.
+    boolean foundUnused = false;
+    for (File file : workDir.listFiles((dir, name) -> name.endsWith(".frag"))) {
+      if (file.getName().endsWith("_unused.frag")) {
+        foundUnused = true;
+      } else if (file.getName().endsWith("_fail.frag")) {
+        assertFalse(FileUtils.readFileToString(file, StandardCharsets.UTF_8)
+              .contains("sin(7.0)"));
+      }
+    }
+    assertTrue(foundUnused);
+  }
+
+  @Test
+  public void testSpeculativeReductionIsDeterministic() throws Exception {
+    final String program = "void main() {"
+          + "  int a;"
+          + "  int b;"
+          + "  a = 3;"
+          + "  b = 4;"
+          + "  for (int i = 0; i < 10; i++) {"
+          + "    a += b;"
+          + "    float keep = sin(7.0);"
+          + "  }"
+          + "}";
+    final String firstResult = FileUtils.readFileToString(
+          new File(reduceSpeculatively(testFolder.newFolder("first"), program, 4, 42, 5)
+                + ".frag"), StandardCharsets.UTF_8);
+    final String secondResult = FileUtils.readFileToString(
+          new File(reduceSpeculatively(testFolder.newFolder("second"), program, 4, 42, 5)
+                + ".frag"), StandardCharsets.UTF_8);
+    assertEquals(firstResult, secondResult);
+  }
+
+  @Test
+  public void testDiscardedCandidatesAreKeptUntilTheirJudgesStop() throws Exception {
+    final String program = "void main() {"
+          + "  int a;"
+          + "  int b;"
+          + "  a = 3;"
+          + "  b = 4;"
+          + "  if (true) {"
+          + "    float keep = sin(7.0);"
+          + "  }"
+          + "}";
+    final File workDir = testFolder.newFolder("slowToCancel");
+
+    // The first judge is quick, and the others ignore being cancelled and look at their
+    // candidate's files again once they are done waiting.
+    final AtomicInteger busyJudges = new AtomicInteger(0);
+    final Set<String> missingFiles = Collections.synchronizedSet(new HashSet<>());
+    final List<IFileJudge> judges = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      final int delayMillis = i * 20;
+      judges.add(filesPrefix -> {
+        busyJudges.incrementAndGet();
+        try {
+          final File fragmentShader = new File(filesPrefix + ".frag");
+          final long endTime = System.currentTimeMillis() + delayMillis;
+          while (System.currentTimeMillis() < endTime) {
+            try {
+              Thread.sleep(Math.max(1, endTime - System.currentTimeMillis()));
+            } catch (InterruptedException exception) {
+              // Keep waiting, as a judge running an external tool might.
+            }
+          }
+          if (!fragmentShader.exists()) {
+            missingFiles.add(fragmentShader.getName());
+            return false;
+          }
+          return FileUtils.readFileToString(fragmentShader, StandardCharsets.UTF_8)
+                .contains("sin(7.0)");
+        } catch (IOException exception) {
+          throw new FileJudgeException(exception);
+        } finally {
+          busyJudges.decrementAndGet();
+        }
+      });
+    }
+
+    final String resultFilesPrefix = reduceSpeculatively(workDir, program, judges, 0, -1);
+    assertTrue(FileUtils.readFileToString(new File(resultFilesPrefix + ".frag"),
+          StandardCharsets.UTF_8).contains("sin(7.0)"));
+    assertEquals(0, busyJudges.get());
+    assertTrue(missingFiles.toString(), missingFiles.isEmpty());
+  }
+
+  private String reduceSpeculatively(File workDir, String program, int numJudges, int seed)
+        throws IOException, ParseTimeoutException {
+    return reduceSpeculatively(workDir, program, numJudges, seed, -1);
+  }
+
+  private String reduceSpeculatively(File workDir, String program, int numJudges, int seed,
+        int stepLimit)
+        throws IOException, ParseTimeoutException {
+    // Each judge is stateless, and the judges sleep for different amounts of time so that
+    // verdicts arrive out of order.
+    final List<IFileJudge> judges = new ArrayList<>();
+    for (int i = 0; i < numJudges; i++) {
+      final int delayMillis = (numJudges - i) * 5;
+      judges.add(filesPrefix -> {
+        try {
+          Thread.sleep(delayMillis);
+          return FileUtils.readFileToString(
+                new File(filesPrefix + ".frag"), StandardCharsets.UTF_8).contains("sin(7.0)");
+        } catch (InterruptedException | IOException exception) {
+          throw new FileJudgeException(exception);
+        }
+      });
+    }
+
+    return reduceSpeculatively(workDir, program, judges, seed, stepLimit);
+  }
+
+  private String reduceSpeculatively(File workDir, String program, List<IFileJudge> judges,
+        int seed, int stepLimit)
+        throws IOException, ParseTimeoutException {
+    final File fragmentShaderFile = new File(workDir, "temp.frag");
+    FileUtils.writeStringToFile(fragmentShaderFile, program, StandardCharsets.UTF_8);
+    FileUtils.writeStringToFile(new File(workDir, "temp.json"), "{ }", StandardCharsets.UTF_8);
+
+    final ShadingLanguageVersion version = ShadingLanguageVersion.ESSL_100;
+    final GlslReductionState state = new GlslReductionState(
+          Optional.of(ParseHelper.parse(fragmentShaderFile, false)));
+    return new ReductionDriver(new ReductionOpportunityContext(true, version,
+          new RandomWrapper(seed), new IdGenerator()), false, state)
+          .doReduction(getPrefix(fragmentShaderFile), 0, new GlslReductionStateFileWriter(version),
+                judges, workDir, stepLimit);
+  }
+
+  @Test
+  public void testFileWriterHashesWrittenShaders() throws Exception {
+    final ShadingLanguageVersion version = ShadingLanguageVersion.ESSL_100;
+    final GlslReductionStateFileWriter fileWriter = new GlslReductionStateFileWriter(version);
+    final String prefix = new File(testFolder.getRoot(), "shader").getAbsolutePath();
+
+    final GlslReductionState fragmentOnly = new GlslReductionState(
+        Optional.of(ParseHelper.parse("void main() { gl_FragColor = vec4(1.0); }", false)));
+    final String fragmentOnlyHash = fileWriter.writeFileFromState(fragmentOnly, prefix);
+    assertEquals(DigestUtils.md5Hex(FileUtils.readFileToByteArray(new File(prefix + ".frag"))),
+        fragmentOnlyHash);
+
+    final GlslReductionState both = new GlslReductionState(
+        Optional.of(ParseHelper.parse("void main() { gl_FragColor = vec4(0.0); }", false)),
+        Optional.of(ParseHelper.parse("void main() { gl_Position = vec4(0.0); }", false)));
+    final String hash = fileWriter.writeFileFromState(both, prefix);
+    final byte[] vertexData = FileUtils.readFileToByteArray(new File(prefix + ".vert"));
+    final byte[] fragmentData = FileUtils.readFileToByteArray(new File(prefix + ".frag"));
+    final byte[] combinedData = new byte[vertexData.length + fragmentData.length];
+    System.arraycopy(vertexData, 0, combinedData, 0, vertexData.length);
+    System.arraycopy(fragmentData, 0, combinedData, vertexData.length, fragmentData.length);
+    assertEquals(DigestUtils.md5Hex(combinedData), hash);
+  }
+
   private String getPrefix(File tempFile) {
     return FilenameUtils.removeExtension(tempFile.getAbsolutePath());
   }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.filejudge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.reducer.IFileJudge;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CachingFileJudgeTest {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private int judgeCalls = 0;
+
+  private final IFileJudge countingJudge = filesPrefix -> {
+    judgeCalls++;
+    try {
+      return FileUtils.readFileToString(new File(filesPrefix + ".frag"), StandardCharsets.UTF_8)
+            .contains("interesting");
+    } catch (IOException exception) {
+      throw new RuntimeException(exception);
+    }
+  };
+
+  @Test
+  public void testVerdictsAreReused() throws Exception {
+    final File cacheDir = testFolder.newFolder("cache");
+    final CachingFileJudge judge = new CachingFileJudge(countingJudge, cacheDir, "judge");
+
+    final String first = writeShader("first", "void main() { interesting(); }\n", "{ }");
+    final String second = writeShader("second", "void main() { interesting(); }\r\n", "{}");
+    final String third = writeShader("third", "void main() { }", "{ }");
+
+    assertTrue(judge.isInteresting(first));
+    assertTrue(judge.isInteresting(second));
+    assertEquals(1, judgeCalls);
+    assertFalse(judge.isInteresting(third));
+    assertFalse(judge.isInteresting(third));
+    assertEquals(2, judgeCalls);
+  }
+
+  @Test
+  public void testVerdictsPersist() throws Exception {
+    final File cacheDir = testFolder.newFolder("cache");
+    final String shader = writeShader("shader", "void main() { interesting(); }", "{ }");
+
+    assertTrue(new CachingFileJudge(countingJudge, cacheDir, "judge").isInteresting(shader));
+    assertTrue(new CachingFileJudge(countingJudge, cacheDir, "judge").isInteresting(shader));
+    assertEquals(1, judgeCalls);
+  }
+
+  @Test
+  public void testKeyDependsOnJudgeAndUniforms() throws Exception {
+    final File cacheDir = testFolder.newFolder("cache");
+    final String shader = writeShader("shader", "void main() { interesting(); }", "{ }");
+    final String otherUniforms = writeShader("other", "void main() { interesting(); }",
+          "{ \"u\": { \"func\": \"glUniform1f\", \"args\": [ 1.0 ] } }");
+
+    new CachingFileJudge(countingJudge, cacheDir, "token A").isInteresting(shader);
+    new CachingFileJudge(countingJudge, cacheDir, "token B").isInteresting(shader);
+    new CachingFileJudge(countingJudge, cacheDir, "token A").isInteresting(otherUniforms);
+    assertEquals(3, judgeCalls);
+  }
+
+  @Test
+  public void testCacheIsBounded() throws Exception {
+    final File cacheDir = testFolder.newFolder("cache");
+    final CachingFileJudge judge = new CachingFileJudge(countingJudge, cacheDir, "judge", 2);
+    for (int i = 0; i < 5; i++) {
+      judge.isInteresting(writeShader("shader" + i, "void main() { int x" + i + "; }", "{ }"));
+    }
+    assertEquals(2, cacheDir.listFiles((dir, name) -> name.endsWith(".json")).length);
+  }
+
+  @Test
+  public void testBlankLinesAndTrailingWhitespaceMatter() throws Exception {
+    // An error string may mention a line or column, which blank lines and whitespace change.
+    final File cacheDir = testFolder.newFolder("cache");
+    final CachingFileJudge judge = new CachingFileJudge(countingJudge, cacheDir, "judge");
+    judge.isInteresting(writeShader("first", "void main() {\n interesting(); }\n", "{ }"));
+    judge.isInteresting(writeShader("second", "void main() {\n\n interesting(); }\n", "{ }"));
+    judge.isInteresting(writeShader("third", "void main() { \n interesting(); }\n", "{ }"));
+    assertEquals(3, judgeCalls);
+  }
+
+  @Test
+  public void testImageIsRestoredOnHit() throws Exception {
+    final File cacheDir = testFolder.newFolder("cache");
+    final IFileJudge imageJudge = filesPrefix -> {
+      judgeCalls++;
+      try {
+        FileUtils.writeStringToFile(new File(filesPrefix + ".png"), "image",
+              StandardCharsets.UTF_8);
+      } catch (IOException exception) {
+        throw new RuntimeException(exception);
+      }
+      return true;
+    };
+    final CachingFileJudge judge = new CachingFileJudge(imageJudge, cacheDir, "judge");
+    judge.isInteresting(writeShader("first", "void main() { }", "{ }"));
+    final String second = writeShader("second", "void main() { }", "{ }");
+    assertTrue(judge.isInteresting(second));
+    assertEquals(1, judgeCalls);
+    assertEquals("image", FileUtils.readFileToString(new File(second + ".png"),
+          StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testNormalizeText() {
+    assertEquals("a  \n\nb\t\n", CachingFileJudge.normalizeText("a  \r\n\r\nb\t\r"));
+  }
+
+  private String writeShader(String name, String fragmentShader, String uniforms)
+        throws IOException {
+    final File fragmentFile = new File(testFolder.getRoot(), name + ".frag");
+    FileUtils.writeStringToFile(fragmentFile, fragmentShader, StandardCharsets.UTF_8);
+    FileUtils.writeStringToFile(new File(testFolder.getRoot(), name + ".json"), uniforms,
+          StandardCharsets.UTF_8);
+    return new File(testFolder.getRoot(), name).getAbsolutePath();
+  }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.reductionopportunities;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.common.ast.IParentMap;
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.typing.Typer;
+import com.graphicsfuzz.common.util.Helper;
+import com.graphicsfuzz.common.util.RandomWrapper;
+import java.util.List;
+import org.junit.Test;
+
+public class AnalysisCacheTest {
+
+  @Test
+  public void testParentMapIsSharedUntilAReductionIsApplied() throws Exception {
+    final TranslationUnit tu = Helper.parse("void main() { int a; a + 1; }", false);
+    final ReductionOpportunityContext context = new ReductionOpportunityContext(true,
+        ShadingLanguageVersion.ESSL_100, new RandomWrapper(0), null);
+    final IParentMap parentMap = context.getParentMap(tu);
+    assertSame(parentMap, context.getParentMap(tu));
+    assertTrue(IParentMap.isUpToDate(parentMap, tu));
+
+    final List<SimplifyExprReductionOpportunity> ops =
+        ExprToConstantReductionOpportunities.findOpportunities(tu, context);
+    assertFalse(ops.isEmpty());
+    ops.get(0).applyReduction();
+    assertFalse(IParentMap.isUpToDate(parentMap, tu));
+    assertNotSame(parentMap, context.getParentMap(tu));
+    assertTrue(IParentMap.isUpToDate(context.getParentMap(tu), tu));
+  }
+
+  @Test
+  public void testTyperIsSharedUntilAReductionIsApplied() throws Exception {
+    final TranslationUnit tu = Helper.parse("void main() { int a; a + 1; }", false);
+    final ReductionOpportunityContext context = new ReductionOpportunityContext(true,
+        ShadingLanguageVersion.ESSL_100, new RandomWrapper(0), null);
+    final Typer typer = context.getTyper(tu);
+    assertSame(typer, context.getTyper(tu));
+    assertNotSame(typer, context.getTyper(tu.cloneAndPatchUp()));
+
+    final List<SimplifyExprReductionOpportunity> ops =
+        ExprToConstantReductionOpportunities.findOpportunities(tu, context);
+    assertFalse(ops.isEmpty());
+    final Typer typerBeforeReduction = context.getTyper(tu);
+    ops.get(0).applyReduction();
+    assertNotSame(typerBeforeReduction, context.getTyper(tu));
+  }
+
+}
@@ -21,6 +21,7 @@ import com.graphicsfuzz.server.FileDownloadServlet;
 import com.graphicsfuzz.server.FuzzerServiceImpl;
 import com.graphicsfuzz.server.FuzzerServiceManagerImpl;
 import com.graphicsfuzz.server.LocalArtifactManager;
+import com.graphicsfuzz.server.RangeAwareGzipHandler;
 import com.graphicsfuzz.server.thrift.FuzzerService;
 import com.graphicsfuzz.server.thrift.FuzzerServiceManager;
 import java.nio.file.Paths;
@@ -100,7 +101,7 @@ public final class FuzzerServer {
     HandlerList handlerList = new HandlerList();
     handlerList.addHandler(context);
 
-    GzipHandler gzipHandler = new GzipHandler();
+    GzipHandler gzipHandler = new RangeAwareGzipHandler();
     gzipHandler.setHandler(handlerList);
 
     Server server = new Server(port);
@@ -27,10 +27,12 @@ import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.protocol.TJSONProtocol;
 import org.apache.thrift.server.TServlet;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +43,9 @@ public final class FuzzerServer {
   private final String shaderSetsDir = "shaderfamilies";
   private final String processingDir = "processing";
 
+  // The maximum number of threads that serve requests.
+  private static final int MAX_REQUEST_THREADS = 200;
+
   private final ExecutorService executorService = Executors.newCachedThreadPool();
 
   private final int port;
@@ -92,7 +97,9 @@ public final class FuzzerServer {
       context.addServlet(shManager, "/manageAPI");
     }
 
-    context.addServlet(new ServletHolder(new WebUi()), "/webui/*");
+    final QueuedThreadPool threadPool = new QueuedThreadPool(MAX_REQUEST_THREADS);
+
+    context.addServlet(new ServletHolder(new WebUi(threadPool.getMaxThreads())), "/webui/*");
 
     final String staticDir = ToolPaths.getStaticDir();
     context.addServlet(
@@ -104,10 +111,15 @@ public final class FuzzerServer {
     HandlerList handlerList = new HandlerList();
     handlerList.addHandler(context);
 
-    GzipHandler gzipHandler = new GzipHandler();
+    // Already compressed media, such as PNG and GIF results, is excluded by content type, which
+    // FileSender always sets.
+    GzipHandler gzipHandler = new RangeAwareGzipHandler();
     gzipHandler.setHandler(handlerList);
 
-    Server server = new Server(port);
+    Server server = new Server(threadPool);
+    ServerConnector connector = new ServerConnector(server);
+    connector.setPort(port);
+    server.addConnector(connector);
 
     server.setHandler(gzipHandler);
     server.start();
@@ -21,72 +21,301 @@ import com.google.gson.JsonObject;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Wrapper to access JSON info files. Caches results to speed up the UI. Update results when file
  * is modified.
+ *
+ * <p>The cache holds at most MAX_ENTRIES files, evicting the least recently used.  Changes are
+ * detected using a WatchService on the directories that hold cached files, so that those files
+ * are served without touching the disk; a directory is watched while the cache holds a file in
+ * it.  Files in directories that could not be watched are checked for modification on each
+ * access.  Thread-safe.</p>
  */
 
 public class AccessFileInfo {
 
-  Gson gson;
+  private static final Logger LOGGER = LoggerFactory.getLogger(AccessFileInfo.class);
+
+  static final int MAX_ENTRIES = 10000;
+
+  private static final class CachedInfo {
+    private final long lastModified;
+    private final JsonObject info;
+
+    CachedInfo(long lastModified, JsonObject info) {
+      this.lastModified = lastModified;
+      this.info = info;
+    }
+  }
+
+  private final Gson gson = new Gson();
 
-  HashMap<String, JsonObject> workerInfoMap;
-  HashMap<String, Long> workerInfoLastModified;
+  // Keyed by absolute path.  Guarded by "cache", as are the fields below that say so.
+  private final Map<Path, CachedInfo> cache =
+      new LinkedHashMap<Path, CachedInfo>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, CachedInfo> eldest) {
+          if (size() > MAX_ENTRIES) {
+            removed(eldest.getKey());
+            return true;
+          }
+          return false;
+        }
+      };
 
-  HashMap<String, JsonObject> resultInfoMap;
-  HashMap<String, Long> resultInfoLastModified;
+  // The number of cached files in each directory that holds some.  Guarded by "cache".
+  private final Map<Path, Integer> entriesPerDir = new HashMap<>();
+
+  // Incremented whenever entries are invalidated, so that a file read before it changed is not
+  // cached after the change has been seen.  Guarded by "cache".
+  private long invalidations;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  private final Path root;
+  private final WatchService watchService;
+  // The watched directories, keyed by directory in watchKeys, which is guarded by "cache", and by
+  // watch key in watchedDirs, which is read by the thread processing events.
+  private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+  private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+  // Whether a failure to watch a directory has been logged; failures are usually all due to the
+  // same limit, so only the first is.
+  private final AtomicBoolean watchFailureLogged = new AtomicBoolean();
+
+  // Called with the path of each file or directory whose cached files are invalidated because of
+  // a watch event, so that tests can wait for changes to be seen.
+  private volatile Consumer<Path> invalidationListener = path -> { };
 
   public AccessFileInfo() {
-    gson = new Gson();
-    workerInfoMap = new HashMap<String, JsonObject>();
-    workerInfoLastModified = new HashMap<String, Long>();
-    resultInfoMap = new HashMap<String, JsonObject>();
-    resultInfoLastModified = new HashMap<String, Long>();
+    this(new File(WebUiConstants.WORKER_DIR));
+  }
+
+  AccessFileInfo(File root) {
+    this.root = root.toPath().toAbsolutePath().normalize();
+    WatchService watchService = null;
+    try {
+      watchService = this.root.getFileSystem().newWatchService();
+    } catch (IOException exception) {
+      LOGGER.warn("Cannot watch {}; info files will be checked on each access.", root, exception);
+    }
+    this.watchService = watchService;
+    if (watchService != null) {
+      final Thread thread = new Thread(this::processEvents, "info-file-watcher");
+      thread.setDaemon(true);
+      thread.start();
+    }
   }
 
   // Worker info ==============================================================
 
-  public JsonObject getWorkerInfo(String workerName) throws  FileNotFoundException {
-    File workerInfoFile = new File(WebUiConstants.WORKER_DIR
-        + "/" + workerName
+  public JsonObject getWorkerInfo(String workerName) throws FileNotFoundException {
+    File workerInfoFile = new File(root.toFile(), workerName
         + "/" + WebUiConstants.WORKER_INFO_FILE);
-    if (workerInfoMap.containsKey(workerName)
-        && workerInfoFile.lastModified() == workerInfoLastModified.get(workerName).longValue()) {
-      return workerInfoMap.get(workerName);
-    } else {
-      JsonObject workerInfo = readWorkerInfoFromFile(workerInfoFile);
-      workerInfoMap.put(workerName, workerInfo);
-      workerInfoLastModified.put(workerName, new Long(workerInfoFile.lastModified()));
-      return workerInfo;
+    return getInfo(workerInfoFile).getAsJsonObject("platform_info");
+  }
+
+  // Result info ==============================================================
+
+  public JsonObject getResultInfo(File resultInfoFile) throws FileNotFoundException {
+    return getInfo(resultInfoFile);
+  }
+
+  // Statistics ===============================================================
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public int getSize() {
+    synchronized (cache) {
+      return cache.size();
     }
   }
 
-  private JsonObject readWorkerInfoFromFile(File workerInfoFile) throws FileNotFoundException {
-    JsonObject json = gson
-        .fromJson(new FileReader(workerInfoFile), JsonObject.class)
-        .getAsJsonObject("platform_info");
-    return json;
+  void setInvalidationListener(Consumer<Path> invalidationListener) {
+    this.invalidationListener = invalidationListener;
   }
 
-  // Result info ==============================================================
+  int getWatchedDirCount() {
+    synchronized (cache) {
+      return watchKeys.size();
+    }
+  }
 
-  public JsonObject getResultInfo(File resultInfoFile) throws FileNotFoundException {
-    String resultPath = resultInfoFile.getPath();
-    if (resultInfoMap.containsKey(resultPath)
-        && resultInfoFile.lastModified() == resultInfoLastModified.get(resultPath).longValue()) {
-      return resultInfoMap.get(resultPath);
-    } else {
-      JsonObject resultInfo = readResultInfoFromFile(resultInfoFile);
-      resultInfoMap.put(resultPath, resultInfo);
-      resultInfoLastModified.put(resultPath, new Long(resultInfoFile.lastModified()));
-      return resultInfo;
+  public void shutdown() {
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException exception) {
+        LOGGER.warn("Could not close watch service.", exception);
+      }
+    }
+  }
+
+  // Cache ====================================================================
+
+  private JsonObject getInfo(File infoFile) throws FileNotFoundException {
+    final Path path = infoFile.toPath().toAbsolutePath().normalize();
+    final long startInvalidations;
+    synchronized (cache) {
+      final CachedInfo cached = cache.get(path);
+      if (cached != null && (watchKeys.containsKey(path.getParent())
+          || infoFile.lastModified() == cached.lastModified)) {
+        hits.incrementAndGet();
+        return cached.info;
+      }
+      // Watch the directory before reading the file, so that no change after the read is missed.
+      watch(path.getParent());
+      startInvalidations = invalidations;
+    }
+    misses.incrementAndGet();
+    final long lastModified = infoFile.lastModified();
+    JsonObject info = null;
+    try (Reader reader = new FileReader(infoFile)) {
+      info = gson.fromJson(reader, JsonObject.class);
+    } catch (FileNotFoundException exception) {
+      throw exception;
+    } catch (IOException exception) {
+      throw new RuntimeException(exception);
+    } finally {
+      synchronized (cache) {
+        if (info != null && invalidations == startInvalidations) {
+          if (cache.put(path, new CachedInfo(lastModified, info)) == null) {
+            entriesPerDir.merge(path.getParent(), 1, Integer::sum);
+          }
+        } else if (!entriesPerDir.containsKey(path.getParent())) {
+          // Nothing is cached from the directory watched above.
+          unwatch(path.getParent());
+        }
+      }
     }
+    return info;
   }
 
-  private JsonObject readResultInfoFromFile(File resultInfoFile) throws FileNotFoundException {
-    return gson.fromJson(new FileReader(resultInfoFile), JsonObject.class);
+  private void invalidate(Path path) {
+    synchronized (cache) {
+      if (cache.remove(path) != null) {
+        removed(path);
+      }
+      invalidations++;
+    }
+  }
+
+  private void invalidateDirectory(Path dir) {
+    synchronized (cache) {
+      final Iterator<Path> paths = cache.keySet().iterator();
+      while (paths.hasNext()) {
+        final Path path = paths.next();
+        if (path.startsWith(dir)) {
+          paths.remove();
+          removed(path);
+        }
+      }
+      invalidations++;
+    }
+  }
+
+  // Called with "cache" held when the file is removed from the cache; stops watching its
+  // directory if the cache holds no other file in it.
+  private void removed(Path path) {
+    final Path dir = path.getParent();
+    if (entriesPerDir.merge(dir, -1, Integer::sum) == 0) {
+      entriesPerDir.remove(dir);
+      unwatch(dir);
+    }
+  }
+
+  // Watching =================================================================
+
+  // Called with "cache" held.  If the directory cannot be watched, files in it are checked on
+  // each access.
+  private void watch(Path dir) {
+    if (watchService == null || watchKeys.containsKey(dir)) {
+      return;
+    }
+    try {
+      final WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+      watchKeys.put(dir, key);
+      watchedDirs.put(key, dir);
+    } catch (ClosedWatchServiceException | NoSuchFileException exception) {
+      // The cache is shutting down, or there is no file to cache.
+    } catch (IOException exception) {
+      if (watchFailureLogged.compareAndSet(false, true)) {
+        LOGGER.warn("Cannot watch {}: {}. Info files in directories that cannot be watched will "
+            + "be checked on each access.", dir, exception.toString());
+      }
+    }
+  }
+
+  // Called with "cache" held.
+  private void unwatch(Path dir) {
+    final WatchKey key = watchKeys.remove(dir);
+    if (key != null) {
+      watchedDirs.remove(key);
+      key.cancel();
+    }
+  }
+
+  private void processEvents() {
+    while (true) {
+      final WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException exception) {
+        return;
+      }
+      final Path dir = watchedDirs.get(key);
+      if (dir == null) {
+        key.cancel();
+        continue;
+      }
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+          invalidateDirectory(dir);
+          invalidationListener.accept(dir);
+          continue;
+        }
+        final Path child = dir.resolve((Path) event.context());
+        invalidate(child);
+        invalidationListener.accept(child);
+      }
+      if (!key.reset() && watchedDirs.remove(key) != null) {
+        // The directory is gone, rather than no longer watched.
+        synchronized (cache) {
+          if (watchKeys.get(dir) == key) {
+            watchKeys.remove(dir);
+          }
+          invalidateDirectory(dir);
+        }
+        invalidationListener.accept(dir);
+      }
+    }
   }
 
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server.webui;
+
+import java.io.PrintWriter;
+
+/**
+ * Writes a WebUI page straight to the response, so that each request has its own page and the
+ * browser can start rendering before the whole page is built.  The header and footer are shared
+ * by all pages.
+ */
+final class HtmlPage {
+
+  private final PrintWriter out;
+  private final long startTime;
+
+  HtmlPage(PrintWriter out) {
+    this.out = out;
+    this.startTime = System.currentTimeMillis();
+  }
+
+  void append(String text) {
+    out.append(text);
+  }
+
+  void appendLn(String... args) {
+    for (String a: args) {
+      out.append(a);
+    }
+    out.append("\n");
+  }
+
+  void header(String title) {
+    header(title, true);
+  }
+
+  void headerResultTable(String title) {
+    header(title, false);
+  }
+
+  private void header(String title, boolean withContainer) {
+    appendLn(
+        "<!DOCTYPE html>\n",
+        "<html>\n",
+        "<head>\n",
+        "<meta charset='utf-8' />\n",
+        "<meta http-equiv='X-UA-Compatible' content='IE=edge,chrome=1' />\n",
+        "<meta name='viewport' content='width=device-width,",
+        " initial-scale=1.0, maximum-scale=1.0'>\n",
+        "<title>",
+        title,
+        " - GraphicsFuzz</title>\n",
+        "<link href='/static/semantic/semantic.min.css'",
+        " rel='stylesheet' type='text/css' />\n",
+        "<link href='/webui/graphicsfuzz.css' rel='stylesheet' type='text/css' />\n",
+        "<script src='/static/jquery/jquery-3.1.1.min.js'></script>\n",
+        "<script src='/static/semantic/semantic.min.js'></script>\n",
+        "<script src='/webui/graphicsfuzz.js'></script>\n",
+        "</head>\n",
+        "<body>\n",
+        withContainer ? "<div class='ui container'>\n" : "<div class='resultmain'>",
+        "<div class='ui basic segment'>\n",
+        "<a href='/webui'><img class='ui small image' src='/webui/GraphicsFuzz_logo.png'></a>\n",
+        "</div>\n");
+  }
+
+  void footer() {
+    appendLn(
+        "<pre>Page generated in: ",
+        Long.toString(System.currentTimeMillis() - startTime),
+        "ms</pre>\n",
+        "<div class='ui center aligned basic segment'>",
+        "<p>Powered by <a href='https://www.graphicsfuzz.com'>GraphicsFuzz</a></p>",
+        "</div>\n",
+        "</div>\n",
+        "</body>\n</html>\n");
+  }
+
+}
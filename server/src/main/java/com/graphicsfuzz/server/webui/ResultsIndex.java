@@ -0,0 +1,783 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server.webui;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.graphicsfuzz.alphanumcomparator.AlphanumComparator;
+import com.graphicsfuzz.common.transformreduce.Constants;
+import com.graphicsfuzz.shadersets.IResultsListener;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-memory index of the results in the processing directory, so that the WebUI does not
+ * have to list directories, check for marker files and parse .info.json files on every request.
+ *
+ * <p>The index holds, for each worker, its shader family experiments and reductions; for each
+ * experiment, the result of each variant and aggregate counters; for each reduction, its status;
+ * and for each shader family, its variants.  It is built from disk by rebuild(), and is updated
+ * when tools running in the server process report, via IResultsListener, that they have written
+ * results.  Each entry also records the modification time of the directory it was built from,
+ * and of the result files in it, and is rebuilt if those change, so that files added, removed or
+ * rewritten by other processes are picked up at the cost of a stat per directory and result
+ * file.  Within a request, bracketed by beginRequest() and endRequest(), each entry is checked at
+ * most once, however many times the request uses it, so that a page showing many results does
+ * not stat every result file for each result it shows.</p>
+ *
+ * <p>Each entry records the version of the index at which its contents last changed; rebuilding
+ * an entry whose contents are unchanged keeps its version.  Pages built from the index use the
+ * largest version of the entries they are built from to tell whether they are still current.</p>
+ *
+ * <p>Thread-safe.</p>
+ */
+public class ResultsIndex implements IResultsListener {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResultsIndex.class);
+
+  // Modification times may be this coarse, so a directory modified this recently before it was
+  // scanned may have been modified again without its modification time changing.
+  private static final long MODIFICATION_TIME_GRANULARITY_MILLIS = 2000;
+
+  private static final String EXPERIMENT_SUFFIX = "_exp";
+  private static final String REDUCTION_SUFFIX = "_inv";
+  private static final String INFO_SUFFIX = ".info.json";
+
+  public enum ReductionStatus {
+    NOREDUCTION, ONGOING, FINISHED, NOTINTERESTING, EXCEPTION, INCOMPLETE
+  }
+
+  /**
+   * The parts of a variant's .info.json file that the WebUI shows.
+   */
+  public static final class VariantResult {
+    private final String status;
+    private final String stage;
+    private final boolean identical;
+    private final boolean acceptable;
+
+    VariantResult(String status, String stage, boolean identical, boolean acceptable) {
+      this.status = status;
+      this.stage = stage;
+      this.identical = identical;
+      this.acceptable = acceptable;
+    }
+
+    public String getStatus() {
+      return status;
+    }
+
+    public String getStage() {
+      return stage;
+    }
+
+    public boolean isSuccess() {
+      return status.contentEquals("SUCCESS");
+    }
+
+    public boolean imageIsIdentical() {
+      return identical;
+    }
+
+    public boolean imageIsAcceptable() {
+      return acceptable;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof VariantResult)) {
+        return false;
+      }
+      final VariantResult that = (VariantResult) other;
+      return status.equals(that.status) && stage.equals(that.stage)
+          && identical == that.identical && acceptable == that.acceptable;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(status, stage, identical, acceptable);
+    }
+  }
+
+  /**
+   * Aggregate counters for the results of a worker on a shader family.
+   */
+  public static final class ExperimentSummary {
+    private int nbVariantDone;
+    private int nbErrors;
+    private int nbSameImage;
+    private int nbAcceptablyDifferentImage;
+    private int nbWrongImage;
+
+    private void add(VariantResult result) {
+      nbVariantDone++;
+      if (!result.isSuccess()) {
+        nbErrors++;
+      } else if (result.imageIsIdentical()) {
+        nbSameImage++;
+      } else if (result.imageIsAcceptable()) {
+        nbAcceptablyDifferentImage++;
+      } else {
+        nbWrongImage++;
+      }
+    }
+
+    public int getNbVariantDone() {
+      return nbVariantDone;
+    }
+
+    public int getNbErrors() {
+      return nbErrors;
+    }
+
+    public int getNbSameImage() {
+      return nbSameImage;
+    }
+
+    public int getNbAcceptablyDifferentImage() {
+      return nbAcceptablyDifferentImage;
+    }
+
+    public int getNbWrongImage() {
+      return nbWrongImage;
+    }
+  }
+
+  /**
+   * The version of the entries a page is built from: the largest version of those entries, and
+   * the time at which the contents of one of them last changed.
+   */
+  public static final class Version {
+    private static final Version NONE = new Version(0, 0);
+
+    private final long number;
+    private final long lastModified;
+
+    private Version(long number, long lastModified) {
+      this.number = number;
+      this.lastModified = lastModified;
+    }
+
+    public long getNumber() {
+      return number;
+    }
+
+    /**
+     * Yields the time at which the version last changed, in milliseconds since the epoch.
+     */
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    private Version include(DirectoryEntry entry) {
+      if (entry == null || (entry.changeVersion <= number && entry.changeTime <= lastModified)) {
+        return this;
+      }
+      return new Version(Math.max(number, entry.changeVersion),
+          Math.max(lastModified, entry.changeTime));
+    }
+
+    private Version include(Version other) {
+      return new Version(Math.max(number, other.number),
+          Math.max(lastModified, other.lastModified));
+    }
+  }
+
+  private abstract static class DirectoryEntry {
+    private final long lastModified;
+    private final long scanTime;
+    // Set when a tool reports having changed the directory, in case its modification time does
+    // not show the change.
+    private boolean stale;
+    // The version of the index at which the contents of the entry last changed, and the time at
+    // which that happened.
+    private long changeVersion;
+    private long changeTime;
+
+    DirectoryEntry(File dir) {
+      this.lastModified = dir.lastModified();
+      this.scanTime = System.currentTimeMillis();
+    }
+
+    boolean isUpToDate(File dir) {
+      return !stale && dir.lastModified() == lastModified && isOlderThanScan(lastModified);
+    }
+
+    // Whether a file with the given modification time cannot have been modified again, without
+    // that time changing, since the entry was built.
+    boolean isOlderThanScan(long fileLastModified) {
+      return scanTime - fileLastModified > MODIFICATION_TIME_GRANULARITY_MILLIS;
+    }
+
+    // What the WebUI shows of the directory.
+    abstract Object getContents();
+  }
+
+  private static final class NamesEntry extends DirectoryEntry {
+    // Sorted using AlphanumComparator.
+    private final List<String> names;
+
+    NamesEntry(File dir, List<String> names) {
+      super(dir);
+      names.sort(new AlphanumComparator());
+      this.names = Collections.unmodifiableList(names);
+    }
+
+    @Override
+    Object getContents() {
+      return names;
+    }
+  }
+
+  private static final class WorkerEntry extends DirectoryEntry {
+    // The shader families the worker has results for, sorted using AlphanumComparator.
+    private final List<String> experiments;
+    // The names of the worker's reduction directories.
+    private final Set<String> reductions;
+
+    WorkerEntry(File dir, List<String> experiments, Set<String> reductions) {
+      super(dir);
+      experiments.sort(new AlphanumComparator());
+      this.experiments = Collections.unmodifiableList(experiments);
+      this.reductions = reductions;
+    }
+
+    @Override
+    Object getContents() {
+      return Arrays.asList(experiments, reductions);
+    }
+  }
+
+  private static final class ExperimentEntry extends DirectoryEntry {
+    // Keyed by variant name, e.g. "variant_001".
+    private final Map<String, VariantResult> results;
+    private final ExperimentSummary summary;
+    // The modification times of the result files, keyed by file name, so that a result file
+    // rewritten in place is noticed even though the directory's modification time is unchanged.
+    private final Map<String, Long> resultLastModified;
+
+    ExperimentEntry(File dir, Map<String, VariantResult> results,
+        Map<String, Long> resultLastModified) {
+      super(dir);
+      this.results = results;
+      this.summary = new ExperimentSummary();
+      for (VariantResult result : results.values()) {
+        summary.add(result);
+      }
+      this.resultLastModified = resultLastModified;
+    }
+
+    @Override
+    boolean isUpToDate(File dir) {
+      if (!super.isUpToDate(dir)) {
+        return false;
+      }
+      for (Map.Entry<String, Long> result : resultLastModified.entrySet()) {
+        final long lastModified = new File(dir, result.getKey()).lastModified();
+        if (lastModified != result.getValue() || !isOlderThanScan(lastModified)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    Object getContents() {
+      return results;
+    }
+  }
+
+  private static final class ReductionEntry extends DirectoryEntry {
+    private final ReductionStatus status;
+
+    ReductionEntry(File dir, ReductionStatus status) {
+      super(dir);
+      this.status = status;
+    }
+
+    @Override
+    Object getContents() {
+      return status;
+    }
+  }
+
+  private static final class CachedResult {
+    private final long lastModified;
+    private final VariantResult result;
+
+    CachedResult(long lastModified, VariantResult result) {
+      this.lastModified = lastModified;
+      this.result = result;
+    }
+  }
+
+  private final File workerRoot;
+  private final File shaderFamilyRoot;
+  private final Gson gson = new Gson();
+
+  // All guarded by "this".  Entries for the contents of worker directories are keyed by worker
+  // and directory name, joined by "/".
+  private NamesEntry workers;
+  private final Map<String, WorkerEntry> workerEntries = new HashMap<>();
+  private final Map<String, ExperimentEntry> experimentEntries = new HashMap<>();
+  private final Map<String, ReductionEntry> reductionEntries = new HashMap<>();
+  private final Map<String, NamesEntry> shaderFamilyEntries = new HashMap<>();
+  // Parsed .info.json files, keyed by worker, directory and file name, so that rescanning a
+  // directory only parses the files that have changed.
+  private final Map<String, CachedResult> resultCache = new HashMap<>();
+  // Incremented whenever the contents of an entry change.
+  private long version;
+
+  // The entries found to be up to date during the request being handled by each thread, if the
+  // thread is handling one.
+  private final ThreadLocal<Set<DirectoryEntry>> checkedInRequest = new ThreadLocal<>();
+
+  public ResultsIndex(File workerRoot, File shaderFamilyRoot) {
+    this.workerRoot = workerRoot;
+    this.shaderFamilyRoot = shaderFamilyRoot;
+  }
+
+  /**
+   * Discards the index and builds it again from the files on disk.
+   */
+  public synchronized void rebuild() {
+    final long startTime = System.currentTimeMillis();
+    workers = null;
+    workerEntries.clear();
+    experimentEntries.clear();
+    reductionEntries.clear();
+    shaderFamilyEntries.clear();
+    resultCache.clear();
+    final int numResults = refresh();
+    LOGGER.info("Indexed {} results of {} workers in {} ms.", numResults, getWorkers().size(),
+        System.currentTimeMillis() - startTime);
+  }
+
+  /**
+   * Starts a request on the calling thread: until endRequest() is called, each entry is checked
+   * for being up to date at most once, unless a tool reports having changed it.
+   */
+  public void beginRequest() {
+    checkedInRequest.set(Collections.newSetFromMap(new IdentityHashMap<>()));
+  }
+
+  public void endRequest() {
+    checkedInRequest.remove();
+  }
+
+  /**
+   * Brings the entries for the results of the worker on the shader family up to date, and yields
+   * their version.
+   */
+  public synchronized Version getExperimentVersion(String worker, String shaderFamily) {
+    final ExperimentEntry entry = getExperimentEntry(worker, shaderFamily);
+    Version result = Version.NONE.include(getWorkerEntry(worker))
+        .include(getVariantsEntry(shaderFamily))
+        .include(entry);
+    for (String variant : entry.results.keySet()) {
+      result = result.include(getReductionEntry(worker, shaderFamily, variant));
+    }
+    return result;
+  }
+
+  /**
+   * Brings the entries for all the results of the worker up to date, and yields their version.
+   */
+  public synchronized Version getWorkerVersion(String worker) {
+    Version result = Version.NONE.include(getWorkerEntry(worker));
+    for (String shaderFamily : getExperiments(worker)) {
+      result = result.include(getExperimentVersion(worker, shaderFamily));
+    }
+    return result;
+  }
+
+  /**
+   * Brings the entries for the results of all workers on the shader family up to date, and
+   * yields their version.
+   */
+  public synchronized Version getShaderFamilyVersion(String shaderFamily) {
+    // The entries of all workers are included, as they tell which workers have results.
+    Version result = Version.NONE.include(getWorkersEntry())
+        .include(getVariantsEntry(shaderFamily));
+    for (String worker : getWorkers()) {
+      result = result.include(getWorkerEntry(worker));
+      if (getExperiments(worker).contains(shaderFamily)) {
+        result = result.include(getExperimentVersion(worker, shaderFamily));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Yields the names of the directories in the processing directory, sorted.
+   */
+  public synchronized List<String> getWorkers() {
+    return getWorkersEntry().names;
+  }
+
+  /**
+   * Yields the shader families for which the worker has results, sorted.
+   */
+  public synchronized List<String> getExperiments(String worker) {
+    return getWorkerEntry(worker).experiments;
+  }
+
+  /**
+   * Yields the workers that have results for the shader family.
+   */
+  public synchronized List<String> getWorkersWithExperiment(String shaderFamily) {
+    final List<String> result = new ArrayList<>();
+    for (String worker : getWorkers()) {
+      if (getWorkerEntry(worker).experiments.contains(shaderFamily)) {
+        result.add(worker);
+      }
+    }
+    return result;
+  }
+
+  public synchronized ExperimentSummary getSummary(String worker, String shaderFamily) {
+    return getExperimentEntry(worker, shaderFamily).summary;
+  }
+
+  /**
+   * Yields the result of running the variant on the worker, or null if there is no result.
+   */
+  public synchronized VariantResult getResult(String worker, String shaderFamily,
+      String variant) {
+    return getExperimentEntry(worker, shaderFamily).results.get(variant);
+  }
+
+  public synchronized ReductionStatus getReductionStatus(String worker, String shaderFamily,
+      String variant) {
+    final ReductionEntry entry = getReductionEntry(worker, shaderFamily, variant);
+    return entry == null ? ReductionStatus.NOREDUCTION : entry.status;
+  }
+
+  /**
+   * Yields the names of the variants in the shader family, without extension, sorted.
+   */
+  public synchronized List<String> getVariants(String shaderFamily) {
+    return getVariantsEntry(shaderFamily).names;
+  }
+
+  // Results are written to processing/<worker>/<shader family>_exp/, and reductions are done in
+  // processing/<worker>/<shader family>_<variant>_inv/.
+
+  @Override
+  public synchronized void resultWritten(File infoFile) {
+    final File experimentDir = infoFile.getAbsoluteFile().getParentFile();
+    final String worker = experimentDir.getParentFile().getName();
+    resultCache.remove(getKey(worker, experimentDir.getName(), infoFile.getName()));
+    invalidate(experimentEntries.get(getKey(worker, experimentDir.getName())));
+    invalidate(workerEntries.get(worker));
+    invalidate(workers);
+  }
+
+  @Override
+  public synchronized void reductionUpdated(File reductionDir) {
+    final File absoluteReductionDir = reductionDir.getAbsoluteFile();
+    final String worker = absoluteReductionDir.getParentFile().getName();
+    invalidate(reductionEntries.get(getKey(worker, absoluteReductionDir.getName())));
+    invalidate(workerEntries.get(worker));
+    invalidate(workers);
+  }
+
+  // Brings every entry up to date, and yields the number of results.
+  private int refresh() {
+    int numResults = 0;
+    final Set<String> shaderFamilies = new HashSet<>(shaderFamilyEntries.keySet());
+    for (String worker : getWorkers()) {
+      for (String shaderFamily : getExperiments(worker)) {
+        shaderFamilies.add(shaderFamily);
+        for (String variant : getExperimentEntry(worker, shaderFamily).results.keySet()) {
+          getReductionStatus(worker, shaderFamily, variant);
+          numResults++;
+        }
+      }
+    }
+    for (String shaderFamily : shaderFamilies) {
+      getVariants(shaderFamily);
+    }
+    return numResults;
+  }
+
+  // Marks an entry to be rebuilt when next used.  The entry is kept so that its contents can be
+  // compared with those of the rebuilt entry.
+  private static void invalidate(DirectoryEntry entry) {
+    if (entry != null) {
+      entry.stale = true;
+    }
+  }
+
+  // Gives the entry that replaces the previous one a new version, unless its contents are the
+  // same, so that pages are only rebuilt when what they show changes.
+  private <T extends DirectoryEntry> T replace(DirectoryEntry previous, T entry) {
+    final DirectoryEntry replacement = entry;
+    if (previous != null && previous.getContents().equals(replacement.getContents())) {
+      replacement.changeVersion = previous.changeVersion;
+      replacement.changeTime = previous.changeTime;
+    } else {
+      replacement.changeVersion = ++version;
+      replacement.changeTime = System.currentTimeMillis();
+    }
+    return entry;
+  }
+
+  // Whether the entry exists and is up to date, checking the directory unless the entry has
+  // already been checked during the current request.
+  private boolean isUpToDate(DirectoryEntry entry, File dir) {
+    if (entry == null) {
+      return false;
+    }
+    final Set<DirectoryEntry> checked = checkedInRequest.get();
+    if (checked != null && !entry.stale && checked.contains(entry)) {
+      return true;
+    }
+    if (!entry.isUpToDate(dir)) {
+      return false;
+    }
+    markChecked(entry);
+    return true;
+  }
+
+  // Records that the entry, which has just been checked or built, is up to date for the rest of
+  // the current request.
+  private <T extends DirectoryEntry> T markChecked(T entry) {
+    final Set<DirectoryEntry> checked = checkedInRequest.get();
+    if (checked != null) {
+      checked.add(entry);
+    }
+    return entry;
+  }
+
+  private static String getKey(String... names) {
+    return String.join("/", names);
+  }
+
+  private File getWorkerDir(String worker) {
+    return new File(workerRoot, worker);
+  }
+
+  private NamesEntry getWorkersEntry() {
+    if (!isUpToDate(workers, workerRoot)) {
+      final List<String> names = new ArrayList<>();
+      final File[] files = workerRoot.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          if (file.isDirectory()) {
+            names.add(file.getName());
+          }
+        }
+      }
+      workers = markChecked(replace(workers, new NamesEntry(workerRoot, names)));
+    }
+    return workers;
+  }
+
+  private WorkerEntry getWorkerEntry(String worker) {
+    final File dir = getWorkerDir(worker);
+    WorkerEntry entry = workerEntries.get(worker);
+    if (!isUpToDate(entry, dir)) {
+      final List<String> experiments = new ArrayList<>();
+      final Set<String> reductions = new HashSet<>();
+      final File[] files = dir.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          final String name = file.getName();
+          if (name.endsWith(EXPERIMENT_SUFFIX) && file.isDirectory()) {
+            experiments.add(name.substring(0, name.length() - EXPERIMENT_SUFFIX.length()));
+          } else if (name.endsWith(REDUCTION_SUFFIX) && file.isDirectory()) {
+            reductions.add(name);
+          }
+        }
+      }
+      entry = markChecked(replace(entry, new WorkerEntry(dir, experiments, reductions)));
+      workerEntries.put(worker, entry);
+    }
+    return entry;
+  }
+
+  private ExperimentEntry getExperimentEntry(String worker, String shaderFamily) {
+    final File dir = new File(getWorkerDir(worker), shaderFamily + EXPERIMENT_SUFFIX);
+    final String key = getKey(worker, dir.getName());
+    ExperimentEntry entry = experimentEntries.get(key);
+    if (!isUpToDate(entry, dir)) {
+      final Map<String, VariantResult> results = new TreeMap<>(new AlphanumComparator());
+      final Map<String, Long> resultLastModified = new HashMap<>();
+      final File[] files = dir.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          final String name = file.getName();
+          if (name.startsWith("variant") && name.endsWith(INFO_SUFFIX)) {
+            final long lastModified = file.lastModified();
+            resultLastModified.put(name, lastModified);
+            final VariantResult result = getCachedResult(file, lastModified,
+                getKey(worker, dir.getName(), name));
+            if (result != null) {
+              results.put(name.substring(0, name.length() - INFO_SUFFIX.length()), result);
+            }
+          }
+        }
+      }
+      entry = markChecked(replace(entry, new ExperimentEntry(dir, results, resultLastModified)));
+      experimentEntries.put(key, entry);
+    }
+    return entry;
+  }
+
+  private VariantResult getCachedResult(File infoFile, long lastModified, String key) {
+    final CachedResult cached = resultCache.get(key);
+    if (cached != null && cached.lastModified == lastModified) {
+      return cached.result;
+    }
+    final VariantResult result = readResult(infoFile);
+    if (result != null && System.currentTimeMillis() - lastModified
+        > MODIFICATION_TIME_GRANULARITY_MILLIS) {
+      // A file modified more recently may be modified again without its modification time
+      // changing, so it is read again next time.
+      resultCache.put(key, new CachedResult(lastModified, result));
+    }
+    return result;
+  }
+
+  // Yields null if the worker has no reduction of the variant.
+  private ReductionEntry getReductionEntry(String worker, String shaderFamily, String variant) {
+    final String reduction = shaderFamily + "_" + variant + REDUCTION_SUFFIX;
+    if (!getWorkerEntry(worker).reductions.contains(reduction)) {
+      return null;
+    }
+    final String key = getKey(worker, reduction);
+    final File dir = new File(getWorkerDir(worker), reduction);
+    ReductionEntry entry = reductionEntries.get(key);
+    if (!isUpToDate(entry, dir)) {
+      entry = markChecked(replace(entry,
+          new ReductionEntry(dir, readReductionStatus(dir, variant))));
+      reductionEntries.put(key, entry);
+    }
+    return entry;
+  }
+
+  private NamesEntry getVariantsEntry(String shaderFamily) {
+    final File dir = new File(shaderFamilyRoot, shaderFamily);
+    NamesEntry entry = shaderFamilyEntries.get(shaderFamily);
+    if (!isUpToDate(entry, dir)) {
+      final List<String> names = new ArrayList<>();
+      final String[] files = dir.list();
+      if (files != null) {
+        for (String name : files) {
+          if (name.startsWith("variant_") && name.endsWith(".frag")) {
+            names.add(name.substring(0, name.length() - ".frag".length()));
+          }
+        }
+      }
+      entry = markChecked(replace(entry, new NamesEntry(dir, names)));
+      shaderFamilyEntries.put(shaderFamily, entry);
+    }
+    return entry;
+  }
+
+  private VariantResult readResult(File infoFile) {
+    final JsonObject info;
+    try (Reader reader = new FileReader(infoFile)) {
+      info = gson.fromJson(reader, JsonObject.class);
+    } catch (IOException | RuntimeException exception) {
+      // The file may be being written; it is read again when its writer reports it, or when its
+      // directory next changes.
+      LOGGER.warn("Could not read result {}", infoFile, exception);
+      return null;
+    }
+    if (info == null || !info.has("Status")) {
+      return null;
+    }
+    return new VariantResult(info.get("Status").getAsString(),
+        info.has("stage") ? info.get("stage").getAsString() : "",
+        imageIsIdentical(info),
+        imageIsAcceptable(info));
+  }
+
+  private static ReductionStatus readReductionStatus(File reductionDir, String shader) {
+    if (!reductionDir.exists()) {
+      return ReductionStatus.NOREDUCTION;
+    }
+
+    if (new File(reductionDir, Constants.REDUCTION_INCOMPLETE).exists()) {
+      return ReductionStatus.INCOMPLETE;
+    }
+
+    if (new File(reductionDir, shader + "_reduced_final.frag").exists()) {
+      return ReductionStatus.FINISHED;
+    }
+
+    if (new File(reductionDir, "NOT_INTERESTING").exists()) {
+      return ReductionStatus.NOTINTERESTING;
+    }
+
+    if (ReductionFilesHelper.getReductionExceptionFile(shader, reductionDir).exists()) {
+      return ReductionStatus.EXCEPTION;
+    }
+
+    return ReductionStatus.ONGOING;
+  }
+
+  private static boolean imageIsIdentical(JsonObject info) {
+    // We're looking for metrics/identical, conservatively return false if it is not found.
+    if (!info.has("metrics")) {
+      return false;
+    }
+    final JsonObject metricsJson = info.get("metrics").getAsJsonObject();
+    if (!metricsJson.has("identical")) {
+      return false;
+    }
+    return metricsJson.get("identical").getAsBoolean();
+  }
+
+  private static boolean imageIsAcceptable(JsonObject info) {
+
+    // This currently uses histogram data, if available, but can easily be adapted to
+    // use other data that is available, e.g. PSNR.
+
+    final String metricsKey = "metrics";
+    final String histogramDistanceKey = "histogramDistance";
+    final double histogramThreshold = 100.0;
+
+    if (!info.has(metricsKey)) {
+      return false;
+    }
+    final JsonObject metricsJson = info.get(metricsKey).getAsJsonObject();
+    if (!(metricsJson.has(histogramDistanceKey))) {
+      return false;
+    }
+    return metricsJson.get(histogramDistanceKey)
+          .getAsJsonPrimitive().getAsNumber().doubleValue() < histogramThreshold;
+  }
+
+}
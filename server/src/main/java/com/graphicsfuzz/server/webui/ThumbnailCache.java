@@ -0,0 +1,270 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server.webui;
+
+import com.graphicsfuzz.shadersets.IResultsListener;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downscaled copies of result images, so that pages showing many results do not have to send the
+ * full images to the browser.
+ *
+ * <p>The thumbnail of an image is written to a THUMBNAIL_DIR directory next to it, and is named
+ * after a hash of the image's contents, so that a thumbnail never changes once written and can be
+ * cached by browsers indefinitely.  The thumbnail of a GIF shows its first frame.</p>
+ *
+ * <p>Thumbnails are created in the background: when a tool running in the server process reports
+ * that it has written a result, and when a page asks for the thumbnail of an image that does not
+ * have one yet.  Until its thumbnail is ready, pages show the image itself.</p>
+ *
+ * <p>The paths of at most MAX_ENTRIES thumbnails are remembered, evicting the least recently
+ * used; an image is only read and hashed again if its modification time or length changes, or
+ * if its thumbnail was evicted.</p>
+ */
+public class ThumbnailCache implements IResultsListener {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailCache.class);
+
+  static final String THUMBNAIL_DIR = ".thumbnails";
+
+  // The largest width or height of a thumbnail, in pixels; twice the width of the largest image
+  // the WebUI shows in result tables, for high density displays.
+  static final int THUMBNAIL_SIZE = 160;
+
+  static final int MAX_ENTRIES = 10000;
+
+  // Thumbnails are written under a temporary name starting with this prefix, which no thumbnail
+  // name starts with, so that removing the old thumbnails of an image never removes a thumbnail
+  // that is being written.
+  static final String TEMP_PREFIX = ".tmp-";
+
+  private static final class Thumbnail {
+    private final long imageLastModified;
+    private final long imageLength;
+    private final String path;
+
+    Thumbnail(long imageLastModified, long imageLength, String path) {
+      this.imageLastModified = imageLastModified;
+      this.imageLength = imageLength;
+      this.path = path;
+    }
+
+    boolean isOf(BasicFileAttributes imageAttributes) {
+      return imageLastModified == imageAttributes.lastModifiedTime().toMillis()
+          && imageLength == imageAttributes.size();
+    }
+  }
+
+  // Keyed by image path, in access order.
+  private final Map<String, Thumbnail> thumbnails = Collections.synchronizedMap(
+      new LinkedHashMap<String, Thumbnail>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Thumbnail> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      });
+
+  // The images whose thumbnails are being created.
+  private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+  // The time at which a thumbnail of an image in a directory last became ready, in milliseconds
+  // since the epoch, keyed by the absolute path of the directory.  The times are made distinct,
+  // so that they also serve as versions.
+  private final Map<String, Long> directoryVersions = new ConcurrentHashMap<>();
+  private final AtomicLong lastVersion = new AtomicLong();
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "thumbnails");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    return thread;
+  });
+
+  /**
+   * Yields the path of the thumbnail of the given image, or the path of the image itself if its
+   * thumbnail is not ready, in which case the thumbnail is created in the background.
+   */
+  public String getThumbnailPath(String imagePath) {
+    final BasicFileAttributes attributes = readAttributes(new File(imagePath));
+    if (attributes == null) {
+      // There is no such image.
+      return imagePath;
+    }
+    final Thumbnail thumbnail = thumbnails.get(imagePath);
+    if (thumbnail != null && thumbnail.isOf(attributes)) {
+      return thumbnail.path;
+    }
+    scheduleThumbnail(imagePath);
+    return imagePath;
+  }
+
+  /**
+   * Yields the time at which a thumbnail of an image in one of the given directories last became
+   * ready, in milliseconds since the epoch, or 0 if none has.  The time changes whenever such a
+   * thumbnail becomes ready, so that pages showing thumbnails can tell whether they are still
+   * current.
+   */
+  public long getVersion(List<String> imageDirs) {
+    long result = 0;
+    for (String imageDir : imageDirs) {
+      result = Math.max(result,
+          directoryVersions.getOrDefault(new File(imageDir).getAbsolutePath(), 0L));
+    }
+    return result;
+  }
+
+  @Override
+  public void resultWritten(File infoFile) {
+    final String prefix = infoFile.getPath().substring(0,
+        infoFile.getPath().length() - ".info.json".length());
+    for (String extension : new String[] { ".png", ".gif" }) {
+      if (new File(prefix + extension).isFile()) {
+        scheduleThumbnail(prefix + extension);
+      }
+    }
+  }
+
+  @Override
+  public void reductionUpdated(File reductionDir) {
+    // Reduction images are not shown in result tables.
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private void scheduleThumbnail(String imagePath) {
+    if (!pending.add(imagePath)) {
+      return;
+    }
+    executor.execute(() -> {
+      try {
+        final File image = new File(imagePath);
+        final BasicFileAttributes attributes = readAttributes(image);
+        if (attributes == null) {
+          return;
+        }
+        final Thumbnail cached = thumbnails.get(imagePath);
+        if (cached != null && cached.isOf(attributes)) {
+          // The image has not changed since its thumbnail was created.
+          return;
+        }
+        final File thumbnail = createThumbnail(image);
+        if (thumbnail != null) {
+          thumbnails.put(imagePath, new Thumbnail(attributes.lastModifiedTime().toMillis(),
+              attributes.size(), thumbnail.getPath()));
+          directoryVersions.put(image.getAbsoluteFile().getParent(),
+              lastVersion.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis())));
+        }
+      } catch (IOException | RuntimeException exception) {
+        LOGGER.warn("Could not create thumbnail of {}", imagePath, exception);
+      } finally {
+        pending.remove(imagePath);
+      }
+    });
+  }
+
+  private static BasicFileAttributes readAttributes(File image) {
+    try {
+      return Files.readAttributes(image.toPath(), BasicFileAttributes.class);
+    } catch (NoSuchFileException exception) {
+      return null;
+    } catch (IOException exception) {
+      LOGGER.warn("Could not read attributes of {}: {}", image, exception.toString());
+      return null;
+    }
+  }
+
+  /**
+   * Creates the thumbnail of the given image, unless it already exists, and removes any
+   * thumbnails of previous contents of the image.  Returns null if the image cannot be read.
+   */
+  static File createThumbnail(File image) throws IOException {
+    final byte[] contents = Files.readAllBytes(image.toPath());
+    final File thumbnailDir = new File(image.getParentFile(), THUMBNAIL_DIR);
+    final String baseName = FilenameUtils.getBaseName(image.getName()) + "_"
+        + FilenameUtils.getExtension(image.getName()) + "_";
+    final File thumbnail = new File(thumbnailDir,
+        baseName + DigestUtils.md5Hex(contents) + ".png");
+    if (thumbnail.isFile()) {
+      return thumbnail;
+    }
+
+    final BufferedImage original = ImageIO.read(new ByteArrayInputStream(contents));
+    if (original == null) {
+      return null;
+    }
+    final double scale = Math.min(1.0, (double) THUMBNAIL_SIZE
+        / Math.max(original.getWidth(), original.getHeight()));
+    final int width = Math.max(1, (int) Math.round(original.getWidth() * scale));
+    final int height = Math.max(1, (int) Math.round(original.getHeight() * scale));
+    final BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    final Graphics2D graphics = scaled.createGraphics();
+    try {
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      graphics.drawImage(original, 0, 0, width, height, null);
+    } finally {
+      graphics.dispose();
+    }
+
+    final File[] oldThumbnails = thumbnailDir.listFiles(
+        (dir, name) -> name.startsWith(baseName));
+    if (oldThumbnails != null) {
+      for (File oldThumbnail : oldThumbnails) {
+        Files.deleteIfExists(oldThumbnail.toPath());
+      }
+    }
+
+    // Write the thumbnail under a temporary name, so that it is never seen half-written.
+    Files.createDirectories(thumbnailDir.toPath());
+    final File temp = File.createTempFile(TEMP_PREFIX + baseName, ".tmp", thumbnailDir);
+    try {
+      ImageIO.write(scaled, "png", temp);
+      Files.move(temp.toPath(), thumbnail.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp.toPath());
+    }
+    return thumbnail;
+  }
+
+}
@@ -18,17 +18,18 @@ package com.graphicsfuzz.server.webui;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.graphicsfuzz.alphanumcomparator.AlphanumComparator;
-import com.graphicsfuzz.common.transformreduce.Constants;
 import com.graphicsfuzz.common.util.ReductionStepHelper;
 import com.graphicsfuzz.reducer.ReductionKind;
+import com.graphicsfuzz.server.FileSender;
 import com.graphicsfuzz.server.thrift.CommandInfo;
 import com.graphicsfuzz.server.thrift.CommandResult;
 import com.graphicsfuzz.server.thrift.FuzzerServiceManager;
 import com.graphicsfuzz.server.thrift.WorkerInfo;
+import com.graphicsfuzz.server.webui.ResultsIndex.ExperimentSummary;
+import com.graphicsfuzz.server.webui.ResultsIndex.ReductionStatus;
+import com.graphicsfuzz.server.webui.ResultsIndex.VariantResult;
+import com.graphicsfuzz.shadersets.ResultsListeners;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
@@ -38,7 +39,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
@@ -53,6 +54,7 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.protocol.TProtocol;
@@ -64,8 +66,8 @@ import org.apache.thrift.transport.TTransport;
  *
  * <p>The two entry points are doGet() and doPost(). They dispatche response handling based on the
  * HTTP request path, which we call 'route'. Dedicated functions build the relevant web response.
- * The StringBuilder field 'html' is used to progressively construct the HTML, and is eventually
- * send back as a response.
+ * Each of them writes its page straight to the response through an HtmlPage, so requests do not
+ * share any page state and can be served concurrently.
  *
  * <p>Routes from http://example.org/webui :
  * /file/ : serve a file content from filesystem, rooted at the working dir of the server process
@@ -80,16 +82,11 @@ import org.apache.thrift.transport.TTransport;
  */
 public class WebUi extends HttpServlet {
 
-  private StringBuilder html;
-  private String deqpRoot = "/path/to/deqp"; //
-  private long startTime;
+  private volatile String deqpRoot = "/path/to/deqp"; //
   private final AccessFileInfo accessFileInfo = new AccessFileInfo();
-
-  private final FilenameFilter variantFragFilter =
-      (dir, name) -> name.startsWith("variant_") && name.endsWith(".frag");
-
-  private final FilenameFilter shaderFamilyExperimentFilter =
-      (dir, name) -> name.endsWith("_exp");
+  private final ResultsIndex resultsIndex = new ResultsIndex(
+      new File(WebUiConstants.WORKER_DIR), new File(WebUiConstants.SHADERSET_DIR));
+  private final ThumbnailCache thumbnailCache = new ThumbnailCache();
 
   class Shaderset {
     final String name;
@@ -105,9 +102,7 @@ public class WebUi extends HttpServlet {
     }
 
     private int getNbVariants() {
-      final File[] variants = dir.listFiles(item -> item.getName().startsWith("variant")
-          && item.getName().endsWith(".frag"));
-      return variants == null ? 0 : variants.length;
+      return resultsIndex.getVariants(name).size();
     }
   }
 
@@ -123,7 +118,7 @@ public class WebUi extends HttpServlet {
     int nbAcceptablyDifferentImage;
     int nbWrongImage;
 
-    ShadersetExp(String name, String worker) throws FileNotFoundException {
+    ShadersetExp(String name, String worker) {
       this.name = name;
       this.worker = worker;
       this.dir = new File(WebUiConstants.WORKER_DIR + "/" + worker + "/" + name + "_exp");
@@ -131,91 +126,102 @@ public class WebUi extends HttpServlet {
       this.nbVariants = shaderset.nbVariants;
 
       // Set variant counters
-      for (File file: dir.listFiles()) {
-        if (file.getName().startsWith("variant") && file.getName().endsWith(".info.json")) {
-          nbVariantDone++;
-          JsonObject info = accessFileInfo.getResultInfo(file);
-          String status = info.get("Status").getAsString();
-          if (status.contentEquals("SUCCESS")) {
-            if (imageIsIdentical(info)) {
-              nbSameImage++;
-            } else if (imageIsAcceptable(info)) {
-              nbAcceptablyDifferentImage++;
-            } else {
-              nbWrongImage++;
-            }
-          } else {
-            nbErrors++;
-          }
-        }
-      }
+      final ExperimentSummary summary = resultsIndex.getSummary(worker, name);
+      nbVariantDone = summary.getNbVariantDone();
+      nbErrors = summary.getNbErrors();
+      nbSameImage = summary.getNbSameImage();
+      nbAcceptablyDifferentImage = summary.getNbAcceptablyDifferentImage();
+      nbWrongImage = summary.getNbWrongImage();
     }
   }
 
-  private boolean imageIsIdentical(JsonObject info) {
-    // We're looking for metrics/identical, conservatively return false if it is not found.
-    if (info == null) {
-      return false;
-    }
-    if (!info.has("metrics")) {
-      return false;
-    }
-    final JsonObject metricsJson = info.get("metrics").getAsJsonObject();
-    if (!metricsJson.has("identical")) {
-      return false;
-    }
-    final boolean isIndentical = metricsJson.get("identical").getAsBoolean();
-    return isIndentical;
-  }
+  // Thrift clients are not thread-safe, so each use creates its own; they share this HTTP client.
+  private CloseableHttpClient httpClient;
 
-  private boolean imageIsAcceptable(JsonObject info) {
+  // The number of threads serving requests; each may be using a connection of httpClient.
+  private final int maxRequestThreads;
 
-    // This currently uses histogram data, if available, but can easily be adapted to
-    // use other data that is available, e.g. PSNR.
+  // Part of the ETags of pages, so that they do not match those from before a restart, when the
+  // versions of the results index started again from zero.
+  private final long startTime = System.currentTimeMillis();
 
-    final String metricsKey = "metrics";
-    final String histogramDistanceKey = "histogramDistance";
-    final double histogramThreshold = 100.0;
+  /**
+   * Creates the web UI of a server that serves requests on up to maxRequestThreads threads.
+   */
+  public WebUi(int maxRequestThreads) {
+    this.maxRequestThreads = maxRequestThreads;
+  }
 
-    if (info == null) {
-      // If we do not have a stats file, conservatively say that the image is unacceptable.
-      return false;
-    }
+  public void init() throws ServletException {
 
-    if (!info.has(metricsKey)) {
-      return false;
-    }
-    final JsonObject metricsJson = info.get(metricsKey).getAsJsonObject();
-    if (!(metricsJson.has(histogramDistanceKey))) {
-      return false;
-    }
-    return metricsJson.get(histogramDistanceKey)
-          .getAsJsonPrimitive().getAsNumber().doubleValue() < histogramThreshold;
+    resultsIndex.rebuild();
+    ResultsListeners.add(resultsIndex);
+    ResultsListeners.add(thumbnailCache);
+
+    // All connections go to this server's manage API, so by default only two requests could be
+    // using it at once; allow one connection per request thread instead.
+    final PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxRequestThreads);
+    connectionManager.setDefaultMaxPerRoute(maxRequestThreads);
+    httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
   }
 
-  private enum ReductionStatus {
-    NOREDUCTION, ONGOING, FINISHED, NOTINTERESTING, EXCEPTION, INCOMPLETE
+  public void destroy() {
+    ResultsListeners.remove(resultsIndex);
+    ResultsListeners.remove(thumbnailCache);
+    thumbnailCache.shutdown();
+    accessFileInfo.shutdown();
+    try {
+      httpClient.close();
+    } catch (IOException exception) {
+      exception.printStackTrace();
+    }
   }
 
-  private FuzzerServiceManager.Iface fuzzerServiceManagerProxy;
-
-  public void init() throws ServletException {
-
-    html = new StringBuilder();
+  private FuzzerServiceManager.Iface getFuzzerServiceManager() throws TException {
+    TTransport transport = new THttpClient("http://localhost:8080/manageAPI", httpClient);
+    transport.open();
+    TProtocol protocol = new TBinaryProtocol(transport);
+    return new FuzzerServiceManager.Client(protocol);
+  }
 
-    try {
-      CloseableHttpClient httpClient = HttpClients.createDefault();
-      TTransport transport = new THttpClient("http://localhost:8080/manageAPI", httpClient);
-      transport.open();
-      TProtocol protocol = new TBinaryProtocol(transport);
-      fuzzerServiceManagerProxy = new FuzzerServiceManager.Client(protocol);
-    } catch (TException ex) {
-      ex.printStackTrace();
+  /**
+   * Sets the validators of a page built from the given version of the results index and from the
+   * thumbnails of the images in the given directories.  If the client's copy of the page is still
+   * current, responds with 304 Not Modified and yields true.
+   */
+  private boolean notModified(HttpServletRequest request, HttpServletResponse response,
+      ResultsIndex.Version version, List<String> imageDirs) {
+    final long thumbnailVersion = thumbnailCache.getVersion(imageDirs);
+    final String etag = "W/\"" + startTime + "-" + version.getNumber() + "-" + thumbnailVersion
+        + "\"";
+    final long lastModified = Math.max(version.getLastModified(), thumbnailVersion);
+    response.setHeader("ETag", etag);
+    response.setDateHeader("Last-Modified", lastModified);
+    // Browsers may keep the page, but must check that it is current before showing it.
+    response.setHeader("Cache-Control", "no-cache");
+
+    boolean notModified = false;
+    final String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      // If-Modified-Since is ignored when If-None-Match is present.
+      for (String tag : ifNoneMatch.split(",")) {
+        notModified |= tag.trim().equals(etag) || tag.trim().equals("*");
+      }
+    } else {
+      // Last-Modified has a resolution of one second.
+      final long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+      notModified = ifModifiedSince != -1 && lastModified / 1000 * 1000 <= ifModifiedSince;
+    }
+    if (notModified) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
     }
+    return notModified;
   }
 
-  public void destroy() {
-    // do nothing.
+  private static String getExperimentDir(String worker, String shaderFamily) {
+    return WebUiConstants.WORKER_DIR + "/" + worker + "/" + shaderFamily + "_exp";
   }
 
   private String getResourceContent(String resourceName) throws IOException {
@@ -225,21 +231,13 @@ public class WebUi extends HttpServlet {
   }
 
   private static void copyStream(InputStream input, ServletOutputStream output) throws IOException {
-    byte[] buffer = new byte[1024];
+    byte[] buffer = new byte[8192];
     int bytesRead;
     while ((bytesRead = input.read(buffer)) != -1) {
       output.write(buffer, 0, bytesRead);
     }
   }
 
-  private static String getContentType(String filename) {
-    try {
-      return (Files.probeContentType(Paths.get(filename)));
-    } catch (IOException exception) {
-      return "text/plain";
-    }
-  }
-
   //Returns contents of given file (for displaying files, e.g. shaders)
   private String getFileContents(File file) throws IOException {
     if (!file.isFile()) {
@@ -272,7 +270,7 @@ public class WebUi extends HttpServlet {
   }
 
   private List<WorkerInfo> getLiveWorkers() throws TException {
-    List<WorkerInfo> workers = fuzzerServiceManagerProxy.getServerState().getWorkers();
+    List<WorkerInfo> workers = getFuzzerServiceManager().getServerState().getWorkers();
     workers.sort((workerInfo, t1) -> {
       Comparator<String> comparator = Comparator.naturalOrder();
       return comparator.compare(workerInfo.getToken(), t1.getToken());
@@ -305,10 +303,11 @@ public class WebUi extends HttpServlet {
       throws ServletException, IOException, TException {
 
     response.setContentType("text/html");
-    htmlHeader("Homepage");
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.header("Homepage");
 
     // General actions
-    htmlAppendLn(
+    html.appendLn(
         "<div class='ui segment'>\n",
         "<h3>General actions</h3>\n",
         "<p>\n",
@@ -333,23 +332,23 @@ public class WebUi extends HttpServlet {
         "</div>\n");
 
     // Connected workers
-    htmlAppendLn(
+    html.appendLn(
         "<div class='ui segment'>\n",
         "<h3>Connected workers</h3>\n",
         "<div class='ui selection animated celled list'>\n");
     List<String> tokens = new ArrayList<>();
     for (WorkerInfo worker : getLiveWorkers()) {
-      htmlAppendLn("<a class='item' href='/webui/worker/", worker.getToken(), "'>",
+      html.appendLn("<a class='item' href='/webui/worker/", worker.getToken(), "'>",
           "<i class='large middle aligned mobile icon'></i><div class='content'>",
           "<div class='header'>", worker.getToken(), "</div>",
           "#queued jobs: ",
           Integer.toString(worker.getCommandQueueSize()), "</div></a>");
       tokens.add(worker.getToken());
     }
-    htmlAppendLn("</div></div>");
+    html.appendLn("</div></div>");
 
     // Disconnected workers
-    htmlAppendLn(
+    html.appendLn(
         "<div class='ui segment'>\n",
         "<h3>Disconnected workers</h3>\n",
         "<button class='ui black basic button' onclick='toggleDiv(this)'",
@@ -359,15 +358,15 @@ public class WebUi extends HttpServlet {
     if (workers != null) {
       for (File worker : workers) {
         if (!tokens.contains(worker.getName())) {
-          htmlAppendLn("<a class='item' href='/webui/worker/", worker.getName(), "'>",
+          html.appendLn("<a class='item' href='/webui/worker/", worker.getName(), "'>",
               worker.getName(), "</a>");
         }
       }
     }
-    htmlAppendLn("</div></div>");
+    html.appendLn("</div></div>");
 
     //List of shadersets
-    htmlAppendLn(
+    html.appendLn(
         "<div class='ui segment'>\n",
         "<h3>Shader Families</h3>\n",
         "<div class='ui middle aligned selection animated celled list'>\n");
@@ -376,26 +375,25 @@ public class WebUi extends HttpServlet {
     if (shadersets.size() > 0) {
       for (File file : shadersets) {
         Shaderset shaderset = new Shaderset(file.getName());
-        htmlAppendLn("<a class='item' href='/webui/shaderset/", shaderset.name, "'>",
+        html.appendLn("<a class='item' href='/webui/shaderset/", shaderset.name, "'>",
             "<img class='ui mini image' src='/webui/file/", shaderset.preview.getPath(), "'>",
             "<div class='content'><div class='header'>", shaderset.name,
             "</div>#variants: ", Integer.toString(shaderset.nbVariants),
             "</div></a>");
       }
     }
-    htmlAppendLn("</div></div>");
+    html.appendLn("</div></div>");
 
     // Server log
-    htmlAppendLn(
+    html.appendLn(
         "<div class='ui segment'>\n",
         "<h3>Server Log</h3>\n",
         "<textarea id='ServerLog' readonly rows='20' cols='100'>",
         getFileContents(new File(WebUiConstants.WORKER_DIR + "/server.log")),
         "</textarea></div>");
 
-    htmlFooter();
+    html.footer();
 
-    response.getWriter().println(html);
   }
 
   // ==========================================================================
@@ -417,10 +415,11 @@ public class WebUi extends HttpServlet {
       return;
     }
 
-    htmlHeader(workerName);
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.header(workerName);
 
     // Main actions
-    htmlAppendLn("<div class='ui segment'>",
+    html.appendLn("<div class='ui segment'>",
         "<h3>Worker: ", workerName, "</h3>\n",
         "<p><a class='ui button' href='/webui/experiment'>",
         "Run shader families</a></p>\n",
@@ -444,7 +443,7 @@ public class WebUi extends HttpServlet {
     String infoPath = WebUiConstants.WORKER_DIR + "/" + workerName
         + "/" + WebUiConstants.WORKER_INFO_FILE;
 
-    htmlAppendLn("<div class='ui segment'>",
+    html.appendLn("<div class='ui segment'>",
         "<h3>Worker info</h3>\n",
         "<button class='ui black basic button' onclick='toggleDiv(this)'",
         " data-hide='worker-info'>Show/Hide</button>\n",
@@ -453,11 +452,11 @@ public class WebUi extends HttpServlet {
 
     JsonObject info = accessFileInfo.getWorkerInfo(workerName);
 
-    htmlAppendLn("<table class='worker-info invisible ui celled compact table'>",
+    html.appendLn("<table class='worker-info invisible ui celled compact table'>",
         "<thead><tr><th>Attribute</th><th>Value</th></tr></thead>",
         "<tbody>");
     for (Map.Entry<String,JsonElement> entry: info.entrySet()) {
-      htmlAppendLn("<tr><td>", entry.getKey(), "</td><td>");
+      html.appendLn("<tr><td>", entry.getKey(), "</td><td>");
       JsonElement value = entry.getValue();
       // we consider values are either array of primitives, or just a primitive
       if (value.isJsonArray()) {
@@ -468,12 +467,12 @@ public class WebUi extends HttpServlet {
       } else {
         html.append(value.getAsString());
       }
-      htmlAppendLn("</td>");
+      html.appendLn("</td>");
     }
-    htmlAppendLn("</tbody></table></div>");
+    html.appendLn("</tbody></table></div>");
 
     // Worker job queue
-    htmlAppendLn("<div class='ui segment'><h3>Worker job queue</h3>");
+    html.appendLn("<div class='ui segment'><h3>Worker job queue</h3>");
     //String jobQueue = "No Jobs";
     List<WorkerInfo> workers;
     boolean atLeastOne = false;
@@ -483,46 +482,39 @@ public class WebUi extends HttpServlet {
         List<CommandInfo> commands = worker.getCommandQueue();
         if (commands.size() > 0) {
           atLeastOne = true;
-          htmlAppendLn("<button class='ui black basic button'onclick='toggleDiv(this)'",
+          html.appendLn("<button class='ui black basic button'onclick='toggleDiv(this)'",
               " data-hide='job-queue'>Show/Hide</button>\n",
               "<div class='job-queue ui celled list'>");
           for (CommandInfo ci : commands) {
-            htmlAppendLn("<div class='item'><div class='header'>", ci.name, "</div></div>");
+            html.appendLn("<div class='item'><div class='header'>", ci.name, "</div></div>");
           }
-          htmlAppendLn("</div>");
+          html.appendLn("</div>");
           break;
         }
       }
     }
 
     if (!atLeastOne) {
-      htmlAppendLn("<p>No job queued</p>");
+      html.appendLn("<p>No job queued</p>");
     }
-    htmlAppendLn("</div>");
+    html.appendLn("</div>");
 
     // Links to all experiment results for the worker
-    htmlAppendLn("<div class='ui segment'>\n",
+    html.appendLn("<div class='ui segment'>\n",
         "<h3>Results</h3>\n",
         "<a href='/webui/worker/", workerName, "/all' class='ui button'>View all results</a>");
 
-    htmlAppendLn("<div class='ui middle aligned selection animated celled list'>");
-
-    File[] expDirs = workerDir.listFiles();
-    Arrays.sort(expDirs, (f1, f2) -> new AlphanumComparator().compare(f1.getName(), f2.getName()));
-    for (File e : expDirs) {
-      String expName = e.getName();
-      if (!expName.endsWith("_exp") || !e.isDirectory()) {
-        continue;
-      }
+    html.appendLn("<div class='ui middle aligned selection animated celled list'>");
 
-      // remove ending "_exp"
-      String shadersetName = expName.substring(0, expName.length() - 4);
+    for (String shadersetName : resultsIndex.getExperiments(workerName)) {
+      String expName = shadersetName + "_exp";
       ShadersetExp shadersetExp = new ShadersetExp(shadersetName, workerName);
 
-      htmlAppendLn(
+      html.appendLn(
           "<a class='item' href='/webui/worker/", workerName, "/", expName, "'>",
-          "<img class='ui mini image' src='/webui/file/", WebUiConstants.WORKER_DIR, "/",
-          workerName, "/", expName, "/reference.png'>",
+          "<img class='ui mini image' src='/webui/file/",
+          thumbnailCache.getThumbnailPath(WebUiConstants.WORKER_DIR + "/" + workerName + "/"
+              + expName + "/reference.png"), "'>",
           "<div class='content'><div class='header'>", shadersetName, "</div>",
           "Variant done: ", Integer.toString(shadersetExp.nbVariantDone),
           " / ", Integer.toString(shadersetExp.nbVariants),
@@ -530,10 +522,9 @@ public class WebUi extends HttpServlet {
           " | Errors: ", Integer.toString(shadersetExp.nbErrors),
           "</div></a>");
     }
-    htmlAppendLn("</div></div>");
+    html.appendLn("</div></div>");
 
-    htmlFooter();
-    response.getWriter().println(html);
+    html.footer();
   }
 
   //Page to view results of an experiment run by a worker: /webui/worker/<worker-name>/<exp-name>
@@ -548,10 +539,18 @@ public class WebUi extends HttpServlet {
     String workerName = path[2];
     String expName = path[3];
     String workerSlashExp = workerName + "/" + expName;
+    String shaderFamily = expName.replace("_exp", "");
+
+    if (notModified(request, response,
+        resultsIndex.getExperimentVersion(workerName, shaderFamily),
+        Collections.singletonList(getExperimentDir(workerName, shaderFamily)))) {
+      return;
+    }
 
-    htmlHeaderResultTable(workerSlashExp);
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.headerResultTable(workerSlashExp);
 
-    htmlAppendLn("<div class='ui segment'><h3>Results for: ", workerSlashExp, "</h3>\n",
+    html.appendLn("<div class='ui segment'><h3>Results for: ", workerSlashExp, "</h3>\n",
         "<form method='post' id='deleteForm'>\n",
         "<input type='hidden' name='path' value='processing/", workerSlashExp, "'/>\n",
         "<input type='hidden' name='type' value='delete'/>\n",
@@ -561,22 +560,20 @@ public class WebUi extends HttpServlet {
         "Delete these results</div>\n",
         "</form>");
 
-    htmlAppendLn("</div>");
+    html.appendLn("</div>");
 
     // Shader family results table
 
-    htmlAppendLn("<div class='ui segment'>\n",
+    html.appendLn("<div class='ui segment'>\n",
         "<h3>Results table</h3>");
-    String shaderFamily = expName.replace("_exp", "");
     String[] workers = new String[1];
     workers[0] = workerName;
 
-    htmlComparativeTable(shaderFamily, workers);
+    htmlComparativeTable(html, shaderFamily, workers);
 
-    htmlAppendLn("</div>");
+    html.appendLn("</div>");
 
-    htmlFooter();
-    response.getWriter().println(html);
+    html.footer();
   }
 
   //Results page to view all experiment results by a worker: /webui/worker/<worker-name>/all
@@ -589,12 +586,6 @@ public class WebUi extends HttpServlet {
     assert (path.length >= 4);
     String workerName = path[2];
 
-    htmlHeaderResultTable(workerName + " all results");
-
-    htmlAppendLn("<div class='ui segment'>",
-        "<h3>All results for worker: ",  workerName, "</h3>",
-        "</div>");
-
     //Get worker directory and all results within
     File workerDir = new File(WebUiConstants.WORKER_DIR + "/" + workerName);
     if (!workerDir.isDirectory()) {
@@ -602,24 +593,33 @@ public class WebUi extends HttpServlet {
       return;
     }
 
-    //Iterate through files in workerDir - get experiment results
-    File[] expDirs = workerDir.listFiles(shaderFamilyExperimentFilter);
-    Arrays.sort(expDirs, (f1, f2) -> new AlphanumComparator().compare(f1.getName(), f2.getName()));
-    String[] workers = new String[1];
-    for (File e : expDirs) {
-      String expName = e.getName();
+    final List<String> experimentDirs = new ArrayList<>();
+    for (String shaderFamily : resultsIndex.getExperiments(workerName)) {
+      experimentDirs.add(getExperimentDir(workerName, shaderFamily));
+    }
+    if (notModified(request, response, resultsIndex.getWorkerVersion(workerName),
+        experimentDirs)) {
+      return;
+    }
+
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.headerResultTable(workerName + " all results");
 
-      String shaderFamily = expName.replace("_exp", "");
+    html.appendLn("<div class='ui segment'>",
+        "<h3>All results for worker: ",  workerName, "</h3>",
+        "</div>");
 
-      htmlAppendLn("<div class='ui segment'>\n",
+    //Iterate through the worker's experiment results
+    String[] workers = new String[1];
+    for (String shaderFamily : resultsIndex.getExperiments(workerName)) {
+      html.appendLn("<div class='ui segment'>\n",
           "<h3>", shaderFamily, "</h3>");
       workers[0] = workerName;
-      htmlComparativeTable(shaderFamily, workers);
-      htmlAppendLn("</div>");
+      htmlComparativeTable(html, shaderFamily, workers);
+      html.appendLn("</div>");
     }
 
-    htmlFooter();
-    response.getWriter().println(html);
+    html.footer();
   }
 
   //Page to setup experiments using multiple workers/shadersets - /webui/experiment
@@ -628,20 +628,21 @@ public class WebUi extends HttpServlet {
 
     response.setContentType("text/html");
 
-    htmlHeader("Run shader families");
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.header("Run shader families");
 
-    htmlAppendLn("<div class='ui segment'>",
+    html.appendLn("<div class='ui segment'>",
         "<h3>Select workers and shader families</h3>",
         "<form class='ui form' method='post'>");
 
     List<WorkerInfo> workers = getLiveWorkers();
 
-    htmlAppendLn("<h4 class='ui dividing header'>Workers</h4>");
+    html.appendLn("<h4 class='ui dividing header'>Workers</h4>");
     if (workers.size() == 0) {
-      htmlAppendLn("<p>No connected worker</p>");
+      html.appendLn("<p>No connected worker</p>");
     } else {
 
-      htmlAppendLn("<button type='button' class='ui black basic button'",
+      html.appendLn("<button type='button' class='ui black basic button'",
           " onclick='applyAllCheckboxes(workercheck, true)'>",
           "Select all</button>",
           "<button type='button' class='ui black basic button'",
@@ -651,7 +652,7 @@ public class WebUi extends HttpServlet {
 
       int dataNum = 0;
       for (WorkerInfo workerInfo: workers) {
-        htmlAppendLn("<div class='field'>",
+        html.appendLn("<div class='field'>",
             "<div class='ui checkbox'>",
             "<input tabindex='0' class='hidden' type='checkbox' name='workercheck'",
             " data-num='", Integer.toString(dataNum), "' onclick='applyCheckbox(event);'",
@@ -665,11 +666,11 @@ public class WebUi extends HttpServlet {
 
     List<File> shadersets = getAllShadersets(request, response);
 
-    htmlAppendLn("<h4 class='ui dividing header'>Shader families</h4>");
+    html.appendLn("<h4 class='ui dividing header'>Shader families</h4>");
     if (shadersets.size() == 0) {
-      htmlAppendLn("<p>No shader families detected</p>");
+      html.appendLn("<p>No shader families detected</p>");
     } else {
-      htmlAppendLn("<button type='button' class='ui black basic button'",
+      html.appendLn("<button type='button' class='ui black basic button'",
           " onclick='applyAllCheckboxes(shadersetcheck, true)'>",
           "Select all</button>",
           "<button type='button' class='ui black basic button'",
@@ -679,7 +680,7 @@ public class WebUi extends HttpServlet {
 
       int dataNum = 0;
       for (File f : shadersets) {
-        htmlAppendLn("<div class='field'>",
+        html.appendLn("<div class='field'>",
             "<div class='ui checkbox'>",
             "<input tabindex='0' class='hidden' type='checkbox' name='shadersetcheck'",
             " data-num='", Integer.toString(dataNum), "' onclick='applyCheckbox(event);'",
@@ -691,12 +692,11 @@ public class WebUi extends HttpServlet {
       }
     }
 
-    htmlAppendLn("<button class='ui button' type='submit'>Run jobs</button>",
+    html.appendLn("<button class='ui button' type='submit'>Run jobs</button>",
         "<input type='hidden' name='type' value='experiment'/>",
         "</form></div>");
 
-    htmlFooter();
-    response.getWriter().println(html);
+    html.footer();
   }
 
   //Results page for a shaderset showing results by all workers - /webui/shaderset/<shaderset-name>
@@ -706,30 +706,28 @@ public class WebUi extends HttpServlet {
 
     String shaderFamily = request.getPathInfo().split("/")[2];
 
-    htmlHeaderResultTable(shaderFamily + " all results");
+    final List<String> experimentDirs = new ArrayList<>();
+    for (String worker : resultsIndex.getWorkersWithExperiment(shaderFamily)) {
+      experimentDirs.add(getExperimentDir(worker, shaderFamily));
+    }
+    if (notModified(request, response, resultsIndex.getShaderFamilyVersion(shaderFamily),
+        experimentDirs)) {
+      return;
+    }
+
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.headerResultTable(shaderFamily + " all results");
 
-    htmlAppendLn("<div class='ui segment'>\n",
+    html.appendLn("<div class='ui segment'>\n",
         "<h3>All results for shader family: ", shaderFamily, "</h3>");
 
-    // FIXME: how to cleanly get an array of worker names? (the list-to-array below is ugly)
-    File[] workerDirs = new File(WebUiConstants.WORKER_DIR).listFiles();
-    List<String> workerList = new ArrayList<String>();
-    for (File workerDir : workerDirs) {
-      File expResult = new File(workerDir, shaderFamily + "_exp");
-      if (expResult.isDirectory()) {
-        workerList.add(workerDir.getName());
-      }
-    }
-    String[] workers = new String[workerList.size()];
-    for (int i = 0; i < workerList.size(); i++) {
-      workers[i] = workerList.get(i);
-    }
+    final String[] workers = resultsIndex.getWorkersWithExperiment(shaderFamily)
+        .toArray(new String[0]);
 
-    htmlComparativeTable(shaderFamily, workers);
+    htmlComparativeTable(html, shaderFamily, workers);
 
-    htmlAppendLn("</div>");
-    htmlFooter();
-    response.getWriter().println(html);
+    html.appendLn("</div>");
+    html.footer();
   }
 
   // ==========================================================================
@@ -749,12 +747,13 @@ public class WebUi extends HttpServlet {
     String shaderset = shader.getParentFile().getName();
     String shaderName = FilenameUtils.removeExtension(shader.getName());
 
-    htmlHeader(shaderName);
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.header(shaderName);
 
-    htmlAppendLn("<div class='ui segment'><h3>Shader: ", shaderName, "</h3>");
+    html.appendLn("<div class='ui segment'><h3>Shader: ", shaderName, "</h3>");
 
     if (shaderName.contains("_reduced_final")) {
-      htmlAppendLn("<form class='ui form' action='/webui/deqpExport' method='post'>",
+      html.appendLn("<form class='ui form' action='/webui/deqpExport' method='post'>",
           "<input type='hidden' name='type' value='deqpExport'>",
           "<input type='hidden' name='path' value='", shaderPath.toString(), "'>",
           "<p>This is a reduced shader: ",
@@ -762,37 +761,36 @@ public class WebUi extends HttpServlet {
           "</p></form>");
     }
 
-    htmlAppendLn("<a class='ui button' href='/webui/run/", shaderPath.toString(),
+    html.appendLn("<a class='ui button' href='/webui/run/", shaderPath.toString(),
         "'>Run shader</a>");
 
-    htmlAppendLn("<a class='ui button' href='/webui/file/", shaderPath.toString(),
+    html.appendLn("<a class='ui button' href='/webui/file/", shaderPath.toString(),
         "'>Get shader source code</a>");
 
     String jsonPath = FilenameUtils.removeExtension(shaderPath.toString()) + ".json";
 
-    htmlAppendLn("<a class='ui button' href='/webui/file/", jsonPath,
+    html.appendLn("<a class='ui button' href='/webui/file/", jsonPath,
         "'>See uniform init values as JSON file</a>");
 
     //Show shader file contents in textarea
     String shaderContents = getFileContents(new File(shaderPath.toString()));
 
-    htmlAppendLn("</div><div class='ui segment'><h3>Shader source code</h3>\n",
+    html.appendLn("</div><div class='ui segment'><h3>Shader source code</h3>\n",
         "<textarea readonly rows='25' cols='80'>");
-    htmlAppendLn(shaderContents);
-    htmlAppendLn("</textarea>");
+    html.appendLn(shaderContents);
+    html.appendLn("</textarea>");
 
     String jsonContents = getFileContents(new File(jsonPath));
 
-    htmlAppendLn("<div class='ui divider'></div>",
+    html.appendLn("<div class='ui divider'></div>",
         "<p>Uniform values:</p>",
         "<textarea readonly rows='25' cols='80'>");
-    htmlAppendLn(jsonContents);
-    htmlAppendLn("</textarea>");
+    html.appendLn(jsonContents);
+    html.appendLn("</textarea>");
 
-    htmlAppendLn("</div>");
+    html.appendLn("</div>");
 
-    htmlFooter();
-    response.getWriter().println(html);
+    html.footer();
   }
 
   // Page to view the result from a single shader by a worker - /webui/result/<result-filepath>
@@ -823,14 +821,15 @@ public class WebUi extends HttpServlet {
     String shaderPath = "shaderfamilies/" + shaderExp.replace("_exp", "" + "/");
     shaderPath += resultFilename + ".frag";
 
-    htmlHeader("Single result");
-    htmlAppendLn("<div class='ui segment'><h3>Single result</h3>",
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.header("Single result");
+    html.appendLn("<div class='ui segment'><h3>Single result</h3>",
         "<p>Shader <b><a href='/webui/shader/", shaderPath, "'>",
         resultFilename, "</a></b> of <b>", shaderExp, "</b>",
         " run on <b>", token, "</b><br>",
         "Status: <b>", status, "</b></p>");
 
-    htmlAppendLn("<form method='post' id='deleteForm'>\n",
+    html.appendLn("<form method='post' id='deleteForm'>\n",
         "<input type='hidden' name='path' value='", resultPath, "'/>\n",
         "<input type='hidden' name='type' value='delete'/>\n",
         "<input type='hidden' name='num_back' value='2'/>\n",
@@ -842,20 +841,20 @@ public class WebUi extends HttpServlet {
 
     String referencePngPath = resultPath.replace(resultFilename, "reference.png");
 
-    htmlAppendLn("<p>Reference image:</p>",
+    html.appendLn("<p>Reference image:</p>",
         "<img src='/webui/file/", referencePngPath, "'>");
 
     String pngPath = prefix + resultFilename + ".png";
     File pngFile = new File(pngPath);
     if (pngFile.exists()) {
-      htmlAppendLn("<p>Result image:</p>",
+      html.appendLn("<p>Result image:</p>",
           "<img src='/webui/file/", pngPath, "'>");
     }
 
     String gifPath = prefix + resultFilename + ".gif";
     File gifFile = new File(gifPath);
     if (gifFile.exists()) {
-      htmlAppendLn("<p>Results non-deterministic animation:</p>",
+      html.appendLn("<p>Results non-deterministic animation:</p>",
           "<img src='/webui/file/", gifPath, "'>",
           "<p>Here are the second-to-last and last renderings:</p>\n",
           "<img src='/webui/file/",
@@ -867,15 +866,15 @@ public class WebUi extends HttpServlet {
     }
 
     if (!(pngFile.exists()) && !(gifFile.exists())) {
-      htmlAppendLn("<p>No image to display for this result status</p>");
+      html.appendLn("<p>No image to display for this result status</p>");
     }
 
-    htmlAppendLn("</div>\n",
+    html.appendLn("</div>\n",
         "<div class='ui segment'>\n",
         "<h3>Run log</h3>\n",
         "<textarea readonly rows='12' cols='80'>");
-    htmlAppendLn(getFileContents(new File(prefix + resultFilename + ".txt")));
-    htmlAppendLn("</textarea>\n",
+    html.appendLn(getFileContents(new File(prefix + resultFilename + ".txt")));
+    html.appendLn("</textarea>\n",
         "</div>");
 
     // Get result file
@@ -895,23 +894,23 @@ public class WebUi extends HttpServlet {
 
     //Get results from reductions
 
-    htmlAppendLn("<div class='ui segment'>\n",
+    html.appendLn("<div class='ui segment'>\n",
         "<h3>Reduction results</h3>");
 
     String reductionHtml = "";
     final ReductionStatus reductionStatus = getReductionStatus(token, shaderset, shader);
 
-    htmlAppendLn("<p>Reduction status: <b>", reductionStatus.toString(), "</b></p>");
+    html.appendLn("<p>Reduction status: <b>", reductionStatus.toString(), "</b></p>");
 
     if (reductionStatus == ReductionStatus.NOREDUCTION) {
-      htmlAppendLn("<button class='ui button' onclick='toggleDiv(this)'",
+      html.appendLn("<button class='ui button' onclick='toggleDiv(this)'",
           " data-hide='reduce-menu'>Reduce result</button>",
           "<div class='reduce-menu invisible'>");
-      htmlReductionForm(shaderDir + shader + ".frag", reductionDir.getPath(), workerName,
+      htmlReductionForm(html, shaderDir + shader + ".frag", reductionDir.getPath(), workerName,
           referenceRes.getPath(), result.getPath(), status);
-      htmlAppendLn("</div>");
+      html.appendLn("</div>");
     } else {
-      htmlAppendLn("<p><form method='post' id='deleteReductionForm'>\n",
+      html.appendLn("<p><form method='post' id='deleteReductionForm'>\n",
           "<input type='hidden' name='path' value='", reductionDir.getPath(), "'/>\n",
           "<input type='hidden' name='type' value='delete'/>\n",
           "<input type='hidden' name='num_back' value='2'/>\n",
@@ -927,15 +926,15 @@ public class WebUi extends HttpServlet {
     switch (reductionStatus) {
 
       case NOREDUCTION:
-        htmlAppendLn("<p>Reduction does not exist for this result.</p>");
+        html.appendLn("<p>Reduction does not exist for this result.</p>");
         break;
 
       case NOTINTERESTING:
-        htmlAppendLn("<p>Reduction failed: initial reduction step was not interesting.</p>");
+        html.appendLn("<p>Reduction failed: initial reduction step was not interesting.</p>");
         break;
 
       case EXCEPTION:
-        htmlAppendLn("<p>Reduction failed with an exception:</p>",
+        html.appendLn("<p>Reduction failed with an exception:</p>",
             "<textarea readonly rows='25' cols='80'>\n",
             getFileContents(ReductionFilesHelper.getReductionExceptionFile(shader,
                 ReductionFilesHelper.getReductionDir(token, shaderset, shader))),
@@ -946,21 +945,21 @@ public class WebUi extends HttpServlet {
         final Optional<Integer> reductionStep = ReductionStepHelper
               .getLatestReductionStepAny(ReductionFilesHelper
                     .getReductionDir(token, shaderset, shader), "variant");
-        htmlAppendLn("<p>Reduction not finished for this result: ",
+        html.appendLn("<p>Reduction not finished for this result: ",
             (reductionStep.isPresent() ? "made " + reductionStep.get() + " step(s)"
                 : "no steps made yet"),
             ".</p>");
         break;
 
       case FINISHED:
-        produceDiff(shader, reductionDir, referenceShader);
+        produceDiff(html, shader, reductionDir, referenceShader);
         break;
 
       case INCOMPLETE:
         File reductionIncompleteResult = new File(reductionDir,
             shader + "_incomplete_reduced_final.frag");
-        htmlAppendLn("<p>Reduction hit the step limit.</p>");
-        produceDiff(shader, reductionDir, referenceShader);
+        html.appendLn("<p>Reduction hit the step limit.</p>");
+        produceDiff(html, shader, reductionDir, referenceShader);
         break;
 
       default:
@@ -971,20 +970,19 @@ public class WebUi extends HttpServlet {
     final File logFile = new File(ReductionFilesHelper.getReductionDir(token, shaderset, shader),
           "command.log");
     if (logFile.exists()) {
-      htmlAppendLn("<p>Contents of reduction log file:</p>",
+      html.appendLn("<p>Contents of reduction log file:</p>",
           "<textarea readonly rows='25' cols='80'>\n",
           getFileContents(logFile),
           "</textarea>");
     }
 
-    htmlAppendLn("</div>");
+    html.appendLn("</div>");
 
-    htmlFooter();
-    response.getWriter().println(html);
+    html.footer();
   }
 
-  private void produceDiff(String shader, File reductionDir, File referenceShader)
-        throws TException {
+  private void produceDiff(HtmlPage html, String shader, File reductionDir,
+      File referenceShader) throws TException {
     File reductionResult = new File(reductionDir, shader + "_reduced_final.frag");
     List<String> args = new ArrayList<>();
     args.add("diff");
@@ -994,30 +992,30 @@ public class WebUi extends HttpServlet {
     // TODO: make the reducer do the diff at the end of reduction, or at least do the diff
     // here locally without resorting to the server!
     CommandResult commandResult;
-    commandResult = fuzzerServiceManagerProxy.executeCommand("diff", args);
+    commandResult = getFuzzerServiceManager().executeCommand("diff", args);
 
-    htmlAppendLn("<a class='ui button' href='/webui/shader/", referenceShader.getPath(),
+    html.appendLn("<a class='ui button' href='/webui/shader/", referenceShader.getPath(),
         "'>View reference shader</a>");
-    htmlAppendLn("<a class='ui button' href='/webui/shader/", reductionResult.getPath(),
+    html.appendLn("<a class='ui button' href='/webui/shader/", reductionResult.getPath(),
         "'>View reduced shader</a>");
 
     // Watch out, diff exits with 1 if there is a difference.
     switch (commandResult.getExitCode()) {
       case 0:
         // files are similar! That's suspicious
-        htmlAppendLn("<p>Reduced variant is similar to reduced reference? ",
+        html.appendLn("<p>Reduced variant is similar to reduced reference? ",
             "(diff returns 0)</p>");
         break;
       case 1:
         // files differ
-        htmlAppendLn("<p>Differences in reduced shader:</p>",
+        html.appendLn("<p>Differences in reduced shader:</p>",
             "<textarea readonly rows='25' cols='80'>\n",
             commandResult.getOutput(),
             "</textarea>");
         break;
       default:
         // probably a diff error
-        htmlAppendLn("<p>Attempt to diff shaders failed with exit code ",
+        html.appendLn("<p>Attempt to diff shaders failed with exit code ",
             Integer.toString(commandResult.getExitCode()), "</p>",
             "<textarea readonly rows='25' cols='80'>\n",
             commandResult.getError(),
@@ -1026,28 +1024,7 @@ public class WebUi extends HttpServlet {
   }
 
   private ReductionStatus getReductionStatus(String token, String shaderSet, String shader) {
-    final File reductionDir = ReductionFilesHelper.getReductionDir(token, shaderSet, shader);
-    if (! reductionDir.exists()) {
-      return ReductionStatus.NOREDUCTION;
-    }
-
-    if (new File(reductionDir, Constants.REDUCTION_INCOMPLETE).exists()) {
-      return ReductionStatus.INCOMPLETE;
-    }
-
-    if (new File(reductionDir, shader + "_reduced_final.frag").exists()) {
-      return ReductionStatus.FINISHED;
-    }
-
-    if (new File(reductionDir, "NOT_INTERESTING").exists()) {
-      return ReductionStatus.NOTINTERESTING;
-    }
-
-    if (ReductionFilesHelper.getReductionExceptionFile(shader, reductionDir).exists()) {
-      return ReductionStatus.EXCEPTION;
-    }
-
-    return ReductionStatus.ONGOING;
+    return resultsIndex.getReductionStatus(token, shaderSet, shader);
   }
 
   //Page to setup running a shader on workers
@@ -1055,7 +1032,8 @@ public class WebUi extends HttpServlet {
       throws IOException, ServletException, TException {
     response.setContentType("text/html");
 
-    htmlHeader("Run shader");
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.header("Run shader");
 
     String[] path = request.getPathInfo().split("/");
     StringBuilder shaderPath = new StringBuilder();
@@ -1066,12 +1044,12 @@ public class WebUi extends HttpServlet {
 
 
     // TODO: make it so that it compares with the reference, and get rid of this message
-    htmlAppendLn("<script>",
+    html.appendLn("<script>",
         "window.onload = alert('Warning - results of running a single shader manually",
         " are always flagged as issue results -- never SAME_AS_REFERENCE')",
         "</script>");
 
-    htmlAppendLn("<div class='ui segment'>",
+    html.appendLn("<div class='ui segment'>",
         "<h3>Run shader:", shaderPath.toString(), "</h3>\n",
         "<a class='ui button' href='/webui/shader/", shaderPath.toString(), "'>",
         "Go back to shader page</a>\n",
@@ -1088,7 +1066,7 @@ public class WebUi extends HttpServlet {
 
     int dataNum = 0;
     for (WorkerInfo workerInfo: getLiveWorkers()) {
-      htmlAppendLn("<div class='ui field'>",
+      html.appendLn("<div class='ui field'>",
           "<div class='ui checkbox'>",
           "<input tabindex='0' class='hidden' type='checkbox' name='workercheck'",
           " data-num='", Integer.toString(dataNum), "' onclick='applyCheckbox(event);'",
@@ -1099,15 +1077,14 @@ public class WebUi extends HttpServlet {
       dataNum += 1;
     }
     if (dataNum == 0) {
-      htmlAppendLn("<p><b>No worker connected</b></p>");
+      html.appendLn("<p><b>No worker connected</b></p>");
     }
 
-    htmlAppendLn("<div class='ui divider'></div>\n",
+    html.appendLn("<div class='ui divider'></div>\n",
         "<button class='ui button' type='submit'>Run shader</button>\n",
         "</form></div>");
 
-    htmlFooter();
-    response.getWriter().println(html);
+    html.footer();
   }
 
   //POST - Attempts to run experiments, returns result of attempts (String message for user)
@@ -1138,20 +1115,19 @@ public class WebUi extends HttpServlet {
           commands.add("--output");
           commands.add("processing/" + worker + "/" + shaderset + "_exp/");
           commands.add(WebUiConstants.SHADERSET_DIR + "/" + shaderset);
-          fuzzerServiceManagerProxy.queueCommand("run_shader_set: " + shaderset, commands, worker,
+          getFuzzerServiceManager().queueCommand("run_shader_set: " + shaderset, commands, worker,
               "processing/" + worker + "/" + shaderset + "_exp/command.log");
           msg.append(" started successfully!\\n");
         }
       }
     }
 
-    html.setLength(0);
-    htmlAppendLn("<script>\n",
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.appendLn("<script>\n",
         getResourceContent("goBack.js"), "\n",
         "window.onload = goBack('", msg.toString(), "', 1);\n",
         "</script>");
 
-    response.getWriter().println(html);
   }
 
   // Page for selecting workers/shadersets to compare results - /webui/compareResults
@@ -1160,21 +1136,21 @@ public class WebUi extends HttpServlet {
 
     response.setContentType("text/html");
 
-    htmlHeaderResultTable("Compare Results");
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.headerResultTable("Compare Results");
 
-    htmlAppendLn("<div class='ui segment'>\n",
+    html.appendLn("<div class='ui segment'>\n",
         "<h3>Comparative results</h3>\n");
 
     String[] shaderFamilies = request.getParameterValues("shadersetcheck");
     String[] workers = request.getParameterValues("workercheck");
 
     for (String shaderFamily: shaderFamilies) {
-      htmlAppendLn("<h4 class='ui dividing header'>", shaderFamily, "</h4>");
-      htmlComparativeTable(shaderFamily, workers);
+      html.appendLn("<h4 class='ui dividing header'>", shaderFamily, "</h4>");
+      htmlComparativeTable(html, shaderFamily, workers);
     }
-    htmlAppendLn("</div>");
-    htmlFooter();
-    response.getWriter().println(html);
+    html.appendLn("</div>");
+    html.footer();
   }
 
   // Page for selecting workers/shadersets to compare results - /webui/compare
@@ -1183,9 +1159,10 @@ public class WebUi extends HttpServlet {
 
     response.setContentType("text/html");
 
-    htmlHeader("Compare workers");
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.header("Compare workers");
 
-    htmlAppendLn("<div class='ui segment'>\n",
+    html.appendLn("<div class='ui segment'>\n",
         "<h3>Compare results of workers</h3>\n",
         "<h4>Select workers</h4>\n",
         //"<button class='ui black basic button' onclick='toggleDiv(this)'",
@@ -1202,7 +1179,7 @@ public class WebUi extends HttpServlet {
 
     int dataNum = 0;
     for (File workerFile: getAllWorkers(request, response)) {
-      htmlAppendLn("<div class='ui field'>",
+      html.appendLn("<div class='ui field'>",
           "<div class='ui checkbox'>",
           "<input tabindex='0' class='hidden' type='checkbox' name='workercheck'",
           " data-num='", Integer.toString(dataNum), "' onclick='applyCheckbox(event);'",
@@ -1213,10 +1190,10 @@ public class WebUi extends HttpServlet {
       dataNum += 1;
     }
     if (dataNum == 0) {
-      htmlAppendLn("<p><b>No worker found.</b></p>");
+      html.appendLn("<p><b>No worker found.</b></p>");
     }
 
-    htmlAppendLn(//"</div>\n", // Hugues: end matching div to show/hide workers
+    html.appendLn(//"</div>\n", // Hugues: end matching div to show/hide workers
         "<div class='ui divider'></div>\n",
         "<h4>Select shader families</h4>\n",
         // Hugues: this refuses to work, I'm not sure why.
@@ -1234,7 +1211,7 @@ public class WebUi extends HttpServlet {
 
     dataNum = 0;
     for (File shaderFamily: getAllShadersets(request, response)) {
-      htmlAppendLn("<div class='ui field'>",
+      html.appendLn("<div class='ui field'>",
           "<div class='ui checkbox'>",
           "<input tabindex='0' class='hidden' type='checkbox' name='shadersetcheck'",
           " data-num='", Integer.toString(dataNum), "' onclick='applyCheckbox(event);'",
@@ -1245,16 +1222,15 @@ public class WebUi extends HttpServlet {
       dataNum += 1;
     }
     if (dataNum == 0) {
-      htmlAppendLn("<p><b>No shader family found.</b></p>");
+      html.appendLn("<p><b>No shader family found.</b></p>");
     }
 
-    htmlAppendLn(//"</div>\n", // Hugues: matching end of div for show/hide
+    html.appendLn(//"</div>\n", // Hugues: matching end of div for show/hide
         "<div class='ui divider'></div>\n",
         "<button class='ui button' type='submit'>Compare</button>\n",
         "</form></div>");
 
-    htmlFooter();
-    response.getWriter().println(html);
+    html.footer();
   }
 
   //POST - Deletes a given file - /webui/delete/<result-filepath>
@@ -1290,13 +1266,12 @@ public class WebUi extends HttpServlet {
     String deleteJs = getResourceContent("goBack.js")
         + "\nwindow.onload = goBack('" + file.getPath() + " deleted!', " + numBack + ");";
 
-    html.setLength(0);
-    htmlAppendLn("<script>\n",
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.appendLn("<script>\n",
         getResourceContent("goBack.js"), "\n",
         "window.onload = goBack('", file.getPath(), " deleted!', ", numBack, ");\n",
         "</script>");
 
-    response.getWriter().println(html);
   }
 
   //POST - Link to start reductions on a result
@@ -1323,6 +1298,8 @@ public class WebUi extends HttpServlet {
     args.add(token);
     args.add("--server");
     args.add("http://localhost:8080/manageAPI");
+    args.add("--judge_cache");
+    args.add(getJudgeCacheDir(token).getPath());
     String threshold = request.getParameter("threshold");
     if (threshold != null) {
       args.add("--threshold");
@@ -1368,7 +1345,7 @@ public class WebUi extends HttpServlet {
 
     String message;
     try {
-      fuzzerServiceManagerProxy.queueCommand(
+      getFuzzerServiceManager().queueCommand(
           args.get(0) + ":" + shaderPath, args, token, output + "/command.log");
       message = "Reduction started successfully!";
     } catch (TException exception) {
@@ -1376,13 +1353,16 @@ public class WebUi extends HttpServlet {
     }
     reduceReference(shaderPath, token);
 
-    html.setLength(0);
-    htmlAppendLn("<script>\n",
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.appendLn("<script>\n",
         getResourceContent("goBack.js"), "\n",
         "window.onload = goBack('", message, "', 1);\n",
         "</script>");
 
-    response.getWriter().println(html);
+  }
+
+  private File getJudgeCacheDir(String worker) {
+    return new File(WebUiConstants.WORKER_DIR + "/" + worker, WebUiConstants.JUDGE_CACHE_DIR);
   }
 
   private void reduceReference(String shaderPath, String worker) {
@@ -1415,9 +1395,11 @@ public class WebUi extends HttpServlet {
     args.add(worker);
     args.add("--server");
     args.add("http://localhost:8080/manageAPI");
+    args.add("--judge_cache");
+    args.add(getJudgeCacheDir(worker).getPath());
     System.out.println(args);
     try {
-      fuzzerServiceManagerProxy.queueCommand(
+      getFuzzerServiceManager().queueCommand(
           "Reference Reduction: " + shaderset,
           args,
           worker,
@@ -1440,7 +1422,7 @@ public class WebUi extends HttpServlet {
     if (queueType.equals("worker")) {
       //Attempt to clear worker job queue
       try {
-        fuzzerServiceManagerProxy.clearClientJobQueue(token);
+        getFuzzerServiceManager().clearClientJobQueue(token);
         msg = "Queue for worker " + token + " cleared!";
       } catch (TException exception) {
         msg = "Worker " + token + " has no queued commands!";
@@ -1450,13 +1432,12 @@ public class WebUi extends HttpServlet {
       return;
     }
 
-    html.setLength(0);
-    htmlAppendLn("<script>\n",
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.appendLn("<script>\n",
         getResourceContent("goBack.js"), "\n",
         "window.onload = goBack('", msg, "', 1);\n",
         "</script>");
 
-    response.getWriter().println(html);
   }
 
   //Renames a worker (token) (renames dir in the filesystem) and redirects to new worker page
@@ -1519,13 +1500,12 @@ public class WebUi extends HttpServlet {
       }
     }
 
-    html.setLength(0);
-    htmlAppendLn("<script>\n",
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.appendLn("<script>\n",
         getResourceContent("redirect.js"), "\n",
         "window.onload = redirect('", msg, "', '/webui/worker/",  name, "');\n",
         "</script>");
 
-    response.getWriter().println(html);
   }
 
   private void runShader(HttpServletRequest request, HttpServletResponse response)
@@ -1551,7 +1531,7 @@ public class WebUi extends HttpServlet {
         commands.add("--output");
         commands.add("processing/" + worker + "/" + shaderset + "_exp/");
         try {
-          fuzzerServiceManagerProxy
+          getFuzzerServiceManager()
               .queueCommand("run_shader_set: " + shaderPath, commands, worker,
                   "processing/" + worker + "/" + shaderset + "_exp/command.log");
         } catch (TException exception) {
@@ -1568,12 +1548,11 @@ public class WebUi extends HttpServlet {
 
 
 
-    html.setLength(0);
-    htmlAppendLn("<script>\n",
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.appendLn("<script>\n",
         javascript, "\n",
         "</script>");
 
-    response.getWriter().println(html);
   }
 
   private void err404(HttpServletRequest request, HttpServletResponse response, String msg)
@@ -1597,14 +1576,15 @@ public class WebUi extends HttpServlet {
   private void resource(HttpServletRequest request, HttpServletResponse response)
       throws ServletException, IOException {
     // try to serve a public resource
-    InputStream resourceAsStream = this.getClass()
-        .getResourceAsStream("/public" + request.getPathInfo());
-    if (resourceAsStream == null) {
-      err404(request, response);
-      return;
+    try (InputStream resourceAsStream = this.getClass()
+        .getResourceAsStream("/public" + request.getPathInfo())) {
+      if (resourceAsStream == null) {
+        err404(request, response);
+        return;
+      }
+      response.setContentType(FileSender.getContentType(request.getPathInfo()));
+      copyStream(resourceAsStream, response.getOutputStream());
     }
-    response.setContentType(getContentType(request.getPathInfo()));
-    copyStream(resourceAsStream, response.getOutputStream());
   }
 
   private void file(HttpServletRequest request, HttpServletResponse response)
@@ -1620,23 +1600,27 @@ public class WebUi extends HttpServlet {
       err404(request, response);
       return;
     }
-    response.setContentType(getContentType(filename));
-    ServletOutputStream outputStream = response.getOutputStream();
-    outputStream.write(Files.readAllBytes(Paths.get(filename)));
+    if (file.getParentFile() != null
+        && file.getParentFile().getName().equals(ThumbnailCache.THUMBNAIL_DIR)) {
+      // Thumbnails are named after the contents of their image, so never change.
+      response.setHeader("Cache-Control", "public, max-age=31536000, immutable");
+    }
+    FileSender.sendFile(request, response, file);
   }
 
   private void settings(HttpServletRequest request, HttpServletResponse response)
       throws ServletException, IOException {
 
     response.setContentType("text/html");
-    htmlHeader("Settings");
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.header("Settings");
 
     final String newDeqpRoot = request.getParameter("deqp_root");
     if (newDeqpRoot != null) {
       deqpRoot = newDeqpRoot;
     }
 
-    htmlAppendLn("<div class='ui segment'> <h3>Settings</h3>");
+    html.appendLn("<div class='ui segment'> <h3>Settings</h3>");
 
     html.append("<p>Current dEQP directory: <em>");
     if (deqpRoot.isEmpty()) {
@@ -1650,27 +1634,27 @@ public class WebUi extends HttpServlet {
     }
     html.append("</p>\n");
 
-    htmlAppendLn("<form action='/webui/settings' class='ui form'>",
+    html.appendLn("<form action='/webui/settings' class='ui form'>",
         "<div class='inline field'>",
         "<label>New dEQP directory:</label>",
         "<input type='text' name='deqp_root' placeholder='/path/to/deqp'>",
         "<button class='ui button' type='submit'>Update</button>",
         "</div></form>");
 
-    htmlAppendLn("</div>");
-    htmlFooter();
-    response.getWriter().println(html);
+    html.appendLn("</div>");
+
+    html.appendLn("<div class='ui segment'> <h3>Info file cache</h3>",
+        "<p>Entries: ", Integer.toString(accessFileInfo.getSize()),
+        " | Hits: ", Long.toString(accessFileInfo.getHits()),
+        " | Misses: ", Long.toString(accessFileInfo.getMisses()), "</p>",
+        "</div>");
+    html.footer();
   }
 
   private void deqpExport(HttpServletRequest request, HttpServletResponse response)
       throws ServletException, IOException {
     response.setContentType("text/html");
 
-    htmlHeader("Export to dEQP");
-
-    htmlAppendLn("<div class='ui segment'>\n",
-        "<h3>Export shader to dEQP</h3>");
-
     File graphicsFuzzRoot = new File(deqpRoot + "/external/graphicsfuzz");
     if (!graphicsFuzzRoot.isDirectory()) {
       err404(request, response,
@@ -1686,6 +1670,12 @@ public class WebUi extends HttpServlet {
       return;
     }
 
+    final HtmlPage html = new HtmlPage(response.getWriter());
+    html.header("Export to dEQP");
+
+    html.appendLn("<div class='ui segment'>\n",
+        "<h3>Export shader to dEQP</h3>");
+
     String[] files = path.split("/");
     assert (files[0].equals("processing"));
     String device = files[1];
@@ -1720,9 +1710,8 @@ public class WebUi extends HttpServlet {
         + " recompile dEQP to see the new reduced variant appear.</b></p>");
 
 
-    htmlAppendLn("</div>");
-    htmlFooter();
-    response.getWriter().println(html);
+    html.appendLn("</div>");
+    html.footer();
   }
 
   // ========================= "GET" requests dispatcher =======================================
@@ -1730,8 +1719,6 @@ public class WebUi extends HttpServlet {
   public void doGet(HttpServletRequest request, HttpServletResponse response)
       throws ServletException, IOException {
 
-    startTime = System.currentTimeMillis();
-
     // Dispatch based on path structure
     String path = request.getPathInfo();
     if (path == null) {
@@ -1739,6 +1726,7 @@ public class WebUi extends HttpServlet {
     }
     String[] actions = path.split("/");
 
+    resultsIndex.beginRequest();
     try {
       if (actions.length == 0) {
         // 'webui/' : homepage
@@ -1775,6 +1763,8 @@ public class WebUi extends HttpServlet {
     } catch (Exception exception) {
       exception.printStackTrace();
       throw new ServletException("GET method failed, request was: " + request.toString());
+    } finally {
+      resultsIndex.endRequest();
     }
   }
 
@@ -1784,8 +1774,6 @@ public class WebUi extends HttpServlet {
       throws ServletException, IOException {
     String type = request.getParameter("type");
 
-    startTime = System.currentTimeMillis();
-
     // Hugues: dispatching base on a "type" parameter is NOT ideal.
     // We should scan the resquest path instead.
 
@@ -1794,6 +1782,7 @@ public class WebUi extends HttpServlet {
       return;
     }
 
+    resultsIndex.beginRequest();
     try {
       if (type.equals("delete")) {
         delete(request, response);
@@ -1815,66 +1804,13 @@ public class WebUi extends HttpServlet {
     } catch (Exception exception) {
       exception.printStackTrace();
       throw new ServletException("GET method failed, request was: " + request.toString());
+    } finally {
+      resultsIndex.endRequest();
     }
   }
 
   // HTML functions ===========================================================
 
-  private void htmlAppendLn(String... args) {
-    for (String a: args) {
-      html.append(a);
-    }
-    html.append("\n");
-  }
-
-  private void htmlHeader(String title) {
-    htmlHeaderImplem(title, true);
-  }
-
-  private void htmlHeaderResultTable(String title) {
-    htmlHeaderImplem(title, false);
-  }
-
-  private void htmlHeaderImplem(String title, boolean withContainer) {
-    html.setLength(0);
-
-    htmlAppendLn(
-        "<!DOCTYPE html>\n",
-        "<html>\n",
-        "<head>\n",
-        "<meta charset='utf-8' />\n",
-        "<meta http-equiv='X-UA-Compatible' content='IE=edge,chrome=1' />\n",
-        "<meta name='viewport' content='width=device-width,",
-        " initial-scale=1.0, maximum-scale=1.0'>\n",
-        "<title>",
-        title,
-        " - GraphicsFuzz</title>\n",
-        "<link href='/static/semantic/semantic.min.css'",
-        " rel='stylesheet' type='text/css' />\n",
-        "<link href='/webui/graphicsfuzz.css' rel='stylesheet' type='text/css' />\n",
-        "<script src='/static/jquery/jquery-3.1.1.min.js'></script>\n",
-        "<script src='/static/semantic/semantic.min.js'></script>\n",
-        "<script src='/webui/graphicsfuzz.js'></script>\n",
-        "</head>\n",
-        "<body>\n",
-        withContainer ? "<div class='ui container'>\n" : "<div class='resultmain'>",
-        "<div class='ui basic segment'>\n",
-        "<a href='/webui'><img class='ui small image' src='/webui/GraphicsFuzz_logo.png'></a>\n",
-        "</div>\n");
-  }
-
-  private void htmlFooter() {
-    htmlAppendLn(
-        "<pre>Page generated in: ",
-        Long.toString(System.currentTimeMillis() - startTime),
-        "ms</pre>\n",
-        "<div class='ui center aligned basic segment'>",
-        "<p>Powered by <a href='https://www.graphicsfuzz.com'>GraphicsFuzz</a></p>",
-        "</div>\n",
-        "</div>\n",
-        "</body>\n</html>\n");
-  }
-
   private String reductionLabelColor(ReductionStatus reductionStatus) {
     switch (reductionStatus) {
       case NOREDUCTION:
@@ -1896,29 +1832,29 @@ public class WebUi extends HttpServlet {
     }
   }
 
-  private void htmlVariantResultTableCell(File variantInfoFile, String referencePngPath,
-      ReductionStatus reductionStatus) throws FileNotFoundException {
+  private void htmlVariantResultTableCell(HtmlPage html, String variantResultPrefix,
+      VariantResult result, String referencePngPath, ReductionStatus reductionStatus) {
 
-    JsonObject info = accessFileInfo.getResultInfo(variantInfoFile);
-    String status = info.get("Status").getAsString();
-    String cellHref = "/webui/result/" + variantInfoFile.getPath().replace(".info.json", "");
+    String status = result.getStatus();
+    String cellHref = "/webui/result/" + variantResultPrefix;
 
-    if (status.contentEquals("SUCCESS")) {
+    if (result.isSuccess()) {
 
-      if (imageIsIdentical(info)) {
-        htmlAppendLn("<td class='selectable center aligned'><a href='",
+      if (result.imageIsIdentical()) {
+        html.appendLn("<td class='selectable center aligned'><a href='",
             cellHref,
             "'>",
-            "<img class='ui centered tiny image' src='/webui/file/", referencePngPath, "'></a>");
+            "<img class='ui centered tiny image' src='/webui/file/",
+            thumbnailCache.getThumbnailPath(referencePngPath), "'></a>");
       } else {
-        htmlAppendLn("<td class='",
-            imageIsAcceptable(info) ? "warnimg" : "wrongimg",
+        html.appendLn("<td class='",
+            result.imageIsAcceptable() ? "warnimg" : "wrongimg",
             " selectable center aligned'>",
             "<a href='",
             cellHref,
             "'>",
             "<img class='wrongimg ui centered tiny image' src='/webui/file/",
-            variantInfoFile.getPath().replace(".info.json", ".png"),
+            thumbnailCache.getThumbnailPath(variantResultPrefix + ".png"),
             "'></a>\n",
             "<div class='ui tiny ", reductionLabelColor(reductionStatus), " label'>",
             reductionStatus.toString(),
@@ -1927,11 +1863,11 @@ public class WebUi extends HttpServlet {
 
     } else if (status.contentEquals("NONDET")) {
 
-      htmlAppendLn("<td class='selectable nondet center aligned'><a href='",
+      html.appendLn("<td class='selectable nondet center aligned'><a href='",
           cellHref,
           "'>",
           "<img class='ui centered tiny image' src='/webui/file/",
-          variantInfoFile.getPath().replace(".info.json", ".gif"),
+          thumbnailCache.getThumbnailPath(variantResultPrefix + ".gif"),
           "'></a>\n",
           "<div class='ui tiny ", reductionLabelColor(reductionStatus), " label'>",
           reductionStatus.toString(),
@@ -1939,26 +1875,26 @@ public class WebUi extends HttpServlet {
 
     } else {
 
-      htmlAppendLn("<td class='gfz-error bound-cell-width selectable center aligned'>",
+      html.appendLn("<td class='gfz-error bound-cell-width selectable center aligned'>",
           "<a href='",
           cellHref,
           "'>", status.replace("_", " "), " ",
-          info.get("stage").getAsString().replace("_", " "),
+          result.getStage().replace("_", " "),
           "</a>\n",
           "<div class='ui tiny ", reductionLabelColor(reductionStatus), " label'>",
           reductionStatus.toString(),
           "</div>");
 
     }
-    htmlAppendLn("</td>");
+    html.appendLn("</td>");
   }
 
   // Hugues: This is way too complex, do something *simpler* using semantic-ui
-  private void htmlReductionForm(String shaderPath, String output, String token,
+  private void htmlReductionForm(HtmlPage html, String shaderPath, String output, String token,
       String referencePngPath, String variantPath, String resultStatus) {
     final boolean crash = resultStatus.equals("CRASH");
 
-    htmlAppendLn(
+    html.appendLn(
         "<form class='ui form' method='post' id='reduceForm'>",
         "<fieldset>",
         "<legend>Reduction Options</legend>",
@@ -2079,23 +2015,19 @@ public class WebUi extends HttpServlet {
         "</form>");
   }
 
-  private void htmlComparativeTable(String shaderFamily, String[] workers)
-      throws FileNotFoundException {
+  private void htmlComparativeTable(HtmlPage html, String shaderFamily, String[] workers) {
 
-    htmlAppendLn("<table class='ui celled compact collapsing table'>\n",
+    html.appendLn("<table class='ui celled compact collapsing table'>\n",
         "<thead><tr>");
-    File variantsDir = new File(WebUiConstants.SHADERSET_DIR + "/" + shaderFamily);
-    File[] variantFragFiles = variantsDir.listFiles(variantFragFilter);
-    Arrays.sort(variantFragFiles, (f1, f2) ->
-        new AlphanumComparator().compare(f1.getName(), f2.getName()));
+    final List<String> variants = resultsIndex.getVariants(shaderFamily);
 
     boolean showWorkerNames = workers.length > 1;
 
     // First row: variant names
     if (showWorkerNames) {
-      htmlAppendLn("<th class='center aligned'>Worker</th>");
+      html.appendLn("<th class='center aligned'>Worker</th>");
     }
-    htmlAppendLn("<th class='center aligned'>",
+    html.appendLn("<th class='center aligned'>",
         "<a href='/webui/shader/",
         WebUiConstants.SHADERSET_DIR,
         "/",
@@ -2104,45 +2036,44 @@ public class WebUi extends HttpServlet {
         "'>",
         "reference",
         "</a></th>");
-    for (File f: variantFragFiles) {
-      htmlAppendLn("<th class='selectable center aligned'>",
-          "<a href='/webui/shader/", f.getPath(), "'>",
-          f.getName().replace(".frag", ""), "</a></th>");
+    for (String variant : variants) {
+      html.appendLn("<th class='selectable center aligned'>",
+          "<a href='/webui/shader/", WebUiConstants.SHADERSET_DIR, "/", shaderFamily, "/",
+          variant, ".frag'>", variant, "</a></th>");
     }
-    htmlAppendLn("</tr></thead>\n",
+    html.appendLn("</tr></thead>\n",
         "<tbody>");
     // Subsequent rows: results
     for (String worker: workers) {
       String referencePngPath = WebUiConstants.WORKER_DIR + "/" + worker + "/"
           + shaderFamily + "_exp/reference.png";
 
-      htmlAppendLn("<tr>");
+      html.appendLn("<tr>");
       if (showWorkerNames) {
-        htmlAppendLn("<td>", worker, "</td>");
+        html.appendLn("<td>", worker, "</td>");
       }
       if (new File(referencePngPath).exists()) {
-        htmlAppendLn("<td><img class='ui tiny image' src='/webui/file/",
-            referencePngPath, "'></td>");
+        html.appendLn("<td><img class='ui tiny image' src='/webui/file/",
+            thumbnailCache.getThumbnailPath(referencePngPath), "'></td>");
       } else {
-        htmlAppendLn("<td class='bound-cell-width center aligned'>No result</td>");
+        html.appendLn("<td class='bound-cell-width center aligned'>No result</td>");
       }
 
-      for (File f : variantFragFiles) {
-        File infoFile = new File(WebUiConstants.WORKER_DIR + "/" + worker
-            + "/" + shaderFamily + "_exp/" + f.getName().replace(".frag", ".info.json"));
+      for (String variant : variants) {
+        final VariantResult result = resultsIndex.getResult(worker, shaderFamily, variant);
 
-        if (infoFile.isFile()) {
-          ReductionStatus reductionStatus = getReductionStatus(worker, shaderFamily,
-              infoFile.getName().replace(".info.json", ""));
+        if (result != null) {
+          ReductionStatus reductionStatus = getReductionStatus(worker, shaderFamily, variant);
 
-          htmlVariantResultTableCell(infoFile, referencePngPath, reductionStatus);
+          htmlVariantResultTableCell(html, WebUiConstants.WORKER_DIR + "/" + worker + "/"
+              + shaderFamily + "_exp/" + variant, result, referencePngPath, reductionStatus);
         } else {
-          htmlAppendLn("<td class='bound-cell-width center aligned'>No result</td>");
+          html.appendLn("<td class='bound-cell-width center aligned'>No result</td>");
         }
       }
-      htmlAppendLn("</tr>");
+      html.appendLn("</tr>");
     }
-    htmlAppendLn("</tbody>\n</table>");
+    html.appendLn("</tbody>\n</table>");
   }
 
 }
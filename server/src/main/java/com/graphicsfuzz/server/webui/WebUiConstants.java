@@ -26,5 +26,6 @@ public final class WebUiConstants {
   static final String WORKER_DIR = "processing";
   static final String SHADERSET_DIR = "shaderfamilies";
   static final String WORKER_INFO_FILE = "client.json";
+  static final String JUDGE_CACHE_DIR = "judge_cache";
 
 }
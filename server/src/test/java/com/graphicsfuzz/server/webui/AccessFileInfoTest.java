@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server.webui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AccessFileInfoTest {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private File processing;
+  private File infoFile;
+  private AccessFileInfo accessFileInfo;
+  private final BlockingQueue<Path> invalidated = new LinkedBlockingQueue<>();
+
+  @Before
+  public void setUp() throws Exception {
+    processing = testFolder.newFolder("processing");
+    writeFile("worker/client.json", "{\"platform_info\": {\"device\": \"gpu\"}}");
+    infoFile = writeFile("worker/family_exp/variant_0.info.json", "{\"Status\": \"SUCCESS\"}");
+    accessFileInfo = new AccessFileInfo(processing);
+    accessFileInfo.setInvalidationListener(invalidated::add);
+  }
+
+  @After
+  public void tearDown() {
+    accessFileInfo.shutdown();
+  }
+
+  @Test
+  public void testCachesInfo() throws Exception {
+    assertEquals("gpu", accessFileInfo.getWorkerInfo("worker").get("device").getAsString());
+    assertEquals("SUCCESS", accessFileInfo.getResultInfo(infoFile).get("Status").getAsString());
+    assertEquals("SUCCESS", accessFileInfo.getResultInfo(infoFile).get("Status").getAsString());
+    assertEquals(2, accessFileInfo.getMisses());
+    assertEquals(1, accessFileInfo.getHits());
+    assertEquals(2, accessFileInfo.getSize());
+  }
+
+  @Test
+  public void testOnlyCachedDirectoriesAreWatched() throws Exception {
+    assertEquals(0, accessFileInfo.getWatchedDirCount());
+    accessFileInfo.getResultInfo(infoFile);
+    assertEquals(1, accessFileInfo.getWatchedDirCount());
+    accessFileInfo.getWorkerInfo("worker");
+    assertEquals(2, accessFileInfo.getWatchedDirCount());
+
+    // Once the only cached file in a directory is gone, the directory is no longer watched.
+    FileUtils.forceDelete(infoFile);
+    awaitInvalidation(infoFile);
+    assertEquals(1, accessFileInfo.getWatchedDirCount());
+    assertEquals(1, accessFileInfo.getSize());
+  }
+
+  @Test
+  public void testWatchedFileChanges() throws Exception {
+    assertEquals("SUCCESS", accessFileInfo.getResultInfo(infoFile).get("Status").getAsString());
+
+    // Rewrite the file without changing its modification time; only the watch service can tell
+    // that it has changed.
+    final long lastModified = infoFile.lastModified();
+    writeFile("worker/family_exp/variant_0.info.json", "{\"Status\": \"CRASH\"}");
+    infoFile.setLastModified(lastModified);
+    awaitInvalidation(infoFile);
+    assertEquals("CRASH", accessFileInfo.getResultInfo(infoFile).get("Status").getAsString());
+  }
+
+  @Test
+  public void testNewDirectoriesAreWatched() throws Exception {
+    final File infoFile = writeFile("worker2/family_exp/deeper/variant_0.info.json",
+        "{\"Status\": \"SUCCESS\"}");
+    assertEquals("SUCCESS", accessFileInfo.getResultInfo(infoFile).get("Status").getAsString());
+    final long lastModified = infoFile.lastModified();
+    writeFile("worker2/family_exp/deeper/variant_0.info.json", "{\"Status\": \"CRASH\"}");
+    infoFile.setLastModified(lastModified);
+    awaitInvalidation(infoFile);
+    assertEquals("CRASH", accessFileInfo.getResultInfo(infoFile).get("Status").getAsString());
+  }
+
+  // Waits for the watch service to report that the file has changed.
+  private void awaitInvalidation(File file) throws InterruptedException {
+    final Path path = file.toPath().toAbsolutePath().normalize();
+    while (true) {
+      final Path invalidatedPath = invalidated.poll(1, TimeUnit.MINUTES);
+      assertNotNull("No change to " + path + " was seen", invalidatedPath);
+      if (path.startsWith(invalidatedPath)) {
+        return;
+      }
+    }
+  }
+
+  private File writeFile(String name, String contents) throws Exception {
+    final File file = new File(processing, name);
+    FileUtils.writeStringToFile(file, contents, StandardCharsets.UTF_8);
+    return file;
+  }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server.webui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.common.transformreduce.Constants;
+import com.graphicsfuzz.server.webui.ResultsIndex.ExperimentSummary;
+import com.graphicsfuzz.server.webui.ResultsIndex.ReductionStatus;
+import com.graphicsfuzz.server.webui.ResultsIndex.VariantResult;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResultsIndexTest {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private File processing;
+  private File shaderFamilies;
+  private final long oldTime = System.currentTimeMillis() - 60000;
+
+  @Before
+  public void setUp() throws IOException {
+    processing = testFolder.newFolder("processing");
+    shaderFamilies = testFolder.newFolder("shaderfamilies");
+    for (String variant : Arrays.asList("reference", "variant_0", "variant_1", "variant_2",
+        "variant_10")) {
+      FileUtils.touch(new File(shaderFamilies, "family/" + variant + ".frag"));
+    }
+    writeResult("worker1", "variant_0", "{\"Status\": \"SUCCESS\", "
+        + "\"metrics\": {\"identical\": true, \"histogramDistance\": 0.0}}");
+    writeResult("worker1", "variant_1", "{\"Status\": \"SUCCESS\", "
+        + "\"metrics\": {\"identical\": false, \"histogramDistance\": 50.0}}");
+    writeResult("worker1", "variant_2", "{\"Status\": \"SUCCESS\", "
+        + "\"metrics\": {\"identical\": false, \"histogramDistance\": 500.0}}");
+    writeResult("worker1", "variant_10", "{\"Status\": \"COMPILE_ERROR\", "
+        + "\"stage\": \"IMAGE_VALIDATE_PROGRAM\"}");
+    writeResult("worker2", "variant_0", "{\"Status\": \"SUCCESS\"}");
+    FileUtils.forceMkdir(new File(processing, "worker3"));
+  }
+
+  @Test
+  public void testResults() throws Exception {
+    final ResultsIndex index = new ResultsIndex(processing, shaderFamilies);
+    index.rebuild();
+
+    assertEquals(Arrays.asList("worker1", "worker2", "worker3"), index.getWorkers());
+    assertEquals(Collections.singletonList("family"), index.getExperiments("worker1"));
+    assertEquals(Arrays.asList("worker1", "worker2"), index.getWorkersWithExperiment("family"));
+    assertEquals(Arrays.asList("variant_0", "variant_1", "variant_2", "variant_10"),
+        index.getVariants("family"));
+
+    final ExperimentSummary summary = index.getSummary("worker1", "family");
+    assertEquals(4, summary.getNbVariantDone());
+    assertEquals(1, summary.getNbSameImage());
+    assertEquals(1, summary.getNbAcceptablyDifferentImage());
+    assertEquals(1, summary.getNbWrongImage());
+    assertEquals(1, summary.getNbErrors());
+
+    final VariantResult error = index.getResult("worker1", "family", "variant_10");
+    assertFalse(error.isSuccess());
+    assertEquals("COMPILE_ERROR", error.getStatus());
+    assertEquals("IMAGE_VALIDATE_PROGRAM", error.getStage());
+    assertTrue(index.getResult("worker2", "family", "variant_0").isSuccess());
+    assertNull(index.getResult("worker2", "family", "variant_1"));
+    assertEquals(0, index.getSummary("worker3", "family").getNbVariantDone());
+  }
+
+  @Test
+  public void testReductionStatus() throws Exception {
+    final ResultsIndex index = new ResultsIndex(processing, shaderFamilies);
+    index.rebuild();
+    assertEquals(ReductionStatus.NOREDUCTION,
+        index.getReductionStatus("worker1", "family", "variant_1"));
+
+    final File reductionDir = new File(processing, "worker1/family_variant_1_inv");
+    FileUtils.forceMkdir(reductionDir);
+    index.reductionUpdated(reductionDir);
+    assertEquals(ReductionStatus.ONGOING,
+        index.getReductionStatus("worker1", "family", "variant_1"));
+
+    FileUtils.touch(new File(reductionDir, Constants.REDUCTION_INCOMPLETE));
+    FileUtils.touch(new File(reductionDir, "variant_1_reduced_final.frag"));
+    index.reductionUpdated(reductionDir);
+    assertEquals(ReductionStatus.INCOMPLETE,
+        index.getReductionStatus("worker1", "family", "variant_1"));
+
+    assertTrue(new File(reductionDir, Constants.REDUCTION_INCOMPLETE).delete());
+    index.reductionUpdated(reductionDir);
+    assertEquals(ReductionStatus.FINISHED,
+        index.getReductionStatus("worker1", "family", "variant_1"));
+    assertEquals(ReductionStatus.NOREDUCTION,
+        index.getReductionStatus("worker2", "family", "variant_1"));
+  }
+
+  @Test
+  public void testResultWrittenUpdatesIndex() throws Exception {
+    // Make all files look old, so that the index trusts their modification times.
+    final long oldTime = System.currentTimeMillis() - 60000;
+    for (File file : FileUtils.listFilesAndDirs(processing, TrueFileFilter.INSTANCE,
+        TrueFileFilter.INSTANCE)) {
+      assertTrue(file.setLastModified(oldTime));
+    }
+    final ResultsIndex index = new ResultsIndex(processing, shaderFamilies);
+    index.rebuild();
+    assertEquals(1, index.getSummary("worker1", "family").getNbErrors());
+
+    // Rewrite a result without changing the modification time of the file or its directory.
+    final File infoFile = writeResult("worker1", "variant_0",
+        "{\"Status\": \"CRASH\", \"stage\": \"IMAGE_RENDER\"}");
+    assertTrue(infoFile.setLastModified(oldTime));
+    assertTrue(infoFile.getParentFile().setLastModified(oldTime));
+
+    index.resultWritten(infoFile);
+    assertEquals("CRASH", index.getResult("worker1", "family", "variant_0").getStatus());
+    assertEquals(2, index.getSummary("worker1", "family").getNbErrors());
+  }
+
+  @Test
+  public void testResultRewrittenByAnotherProcess() throws Exception {
+    makeOld(processing);
+    final ResultsIndex index = new ResultsIndex(processing, shaderFamilies);
+    index.rebuild();
+    assertEquals(1, index.getSummary("worker1", "family").getNbErrors());
+
+    // Rewrite a result in place, without reporting it and without changing the modification time
+    // of its directory.
+    final File infoFile = writeResult("worker1", "variant_0",
+        "{\"Status\": \"CRASH\", \"stage\": \"IMAGE_RENDER\"}");
+    assertTrue(infoFile.setLastModified(oldTime + 10000));
+    assertTrue(infoFile.getParentFile().setLastModified(oldTime));
+
+    assertEquals("CRASH", index.getResult("worker1", "family", "variant_0").getStatus());
+    assertEquals(2, index.getSummary("worker1", "family").getNbErrors());
+  }
+
+  @Test
+  public void testEntriesAreCheckedOncePerRequest() throws Exception {
+    makeOld(processing);
+    final ResultsIndex index = new ResultsIndex(processing, shaderFamilies);
+    index.rebuild();
+
+    index.beginRequest();
+    try {
+      assertEquals("SUCCESS", index.getResult("worker1", "family", "variant_0").getStatus());
+      final File infoFile = writeResult("worker1", "variant_0", "{\"Status\": \"CRASH\"}");
+      assertTrue(infoFile.setLastModified(oldTime + 10000));
+      assertTrue(infoFile.getParentFile().setLastModified(oldTime));
+      // The request keeps seeing the results as they were when it first looked at them...
+      assertEquals("SUCCESS", index.getResult("worker1", "family", "variant_0").getStatus());
+      // ... unless a tool reports having changed them.
+      index.resultWritten(infoFile);
+      assertEquals("CRASH", index.getResult("worker1", "family", "variant_0").getStatus());
+    } finally {
+      index.endRequest();
+    }
+
+    final File infoFile = writeResult("worker1", "variant_0", "{\"Status\": \"SUCCESS\"}");
+    assertTrue(infoFile.setLastModified(oldTime + 20000));
+    assertTrue(infoFile.getParentFile().setLastModified(oldTime));
+    assertEquals("SUCCESS", index.getResult("worker1", "family", "variant_0").getStatus());
+  }
+
+  @Test
+  public void testVersion() throws Exception {
+    makeOld(testFolder.getRoot());
+    final ResultsIndex index = new ResultsIndex(processing, shaderFamilies);
+    index.rebuild();
+    final ResultsIndex.Version version = index.getShaderFamilyVersion("family");
+    final ResultsIndex.Version worker1Version = index.getWorkerVersion("worker1");
+    assertEquals(version.getNumber(), index.getShaderFamilyVersion("family").getNumber());
+    assertEquals(version.getLastModified(),
+        index.getShaderFamilyVersion("family").getLastModified());
+
+    // A result written by another process is noticed through its directory, and only changes
+    // the versions of the pages showing it.
+    writeResult("worker2", "variant_1", "{\"Status\": \"SUCCESS\"}");
+    assertNotEquals(version.getNumber(), index.getShaderFamilyVersion("family").getNumber());
+    assertEquals(2, index.getSummary("worker2", "family").getNbVariantDone());
+    assertEquals(worker1Version.getNumber(), index.getWorkerVersion("worker1").getNumber());
+
+    // A result rewritten in place is noticed when it is reported.
+    final File infoFile = writeResult("worker1", "variant_0", "{\"Status\": \"CRASH\"}");
+    makeOld(infoFile.getParentFile());
+    final long versionBeforeReport = index.getExperimentVersion("worker1", "family").getNumber();
+    index.resultWritten(infoFile);
+    assertNotEquals(versionBeforeReport,
+        index.getExperimentVersion("worker1", "family").getNumber());
+  }
+
+  @Test
+  public void testVersionUnchangedByIdenticalResult() throws Exception {
+    makeOld(testFolder.getRoot());
+    final ResultsIndex index = new ResultsIndex(processing, shaderFamilies);
+    index.rebuild();
+    final ResultsIndex.Version version = index.getWorkerVersion("worker1");
+
+    // Rewriting a result with the same contents does not change what pages show.
+    final File infoFile = writeResult("worker1", "variant_2", "{\"Status\": \"SUCCESS\", "
+        + "\"metrics\": {\"identical\": false, \"histogramDistance\": 500.0}}");
+    index.resultWritten(infoFile);
+    assertEquals(version.getNumber(), index.getWorkerVersion("worker1").getNumber());
+    assertEquals(version.getLastModified(), index.getWorkerVersion("worker1").getLastModified());
+  }
+
+  // Makes the files look old, so that the index trusts their modification times.
+  private void makeOld(File dir) {
+    for (File file : FileUtils.listFilesAndDirs(dir, TrueFileFilter.INSTANCE,
+        TrueFileFilter.INSTANCE)) {
+      assertTrue(file.setLastModified(oldTime));
+    }
+  }
+
+  private File writeResult(String worker, String variant, String json) throws IOException {
+    final File infoFile = new File(processing, worker + "/family_exp/" + variant + ".info.json");
+    FileUtils.writeStringToFile(infoFile, json, StandardCharsets.UTF_8);
+    return infoFile;
+  }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server.webui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ThumbnailCacheTest {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test
+  public void testThumbnailIsDownscaled() throws Exception {
+    final File image = writeImage("variant_0.png", "png", 640, 320, Color.RED);
+    final File thumbnail = ThumbnailCache.createThumbnail(image);
+    assertEquals(new File(image.getParentFile(), ThumbnailCache.THUMBNAIL_DIR),
+        thumbnail.getParentFile());
+    final BufferedImage scaled = ImageIO.read(thumbnail);
+    assertEquals(ThumbnailCache.THUMBNAIL_SIZE, scaled.getWidth());
+    assertEquals(ThumbnailCache.THUMBNAIL_SIZE / 2, scaled.getHeight());
+    assertEquals(Color.RED.getRGB(), scaled.getRGB(10, 10));
+  }
+
+  @Test
+  public void testGifThumbnail() throws Exception {
+    final File image = writeImage("variant_0.gif", "gif", 256, 256, Color.BLUE);
+    final File thumbnail = ThumbnailCache.createThumbnail(image);
+    assertTrue(thumbnail.getName().startsWith("variant_0_gif_"));
+    assertTrue(thumbnail.getName().endsWith(".png"));
+    assertEquals(ThumbnailCache.THUMBNAIL_SIZE, ImageIO.read(thumbnail).getWidth());
+  }
+
+  @Test
+  public void testThumbnailNamedAfterContents() throws Exception {
+    final File image = writeImage("variant_0.png", "png", 256, 256, Color.RED);
+    final File first = ThumbnailCache.createThumbnail(image);
+    assertEquals(first, ThumbnailCache.createThumbnail(image));
+
+    writeImage("variant_0.png", "png", 256, 256, Color.GREEN);
+    final File second = ThumbnailCache.createThumbnail(image);
+    assertNotEquals(first, second);
+    assertFalse(first.exists());
+    assertTrue(second.exists());
+    // Thumbnails of other images are kept.
+    final File other = ThumbnailCache.createThumbnail(
+        writeImage("variant_01.png", "png", 256, 256, Color.RED));
+    assertTrue(ThumbnailCache.createThumbnail(image).exists());
+    assertTrue(other.exists());
+  }
+
+  @Test
+  public void testThumbnailBeingWrittenIsKept() throws Exception {
+    final File image = writeImage("variant_0.png", "png", 256, 256, Color.RED);
+    final File thumbnail = ThumbnailCache.createThumbnail(image);
+    // A thumbnail of the same image being written by another thread.
+    final File temp = File.createTempFile(ThumbnailCache.TEMP_PREFIX + "variant_0_png_", ".tmp",
+        thumbnail.getParentFile());
+    writeImage("variant_0.png", "png", 256, 256, Color.GREEN);
+    ThumbnailCache.createThumbnail(image);
+    assertFalse(thumbnail.exists());
+    assertTrue(temp.exists());
+  }
+
+  @Test
+  public void testUnreadableImage() throws Exception {
+    final File image = testFolder.newFile("variant_0.png");
+    FileUtils.writeStringToFile(image, "not an image");
+    assertNull(ThumbnailCache.createThumbnail(image));
+  }
+
+  @Test
+  public void testMissingImageHasNoThumbnail() throws Exception {
+    final String imagePath = new File(testFolder.getRoot(), "variant_0.png").getPath();
+    final ThumbnailCache thumbnailCache = new ThumbnailCache();
+    try {
+      assertEquals(imagePath, thumbnailCache.getThumbnailPath(imagePath));
+    } finally {
+      thumbnailCache.shutdown();
+    }
+  }
+
+  private File writeImage(String name, String format, int width, int height, Color color)
+      throws IOException {
+    final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    for (int x = 0; x < width; x++) {
+      for (int y = 0; y < height; y++) {
+        image.setRGB(x, y, color.getRGB());
+      }
+    }
+    final File file = new File(testFolder.getRoot(), name);
+    ImageIO.write(image, format, file);
+    return file;
+  }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.shadersets;
+
+import java.io.File;
+
+/**
+ * Notified when tools running in the same process write results to disk, so that indexes of the
+ * results can be kept up to date without rescanning the results directories.
+ */
+public interface IResultsListener {
+
+  /**
+   * Called after the .info.json file describing the result of running a shader has been written,
+   * together with the image and log files it describes.
+   */
+  void resultWritten(File infoFile);
+
+  /**
+   * Called when a reduction starts or finishes in the given directory, i.e. when its marker
+   * files may have been created or removed.
+   */
+  void reductionUpdated(File reductionDir);
+
+}
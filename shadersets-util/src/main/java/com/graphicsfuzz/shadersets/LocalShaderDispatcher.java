@@ -31,8 +31,16 @@ public class LocalShaderDispatcher implements IShaderDispatcher {
 
   private final boolean usingSwiftshader;
 
+  // Time in seconds after which image generation is abandoned; 0 means no limit.
+  private final int timeoutSeconds;
+
   public LocalShaderDispatcher(boolean usingSwiftshader) {
+    this(usingSwiftshader, 0);
+  }
+
+  public LocalShaderDispatcher(boolean usingSwiftshader, int timeoutSeconds) {
     this.usingSwiftshader = usingSwiftshader;
+    this.timeoutSeconds = timeoutSeconds;
   }
 
   @Override
@@ -51,9 +59,9 @@ public class LocalShaderDispatcher implements IShaderDispatcher {
     try {
       ExecResult res = usingSwiftshader
           ? ToolHelper.runSwiftshaderOnShader(RedirectType.TO_BUFFER, fragmentShaderFile,
-              tempImageFile, skipRender)
+              tempImageFile, skipRender, timeoutSeconds)
           : ToolHelper.runGenerateImageOnShader(RedirectType.TO_BUFFER, fragmentShaderFile,
-          tempImageFile, skipRender);
+          tempImageFile, skipRender, timeoutSeconds);
 
       ImageJobResult imageJobResult = new ImageJobResult();
 
@@ -67,7 +75,10 @@ public class LocalShaderDispatcher implements IShaderDispatcher {
       ResultConstant resultConstant = ResultConstant.ERROR;
       JobStatus status = JobStatus.UNEXPECTED_ERROR;
 
-      if (res.res == FuzzerServiceConstants.COMPILE_ERROR_EXIT_CODE) {
+      if (res.timedOut) {
+        resultConstant = ResultConstant.TIMEOUT;
+        status = JobStatus.TIMEOUT;
+      } else if (res.res == FuzzerServiceConstants.COMPILE_ERROR_EXIT_CODE) {
         resultConstant = ResultConstant.COMPILE_ERROR;
         status = JobStatus.COMPILE_ERROR;
       } else if (res.res == FuzzerServiceConstants.LINK_ERROR_EXIT_CODE) {
@@ -26,12 +26,17 @@ import com.graphicsfuzz.server.thrift.FuzzerServiceManager.Iface;
 import com.graphicsfuzz.server.thrift.ImageJob;
 import com.graphicsfuzz.server.thrift.ImageJobResult;
 import com.graphicsfuzz.server.thrift.Job;
+import com.graphicsfuzz.server.thrift.JobStatus;
+import com.graphicsfuzz.server.thrift.ResultConstant;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
@@ -57,8 +62,21 @@ public class RemoteShaderDispatcher implements IShaderDispatcher {
   private final AtomicLong jobCounter;
   private final int retryLimit;
 
+  // Whether jobs may be run by any worker with the same platform info as the given worker.
+  private final boolean anyMatchingWorker;
+
+  // Time in seconds after which a worker's attempt to run a job is assumed to have failed; 0 means
+  // that no render timeout was asked for, in which case DEFAULT_RESULT_TIMEOUT_SECONDS applies.
+  private final int timeoutSeconds;
+
   private static final int DEFAULT_RETRY_LIMIT = 2;
 
+  // How long each request for a job result may wait on the server for the job to complete.
+  private static final int RESULT_POLL_MILLIS = 10000;
+
+  // How long to wait for the result of a job if no render timeout was asked for.
+  private static final int DEFAULT_RESULT_TIMEOUT_SECONDS = 60 * 60;
+
   public RemoteShaderDispatcher(String url, String token,
       FuzzerServiceManager.Iface fuzzerServiceManager, AtomicLong jobCounter) {
     this(url, token, fuzzerServiceManager, jobCounter, DEFAULT_RETRY_LIMIT);
@@ -66,11 +84,31 @@ public class RemoteShaderDispatcher implements IShaderDispatcher {
 
   public RemoteShaderDispatcher(String url, String token,
       FuzzerServiceManager.Iface fuzzerServiceManager, AtomicLong jobCounter, int retryLimit) {
+    this(url, token, fuzzerServiceManager, jobCounter, retryLimit, false);
+  }
+
+  public RemoteShaderDispatcher(String url, String token,
+      FuzzerServiceManager.Iface fuzzerServiceManager, AtomicLong jobCounter,
+      boolean anyMatchingWorker) {
+    this(url, token, fuzzerServiceManager, jobCounter, DEFAULT_RETRY_LIMIT, anyMatchingWorker);
+  }
+
+  public RemoteShaderDispatcher(String url, String token,
+      FuzzerServiceManager.Iface fuzzerServiceManager, AtomicLong jobCounter, int retryLimit,
+      boolean anyMatchingWorker) {
+    this(url, token, fuzzerServiceManager, jobCounter, retryLimit, anyMatchingWorker, 0);
+  }
+
+  public RemoteShaderDispatcher(String url, String token,
+      FuzzerServiceManager.Iface fuzzerServiceManager, AtomicLong jobCounter, int retryLimit,
+      boolean anyMatchingWorker, int timeoutSeconds) {
     this.url = url;
     this.token = token;
     this.fuzzerServiceManager = fuzzerServiceManager;
     this.jobCounter = jobCounter;
     this.retryLimit = retryLimit;
+    this.anyMatchingWorker = anyMatchingWorker;
+    this.timeoutSeconds = timeoutSeconds;
   }
 
   public RemoteShaderDispatcher(String url, String token) {
@@ -136,7 +174,13 @@ public class RemoteShaderDispatcher implements IShaderDispatcher {
         .setJobId(jobCounter.incrementAndGet())
         .setImageJob(imageJob);
 
-    return fuzzerServiceManagerProxy.submitJob(job, token, retryLimit)
+    final Job result = runJob(job, fuzzerServiceManagerProxy);
+    if (result == null) {
+      return new ImageJobResult()
+          .setStatus(JobStatus.TIMEOUT)
+          .setLog(ResultConstant.TIMEOUT + "\nNo result from the server in time.\n");
+    }
+    return result
         .getImageJob()
         .getResult();
   }
@@ -212,11 +256,47 @@ public class RemoteShaderDispatcher implements IShaderDispatcher {
         .setJobId(jobCounter.incrementAndGet())
         .setComputeJob(computeJob);
 
-    return fuzzerServiceManagerProxy.submitJob(job, token, retryLimit)
+    final Job result = runJob(job, fuzzerServiceManagerProxy);
+    if (result == null) {
+      return new ComputeJobResult()
+          .setStatus(JobStatus.TIMEOUT)
+          .setLog(ResultConstant.TIMEOUT + "\nNo result from the server in time.\n");
+    }
+    return result
         .getComputeJob()
         .getResult();
   }
 
+  /**
+   * Submits a job and polls for its result, so that neither this thread nor a server thread is
+   * tied up for the whole time the worker takes to run the job.  Gives up, returning null, once
+   * every attempt the server allows could have taken the render timeout; the server forgets the
+   * result of a job that is no longer asked for.
+   */
+  private Job runJob(Job job, FuzzerServiceManager.Iface fuzzerServiceManagerProxy)
+      throws TException {
+    final List<Job> jobs = Collections.singletonList(job);
+    final long submissionId = (anyMatchingWorker
+        ? fuzzerServiceManagerProxy.submitJobsToGroup(jobs, token, retryLimit)
+        : fuzzerServiceManagerProxy.submitJobs(jobs, token, retryLimit)).get(0);
+    final long deadline = System.currentTimeMillis() + (timeoutSeconds > 0
+        ? TimeUnit.SECONDS.toMillis(timeoutSeconds) * (retryLimit + 1)
+        : TimeUnit.SECONDS.toMillis(DEFAULT_RESULT_TIMEOUT_SECONDS));
+    while (true) {
+      final long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        LOGGER.warn("Gave up waiting for the result of job {}", job.getJobId());
+        return null;
+      }
+      final Map<Long, Job> results = fuzzerServiceManagerProxy
+          .getJobResults(Collections.singletonList(submissionId),
+              (int) Math.min(remaining, RESULT_POLL_MILLIS));
+      if (results.containsKey(submissionId)) {
+        return results.get(submissionId);
+      }
+    }
+  }
+
   private Iface getFuzzerServiceManagerProxy(CloseableHttpClient httpClient)
       throws TTransportException {
     TTransport transport = new THttpClient(url, httpClient);
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.shadersets;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The listeners that are notified when results are written to disk.  The server registers its
+ * results index here, so that the commands it runs in-process keep the index up to date.
+ */
+public final class ResultsListeners {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResultsListeners.class);
+
+  private static final List<IResultsListener> listeners = new CopyOnWriteArrayList<>();
+
+  private ResultsListeners() {
+    // Utility class
+  }
+
+  public static void add(IResultsListener listener) {
+    listeners.add(listener);
+  }
+
+  public static void remove(IResultsListener listener) {
+    listeners.remove(listener);
+  }
+
+  public static void resultWritten(File infoFile) {
+    for (IResultsListener listener : listeners) {
+      try {
+        listener.resultWritten(infoFile);
+      } catch (RuntimeException exception) {
+        LOGGER.error("Results listener failed on {}", infoFile, exception);
+      }
+    }
+  }
+
+  public static void reductionUpdated(File reductionDir) {
+    for (IResultsListener listener : listeners) {
+      try {
+        listener.reductionUpdated(reductionDir);
+      } catch (RuntimeException exception) {
+        LOGGER.error("Results listener failed on {}", reductionDir, exception);
+      }
+    }
+  }
+
+}
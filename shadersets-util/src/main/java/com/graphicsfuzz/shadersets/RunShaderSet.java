@@ -86,6 +86,11 @@ public class RunShaderSet {
         .help("The token of the client used for get image requests. Used with --server.")
         .type(String.class);
 
+    parser.addArgument("--any_matching_worker")
+        .action(Arguments.storeTrue())
+        .help("Allow shaders to be run by any worker with the same platform info as the worker "
+            + "given by --token.");
+
     parser.addArgument("--output")
         .help("Output directory.")
         .setDefault(new File("."))
@@ -123,7 +128,8 @@ public class RunShaderSet {
                 server + "/manageAPI",
                 token,
                 managerOverride,
-                new AtomicLong());
+                new AtomicLong(),
+                ns.getBoolean("any_matching_worker"));
 
     FileUtils.forceMkdir(outputDir);
 
@@ -250,6 +256,7 @@ public class RunShaderSet {
     JsonObject infoJson = makeInfoJson(res, outputImage, referenceImage);
     FileUtils.writeStringToFile(outputJson,
         JsonHelper.jsonToString(infoJson), Charset.defaultCharset());
+    ResultsListeners.resultWritten(outputJson);
 
     return res;
   }
@@ -233,6 +233,18 @@ service FuzzerService {
   Job getJob(1 : string token) throws (1 : TokenNotFoundException ex),
 
   void jobDone(1 : string token, 2 : Job job) throws (1 : TokenNotFoundException ex),
+
+  /**
+  * Get up to maxJobs jobs; an empty list means there are no jobs.
+  * The jobs are leased to the worker, which should run them in order and return their results,
+  * in that order, via jobDone or jobsDone before getting more jobs. A worker that gets jobs while
+  * still holding leased jobs is taken to have crashed running the first of them, which is
+  * charged a failed attempt; the others are queued again.
+  * A worker that may crash should thus return each result before running the next job.
+  **/
+  list<Job> getJobs(1 : string token, 2 : i32 maxJobs) throws (1 : TokenNotFoundException ex),
+
+  void jobsDone(1 : string token, 2 : list<Job> jobs) throws (1 : TokenNotFoundException ex),
 }
 
 /**
@@ -261,6 +273,27 @@ service FuzzerServiceManager {
   **/
   Job submitJob(1 : Job job, 2 : string forClient, 3 : i32 retryLimit) throws (1 : TokenNotFoundException ex),
 
+  /**
+  * Submit jobs to a worker job queue without waiting for them to complete.
+  * Returns a submission id for each job, in order, which can be passed to getJobResults.
+  **/
+  list<i64> submitJobs(1 : list<Job> jobs, 2 : string forClient, 3 : i32 retryLimit) throws (1 : TokenNotFoundException ex),
+
+  /**
+  * Like submitJobs, but the jobs may be run by any worker with the same platform info as the
+  * given worker. Jobs are spread over the live workers of the group, and workers that run out
+  * of jobs steal jobs from the others.
+  **/
+  list<i64> submitJobsToGroup(1 : list<Job> jobs, 2 : string likeClient, 3 : i32 retryLimit) throws (1 : TokenNotFoundException ex),
+
+  /**
+  * Get the results of jobs submitted via submitJobs, keyed by submission id.
+  * Only completed jobs are included, and each result is returned only once.
+  * If none of the jobs has completed, waits up to waitMillis milliseconds for one to complete.
+  * The results of jobs that have not been asked for in the last ten minutes are forgotten.
+  **/
+  map<i64, Job> getJobResults(1 : list<i64> submissionIds, 2 : i32 waitMillis),
+
   /**
   * Clears a worker job queue.
   **/